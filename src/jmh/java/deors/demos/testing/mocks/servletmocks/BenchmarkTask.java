@@ -0,0 +1,67 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.Calendar;
+
+/**
+ * Task used by the scheduler benchmarks. Its schedule is never reached during a benchmark, so
+ * the task methods do nothing.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class BenchmarkTask
+    extends SchedulerTask {
+
+    /**
+     * Task constructor.
+     *
+     * @param taskName the task name
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
+     */
+    public BenchmarkTask(String taskName, String taskDescription, Calendar taskStartTime,
+                         Calendar taskStopTime) {
+
+        super(taskName, taskDescription, taskStartTime, taskStopTime);
+    }
+
+    /**
+     * Creates a start or stop time a number of hours from now, so it is not reached during
+     * a benchmark.
+     *
+     * @param hours the number of hours from now
+     *
+     * @return the time
+     */
+    static Calendar hoursFromNow(int hours) {
+
+        Calendar time = Calendar.getInstance();
+        time.add(Calendar.HOUR_OF_DAY, hours);
+        return time;
+    }
+
+    /**
+     * The task logic.
+     */
+    protected void taskLogic() {
+
+        // nothing to do
+    }
+
+    /**
+     * Prepares the task start.
+     */
+    protected void taskPrepareStart() {
+
+        // nothing to do
+    }
+
+    /**
+     * Prepares the task stop.
+     */
+    protected void taskPrepareStop() {
+
+        // nothing to do
+    }
+}
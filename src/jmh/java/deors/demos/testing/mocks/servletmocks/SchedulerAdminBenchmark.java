@@ -0,0 +1,164 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the scheduler administrative operations under contention. Several threads look
+ * up, stop and re-schedule tasks of a running scheduler. Re-scheduling a task replaces its
+ * queued entry, so the deadline queues do not grow with the number of operations.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SchedulerAdminBenchmark {
+
+    /**
+     * The number of registered tasks.
+     */
+    @Param({"10000"})
+    private int taskCount;
+
+    /**
+     * The scheduler.
+     */
+    private Scheduler scheduler;
+
+    /**
+     * The task names.
+     */
+    private String[] taskNames;
+
+    /**
+     * Registers the tasks and starts the scheduler.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        scheduler = new Scheduler();
+        taskNames = new String[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            taskNames[i] = "task" + i; //$NON-NLS-1$
+            scheduler.scheduleTask(taskNames[i], BenchmarkTask.class, "benchmark task", //$NON-NLS-1$
+                BenchmarkTask.hoursFromNow(6), BenchmarkTask.hoursFromNow(7));
+        }
+        scheduler.startScheduler();
+    }
+
+    /**
+     * Checks that the deadline queues did not grow during the iteration. Besides one entry per
+     * task, each shard may hold one entry used to wake up its thread.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+
+        Set<SchedulerShard> shards =
+            Collections.newSetFromMap(new IdentityHashMap<SchedulerShard, Boolean>());
+        for (SchedulerTask task : scheduler.getTasks()) {
+            shards.add(scheduler.shardFor(task));
+        }
+
+        int queued = 0;
+        for (SchedulerShard shard : shards) {
+            queued += shard.size();
+        }
+        if (queued > taskCount + shards.size()) {
+            throw new IllegalStateException("deadline queues grew to " + queued //$NON-NLS-1$
+                + " entries for " + taskCount + " tasks"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Stops the scheduler.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        scheduler.stopAllTasks();
+    }
+
+    /**
+     * Per-thread position in the task names.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /**
+         * The index of the next task name.
+         */
+        private int next;
+
+        /**
+         * Returns the next task name.
+         *
+         * @param names the task names
+         *
+         * @return the next task name
+         */
+        String nextName(String[] names) {
+
+            next = next + 1 == names.length ? 0 : next + 1;
+            return names[next];
+        }
+    }
+
+    /**
+     * Checks the existence of a task.
+     *
+     * @param cursor the thread cursor
+     *
+     * @return whether the task exists
+     */
+    @Benchmark
+    public boolean existsTask(Cursor cursor) {
+
+        return scheduler.existsTask(cursor.nextName(taskNames));
+    }
+
+    /**
+     * Stops a task that is not running.
+     *
+     * @param cursor the thread cursor
+     */
+    @Benchmark
+    public void stopTask(Cursor cursor) {
+
+        scheduler.stopTask(cursor.nextName(taskNames));
+    }
+
+    /**
+     * Re-schedules an existing task.
+     *
+     * @param cursor the thread cursor
+     */
+    @Benchmark
+    public void scheduleTask(Cursor cursor) {
+
+        scheduler.scheduleTask(cursor.nextName(taskNames), (Class<?>) null, null,
+            BenchmarkTask.hoursFromNow(6), BenchmarkTask.hoursFromNow(7));
+    }
+}
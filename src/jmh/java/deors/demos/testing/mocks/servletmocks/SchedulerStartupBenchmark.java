@@ -0,0 +1,100 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the scheduler startup from generated INI configuration files.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerStartupBenchmark {
+
+    /**
+     * The number of tasks in the INI file.
+     */
+    @Param({"1000", "10000", "100000"})
+    private int taskCount;
+
+    /**
+     * The generated INI file.
+     */
+    private File iniFile;
+
+    /**
+     * Generates the INI file.
+     *
+     * @throws IOException an i/o exception
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+        throws IOException {
+
+        iniFile = File.createTempFile("scheduler-benchmark", ".ini"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        PrintWriter writer = new PrintWriter(new FileWriter(iniFile));
+        try {
+            for (int i = 0; i < taskCount; i++) {
+                writer.println("[task" + i + ']'); //$NON-NLS-1$
+                writer.println("class = " + BenchmarkTask.class.getName()); //$NON-NLS-1$
+                writer.println("description = benchmark task " + i); //$NON-NLS-1$
+                if (i % 10 == 0) {
+                    writer.println("start = */5 * * * *"); //$NON-NLS-1$
+                    writer.println("stop = 00:01:00"); //$NON-NLS-1$
+                } else {
+                    writer.println("start = " + String.format("%02d:%02d:00", i / 60 % 24, i % 60)); //$NON-NLS-1$ //$NON-NLS-2$
+                    writer.println("stop = 23:59:59"); //$NON-NLS-1$
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Deletes the INI file.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        iniFile.delete();
+    }
+
+    /**
+     * Creates a scheduler from the INI file.
+     *
+     * @return the scheduler
+     *
+     * @throws IOException an i/o exception
+     */
+    @Benchmark
+    public Scheduler startup()
+        throws IOException {
+
+        return new Scheduler(iniFile);
+    }
+}
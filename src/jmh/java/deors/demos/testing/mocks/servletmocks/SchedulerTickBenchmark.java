@@ -0,0 +1,136 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the scheduler tick, i.e. the cost of checking one task when its deadline expires,
+ * with different numbers of registered tasks.
+ *
+ * The scheduler thread is not started: each operation wakes up one task and runs the tick that
+ * the scheduler thread would run, including the deadline queue operations. Waking up a task
+ * replaces its queued entry, so the queue size stays at the number of tasks and the measured time
+ * depends only on it, not on the number of operations.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerTickBenchmark {
+
+    /**
+     * The number of registered tasks.
+     */
+    @Param({"100", "10000", "100000"})
+    private int taskCount;
+
+    /**
+     * The scheduler.
+     */
+    private Scheduler scheduler;
+
+    /**
+     * The registered tasks.
+     */
+    private SchedulerTask[] tasks;
+
+    /**
+     * The shard with the tasks.
+     */
+    private SchedulerShard shard;
+
+    /**
+     * The index of the next task to check.
+     */
+    private int next;
+
+    /**
+     * Registers the tasks.
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial()
+        throws InterruptedException {
+
+        scheduler = new Scheduler();
+        for (int i = 0; i < taskCount; i++) {
+            scheduler.scheduleTask("task" + i, BenchmarkTask.class, "benchmark task", //$NON-NLS-1$ //$NON-NLS-2$
+                BenchmarkTask.hoursFromNow(6), BenchmarkTask.hoursFromNow(7));
+        }
+
+        List<SchedulerTask> registered = scheduler.getTasks();
+        tasks = registered.toArray(new SchedulerTask[registered.size()]);
+    }
+
+    /**
+     * Rebuilds the deadline queue before each iteration and checks every task once so all of
+     * them wait for their deadlines.
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    @Setup(Level.Iteration)
+    public void setUpIteration()
+        throws InterruptedException {
+
+        scheduler.setShardCount(1);
+        shard = scheduler.shardFor(tasks[0]);
+
+        ScheduleEntry entry = shard.poll(0);
+        while (entry != null) {
+            scheduler.tick(entry);
+            entry = shard.poll(0);
+        }
+    }
+
+    /**
+     * Wakes up a task and runs the scheduler tick.
+     *
+     * @return the processed entry
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    @Benchmark
+    public ScheduleEntry tick()
+        throws InterruptedException {
+
+        SchedulerTask task = tasks[next];
+        next = next + 1 == tasks.length ? 0 : next + 1;
+
+        scheduler.wakeUp(task);
+        ScheduleEntry entry = shard.poll(0);
+        scheduler.tick(entry);
+        return entry;
+    }
+
+    /**
+     * Checks that the deadline queue did not grow during the iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+
+        if (shard.size() > tasks.length) {
+            throw new IllegalStateException("deadline queue grew to " + shard.size() //$NON-NLS-1$
+                + " entries for " + tasks.length + " tasks"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+}
@@ -3,15 +3,22 @@ package deors.demos.testing.mocks.constructormocks;
 import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPException;
 
+import deors.demos.testing.mocks.lifecycle.ResourceCleaner;
+
 /**
  * DirectoryManager component. Manages connections to directories
  * with LDAP and provides some high-level services for querying
  * those directories.
  *
+ * The connection should be closed with <code>closeConnection()</code>
+ * or <code>close()</code> when it is not needed anymore. A manager that
+ * is garbage collected with an active connection closes it as a safety net.
+ *
  * @author jorge.hidalgo
  * @version 1.0
  */
-public class DirectoryManager {
+public class DirectoryManager
+    implements AutoCloseable {
 
     /**
      * Flag to signal whether the manager is connected to a directory.
@@ -34,27 +41,16 @@ public class DirectoryManager {
     public static final boolean CONNECTION_INACTIVE = false;
 
     /**
-     * Finalizer guardian object. Will try to close an active connection
-     * when the object is garbage collected in case it was not
-     * explicitly closed before.
+     * The action that closes the active connection if the manager is
+     * garbage collected without being closed.
      */
-    final Object finalizerGuardian = new Object() {
-
-        /**
-         * The finalizer method.
-         */
-        protected void finalize()
-            throws java.lang.Throwable {
+    private ConnectionRelease connectionRelease;
 
-            try {
-                if (isConnected()) {
-                    closeConnection();
-                }
-            } finally {
-                super.finalize();
-            }
-        }
-    };
+    /**
+     * The registration of the connection release action in the cleaner,
+     * or <code>null</code> if there is no active connection.
+     */
+    private ResourceCleaner.Cleanable cleanable;
 
     /**
      * Default constructor.
@@ -99,6 +95,29 @@ public class DirectoryManager {
         }
 
         connected = false;
+
+        if (cleanable != null) {
+            connectionRelease.connection = null;
+            cleanable.clean();
+            cleanable = null;
+            connectionRelease = null;
+        }
+    }
+
+    /**
+     * Closes the current connection with a directory, if active. Closing
+     * a manager without an active connection does nothing.
+     *
+     * @throws DirectoryException an exception while closing the connection
+     *
+     * @see AutoCloseable#close()
+     */
+    public void close()
+        throws DirectoryException {
+
+        if (connected) {
+            closeConnection();
+        }
     }
 
     /**
@@ -128,6 +147,9 @@ public class DirectoryManager {
         }
 
         connected = true;
+
+        connectionRelease = new ConnectionRelease(connection);
+        cleanable = ResourceCleaner.register(this, connectionRelease);
     }
 
     /**
@@ -148,4 +170,47 @@ public class DirectoryManager {
     public boolean isConnected() {
         return connected;
     }
+
+    /**
+     * Action that closes the connection of a manager garbage collected
+     * without being closed. It does not refer to the manager, so the
+     * manager can be collected.
+     */
+    private static final class ConnectionRelease
+        implements Runnable {
+
+        /**
+         * The connection to close, or <code>null</code> if it was closed
+         * by the manager.
+         */
+        private volatile LDAPConnection connection;
+
+        /**
+         * Constructor that sets the connection to close.
+         *
+         * @param connection the connection to close
+         */
+        private ConnectionRelease(LDAPConnection connection) {
+
+            super();
+            this.connection = connection;
+        }
+
+        /**
+         * Closes the connection if it is still connected.
+         */
+        public void run() {
+
+            LDAPConnection current = connection;
+            connection = null;
+            if (current != null && current.isConnected()) {
+                try {
+                    current.disconnect();
+                } catch (LDAPException ldape) {
+                    // the connection is abandoned, as nobody can handle the error
+                    return;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package deors.demos.testing.mocks.lifecycle;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Safety net that releases the resources of components that were not closed before being
+ * garbage collected.
+ *
+ * A component registers itself together with a cleaning action, and closes its resources by
+ * calling <code>clean()</code> on the returned <code>Cleanable</code> object. If the component
+ * becomes unreachable without being closed, the action is run by the cleaner thread. Unlike
+ * finalizers, a registered component is collected in a single garbage collection cycle, and
+ * only the components that were not closed reach the cleaner thread.
+ *
+ * The action is run at most once. It must not refer to the component, neither directly nor
+ * through an inner class instance, or the component never becomes unreachable; the usual
+ * way is to keep the resources in a static nested class that is also the action.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class ResourceCleaner {
+
+    /**
+     * The cleaner thread name.
+     */
+    private static final String CLEANER_THREAD_NAME = "resource-cleaner"; //$NON-NLS-1$
+
+    /**
+     * The queue where the garbage collector enqueues the references of unreachable components.
+     */
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+    /**
+     * The registered references that were not cleaned yet, which keeps them reachable until
+     * they are enqueued.
+     */
+    private static final Set<Cleanable> CLEANABLES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Thread thread = new Thread(new Runnable() {
+
+            /**
+             * Runs the action of each unreachable component.
+             */
+            @SuppressWarnings("PMD.AvoidCatchingThrowable")
+            public void run() {
+
+                while (true) {
+                    try {
+                        ((Cleanable) QUEUE.remove()).clean();
+                    } catch (InterruptedException ie) {
+                        // the cleaner thread is never ended
+                        continue;
+
+                    // CHECKSTYLE:OFF
+                    } catch (Throwable t) {
+                    // CHECKSTYLE:ON
+                        // a failed action must not end the cleaner thread
+                        continue;
+                    }
+                }
+            }
+        }, CLEANER_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private ResourceCleaner() {
+
+        super();
+    }
+
+    /**
+     * Registers a component and the action that releases its resources.
+     *
+     * @param component the component
+     * @param action the action that releases the resources, which must not refer to the
+     *               component
+     *
+     * @return the object used to run the action when the component is closed
+     */
+    public static Cleanable register(Object component, Runnable action) {
+
+        if (component == null || action == null) {
+            throw new IllegalArgumentException("ERR_CLEANER_ARG"); //$NON-NLS-1$
+        }
+
+        Cleanable cleanable = new Cleanable(component, action);
+        CLEANABLES.add(cleanable);
+        return cleanable;
+    }
+
+    /**
+     * Registration of a component in the cleaner.
+     */
+    public static final class Cleanable
+        extends PhantomReference<Object> {
+
+        /**
+         * The action that releases the resources of the component.
+         */
+        private final Runnable action;
+
+        /**
+         * Constructor that sets the component and the action.
+         *
+         * @param component the component
+         * @param action the action that releases the resources
+         */
+        private Cleanable(Object component, Runnable action) {
+
+            super(component, QUEUE);
+            this.action = action;
+        }
+
+        /**
+         * Unregisters the component and runs the action, unless it was already run.
+         */
+        public void clean() {
+
+            if (CLEANABLES.remove(this)) {
+                clear();
+                action.run();
+            }
+        }
+    }
+}
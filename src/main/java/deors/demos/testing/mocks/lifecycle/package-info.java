@@ -0,0 +1,4 @@
+/**
+ * Package with utilities for the lifecycle of components that hold threads and connections.
+ */
+package deors.demos.testing.mocks.lifecycle;
@@ -0,0 +1,417 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ * Cron-style schedule expression.
+ *
+ * An expression has five fields separated by white space: minute, hour, day of month, month
+ * and day of week. An optional sixth leading field sets the second; if it is not present the
+ * expression fires at second zero. Each field is a comma-separated list of values, ranges
+ * (<code>a-b</code>) or the wildcard (<code>*</code> or <code>?</code>), optionally followed
+ * by a step (<code>/n</code>). Months and days of week can be given by their English
+ * three-letter names, and both <code>0</code> and <code>7</code> mean Sunday. When both the
+ * day of month and the day of week are restricted, the expression fires when either matches.
+ *
+ * The expression is compiled into one bit mask per field, so the next fire time is found with
+ * a few bit scans per field instead of a search second by second.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class CronExpression {
+
+    /**
+     * Value returned when an expression never fires (e.g. the 31st of February).
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * The field separator.
+     */
+    private static final String FIELD_SEPARATOR = " \t"; //$NON-NLS-1$
+
+    /**
+     * The list separator inside a field.
+     */
+    private static final String LIST_SEPARATOR = ","; //$NON-NLS-1$
+
+    /**
+     * The range separator inside a field.
+     */
+    private static final char RANGE_SEPARATOR = '-';
+
+    /**
+     * The step separator inside a field.
+     */
+    private static final char STEP_SEPARATOR = '/';
+
+    /**
+     * The month names.
+     */
+    private static final String[] MONTH_NAMES = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+        "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+    /**
+     * The day of week names.
+     */
+    private static final String[] DAY_NAMES = {
+        "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+
+    /**
+     * Number of years searched for the next fire time before giving up.
+     */
+    private static final int MAX_YEARS_SEARCHED = 8;
+
+    /**
+     * The expression source string.
+     */
+    private final String expression;
+
+    /**
+     * Mask of seconds (bits 0 to 59).
+     */
+    private final long seconds;
+
+    /**
+     * Mask of minutes (bits 0 to 59).
+     */
+    private final long minutes;
+
+    /**
+     * Mask of hours (bits 0 to 23).
+     */
+    private final long hours;
+
+    /**
+     * Mask of days of month (bits 1 to 31).
+     */
+    private final long daysOfMonth;
+
+    /**
+     * Mask of months (bits 1 to 12).
+     */
+    private final long months;
+
+    /**
+     * Mask of days of week (bits 0 to 6, Sunday is 0).
+     */
+    private final long daysOfWeek;
+
+    /**
+     * Whether the day of month field is restricted (not a wildcard).
+     */
+    private final boolean daysOfMonthRestricted;
+
+    /**
+     * Whether the day of week field is restricted (not a wildcard).
+     */
+    private final boolean daysOfWeekRestricted;
+
+    /**
+     * Constructor that parses and compiles an expression.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the expression
+     * is not valid.
+     *
+     * @param expression the expression
+     */
+    public CronExpression(String expression) {
+
+        super();
+
+        if (expression == null) {
+            throw new IllegalArgumentException("SCHED_ERR_CRON_INVALID"); //$NON-NLS-1$
+        }
+
+        StringTokenizer st = new StringTokenizer(expression.trim(), FIELD_SEPARATOR);
+        int count = st.countTokens();
+        if (count != 5 && count != 6) {
+            throw new IllegalArgumentException("SCHED_ERR_CRON_INVALID"); //$NON-NLS-1$
+        }
+
+        this.expression = expression.trim();
+
+        this.seconds = count == 6 ? parseField(st.nextToken(), 0, 59, null) : 1L;
+        this.minutes = parseField(st.nextToken(), 0, 59, null);
+        this.hours = parseField(st.nextToken(), 0, 23, null);
+
+        String dom = st.nextToken();
+        this.daysOfMonth = parseField(dom, 1, 31, null);
+        this.daysOfMonthRestricted = !isWildcard(dom);
+
+        this.months = parseField(st.nextToken(), 1, 12, MONTH_NAMES);
+
+        String dow = st.nextToken();
+        long dowMask = parseField(dow, 0, 7, DAY_NAMES);
+        // both 0 and 7 are Sunday
+        if ((dowMask & (1L << 7)) != 0) {
+            dowMask = (dowMask | 1L) & ~(1L << 7);
+        }
+        this.daysOfWeek = dowMask;
+        this.daysOfWeekRestricted = !isWildcard(dow);
+    }
+
+    /**
+     * Checks whether a string looks like a cron expression, i.e. it has several fields
+     * separated by white space. It does not validate the expression.
+     *
+     * @param value the string
+     *
+     * @return whether the string looks like a cron expression
+     */
+    public static boolean isCronExpression(String value) {
+
+        return value != null && new StringTokenizer(value.trim(), FIELD_SEPARATOR).countTokens() > 1;
+    }
+
+    /**
+     * Checks whether a field is a plain wildcard.
+     *
+     * @param field the field
+     *
+     * @return whether the field is a plain wildcard
+     */
+    private static boolean isWildcard(String field) {
+
+        return "*".equals(field) || "?".equals(field); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Parses a field into a bit mask.
+     *
+     * @param field the field
+     * @param min the minimum value of the field
+     * @param max the maximum value of the field
+     * @param names the value names, where the first name is the minimum value, or
+     *              <code>null</code> if the field has no names
+     *
+     * @return the bit mask
+     */
+    private static long parseField(String field, int min, int max, String[] names) {
+
+        long mask = 0;
+
+        StringTokenizer st = new StringTokenizer(field, LIST_SEPARATOR);
+        if (!st.hasMoreTokens()) {
+            throw new IllegalArgumentException("SCHED_ERR_CRON_INVALID"); //$NON-NLS-1$
+        }
+
+        while (st.hasMoreTokens()) {
+            String item = st.nextToken();
+
+            int step = 1;
+            int stepIndex = item.indexOf(STEP_SEPARATOR);
+            if (stepIndex >= 0) {
+                step = parseValue(item.substring(stepIndex + 1), 1, max, null, 0);
+                item = item.substring(0, stepIndex);
+            }
+
+            int from;
+            int to;
+            if (isWildcard(item)) {
+                from = min;
+                to = max;
+            } else {
+                int rangeIndex = item.indexOf(RANGE_SEPARATOR);
+                if (rangeIndex >= 0) {
+                    from = parseValue(item.substring(0, rangeIndex), min, max, names, min);
+                    to = parseValue(item.substring(rangeIndex + 1), min, max, names, min);
+                } else {
+                    from = parseValue(item, min, max, names, min);
+                    to = stepIndex >= 0 ? max : from;
+                }
+            }
+
+            if (from > to) {
+                throw new IllegalArgumentException("SCHED_ERR_CRON_INVALID"); //$NON-NLS-1$
+            }
+
+            for (int i = from; i <= to; i += step) {
+                mask |= 1L << i;
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Parses a single value of a field.
+     *
+     * @param value the value
+     * @param min the minimum value
+     * @param max the maximum value
+     * @param names the value names or <code>null</code>
+     * @param firstName the value of the first name
+     *
+     * @return the parsed value
+     */
+    private static int parseValue(String value, int min, int max, String[] names, int firstName) {
+
+        if (names != null) {
+            String upper = value.toUpperCase(Locale.ENGLISH);
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(upper)) {
+                    return firstName + i;
+                }
+            }
+        }
+
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("SCHED_ERR_CRON_INVALID", nfe); //$NON-NLS-1$
+        }
+
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException("SCHED_ERR_CRON_INVALID"); //$NON-NLS-1$
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns the first value set in a mask that is equal or greater than a given value.
+     *
+     * @param mask the mask
+     * @param from the given value
+     *
+     * @return the first value or <code>-1</code> if there is none
+     */
+    private static int nextSetBit(long mask, int from) {
+
+        if (from > 63) {
+            return -1;
+        }
+
+        long remaining = mask & (-1L << from);
+        return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * Checks whether the day in the calendar matches the day fields.
+     *
+     * @param calendar the calendar
+     *
+     * @return whether the day matches
+     */
+    private boolean dayMatches(Calendar calendar) {
+
+        boolean domMatches = (daysOfMonth & (1L << calendar.get(Calendar.DAY_OF_MONTH))) != 0;
+        boolean dowMatches = (daysOfWeek & (1L << (calendar.get(Calendar.DAY_OF_WEEK) - 1))) != 0;
+
+        if (daysOfMonthRestricted && daysOfWeekRestricted) {
+            return domMatches || dowMatches;
+        }
+        return domMatches && dowMatches;
+    }
+
+    /**
+     * Moves the calendar to the beginning of the next day.
+     *
+     * @param calendar the calendar
+     */
+    private static void nextDay(Calendar calendar) {
+
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+    }
+
+    /**
+     * Computes the first instant after a given instant when the expression fires, using the
+     * default time zone.
+     *
+     * @param after the instant in milliseconds since the epoch
+     *
+     * @return the next fire time in milliseconds since the epoch, or <code>NEVER</code>
+     */
+    public long nextFireTime(long after) {
+
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(after);
+        c.set(Calendar.MILLISECOND, 0);
+        c.add(Calendar.SECOND, 1);
+
+        int lastYear = c.get(Calendar.YEAR) + MAX_YEARS_SEARCHED;
+
+        while (c.get(Calendar.YEAR) <= lastYear) {
+            int month = c.get(Calendar.MONTH) + 1;
+            if ((months & (1L << month)) == 0) {
+                int next = nextSetBit(months, month + 1);
+                if (next < 0) {
+                    c.add(Calendar.YEAR, 1);
+                    next = nextSetBit(months, 1);
+                }
+                c.set(Calendar.DAY_OF_MONTH, 1);
+                c.set(Calendar.MONTH, next - 1);
+                c.set(Calendar.HOUR_OF_DAY, 0);
+                c.set(Calendar.MINUTE, 0);
+                c.set(Calendar.SECOND, 0);
+                continue;
+            }
+
+            if (!dayMatches(c)) {
+                nextDay(c);
+                continue;
+            }
+
+            int hour = c.get(Calendar.HOUR_OF_DAY);
+            int nextHour = nextSetBit(hours, hour);
+            if (nextHour < 0) {
+                nextDay(c);
+                continue;
+            }
+            if (nextHour != hour) {
+                c.set(Calendar.HOUR_OF_DAY, nextHour);
+                c.set(Calendar.MINUTE, 0);
+                c.set(Calendar.SECOND, 0);
+                continue;
+            }
+
+            int minute = c.get(Calendar.MINUTE);
+            int nextMinute = nextSetBit(minutes, minute);
+            if (nextMinute < 0) {
+                c.add(Calendar.HOUR_OF_DAY, 1);
+                c.set(Calendar.MINUTE, 0);
+                c.set(Calendar.SECOND, 0);
+                continue;
+            }
+            if (nextMinute != minute) {
+                c.set(Calendar.MINUTE, nextMinute);
+                c.set(Calendar.SECOND, 0);
+                continue;
+            }
+
+            int second = c.get(Calendar.SECOND);
+            int nextSecond = nextSetBit(seconds, second);
+            if (nextSecond < 0) {
+                c.add(Calendar.MINUTE, 1);
+                c.set(Calendar.SECOND, 0);
+                continue;
+            }
+            if (nextSecond != second) {
+                c.set(Calendar.SECOND, nextSecond);
+                continue;
+            }
+
+            return c.getTimeInMillis();
+        }
+
+        return NEVER;
+    }
+
+    /**
+     * Returns the expression source string.
+     *
+     * @return the expression
+     */
+    public String toString() {
+
+        return expression;
+    }
+}
@@ -0,0 +1,57 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Modes of calling the task logic while a task is running.
+ *
+ * In the paced modes, the task thread is parked between calls for the task execution period,
+ * and it is woken up at once when the task is asked to stop, so a stopped task never waits for
+ * the rest of the period.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTask#setExecutionMode(ExecutionMode)
+ * @see SchedulerTask#setExecutionPeriod(long)
+ */
+public enum ExecutionMode {
+
+    /**
+     * The task logic is called again as soon as it returns. This is the default mode, for tasks
+     * that block or pace themselves inside the task logic.
+     */
+    CONTINUOUS,
+
+    /**
+     * Each call starts one period after the start of the previous call, so the time spent in
+     * the task logic and the parking latency do not accumulate as drift. When a call takes longer
+     * than the period, the next call starts as soon as it returns, and the calls that did not
+     * fit are skipped instead of run in a burst.
+     */
+    FIXED_RATE,
+
+    /**
+     * Each call starts one period after the end of the previous call.
+     */
+    FIXED_DELAY;
+
+    /**
+     * Returns the mode with the given name. Names are not case sensitive, and may use hyphens
+     * instead of underscores, e.g. <code>fixed-rate</code>.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if there is no mode with
+     * the given name.
+     *
+     * @param name the mode name
+     *
+     * @return the mode
+     */
+    public static ExecutionMode parse(String name) {
+
+        for (ExecutionMode mode : values()) {
+            if (mode.name().replace('_', '-').equalsIgnoreCase(name.replace('_', '-'))) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("SCHED_ERR_EXECUTION_MODE_INVALID"); //$NON-NLS-1$
+    }
+}
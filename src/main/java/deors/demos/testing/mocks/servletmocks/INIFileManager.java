@@ -224,7 +224,8 @@ public final class INIFileManager {
 
         String sectionID = getEntryID(section, null);
 
-        if (sections.contains(sectionID)) {
+        // the sections list is only used to keep the order, lookups use the keys map
+        if (keysBySection.containsKey(sectionID)) {
             return false;
         }
 
@@ -0,0 +1,201 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, e.g. durations or delays.
+ *
+ * Values are counted in log-linear buckets: each power of two is split in eight linear
+ * sub-buckets, so percentiles are reported with a relative error below 12.5% using a fixed
+ * array of counters. Recording a value is a few atomic increments and never blocks, so it can
+ * be done in the scheduler and task threads without slowing them down.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class LatencyHistogram {
+
+    /**
+     * The number of bits used to select a sub-bucket inside a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of sub-buckets inside a power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets needed to count any non-negative long value.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The value counts in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of the recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The maximum recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * The minimum recorded value, or <code>Long.MAX_VALUE</code> if no value was recorded.
+     */
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Default constructor.
+     */
+    LatencyHistogram() {
+
+        super();
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    void record(long value) {
+
+        long v = value < 0 ? 0 : value;
+
+        counts.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+
+        current = min.get();
+        while (v < current && !min.compareAndSet(current, v)) {
+            current = min.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    long getCount() {
+
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean, or zero if no value was recorded
+     */
+    double getMean() {
+
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the maximum recorded value.
+     *
+     * @return the maximum, or zero if no value was recorded
+     */
+    long getMax() {
+
+        return max.get();
+    }
+
+    /**
+     * Returns the minimum recorded value.
+     *
+     * @return the minimum, or zero if no value was recorded
+     */
+    long getMin() {
+
+        long current = min.get();
+        return current == Long.MAX_VALUE ? 0 : current;
+    }
+
+    /**
+     * Returns an upper bound of a percentile of the recorded values.
+     *
+     * @param percentile the percentile, between 0 and 100
+     *
+     * @return the upper bound of the bucket that contains the percentile, or zero if no value
+     *         was recorded
+     */
+    long getPercentile(double percentile) {
+
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the bucket of a value.
+     *
+     * @param value the value
+     *
+     * @return the bucket index
+     */
+    static int bucketOf(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param bucket the bucket index
+     *
+     * @return the largest value in the bucket
+     */
+    static long upperBoundOf(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,58 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Policies applied when the start of a daily or cron task is missed.
+ *
+ * A start is missed (a misfire) when the scheduler checks the task later than the task misfire
+ * tolerance after its scheduled start, e.g. because the scheduler thread was stalled by a long
+ * garbage collection or the host was suspended, or when the task window has already ended.
+ * When a missed execution is started, it keeps its scheduled stop time unless its window has
+ * already ended, in which case the execution runs for the length of its window.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTask#setMisfirePolicy(MisfirePolicy)
+ * @see SchedulerTask#setMisfireTolerance(long)
+ */
+public enum MisfirePolicy {
+
+    /**
+     * Every missed execution is started, one after the other, as soon as possible. Once a missed
+     * execution ends, the next start is computed from the missed start instead of the current
+     * time, so a long stall is followed by a burst of catch-up executions.
+     */
+    FIRE_NOW,
+
+    /**
+     * Missed executions are not started, and the task waits for its next scheduled start.
+     */
+    SKIP_TO_NEXT,
+
+    /**
+     * All the missed executions are started as a single execution, and the task waits then for
+     * its next scheduled start. This is the default policy.
+     */
+    COALESCE;
+
+    /**
+     * Returns the policy with the given name. Names are not case sensitive, and may use hyphens
+     * instead of underscores, e.g. <code>skip-to-next</code>.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if there is no policy with
+     * the given name.
+     *
+     * @param name the policy name
+     *
+     * @return the policy
+     */
+    public static MisfirePolicy parse(String name) {
+
+        for (MisfirePolicy policy : values()) {
+            if (policy.name().replace('_', '-').equalsIgnoreCase(name.replace('_', '-'))) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("SCHED_ERR_MISFIRE_POLICY_INVALID"); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,235 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.Calendar;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Abstract class that represents a scheduler task whose logic is split into subtasks run in
+ * parallel in a fork/join pool.
+ *
+ * Classes that extends <code>ParallelSchedulerTask</code> must implement the
+ * <code>taskSubtaskCount()</code> and <code>taskSubtaskLogic(int)</code> methods instead of
+ * <code>taskLogic()</code>, besides <code>taskPrepareStart()</code> and
+ * <code>taskPrepareStop()</code>. Each call of the task logic asks for the number of subtasks,
+ * and the range of subtasks is split in halves, recursively, down to the split threshold, so idle
+ * pool threads steal the larger pending ranges first. The task thread waits for all the subtasks
+ * to end, so the task execution mode and the task lifecycle are the same as in any other task.
+ *
+ * Stopping is cooperative across all subtasks: once the task is asked to stop, no pending
+ * subtask is started, and the call ends as soon as the running subtasks return, so long subtasks
+ * should check <code>isStopRequested()</code> themselves. A failed subtask also aborts the pending
+ * subtasks, and its exception is thrown by the task logic. When the task is killed, the task
+ * thread stops waiting for the subtasks, which end by themselves.
+ *
+ * The progress of the current call, i.e. the number of subtasks and of completed subtasks, is
+ * reported in the task metrics.
+ *
+ * By default the subtasks run in the common fork/join pool, shared by all the parallel tasks.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTaskMXBean#getSubtaskCount()
+ * @see SchedulerTaskMXBean#getCompletedSubtaskCount()
+ */
+public abstract class ParallelSchedulerTask
+    extends SchedulerTask {
+
+    /**
+     * Default value of the split threshold.
+     */
+    public static final int DEFAULT_SPLIT_THRESHOLD = 1;
+
+    /**
+     * Task constructor.
+     *
+     * @param taskName the task name
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
+     */
+    public ParallelSchedulerTask(String taskName, String taskDescription, Calendar taskStartTime,
+                                 Calendar taskStopTime) {
+
+        super(taskName, taskDescription, taskStartTime, taskStopTime);
+    }
+
+    /**
+     * The task logic: runs all the subtasks in the fork/join pool and waits for them to end. If a
+     * subtask failed, its exception is thrown again in the task thread.
+     */
+    @Override
+    protected final void taskLogic() {
+
+        int count = taskSubtaskCount();
+        metrics.recordSubtasks(Math.max(count, 0));
+        if (count <= 0) {
+            return;
+        }
+
+        Subtasks call = new Subtasks(0, count, Math.max(taskSplitThreshold(), 1), null);
+        taskForkJoinPool().execute(call);
+
+        try {
+            call.get();
+        } catch (InterruptedException ie) {
+            // the task was killed: the pending subtasks are not started, and the running ones
+            // see the stop request
+            call.abort();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            // subtasks only throw unchecked exceptions
+            Throwable cause = ee.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Returns the number of subtasks of the next call of the task logic. It is called by the
+     * task thread once per call.
+     *
+     * @return the number of subtasks, or zero if there is nothing to do
+     */
+    protected abstract int taskSubtaskCount();
+
+    /**
+     * The logic of a subtask. It is called concurrently by the pool threads, once per subtask
+     * and call, unless the task is asked to stop or another subtask fails.
+     *
+     * @param subtask the subtask index, from zero to the number of subtasks, exclusive
+     */
+    protected abstract void taskSubtaskLogic(int subtask);
+
+    /**
+     * Returns the maximum number of subtasks run one after another by a pool thread, without
+     * splitting them. Subtasks that are very short should be run in larger groups, so the
+     * splitting does not cost more than the subtasks themselves.
+     *
+     * @return the split threshold, by default <code>DEFAULT_SPLIT_THRESHOLD</code>
+     */
+    protected int taskSplitThreshold() {
+
+        return DEFAULT_SPLIT_THRESHOLD;
+    }
+
+    /**
+     * Returns the fork/join pool where the subtasks run.
+     *
+     * @return the fork/join pool, by default the common pool
+     */
+    protected ForkJoinPool taskForkJoinPool() {
+
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * A range of subtasks of a call of the task logic.
+     */
+    private final class Subtasks
+        extends RecursiveAction {
+
+        /**
+         * Serialization ID.
+         */
+        private static final long serialVersionUID = -2405806379410216227L;
+
+        /**
+         * The first subtask of the range.
+         */
+        private final int from;
+
+        /**
+         * The end of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * The split threshold.
+         */
+        private final int threshold;
+
+        /**
+         * The range of the whole call, which holds the abort flag of the call.
+         */
+        private final Subtasks call;
+
+        /**
+         * This flag indicates whether the call was aborted, because the task was killed or a
+         * subtask failed. It is only used in the range of the whole call.
+         */
+        @SuppressWarnings("PMD.AvoidUsingVolatile")
+        private volatile boolean aborted;
+
+        /**
+         * Constructor that sets the range.
+         *
+         * @param from the first subtask of the range
+         * @param to the end of the range, exclusive
+         * @param threshold the split threshold
+         * @param call the range of the whole call, or <code>null</code> if this is the range of
+         *             the whole call
+         */
+        private Subtasks(int from, int to, int threshold, Subtasks call) {
+
+            super();
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.call = call == null ? this : call;
+        }
+
+        /**
+         * Aborts the call, so no pending subtask is started.
+         */
+        private void abort() {
+
+            call.aborted = true;
+        }
+
+        /**
+         * Checks whether the pending subtasks must not be started.
+         *
+         * @return whether the task was asked to stop or the call was aborted
+         */
+        private boolean isAborted() {
+
+            return call.aborted || isStopRequested();
+        }
+
+        /**
+         * Runs the range of subtasks, splitting it in halves while it is larger than the split
+         * threshold.
+         */
+        @Override
+        protected void compute() {
+
+            if (to - from > threshold) {
+                int middle = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(new Subtasks(from, middle, threshold, call),
+                    new Subtasks(middle, to, threshold, call));
+                return;
+            }
+
+            for (int subtask = from; subtask < to && !isAborted(); subtask++) {
+                boolean completed = false;
+                try {
+                    taskSubtaskLogic(subtask);
+                    completed = true;
+                } finally {
+                    // a failed subtask aborts the rest of the call
+                    if (completed) {
+                        metrics.recordSubtaskCompleted();
+                    } else {
+                        abort();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Entry in the scheduler deadline queue.
+ *
+ * Each entry binds a task with the instant when the scheduler must check it again. Entries are
+ * never updated: when a task schedule changes a new entry is queued and the old one is removed
+ * from the queue. An old entry already taken by the scheduler thread becomes stale, and is
+ * discarded without checking the task.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class ScheduleEntry {
+
+    /**
+     * The task to be checked, or <code>null</code> if the entry is only used to wake up
+     * the scheduler thread.
+     *
+     * @see ScheduleEntry#getTask()
+     */
+    private final SchedulerTask task;
+
+    /**
+     * The instant (in milliseconds since the epoch) when the task must be checked.
+     *
+     * @see ScheduleEntry#getDeadline()
+     */
+    private final long deadline;
+
+    /**
+     * The position of the entry in the deadline queue of its shard, or -1 if it is not queued.
+     * Guarded by the shard monitor.
+     */
+    int index = -1;
+
+    /**
+     * Constructor that sets the task and the deadline.
+     *
+     * @param task the task to be checked
+     * @param deadline the instant when the task must be checked
+     */
+    ScheduleEntry(SchedulerTask task, long deadline) {
+
+        super();
+        this.task = task;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns the <code>task</code> property value.
+     *
+     * @return the property value
+     *
+     * @see ScheduleEntry#task
+     */
+    SchedulerTask getTask() {
+        return task;
+    }
+
+    /**
+     * Returns the <code>deadline</code> property value.
+     *
+     * @return the property value
+     *
+     * @see ScheduleEntry#deadline
+     */
+    long getDeadline() {
+        return deadline;
+    }
+}
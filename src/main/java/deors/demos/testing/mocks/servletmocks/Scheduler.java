@@ -3,13 +3,38 @@ package deors.demos.testing.mocks.servletmocks;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import deors.demos.testing.mocks.lifecycle.ResourceCleaner;
 
 /**
  * Task scheduler.
@@ -27,23 +52,124 @@ import java.util.NoSuchElementException;
  * When the task start time equals the string <code>*</code> (the configurable daemon id string)
  * the task is then a daemon, and does not stop until the task itself ends.
  *
+ * The task start time can also be a cron expression (e.g. <code>0 * * * MON-FRI</code>) so the
+ * task is started each time the expression fires. For these tasks, the stop entry is the maximum
+ * run time of each execution in HH:MM:SS format, or the daemon id string if the task is not
+ * stopped by the scheduler.
+ *
  * The tasks are implemented extending the abstract class <code>SchedulerTask</code>.
  *
  * By default new tasks are loaded using the scheduler thread class loader, but it can
  * be configured to use any initialized class loader.
  *
+ * The scheduler thread does not poll the tasks. Each task is kept in a deadline queue keyed by
+ * the instant of its next start or stop transition, and the scheduler thread parks until the
+ * earliest deadline expires or until a task schedule is changed.
+ *
+ * Task logic is executed by the task executor. By default, the scheduler uses its own cached
+ * pool of named threads, but any executor can be configured, e.g. a bounded pool created with
+ * <code>newBoundedTaskExecutor(int)</code> or a virtual thread executor created with
+ * <code>newVirtualThreadTaskExecutor()</code> in runtimes that support them.
+ *
+ * Task start preparations run in their own pool of threads, so a task that is slow to prepare
+ * never delays the checks of other tasks. A prepare timeout can be configured with
+ * <code>setPrepareTimeout(long)</code>.
+ *
+ * For large task counts, the scheduler can run in sharded mode, configured with
+ * <code>setShardCount(int)</code> before it is started. Tasks are then partitioned by name hash
+ * across the shards, each one with its own thread and deadline queue.
+ *
+ * Tasks scheduled, removed or killed at runtime can be made persistent with
+ * <code>openJournal(File)</code>. The journal is replayed when opened, after the tasks in the
+ * INI configuration file have been loaded.
+ *
+ * When the same tasks are scheduled in several nodes, the schedulers can be coordinated with
+ * <code>setCoordination(File, String, long)</code>, so each task runs in only one node.
+ *
+ * The scheduler and task metrics (tick durations, scheduling lags, prepare and run durations,
+ * kills and errors) are always recorded, and can be published as MXBeans in the platform MBean
+ * server with <code>registerMBeans(String)</code>. The task metrics also have the count,
+ * throughput and latency distribution of the task logic calls, and the last task error.
+ *
+ * The number of tasks running at the same time can be limited with
+ * <code>setConcurrencyLimit(int)</code>, and for each task group, set with the optional
+ * <code>group</code> entry, with <code>setGroupConcurrencyLimit(String, int)</code>. Tasks due to
+ * start while a limit is reached wait in an admission queue ordered by the optional
+ * <code>priority</code> entry (higher first), until a running task stops or their window ends.
+ *
+ * A start checked later than the task misfire tolerance (the optional <code>tolerance</code>
+ * entry in HH:MM:SS format, one minute by default), e.g. after a long stall of the scheduler
+ * thread, is a misfire handled by the task misfire policy, set with the optional
+ * <code>misfire</code> entry: <code>fire-now</code>, <code>skip-to-next</code> or
+ * <code>coalesce</code> (the default).
+ *
+ * While a task is running, its logic is called again as soon as it returns, unless the optional
+ * <code>mode</code> entry is <code>fixed-rate</code> or <code>fixed-delay</code>. The task thread
+ * is then parked between calls for the <code>period</code> entry, in milliseconds or in HH:MM:SS
+ * format, and it is woken up at once when the task is stopped.
+ *
+ * A task with the optional <code>after</code> entry, a comma-separated list of task names, is a
+ * dependent task: it has no start entry, and it is started each time all the listed upstream
+ * tasks have finished successfully since its previous start. Dependent tasks whose upstream tasks
+ * finish together are started together, so independent branches of a batch run in parallel. The
+ * optional stop entry is then the maximum run time of each execution in HH:MM:SS format. Upstream
+ * tasks must exist, and dependencies must not form a cycle.
+ *
+ * A daemon runs once, unless the optional <code>restarts</code> entry is set. A daemon that fails
+ * is then restarted up to that many consecutive times, after a backoff that starts at the
+ * <code>backoff</code> entry and doubles up to the <code>maxbackoff</code> entry, shortened by a
+ * random jitter. Beyond that, the daemon is in a crash loop and is not restarted again until the
+ * <code>circuit</code> entry time has passed, or never if the entry is missing.
+ *
+ * A task run can be limited with the optional <code>maxruntime</code> entry, and each call of the
+ * task logic with the optional <code>timeout</code> entry, both in milliseconds or in HH:MM:SS
+ * format. The limits are enforced by a watchdog thread shared by all the tasks: a run past its
+ * limits fails and is asked to stop, its thread is interrupted one kill grace period later, and
+ * if it is still running after another grace period its thread is abandoned. Only the run is
+ * killed: once the abandoned thread leaves the task logic, the task is started again on its next
+ * start, or restarted by its supervision policy.
+ *
+ * Task lifecycle events (scheduled, started, stopped, killed and failed) can be received with
+ * <code>addSchedulerListener(SchedulerListener)</code>. Events are buffered and delivered by a
+ * dispatcher thread, so a slow listener never delays the scheduler or the task threads.
+ *
+ * Log messages are written to the standard output by a background writer thread, and only
+ * if their level is enabled with <code>setLogLevel(SchedulerLogLevel)</code>, by default
+ * <code>INFO</code>.
+ *
+ * A scheduler should be closed with <code>close()</code> when it is not needed anymore, which
+ * stops all the tasks and releases the scheduler threads, the journal and the task leases. A
+ * scheduler that is garbage collected without being closed releases the journal, the task leases
+ * and the event dispatcher thread as a safety net. The safety net only covers schedulers that are
+ * not running: a started scheduler is kept reachable by its own thread until it is stopped with
+ * <code>stopAllTasks()</code> or <code>close()</code>, so an abandoned running scheduler keeps
+ * running its tasks.
+ *
  * @author deors
  * @version 1.0
+ *
+ * @see CronExpression
  */
 public final class Scheduler
-    extends Thread {
+    extends Thread
+    implements AutoCloseable {
 
     /**
-     * The task list.
+     * The task registry. Lookups by name and iterations do not lock; the registry monitor only
+     * serializes the schedule operations that must check and add a task atomically.
      *
      * @see Scheduler#getTasks()
      */
-    private final List<SchedulerTask> tasks = new ArrayList<SchedulerTask>();
+    private final TaskRegistry tasks = new TaskRegistry();
+
+    /**
+     * The scheduler shards. Each shard has its own deadline queue with the next instant when each
+     * of its tasks must be checked. By default there is only one shard, run by the scheduler thread.
+     *
+     * @see Scheduler#setShardCount(int)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile SchedulerShard[] shards = newShards(1);
 
     /**
      * The scheduler thread.
@@ -51,6 +177,119 @@ public final class Scheduler
     @SuppressWarnings("PMD.AvoidUsingVolatile")
     volatile Thread schedulerThread;
 
+    /**
+     * The executor that runs the task logic.
+     *
+     * @see Scheduler#getTaskExecutor()
+     * @see Scheduler#setTaskExecutor(Executor)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile Executor taskExecutor;
+
+    /**
+     * Whether the task executor was created by the scheduler, so it is shut down with it.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile boolean taskExecutorOwned;
+
+    /**
+     * Lock that guards the task executor creation and replacement.
+     */
+    private final Object taskExecutorLock = new Object();
+
+    /**
+     * The executor that runs the task start preparations, created on demand and shut down with
+     * the scheduler.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile ExecutorService prepareExecutor;
+
+    /**
+     * The maximum time to wait for a task start preparation, in milliseconds.
+     *
+     * @see Scheduler#getPrepareTimeout()
+     * @see Scheduler#setPrepareTimeout(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long prepareTimeout = UNLIMITED_PREPARE_TIMEOUT;
+
+    /**
+     * The time to wait in each step of a task kill, in milliseconds.
+     *
+     * @see Scheduler#getKillGracePeriod()
+     * @see Scheduler#setKillGracePeriod(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long killGracePeriod = DEFAULT_KILL_GRACE_PERIOD;
+
+    /**
+     * The journal with the schedule changes, or <code>null</code> if changes are not journaled.
+     *
+     * @see Scheduler#openJournal(File)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile SchedulerJournal journal;
+
+    /**
+     * The task lease manager, or <code>null</code> if the scheduler is not coordinated with other
+     * nodes.
+     *
+     * @see Scheduler#setCoordination(File, String, long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile SchedulerLeaseManager leaseManager;
+
+    /**
+     * The scheduler metrics.
+     *
+     * @see Scheduler#getMetrics()
+     */
+    private final SchedulerMetrics metrics = new SchedulerMetrics(this);
+
+    /**
+     * The admission control of the task starts.
+     *
+     * @see Scheduler#setConcurrencyLimit(int)
+     * @see Scheduler#setGroupConcurrencyLimit(String, int)
+     */
+    private final SchedulerAdmission admission = new SchedulerAdmission(this);
+
+    /**
+     * The dispatcher of the task lifecycle events to the scheduler listeners.
+     *
+     * @see Scheduler#addSchedulerListener(SchedulerListener)
+     */
+    private final SchedulerEventDispatcher events =
+        new SchedulerEventDispatcher(SchedulerEventDispatcher.DEFAULT_CAPACITY);
+
+    /**
+     * The watchdog that enforces the run limits of the tasks.
+     *
+     * @see SchedulerTask#setMaxRunTime(long)
+     * @see SchedulerTask#setIterationTimeout(long)
+     */
+    private final SchedulerWatchdog watchdog = new SchedulerWatchdog();
+
+    /**
+     * The resources released when the scheduler is closed, or garbage collected without being
+     * closed.
+     */
+    private final SchedulerResources resources = new SchedulerResources(events);
+
+    /**
+     * The registration of the scheduler resources in the cleaner.
+     */
+    private final ResourceCleaner.Cleanable cleanable;
+
+    /**
+     * The name used to register the scheduler MXBeans, or <code>null</code> if they are not
+     * registered.
+     *
+     * @see Scheduler#registerMBeans(String)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile String mbeanName;
+
     /**
      * The scheduler class loader. Its initial value is the thread class loader
      * as returned by the method <code>getContextClassLoader()</code> of
@@ -58,6 +297,17 @@ public final class Scheduler
      */
     private ClassLoader schedulerClassLoader = this.getContextClassLoader();
 
+    /**
+     * The task classes already loaded with the scheduler class loader, indexed by class name.
+     */
+    private final ConcurrentMap<String, Class<?>> taskClasses = new ConcurrentHashMap<String, Class<?>>();
+
+    /**
+     * The names of the dependent tasks of each upstream task, used to check the dependent tasks
+     * when an upstream task finishes. It is changed holding the registry monitor.
+     */
+    private final ConcurrentMap<String, Set<String>> dependentTasks = new ConcurrentHashMap<String, Set<String>>();
+
     /**
      * The date formatter.
      */
@@ -101,40 +351,152 @@ public final class Scheduler
      */
     private static final String TASK_STOP_ENTRY_KEY = "stop"; //$NON-NLS-1$
 
+    /**
+     * The key used in the INI file for the task group entry.
+     */
+    private static final String TASK_GROUP_ENTRY_KEY = "group"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task priority entry.
+     */
+    private static final String TASK_PRIORITY_ENTRY_KEY = "priority"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task misfire policy entry.
+     */
+    private static final String TASK_MISFIRE_ENTRY_KEY = "misfire"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task misfire tolerance entry.
+     */
+    private static final String TASK_TOLERANCE_ENTRY_KEY = "tolerance"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task execution mode entry.
+     */
+    private static final String TASK_MODE_ENTRY_KEY = "mode"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task execution period entry.
+     */
+    private static final String TASK_PERIOD_ENTRY_KEY = "period"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the daemon maximum restarts entry.
+     */
+    private static final String TASK_RESTARTS_ENTRY_KEY = "restarts"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the daemon initial backoff entry.
+     */
+    private static final String TASK_BACKOFF_ENTRY_KEY = "backoff"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the daemon maximum backoff entry.
+     */
+    private static final String TASK_MAX_BACKOFF_ENTRY_KEY = "maxbackoff"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the daemon circuit open time entry.
+     */
+    private static final String TASK_CIRCUIT_ENTRY_KEY = "circuit"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task maximum run time entry.
+     */
+    private static final String TASK_MAX_RUN_TIME_ENTRY_KEY = "maxruntime"; //$NON-NLS-1$
+
+    /**
+     * The key used in the INI file for the task iteration timeout entry.
+     */
+    private static final String TASK_TIMEOUT_ENTRY_KEY = "timeout"; //$NON-NLS-1$
+
+    /**
+     * The key for the upstream tasks entry.
+     */
+    private static final String TASK_AFTER_ENTRY_KEY = "after"; //$NON-NLS-1$
+
+    /**
+     * The separator of the upstream task names.
+     */
+    private static final String UPSTREAM_SEPARATOR = ","; //$NON-NLS-1$
+
+    /**
+     * Value of the concurrency limits when the number of running tasks is not limited.
+     */
+    public static final int UNLIMITED_CONCURRENCY = SchedulerAdmission.UNLIMITED;
+
     /**
      * The time token separator.
      */
     private static final String TIME_SEPARATOR = ":"; //$NON-NLS-1$
 
     /**
-     * Scheduler thread sleep time.
+     * Maximum time the scheduler thread is parked waiting for the next deadline. The deadlines
+     * are wall-clock instants, so the thread wakes up periodically to catch system clock changes.
      */
-    private static final long SCHEDULER_SLEEP_TIME = 100;
+    private static final long SCHEDULER_MAX_PARK_TIME = 60000;
 
     /**
-     * The finalize guardian.
+     * Name prefix of the threads created by the scheduler task executors.
      */
-    final Object finalizeGuardian = new Object() {
+    private static final String TASK_THREAD_NAME_PREFIX = "scheduler-task-"; //$NON-NLS-1$
 
-        /**
-         * Finalizes the object by stopping the current running tasks and the scheduler process.
-         *
-         * @throws Throwable a throwable object
-         *
-         * @see Object#finalize()
-         */
-        protected void finalize()
-            // CHECKSTYLE:OFF
-            throws Throwable {
-            // CHECKSTYLE:ON
+    /**
+     * Name prefix of the threads that run the task start preparations.
+     */
+    private static final String PREPARE_THREAD_NAME_PREFIX = "scheduler-prepare-"; //$NON-NLS-1$
 
-            try {
-                stopAllTasks();
-            } finally {
-                super.finalize();
-            }
-        }
-    };
+    /**
+     * Value of the prepare timeout when task start preparations are not timed out.
+     */
+    public static final long UNLIMITED_PREPARE_TIMEOUT = Long.MAX_VALUE;
+
+    /**
+     * Default time to wait in each step of a task kill, in milliseconds.
+     */
+    public static final long DEFAULT_KILL_GRACE_PERIOD = 1000;
+
+    /**
+     * Keep alive time, in seconds, of idle threads in the scheduler task executors.
+     */
+    private static final long TASK_THREAD_KEEP_ALIVE_TIME = 60;
+
+    /**
+     * Name of the factory method of virtual thread executors in runtimes that support them.
+     */
+    private static final String VIRTUAL_THREAD_EXECUTOR_METHOD =
+        "newVirtualThreadPerTaskExecutor"; //$NON-NLS-1$
+
+    /**
+     * Milliseconds in a day (without daylight saving changes).
+     */
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Value returned when a task has no deadline and waits for a state change to be checked again.
+     */
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * The domain of the scheduler MXBean names.
+     */
+    private static final String MBEAN_DOMAIN = "deors.demos.testing.mocks.servletmocks"; //$NON-NLS-1$
+
+    /**
+     * The scheduler MXBean name pattern.
+     */
+    private static final String SCHEDULER_MBEAN_NAME = MBEAN_DOMAIN + ":type=Scheduler,name="; //$NON-NLS-1$
+
+    /**
+     * The task MXBean name pattern.
+     */
+    private static final String TASK_MBEAN_NAME = MBEAN_DOMAIN + ":type=SchedulerTask,scheduler="; //$NON-NLS-1$
+
+    /**
+     * The task MXBean name key.
+     */
+    private static final String TASK_MBEAN_NAME_KEY = ",name="; //$NON-NLS-1$
 
     /**
      * Default constructor. No tasks are scheduled.
@@ -145,6 +507,9 @@ public final class Scheduler
 
         dateFormatter = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
         dateFormatter.setLenient(false);
+
+        // registered once the scheduler is fully initialized
+        cleanable = ResourceCleaner.register(this, resources);
     }
 
     /**
@@ -166,6 +531,8 @@ public final class Scheduler
         // reads the configuration file
         INIFileManager ifm = new INIFileManager(iniFile);
 
+        List<TaskDefinition> definitions = new ArrayList<TaskDefinition>(ifm.getSections().size());
+
         Iterator<String> sections = ifm.getSections().iterator();
         while (sections.hasNext()) {
             String taskName = sections.next();
@@ -177,127 +544,472 @@ public final class Scheduler
 
             String taskClassName = readClassName(ifm, taskName);
             String taskDescription = readDescription(ifm, taskName);
-            Calendar taskStartTime = readStartTime(ifm, taskName);
-            Calendar taskStopTime = readStopTime(ifm, taskName);
+            String taskGroup = ifm.getValue(taskName, TASK_GROUP_ENTRY_KEY);
+            int taskPriority = readPriority(ifm, taskName);
+
+            List<String> upstreamTasks = readUpstreamTasks(ifm, taskName);
+
+            TaskDefinition definition;
+            if (upstreamTasks != null) {
+                long taskWindowMillis = readDependentWindow(ifm, taskName);
+
+                definition = new TaskDefinition(
+                    taskName, taskClassName, taskDescription, upstreamTasks, taskWindowMillis);
+            } else if (CronExpression.isCronExpression(ifm.getValue(taskName, TASK_START_ENTRY_KEY))) {
+                CronExpression taskCronExpression = readCronExpression(ifm, taskName);
+                long taskWindowMillis = readWindow(ifm, taskName);
+
+                definition = new TaskDefinition(
+                    taskName, taskClassName, taskDescription, taskCronExpression, taskWindowMillis);
+            } else {
+                Calendar taskStartTime = readStartTime(ifm, taskName);
+                Calendar taskStopTime = readStopTime(ifm, taskName);
+
+                definition = new TaskDefinition(
+                    taskName, taskClassName, taskDescription, taskStartTime, taskStopTime);
+            }
+
+            ExecutionMode executionMode = readExecutionMode(ifm, taskName);
+            long executionPeriod = readExecutionPeriod(ifm, taskName, executionMode);
 
-            // the task is scheduled
-            scheduleTask(taskName, taskClassName, taskDescription, taskStartTime, taskStopTime);
+            definitions.add(definition.withTaskGroup(taskGroup, taskPriority)
+                .withMisfirePolicy(readMisfirePolicy(ifm, taskName), readMisfireTolerance(ifm, taskName))
+                .withExecutionMode(executionMode, executionPeriod)
+                .withSupervisionPolicy(readSupervisionPolicy(ifm, taskName))
+                .withRunLimits(readRunLimit(ifm, taskName, TASK_MAX_RUN_TIME_ENTRY_KEY),
+                    readRunLimit(ifm, taskName, TASK_TIMEOUT_ENTRY_KEY)));
         }
+
+        // the tasks are scheduled
+        scheduleTasks(definitions);
     }
 
     /**
-     * Reads the task class name.
+     * Reads the optional task priority. Tasks without the priority entry have priority zero.
      *
-     * An <code>IllegalArgumentException</code> exception is thrown if the class name
-     * is not found in the configuration file.
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not an
+     * integer.
      *
      * @param ifm the configuration file manager
      * @param taskName the task name
      *
-     * @return the task class name
+     * @return the task priority
      */
-    private String readClassName(INIFileManager ifm, String taskName) {
+    private int readPriority(INIFileManager ifm, String taskName) {
 
-        String taskClassName = ifm.getValue(taskName, TASK_CLASS_ENTRY_KEY);
-        if (taskClassName == null) {
-            throw new IllegalArgumentException("SCHED_ERR_KEY_CLASS_NOT_FOUND"); //$NON-NLS-1$
+        String tempPriority = ifm.getValue(taskName, TASK_PRIORITY_ENTRY_KEY);
+        if (tempPriority == null) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(tempPriority);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_PRIORITY", nfe); //$NON-NLS-1$
         }
-        return taskClassName;
     }
 
     /**
-     * Reads the task description.
+     * Reads the optional task misfire policy. Tasks without the misfire entry coalesce their
+     * missed starts.
      *
-     * An <code>IllegalArgumentException</code> exception is thrown if the description
-     * is not found in the configuration file.
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not a
+     * policy name.
      *
      * @param ifm the configuration file manager
      * @param taskName the task name
      *
-     * @return the task description
+     * @return the task misfire policy
      */
-    private String readDescription(INIFileManager ifm, String taskName) {
+    private MisfirePolicy readMisfirePolicy(INIFileManager ifm, String taskName) {
 
-        String taskDescription = ifm.getValue(taskName, TASK_DESCRIPTION_ENTRY_KEY);
-        if (taskDescription == null) {
-            throw new IllegalArgumentException("SCHED_ERR_KEY_DESCRIPTION_NOT_FOUND"); //$NON-NLS-1$
+        String tempPolicy = ifm.getValue(taskName, TASK_MISFIRE_ENTRY_KEY);
+        if (tempPolicy == null) {
+            return MisfirePolicy.COALESCE;
         }
-        return taskDescription;
+        return MisfirePolicy.parse(tempPolicy);
     }
 
     /**
-     * Reads the task start time.
+     * Reads the optional task misfire tolerance in HH:MM:SS format, or the daemon id string if
+     * the starts of the task are never missed.
      *
-     * An <code>IllegalArgumentException</code> exception is thrown if the start time
-     * is not found in the configuration file or the value is not a valid time.
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not valid.
      *
      * @param ifm the configuration file manager
      * @param taskName the task name
      *
-     * @return the task start time
+     * @return the task misfire tolerance in milliseconds
      */
-    private Calendar readStartTime(INIFileManager ifm, String taskName) {
+    private long readMisfireTolerance(INIFileManager ifm, String taskName) {
 
-        String tempStartTime = ifm.getValue(taskName, TASK_START_ENTRY_KEY);
-        if (tempStartTime == null) {
-            throw new IllegalArgumentException("SCHED_ERR_KEY_START_NOT_FOUND"); //$NON-NLS-1$
+        String tempTolerance = ifm.getValue(taskName, TASK_TOLERANCE_ENTRY_KEY);
+        if (tempTolerance == null) {
+            return SchedulerTask.DEFAULT_MISFIRE_TOLERANCE;
         }
 
-        return parseStartTime(tempStartTime);
+        try {
+            return parseWindow(tempTolerance);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_MISFIRE_TOLERANCE_INVALID", iae); //$NON-NLS-1$
+        }
     }
 
     /**
-     * Parses the task start time.
+     * Reads the optional task execution mode. Tasks without the mode entry call their logic
+     * continuously.
      *
-     * @param timeString the task start time as a string
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not a
+     * mode name.
      *
-     * @return the task start time
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task execution mode
      */
-    private Calendar parseStartTime(String timeString) {
+    private ExecutionMode readExecutionMode(INIFileManager ifm, String taskName) {
 
-        Calendar taskStartTime = null;
-        try {
-            taskStartTime = parseTime(timeString);
-        } catch (IllegalArgumentException iae) {
-            throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_START_TIME", iae); //$NON-NLS-1$
+        String tempMode = ifm.getValue(taskName, TASK_MODE_ENTRY_KEY);
+        if (tempMode == null) {
+            return ExecutionMode.CONTINUOUS;
         }
-
-        return taskStartTime;
+        return ExecutionMode.parse(tempMode);
     }
 
     /**
-     * Reads the task stop time.
+     * Reads the task execution period, in milliseconds or in HH:MM:SS format. The period is
+     * required by the paced execution modes, and ignored otherwise.
      *
-     * An <code>IllegalArgumentException</code> exception is thrown if the stop time
-     * is not found in the configuration file or the value is not a valid time.
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not valid,
+     * or if it is missing and the execution mode is paced.
      *
      * @param ifm the configuration file manager
      * @param taskName the task name
+     * @param executionMode the task execution mode
      *
-     * @return the task stop time
+     * @return the task execution period in milliseconds
      */
-    private Calendar readStopTime(INIFileManager ifm, String taskName) {
+    private long readExecutionPeriod(INIFileManager ifm, String taskName, ExecutionMode executionMode) {
 
-        String tempStopTime = ifm.getValue(taskName, TASK_STOP_ENTRY_KEY);
-        if (tempStopTime == null) {
-            throw new IllegalArgumentException("SCHED_ERR_KEY_STOP_NOT_FOUND"); //$NON-NLS-1$
+        String tempPeriod = ifm.getValue(taskName, TASK_PERIOD_ENTRY_KEY);
+        if (tempPeriod == null) {
+            if (executionMode != ExecutionMode.CONTINUOUS) {
+                throw new IllegalArgumentException("SCHED_ERR_EXECUTION_PERIOD_INVALID"); //$NON-NLS-1$
+            }
+            return 0;
         }
 
-        return parseStopTime(tempStopTime);
+        try {
+            return parseDuration(tempPeriod);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_EXECUTION_PERIOD_INVALID", iae); //$NON-NLS-1$
+        }
     }
 
     /**
-     * Parses the task stop time.
+     * Reads the optional supervision policy of a daemon. Daemons without the restarts entry are
+     * not restarted when they fail. The backoff entries are in milliseconds or in HH:MM:SS
+     * format, and the circuit entry is in the same formats or the daemon id string if a daemon
+     * in a crash loop is not restarted anymore.
      *
-     * @param timeString the task stop time as a string
+     * An <code>IllegalArgumentException</code> exception is thrown if any value is not valid.
      *
-     * @return the task stop time
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the supervision policy, or <code>null</code> if the daemon is not supervised
      */
-    private Calendar parseStopTime(String timeString) {
+    private SupervisionPolicy readSupervisionPolicy(INIFileManager ifm, String taskName) {
 
-        Calendar taskStoptTime = null;
-        try {
-            taskStoptTime = parseTime(timeString);
+        String tempRestarts = ifm.getValue(taskName, TASK_RESTARTS_ENTRY_KEY);
+        if (tempRestarts == null) {
+            return null;
+        }
+
+        String tempBackoff = ifm.getValue(taskName, TASK_BACKOFF_ENTRY_KEY);
+        String tempMaxBackoff = ifm.getValue(taskName, TASK_MAX_BACKOFF_ENTRY_KEY);
+        String tempCircuit = ifm.getValue(taskName, TASK_CIRCUIT_ENTRY_KEY);
+
+        try {
+            SupervisionPolicy policy = new SupervisionPolicy(Integer.parseInt(tempRestarts),
+                tempBackoff == null ? SupervisionPolicy.DEFAULT_INITIAL_BACKOFF : parseDuration(tempBackoff),
+                tempMaxBackoff == null ? SupervisionPolicy.DEFAULT_MAX_BACKOFF : parseDuration(tempMaxBackoff));
+
+            if (tempCircuit != null && !tempCircuit.equals(DAEMON_ID)) {
+                policy = policy.withCircuitOpenTime(parseDuration(tempCircuit));
+            }
+            return policy;
+        } catch (IllegalArgumentException iae) {
+            // number format exceptions are also illegal argument exceptions
+            throw new IllegalArgumentException("SCHED_ERR_SUPERVISION_POLICY_INVALID", iae); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads an optional run limit of a task, in milliseconds or in HH:MM:SS format. Tasks without
+     * the entry are not limited.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not valid.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     * @param key the key of the limit entry
+     *
+     * @return the run limit in milliseconds, or zero if it is unlimited
+     */
+    private long readRunLimit(INIFileManager ifm, String taskName, String key) {
+
+        String tempLimit = ifm.getValue(taskName, key);
+        if (tempLimit == null) {
+            return 0;
+        }
+
+        try {
+            return parseDuration(tempLimit);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_RUN_LIMIT_INVALID", iae); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Parses a string containing a duration in milliseconds or in HH:MM:SS format.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the input string
+     * is not valid or the duration is negative.
+     *
+     * @param durationString the string to be parsed
+     *
+     * @return the duration in milliseconds
+     */
+    private static long parseDuration(String durationString) {
+
+        // number format exceptions are also illegal argument exceptions
+        long duration = durationString.indexOf(TIME_SEPARATOR) >= 0
+            ? parseWindow(durationString) : Long.parseLong(durationString);
+        if (duration < 0) {
+            throw new IllegalArgumentException();
+        }
+        return duration;
+    }
+
+    /**
+     * Reads the optional upstream tasks of a dependent task.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the value has an empty
+     * task name, or the task also has a start entry.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the upstream task names, or <code>null</code> if the task is not a dependent task
+     */
+    private List<String> readUpstreamTasks(INIFileManager ifm, String taskName) {
+
+        String tempAfter = ifm.getValue(taskName, TASK_AFTER_ENTRY_KEY);
+        if (tempAfter == null) {
+            return null;
+        }
+
+        if (ifm.getValue(taskName, TASK_START_ENTRY_KEY) != null) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_DEPENDENCY_INVALID"); //$NON-NLS-1$
+        }
+
+        String[] names = tempAfter.split(UPSTREAM_SEPARATOR, -1);
+        List<String> upstreamTasks = new ArrayList<String>(names.length);
+        for (String name : names) {
+            String upstreamTask = name.trim();
+            if (upstreamTask.length() == 0) {
+                throw new IllegalArgumentException("SCHED_ERR_TASK_DEPENDENCY_INVALID"); //$NON-NLS-1$
+            }
+            upstreamTasks.add(upstreamTask);
+        }
+        return upstreamTasks;
+    }
+
+    /**
+     * Reads the dependent task window from the optional stop entry. Dependent tasks without
+     * the stop entry are not stopped by the scheduler.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not a
+     * valid time.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task window in milliseconds, or <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    private long readDependentWindow(INIFileManager ifm, String taskName) {
+
+        String tempWindow = ifm.getValue(taskName, TASK_STOP_ENTRY_KEY);
+        if (tempWindow == null) {
+            return SchedulerTask.UNLIMITED_WINDOW;
+        }
+
+        try {
+            return parseWindow(tempWindow);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_STOP_TIME", iae); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads the task cron expression from the start entry.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the value is not a valid
+     * cron expression.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task cron expression
+     */
+    private CronExpression readCronExpression(INIFileManager ifm, String taskName) {
+
+        try {
+            return new CronExpression(ifm.getValue(taskName, TASK_START_ENTRY_KEY));
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_START_TIME", iae); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads the cron task window from the stop entry.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the stop entry
+     * is not found in the configuration file or the value is not a valid time.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task window in milliseconds
+     */
+    private long readWindow(INIFileManager ifm, String taskName) {
+
+        String tempWindow = ifm.getValue(taskName, TASK_STOP_ENTRY_KEY);
+        if (tempWindow == null) {
+            throw new IllegalArgumentException("SCHED_ERR_KEY_STOP_NOT_FOUND"); //$NON-NLS-1$
+        }
+
+        try {
+            return parseWindow(tempWindow);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_STOP_TIME", iae); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads the task class name.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the class name
+     * is not found in the configuration file.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task class name
+     */
+    private String readClassName(INIFileManager ifm, String taskName) {
+
+        String taskClassName = ifm.getValue(taskName, TASK_CLASS_ENTRY_KEY);
+        if (taskClassName == null) {
+            throw new IllegalArgumentException("SCHED_ERR_KEY_CLASS_NOT_FOUND"); //$NON-NLS-1$
+        }
+        return taskClassName;
+    }
+
+    /**
+     * Reads the task description.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the description
+     * is not found in the configuration file.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task description
+     */
+    private String readDescription(INIFileManager ifm, String taskName) {
+
+        String taskDescription = ifm.getValue(taskName, TASK_DESCRIPTION_ENTRY_KEY);
+        if (taskDescription == null) {
+            throw new IllegalArgumentException("SCHED_ERR_KEY_DESCRIPTION_NOT_FOUND"); //$NON-NLS-1$
+        }
+        return taskDescription;
+    }
+
+    /**
+     * Reads the task start time.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the start time
+     * is not found in the configuration file or the value is not a valid time.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task start time
+     */
+    private Calendar readStartTime(INIFileManager ifm, String taskName) {
+
+        String tempStartTime = ifm.getValue(taskName, TASK_START_ENTRY_KEY);
+        if (tempStartTime == null) {
+            throw new IllegalArgumentException("SCHED_ERR_KEY_START_NOT_FOUND"); //$NON-NLS-1$
+        }
+
+        return parseStartTime(tempStartTime);
+    }
+
+    /**
+     * Parses the task start time.
+     *
+     * @param timeString the task start time as a string
+     *
+     * @return the task start time
+     */
+    private Calendar parseStartTime(String timeString) {
+
+        Calendar taskStartTime = null;
+        try {
+            taskStartTime = parseTime(timeString);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_START_TIME", iae); //$NON-NLS-1$
+        }
+
+        return taskStartTime;
+    }
+
+    /**
+     * Reads the task stop time.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the stop time
+     * is not found in the configuration file or the value is not a valid time.
+     *
+     * @param ifm the configuration file manager
+     * @param taskName the task name
+     *
+     * @return the task stop time
+     */
+    private Calendar readStopTime(INIFileManager ifm, String taskName) {
+
+        String tempStopTime = ifm.getValue(taskName, TASK_STOP_ENTRY_KEY);
+        if (tempStopTime == null) {
+            throw new IllegalArgumentException("SCHED_ERR_KEY_STOP_NOT_FOUND"); //$NON-NLS-1$
+        }
+
+        return parseStopTime(tempStopTime);
+    }
+
+    /**
+     * Parses the task stop time.
+     *
+     * @param timeString the task stop time as a string
+     *
+     * @return the task stop time
+     */
+    private Calendar parseStopTime(String timeString) {
+
+        Calendar taskStoptTime = null;
+        try {
+            taskStoptTime = parseTime(timeString);
         } catch (IllegalArgumentException iae) {
             throw new IllegalArgumentException("SCHED_ERR_TASK_INVALID_STOP_TIME", iae); //$NON-NLS-1$
         }
@@ -365,306 +1077,1871 @@ public final class Scheduler
     }
 
     /**
-     * Returns the <code>task</code> property value.
+     * Parses a string containing a cron task window, i.e. the maximum run time of each
+     * execution, in HH:MM:SS format. If the string equals the value in <code>DAEMON_ID</code>
+     * the window is unlimited.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the input string
+     * is not valid.
+     *
+     * @param windowString the string to be parsed
+     *
+     * @return the window in milliseconds, or <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     *
+     * @see Scheduler#DAEMON_ID
+     */
+    static long parseWindow(String windowString) {
+
+        if (windowString.equals(DAEMON_ID)) {
+            return SchedulerTask.UNLIMITED_WINDOW;
+        }
+
+        try {
+            java.util.StringTokenizer st = new java.util.StringTokenizer(windowString, TIME_SEPARATOR);
+
+            long hours = Long.parseLong(st.nextToken());
+            long minutes = Long.parseLong(st.nextToken());
+            long seconds = Long.parseLong(st.nextToken());
+
+            if (hours < 0 || minutes < 0 || seconds < 0 || st.hasMoreTokens()) {
+                throw new IllegalArgumentException();
+            }
+
+            return ((hours * 60 + minutes) * 60 + seconds) * 1000;
+        } catch (NoSuchElementException nsee) {
+            // the exception constructor has no parameters because is catched in the callers
+            throw new IllegalArgumentException(nsee);
+        } catch (NumberFormatException nfe) {
+            // the exception constructor has no parameters because is catched in the callers
+            throw new IllegalArgumentException(nfe);
+        }
+    }
+
+    /**
+     * Returns the <code>taskExecutor</code> property value. If no executor was configured, or the
+     * default executor was shut down with the scheduler, a new default executor is created.
+     *
+     * @return the property value
+     *
+     * @see Scheduler#taskExecutor
+     * @see Scheduler#setTaskExecutor(Executor)
+     */
+    public Executor getTaskExecutor() {
+
+        Executor executor = taskExecutor;
+        if (executor == null
+            || taskExecutorOwned && ((ExecutorService) executor).isShutdown()) {
+            synchronized (taskExecutorLock) {
+                executor = taskExecutor;
+                if (executor == null
+                    || taskExecutorOwned && ((ExecutorService) executor).isShutdown()) {
+                    executor = newDefaultTaskExecutor();
+                    taskExecutor = executor;
+                    taskExecutorOwned = true;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the <code>taskExecutor</code> property value. The executor is used for the tasks
+     * started from now on, and it is not shut down by the scheduler.
+     *
+     * @param taskExecutor the property new value
+     *
+     * @see Scheduler#taskExecutor
+     * @see Scheduler#getTaskExecutor()
+     */
+    public void setTaskExecutor(Executor taskExecutor) {
+
+        synchronized (taskExecutorLock) {
+            Executor previous = this.taskExecutor;
+            if (previous != null && taskExecutorOwned) {
+                ((ExecutorService) previous).shutdown();
+            }
+
+            this.taskExecutor = taskExecutor;
+            this.taskExecutorOwned = false;
+        }
+    }
+
+    /**
+     * Returns the executor that runs the task start preparations. If it was not created yet, or
+     * it was shut down with the scheduler, a new executor is created.
+     *
+     * @return the preparation executor
+     */
+    private Executor getPrepareExecutor() {
+
+        ExecutorService executor = prepareExecutor;
+        if (executor == null || executor.isShutdown()) {
+            synchronized (taskExecutorLock) {
+                executor = prepareExecutor;
+                if (executor == null || executor.isShutdown()) {
+                    executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                        TASK_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(),
+                        new SchedulerThreadFactory(PREPARE_THREAD_NAME_PREFIX, false));
+                    prepareExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the <code>prepareTimeout</code> property value.
+     *
+     * @return the property value
+     *
+     * @see Scheduler#prepareTimeout
+     * @see Scheduler#setPrepareTimeout(long)
+     */
+    public long getPrepareTimeout() {
+
+        return prepareTimeout;
+    }
+
+    /**
+     * Sets the <code>prepareTimeout</code> property value. Task start preparations run outside
+     * the scheduler thread; a preparation that takes longer than the timeout is interrupted and
+     * the task start fails, as if the preparation had thrown an exception. The timeout applies to
+     * the tasks started from now on.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the timeout
+     * is not positive.
+     *
+     * @param prepareTimeout the property new value, in milliseconds, or
+     *                       <code>UNLIMITED_PREPARE_TIMEOUT</code>
+     *
+     * @see Scheduler#prepareTimeout
+     * @see Scheduler#getPrepareTimeout()
+     */
+    public void setPrepareTimeout(long prepareTimeout) {
+
+        if (prepareTimeout <= 0) {
+            throw new IllegalArgumentException("SCHED_ERR_PREPARE_TIMEOUT_INVALID"); //$NON-NLS-1$
+        }
+
+        this.prepareTimeout = prepareTimeout;
+    }
+
+    /**
+     * Returns the maximum number of tasks that can be starting, running or stopping at the
+     * same time.
+     *
+     * @return the global concurrency limit, or <code>UNLIMITED_CONCURRENCY</code>
+     *
+     * @see Scheduler#setConcurrencyLimit(int)
+     */
+    public int getConcurrencyLimit() {
+
+        return admission.getGlobalLimit();
+    }
+
+    /**
+     * Sets the maximum number of tasks that can be starting, running or stopping at the same
+     * time. Tasks due to start while the limit is reached wait in the admission queue, ordered
+     * by priority, and start as soon as running tasks stop.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the limit
+     * is not positive.
+     *
+     * @param limit the global concurrency limit, or <code>UNLIMITED_CONCURRENCY</code>
+     *
+     * @see Scheduler#setGroupConcurrencyLimit(String, int)
+     * @see SchedulerTask#setTaskPriority(int)
+     */
+    public void setConcurrencyLimit(int limit) {
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("SCHED_ERR_CONCURRENCY_LIMIT_INVALID"); //$NON-NLS-1$
+        }
+
+        admission.setGlobalLimit(limit);
+    }
+
+    /**
+     * Returns the maximum number of tasks of a group that can be starting, running or stopping
+     * at the same time.
+     *
+     * @param group the group name
+     *
+     * @return the group concurrency limit, or <code>UNLIMITED_CONCURRENCY</code>
+     *
+     * @see Scheduler#setGroupConcurrencyLimit(String, int)
+     */
+    public int getGroupConcurrencyLimit(String group) {
+
+        return admission.getGroupLimit(group);
+    }
+
+    /**
+     * Sets the maximum number of tasks of a group that can be starting, running or stopping at
+     * the same time. The task group is set with the <code>group</code> entry in the INI file.
+     * Tasks of a full group wait in the admission queue without blocking tasks of other groups.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the group is empty or the
+     * limit is not positive.
+     *
+     * @param group the group name
+     * @param limit the group concurrency limit, or <code>UNLIMITED_CONCURRENCY</code>
+     *
+     * @see Scheduler#setConcurrencyLimit(int)
+     * @see SchedulerTask#setTaskGroup(String)
+     */
+    public void setGroupConcurrencyLimit(String group, int limit) {
+
+        if (group == null || group.length() == 0 || limit <= 0) {
+            throw new IllegalArgumentException("SCHED_ERR_CONCURRENCY_LIMIT_INVALID"); //$NON-NLS-1$
+        }
+
+        admission.setGroupLimit(group, limit);
+    }
+
+    /**
+     * Returns the admission control of the task starts (used by the
+     * <code>SchedulerMetrics</code> class).
+     *
+     * @return the admission control
+     */
+    SchedulerAdmission getAdmission() {
+
+        return admission;
+    }
+
+    /**
+     * Returns the <code>killGracePeriod</code> property value.
+     *
+     * @return the property value
+     *
+     * @see Scheduler#killGracePeriod
+     * @see Scheduler#setKillGracePeriod(long)
+     */
+    public long getKillGracePeriod() {
+
+        return killGracePeriod;
+    }
+
+    /**
+     * Sets the <code>killGracePeriod</code> property value. A killed task is first asked to
+     * stop; if its logic is still running after the grace period, its thread is interrupted,
+     * and if it is still running after another grace period, the thread is abandoned and the
+     * task stop logic is performed anyway. A kill therefore takes at most two grace periods.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the grace period
+     * is negative.
+     *
+     * @param killGracePeriod the property new value, in milliseconds
+     *
+     * @see Scheduler#killGracePeriod
+     * @see Scheduler#getKillGracePeriod()
+     * @see SchedulerTask#isStopRequested()
+     */
+    public void setKillGracePeriod(long killGracePeriod) {
+
+        if (killGracePeriod < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_KILL_GRACE_PERIOD_INVALID"); //$NON-NLS-1$
+        }
+
+        this.killGracePeriod = killGracePeriod;
+    }
+
+    /**
+     * Creates the default task executor: a pool of named threads that grows on demand and
+     * reuses idle threads.
+     *
+     * @return the default task executor
+     */
+    private static ExecutorService newDefaultTaskExecutor() {
+
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            TASK_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new SchedulerThreadFactory(TASK_THREAD_NAME_PREFIX, false));
+    }
+
+    /**
+     * Creates a bounded task executor with named threads. When all threads are busy, started
+     * tasks wait in the executor queue until a thread is available.
+     *
+     * @param maxThreads the maximum number of threads
+     *
+     * @return the bounded task executor
+     */
+    public static ExecutorService newBoundedTaskExecutor(int maxThreads) {
+
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("SCHED_ERR_EXECUTOR_INVALID_SIZE"); //$NON-NLS-1$
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+            TASK_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new SchedulerThreadFactory(TASK_THREAD_NAME_PREFIX, false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a task executor that runs each task in a new virtual thread. In runtimes without
+     * virtual threads the default task executor is returned.
+     *
+     * @return the virtual thread task executor
+     */
+    public static ExecutorService newVirtualThreadTaskExecutor() {
+
+        try {
+            Method factory = Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR_METHOD);
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException nsme) {
+            return newDefaultTaskExecutor();
+        } catch (IllegalAccessException iae) {
+            return newDefaultTaskExecutor();
+        } catch (InvocationTargetException ite) {
+            return newDefaultTaskExecutor();
+        }
+    }
+
+    /**
+     * Opens a journal where the schedule, remove and kill operations are recorded from now on.
+     * The operations already in the journal are replayed first, so tasks added or re-scheduled
+     * before a restart are scheduled again.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if a journal is already open.
+     *
+     * @param journalFile the journal file
+     *
+     * @throws IOException an i/o exception
+     */
+    public void openJournal(File journalFile)
+        throws IOException {
+
+        synchronized (tasks) {
+            if (journal != null) {
+                throw new IllegalArgumentException("SCHED_ERR_JOURNAL_ALREADY_OPEN"); //$NON-NLS-1$
+            }
+
+            SchedulerJournal newJournal = new SchedulerJournal(journalFile);
+            newJournal.open(this);
+            journal = newJournal;
+            resources.journal = newJournal;
+        }
+    }
+
+    /**
+     * Compacts the journal, keeping only the last operation of each task. Journals are also
+     * compacted automatically. If there is no open journal, the method does nothing.
+     *
+     * @throws IOException an i/o exception
+     */
+    public void compactJournal()
+        throws IOException {
+
+        SchedulerJournal current = journal;
+        if (current != null) {
+            current.compact();
+        }
+    }
+
+    /**
+     * Enables the coordination with other nodes that schedule the same tasks. Before a task is
+     * started, the scheduler takes the task lease in the shared lease directory; if the lease is
+     * held by another node, the task skips to its next scheduled window, and daemons retry after
+     * the lease time to live. Held leases are renewed while the task runs.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the parameters are not valid
+     * or the scheduler is already running.
+     *
+     * @param leaseDirectory the directory with the task leases, shared by all the nodes
+     * @param nodeId the id of this node, unique among the nodes
+     * @param leaseTtlMillis the time after which a lease not renewed by its owner expires
+     */
+    public void setCoordination(File leaseDirectory, String nodeId, long leaseTtlMillis) {
+
+        if (leaseDirectory == null || !leaseDirectory.isDirectory()
+            || nodeId == null || nodeId.length() == 0 || leaseTtlMillis <= 0) {
+            throw new IllegalArgumentException("SCHED_ERR_COORDINATION_INVALID"); //$NON-NLS-1$
+        }
+
+        synchronized (tasks) {
+            if (schedulerThread != null || leaseManager != null) {
+                throw new IllegalArgumentException("SCHED_ERR_COORDINATION_SCHEDULER_RUNNING"); //$NON-NLS-1$
+            }
+
+            leaseManager = new SchedulerLeaseManager(leaseDirectory, nodeId, leaseTtlMillis);
+            resources.leaseManager = leaseManager;
+        }
+    }
+
+    /**
+     * Returns the level of the scheduler log messages.
+     *
+     * @return the log level
+     *
+     * @see Scheduler#setLogLevel(SchedulerLogLevel)
+     */
+    public static SchedulerLogLevel getLogLevel() {
+
+        return SchedulerLog.getLevel();
+    }
+
+    /**
+     * Sets the level of the scheduler log messages, shared by all the schedulers and tasks.
+     * Messages of disabled levels are discarded before they are formatted.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the level
+     * is <code>null</code>.
+     *
+     * @param level the log level
+     *
+     * @see SchedulerLogLevel
+     */
+    public static void setLogLevel(SchedulerLogLevel level) {
+
+        SchedulerLog.setLevel(level);
+    }
+
+    /**
+     * Adds a listener of the task lifecycle events. Events are delivered by a dispatcher thread,
+     * so listeners never delay the scheduler nor the tasks.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the listener
+     * is <code>null</code>.
+     *
+     * @param listener the listener
+     *
+     * @see SchedulerListener
+     */
+    public void addSchedulerListener(SchedulerListener listener) {
+
+        events.addListener(listener);
+    }
+
+    /**
+     * Removes a listener of the task lifecycle events.
+     *
+     * @param listener the listener
+     */
+    public void removeSchedulerListener(SchedulerListener listener) {
+
+        events.removeListener(listener);
+    }
+
+    /**
+     * Returns the dispatcher of the task lifecycle events (used by the
+     * <code>SchedulerMetrics</code> class).
+     *
+     * @return the event dispatcher
+     */
+    SchedulerEventDispatcher getEventDispatcher() {
+
+        return events;
+    }
+
+    /**
+     * Returns the scheduler metrics.
+     *
+     * @return the scheduler metrics
+     *
+     * @see Scheduler#metrics
+     */
+    public SchedulerMXBean getMetrics() {
+
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of a task, including its <code>taskLogic()</code> call statistics.
+     *
+     * @param taskName the task name
+     *
+     * @return the task metrics, or <code>null</code> if there is no task with the given name
+     *
+     * @see SchedulerTask#getMetrics()
+     */
+    public SchedulerTaskMXBean getTaskMetrics(String taskName) {
+
+        SchedulerTask task = tasks.get(taskName);
+        return task == null ? null : task.getMetrics();
+    }
+
+    /**
+     * Registers the scheduler and task metrics as MXBeans in the platform MBean server. Tasks
+     * scheduled afterwards are registered too, and removed tasks are unregistered. The MXBeans
+     * are unregistered when the scheduler is stopped.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the MXBeans are already
+     * registered or could not be registered.
+     *
+     * @param schedulerName the scheduler name used in the MXBean names
+     */
+    public void registerMBeans(String schedulerName) {
+
+        synchronized (tasks) {
+            if (mbeanName != null) {
+                throw new IllegalArgumentException("SCHED_ERR_MBEAN_ALREADY_REGISTERED"); //$NON-NLS-1$
+            }
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName(SCHEDULER_MBEAN_NAME + ObjectName.quote(schedulerName)));
+            } catch (JMException jme) {
+                throw new IllegalArgumentException("SCHED_ERR_MBEAN_REGISTRATION", jme); //$NON-NLS-1$
+            }
+
+            mbeanName = schedulerName;
+
+            for (SchedulerTask task : tasks.values()) {
+                registerTaskMBean(task);
+            }
+        }
+    }
+
+    /**
+     * Unregisters the scheduler and task MXBeans. If they are not registered, the method does
+     * nothing.
+     */
+    public void unregisterMBeans() {
+
+        synchronized (tasks) {
+            String schedulerName = mbeanName;
+            if (schedulerName == null) {
+                return;
+            }
+
+            for (SchedulerTask task : tasks.values()) {
+                unregisterTaskMBean(task.getTaskName());
+            }
+
+            mbeanName = null;
+
+            unregisterMBean(SCHEDULER_MBEAN_NAME + ObjectName.quote(schedulerName));
+        }
+    }
+
+    /**
+     * Registers the MXBean of a task, if the scheduler MXBeans are registered.
+     *
+     * @param task the task
+     */
+    private void registerTaskMBean(SchedulerTask task) {
+
+        String schedulerName = mbeanName;
+        if (schedulerName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(task.metrics,
+                new ObjectName(taskMBeanName(schedulerName, task.getTaskName())));
+        } catch (JMException jme) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_MBEAN_REGISTRATION_FAILED {}", //$NON-NLS-1$
+                task.getTaskName(), jme);
+        }
+    }
+
+    /**
+     * Unregisters the MXBean of a task, if the scheduler MXBeans are registered.
+     *
+     * @param taskName the task name
+     */
+    private void unregisterTaskMBean(String taskName) {
+
+        String schedulerName = mbeanName;
+        if (schedulerName != null) {
+            unregisterMBean(taskMBeanName(schedulerName, taskName));
+        }
+    }
+
+    /**
+     * Returns the MXBean name of a task.
+     *
+     * @param schedulerName the scheduler name used in the MXBean names
+     * @param taskName the task name
+     *
+     * @return the task MXBean name
+     */
+    private static String taskMBeanName(String schedulerName, String taskName) {
+
+        return TASK_MBEAN_NAME + ObjectName.quote(schedulerName)
+            + TASK_MBEAN_NAME_KEY + ObjectName.quote(taskName);
+    }
+
+    /**
+     * Unregisters an MXBean. If it is not registered, the method does nothing.
+     *
+     * @param name the MXBean name
+     */
+    private static void unregisterMBean(String name) {
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException jme) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_MBEAN_UNREGISTRATION_FAILED {}", //$NON-NLS-1$
+                name, jme);
+        }
+    }
+
+    /**
+     * Returns the task registry.
+     *
+     * @return the task registry
+     */
+    TaskRegistry getTaskRegistry() {
+
+        return tasks;
+    }
+
+    /**
+     * Returns a read-only copy of the scheduled tasks in the order they were scheduled.
+     *
+     * @return the scheduled tasks
+     *
+     * @see Scheduler#tasks
+     */
+    public List<SchedulerTask> getTasks() {
+
+        return tasks.snapshot();
+    }
+
+    /**
+     * Returns the number of scheduler shards.
+     *
+     * @return the number of scheduler shards
+     */
+    public int getShardCount() {
+
+        return shards.length;
+    }
+
+    /**
+     * Sets the number of scheduler shards. Tasks are partitioned by name hash across the shards,
+     * and each shard checks its tasks in its own thread, so a task that is slow to start does not
+     * delay the tasks in other shards. The first shard is run by the scheduler thread.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the number of shards is not
+     * positive or the scheduler is already running.
+     *
+     * @param shardCount the number of scheduler shards
+     */
+    public void setShardCount(int shardCount) {
+
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("SCHED_ERR_SHARDS_INVALID_COUNT"); //$NON-NLS-1$
+        }
+
+        synchronized (tasks) {
+            if (schedulerThread != null) {
+                throw new IllegalArgumentException("SCHED_ERR_SHARDS_SCHEDULER_RUNNING"); //$NON-NLS-1$
+            }
+
+            shards = newShards(shardCount);
+
+            // already scheduled tasks are queued again in their new shards
+            for (SchedulerTask task : tasks.values()) {
+                wakeUp(task);
+            }
+        }
+    }
+
+    /**
+     * Creates the scheduler shards.
+     *
+     * @param shardCount the number of scheduler shards
+     *
+     * @return the scheduler shards
+     */
+    private SchedulerShard[] newShards(int shardCount) {
+
+        SchedulerShard[] newShards = new SchedulerShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            newShards[i] = new SchedulerShard(this, i);
+        }
+        return newShards;
+    }
+
+    /**
+     * Returns the shard that owns a task, selected by the task name hash.
+     *
+     * @param task the task
+     *
+     * @return the shard that owns the task
+     */
+    SchedulerShard shardFor(SchedulerTask task) {
+
+        SchedulerShard[] current = shards;
+        if (current.length == 1) {
+            return current[0];
+        }
+
+        int hash = task.getTaskName().hashCode();
+        hash ^= hash >>> 16;
+        return current[(hash & Integer.MAX_VALUE) % current.length];
+    }
+
+    /**
+     * Runs the scheduler. The method checks the start and stop times for each task asking them to
+     * start and stop in the scheduled times. When a task is stopped it is re-scheduled the same
+     * time in the following day.
+     *
+     * The scheduler thread runs the first shard and starts a thread for each one of the others.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public void run() {
+
+        Thread thisThread = Thread.currentThread();
+
+        SchedulerShard[] current = shards;
+        if (thisThread == schedulerThread) {
+            for (int i = 1; i < current.length; i++) {
+                current[i].start(thisThread);
+            }
+        }
+
+        runShard(current[0], thisThread);
+
+        if (schedulerThread == null) {
+            stopAllTasks();
+        }
+    }
+
+    /**
+     * Runs the checks of a shard while the scheduler thread is the given thread.
+     *
+     * Each shard thread waits for the earliest deadline in its queue, so it only wakes up when
+     * a task needs a transition or its schedule changes.
+     *
+     * @param shard the shard
+     * @param owner the scheduler thread the shard is serving
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    void runShard(SchedulerShard shard, Thread owner) {
+
+        while (owner == schedulerThread) {
+            ScheduleEntry entry = null;
+            try {
+                entry = shard.poll(SCHEDULER_MAX_PARK_TIME);
+            } catch (InterruptedException ie) {
+                continue;
+            }
+
+            if (entry != null) {
+                tick(entry);
+            }
+        }
+    }
+
+    /**
+     * Processes an expired entry of a deadline queue: the task is checked and queued again with
+     * its next deadline. Wake-up entries without a task and stale entries are discarded.
+     *
+     * @param entry the expired entry
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    void tick(ScheduleEntry entry) {
+
+        SchedulerTask task = entry.getTask();
+
+        // stale entries (the task was re-scheduled or removed) are discarded
+        if (task == null || task.scheduler != this || !task.scheduleEntry.compareAndSet(entry, null)) {
+            return;
+        }
+
+        long tickStart = System.nanoTime();
+        long now = System.currentTimeMillis();
+        if (task.isStarting()) {
+            checkPrepareTimeout(now, task);
+        } else if (task.isDaemonTask()) {
+            checkDaemonStart(now, task);
+        } else if (task.isDependentTask()) {
+            checkDependentStart(now, task);
+        } else {
+            runChecks(now, task);
+        }
+
+        // the task is queued again unless it was woken up meanwhile
+        long deadline = nextDeadline(task);
+        if (deadline != NO_DEADLINE) {
+            shardFor(task).requeue(task, new ScheduleEntry(task, deadline));
+        }
+
+        metrics.recordTick(System.nanoTime() - tickStart);
+    }
+
+    /**
+     * Returns the next instant when a task must be checked by the scheduler. Tasks that are
+     * waiting for a state change (starting, stopping or already asked to stop) are not queued,
+     * because the task wakes up the scheduler when its state changes. Starting tasks are only
+     * queued to check their prepare timeout.
+     *
+     * @param task the task
+     *
+     * @return the next deadline, or <code>NO_DEADLINE</code> if the task waits for a state change
+     */
+    private long nextDeadline(SchedulerTask task) {
+
+        SchedulerTaskState state = task.getTaskState();
+
+        if (state == SchedulerTaskState.STARTING) {
+            long prepareDeadline = task.prepareDeadline;
+            return prepareDeadline == Long.MAX_VALUE ? NO_DEADLINE : prepareDeadline;
+        }
+
+        if (state == SchedulerTaskState.STOPPING) {
+            return NO_DEADLINE;
+        }
+
+        if (task.isDaemonTask()) {
+            if (state == SchedulerTaskState.RUNNING || task.isDaemonExecuted() || admission.isWaiting(task)) {
+                return NO_DEADLINE;
+            }
+
+            // daemons whose lease is held by another node retry later
+            long retry = task.getTaskNextStartMillis();
+            if (retry != SchedulerTask.NOT_SCHEDULED) {
+                return retry;
+            }
+            return System.currentTimeMillis();
+        }
+
+        // idle dependent tasks are checked when an upstream task finishes
+        if (task.isDependentTask() && state != SchedulerTaskState.RUNNING) {
+            return NO_DEADLINE;
+        }
+
+        if (state == SchedulerTaskState.RUNNING) {
+            long nextStop = task.getTaskNextStopMillis();
+            if (task.taskThread == null || nextStop == SchedulerTask.NOT_SCHEDULED) {
+                return NO_DEADLINE;
+            }
+            return nextStop;
+        }
+
+        long nextStart = task.getTaskNextStartMillis();
+        if (nextStart == SchedulerTask.NOT_SCHEDULED) {
+            return System.currentTimeMillis();
+        }
+
+        // tasks waiting for admission are only checked again when their window ends
+        if (nextStart <= System.currentTimeMillis() && admission.isWaiting(task)) {
+            long nextStop = task.getTaskNextStopMillis();
+            return nextStop == Long.MAX_VALUE ? NO_DEADLINE : nextStop;
+        }
+        return nextStart;
+    }
+
+    /**
+     * Wakes up the scheduler so the given task is checked immediately. The previous entry of
+     * the task is removed from the deadline queue, so tasks re-scheduled often with far
+     * deadlines do not fill the queue with stale entries.
+     *
+     * @param task the task
+     */
+    void wakeUp(SchedulerTask task) {
+
+        shardFor(task).replace(task, new ScheduleEntry(task, System.currentTimeMillis()));
+    }
+
+    /**
+     * Wakes up the scheduler shard threads without checking any task.
+     */
+    private void wakeUpScheduler() {
+
+        for (SchedulerShard shard : shards) {
+            shard.wakeUp();
+        }
+    }
+
+    /**
+     * Runs checks needed during task execution: start, stop and reschedule task checks.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void runChecks(long now, SchedulerTask task) {
+
+        checkRescheduleTask(now, task);
+        checkStopTask(now, task);
+        checkStartTask(now, task);
+    }
+
+    /**
+     * Checks whether the task needs to be rescheduled. The next start and stop times are
+     * computed once, when the task is rescheduled, and the configured times are never modified.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void checkRescheduleTask(long now, SchedulerTask task) {
+
+        if (task.getTaskNextStartMillis() == SchedulerTask.NOT_SCHEDULED
+            || task.getTaskNextStopMillis() == SchedulerTask.NOT_SCHEDULED) {
+
+            long nextStart;
+            long nextStop;
+
+            // after a missed execution started with the fire now policy, the next missed
+            // execution is looked for after it, so every missed execution is started
+            long from = now;
+            long catchUpFrom = task.catchUpFrom;
+            if (catchUpFrom != SchedulerTask.NOT_SCHEDULED) {
+                task.catchUpFrom = SchedulerTask.NOT_SCHEDULED;
+                if (task.getMisfirePolicy() == MisfirePolicy.FIRE_NOW && catchUpFrom < now) {
+                    from = catchUpFrom;
+                }
+            }
+
+            CronExpression cron = task.getTaskCronExpression();
+            if (cron == null) {
+                nextStart = nextDailyOccurrence(task.getTaskStartTime(), from);
+                nextStop = nextDailyOccurrence(task.getTaskStopTime(), nextStart);
+            } else {
+                nextStart = cron.nextFireTime(from);
+                long window = task.getTaskWindowMillis();
+                nextStop = nextStart == CronExpression.NEVER || window == SchedulerTask.UNLIMITED_WINDOW
+                    ? Long.MAX_VALUE : nextStart + window;
+            }
+
+            task.setTaskNextStopMillis(nextStop);
+            task.setTaskNextStartMillis(nextStart);
+
+            events.publish(SchedulerEventType.SCHEDULED, task.getTaskName(), nextStart, null);
+
+            SchedulerLog.log(SchedulerLogLevel.INFO, "SCHED_LOG_TASK_SCHEDULED {}", //$NON-NLS-1$
+                task.getTaskName());
+        }
+    }
+
+    /**
+     * Computes the first daily occurrence of a time that is not before a given instant. The
+     * date of the calendar is the date of the first occurrence; if that occurrence is before
+     * the instant, the time is moved forward by whole days (following daylight saving changes).
+     *
+     * @param time the time
+     * @param notBefore the instant in milliseconds since the epoch
+     *
+     * @return the first occurrence in milliseconds since the epoch
+     */
+    static long nextDailyOccurrence(Calendar time, long notBefore) {
+
+        long millis = time.getTimeInMillis();
+        if (millis >= notBefore) {
+            return millis;
+        }
+
+        Calendar next = (Calendar) time.clone();
+        int days = (int) ((notBefore - millis) / DAY_MILLIS);
+        if (days > 0) {
+            next.add(Calendar.DAY_OF_MONTH, days);
+        }
+        while (next.getTimeInMillis() < notBefore) {
+            next.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return next.getTimeInMillis();
+    }
+
+    /**
+     * Checks whether the start preparation of a task has timed out.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void checkPrepareTimeout(long now, SchedulerTask task) {
+
+        if (now >= task.prepareDeadline) {
+            task.taskPrepareTimeout();
+        }
+    }
+
+    /**
+     * Checks whether the task needs to be stopped.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void checkStopTask(long now, SchedulerTask task) {
+
+        if (task.getTaskState() == SchedulerTaskState.RUNNING
+            && now >= task.getTaskNextStopMillis()) {
+            task.taskStop();
+        }
+    }
+
+    /**
+     * Checks whether the task needs to be started.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void checkStartTask(long now, SchedulerTask task) {
+
+        if (task.getTaskState() == SchedulerTaskState.IDLE
+            && now >= task.getTaskNextStartMillis()) {
+
+            // a task still waiting for admission when its window ends skips to its next window
+            if (admission.isWaiting(task)) {
+                if (now >= task.getTaskNextStopMillis() && admission.withdraw(task)) {
+                    SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_TASK_ADMISSION_EXPIRED {}", //$NON-NLS-1$
+                        task.getTaskName());
+                    task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+                    task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+                }
+                return;
+            }
+
+            if (!checkMisfire(now, task)) {
+                return;
+            }
+
+            // if another node holds the lease, the task skips to its next window
+            if (!acquireLease(leaseManager, task, task.getTaskNextStartMillis())) {
+                task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+                task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+                return;
+            }
+
+            admission.submit(task);
+        }
+    }
+
+    /**
+     * Checks whether the start of a task was missed, and applies the task misfire policy if so.
+     * A start is missed if it is checked later than the task misfire tolerance, or after the
+     * task window ended.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     *
+     * @return whether the task must be started
+     *
+     * @see MisfirePolicy
+     */
+    private boolean checkMisfire(long now, SchedulerTask task) {
+
+        long nextStart = task.getTaskNextStartMillis();
+        long nextStop = task.getTaskNextStopMillis();
+        long delay = now - nextStart;
+
+        if (delay <= task.getMisfireTolerance() && now < nextStop) {
+            return true;
+        }
+
+        task.metrics.recordMisfire(delay);
+
+        MisfirePolicy policy = task.getMisfirePolicy();
+        if (policy == MisfirePolicy.SKIP_TO_NEXT) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_TASK_MISFIRE_SKIPPED {}", //$NON-NLS-1$
+                task.getTaskName());
+            task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+            task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+            return false;
+        }
+
+        SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_TASK_MISFIRE_STARTED {}", //$NON-NLS-1$
+            task.getTaskName());
+
+        // an execution whose window has already ended runs for the length of its window
+        if (now >= nextStop) {
+            task.setTaskNextStopMillis(now + (nextStop - nextStart));
+        }
+
+        if (policy == MisfirePolicy.FIRE_NOW) {
+            task.catchUpFrom = nextStart + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a daemon task needs to be started.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void checkDaemonStart(long now, SchedulerTask task) {
+
+        if (!task.isStarting() && !task.isExecuting() && !task.isDaemonExecuted()
+            && !admission.isWaiting(task)) {
+            long retry = task.getTaskNextStartMillis();
+            if (retry != SchedulerTask.NOT_SCHEDULED && now < retry) {
+                return;
+            }
+
+            // if another node holds the lease, the daemon retries after the lease time to live
+            SchedulerLeaseManager manager = leaseManager;
+            if (!acquireLease(manager, task, SchedulerTask.NOT_SCHEDULED)) {
+                task.setTaskNextStartMillis(now + manager.getLeaseTtl());
+                return;
+            }
+            task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+
+            events.publish(SchedulerEventType.SCHEDULED, task.getTaskName(), SchedulerTask.NOT_SCHEDULED, null);
+
+            SchedulerLog.log(SchedulerLogLevel.INFO, "SCHED_LOG_DAEMON_SCHEDULED {}", //$NON-NLS-1$
+                task.getTaskName());
+
+            admission.submit(task);
+        }
+    }
+
+    /**
+     * Checks whether a dependent task needs to be started, i.e. all its upstream tasks have
+     * finished since its previous start, or stopped, i.e. its window has ended.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @param task the task
+     */
+    private void checkDependentStart(long now, SchedulerTask task) {
+
+        if (task.getTaskState() == SchedulerTaskState.RUNNING) {
+            checkStopTask(now, task);
+            return;
+        }
+
+        List<String> upstreamTasks = task.getUpstreamTasks();
+        if (task.getTaskState() != SchedulerTaskState.IDLE || admission.isWaiting(task)
+            || !task.completedUpstreams.containsAll(upstreamTasks)) {
+            return;
+        }
+        task.completedUpstreams.removeAll(upstreamTasks);
+
+        // if another node holds the lease, this execution is skipped
+        if (!acquireLease(leaseManager, task, SchedulerTask.NOT_SCHEDULED)) {
+            return;
+        }
+
+        long window = task.getTaskWindowMillis();
+        task.setTaskNextStopMillis(window > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + window);
+        task.setTaskNextStartMillis(now);
+
+        events.publish(SchedulerEventType.SCHEDULED, task.getTaskName(), now, null);
+
+        SchedulerLog.log(SchedulerLogLevel.INFO, "SCHED_LOG_TASK_TRIGGERED {}", //$NON-NLS-1$
+            task.getTaskName());
+
+        admission.submit(task);
+    }
+
+    /**
+     * Records that a task has finished successfully, and wakes up the scheduler to check its
+     * dependent tasks, so they are started at once (used by the <code>SchedulerTask</code>
+     * class).
+     *
+     * @param task the task
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    void taskCompleted(SchedulerTask task) {
+
+        Set<String> dependents = dependentTasks.get(task.getTaskName());
+        if (dependents == null) {
+            return;
+        }
+
+        for (String name : dependents) {
+            SchedulerTask dependent = tasks.get(name);
+            if (dependent != null && dependent.scheduler == this) {
+                dependent.completedUpstreams.add(task.getTaskName());
+                wakeUp(dependent);
+            }
+        }
+    }
+
+    /**
+     * Starts a task admitted by the admission control (used by the
+     * <code>SchedulerAdmission</code> class).
+     *
+     * @param task the task
+     *
+     * @return whether the task was idle and is now starting
+     */
+    boolean startTask(SchedulerTask task) {
+
+        return task.taskStart(getPrepareExecutor(), getTaskExecutor(), prepareTimeout);
+    }
+
+    /**
+     * Takes the lease of a task before starting it. If the scheduler is not coordinated with
+     * other nodes, the lease is always taken.
+     *
+     * @param manager the lease manager, or <code>null</code> if the scheduler is not coordinated
+     * @param task the task
+     * @param window the scheduled start of the window
+     *
+     * @return whether the task can be started
+     */
+    private static boolean acquireLease(SchedulerLeaseManager manager, SchedulerTask task, long window) {
+
+        if (manager == null || manager.tryAcquire(task, window)) {
+            return true;
+        }
+
+        SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_TASK_LEASE_DENIED {}", //$NON-NLS-1$
+            task.getTaskName());
+        return false;
+    }
+
+    /**
+     * Starts the scheduler process.
+     */
+    public void startScheduler() {
+
+        schedulerThread = new Thread(this);
+        schedulerThread.start();
+    }
+
+    /**
+     * Checks the existence of a task with the given name.
+     *
+     * @return whether a task with the given name exists
+     *
+     * @param taskName the task name
+     */
+    public boolean existsTask(String taskName) {
+
+        return tasks.contains(taskName);
+    }
+
+    /**
+     * Kills a task. If the task does not exist or it is not running, the method does nothing.
+     * The method returns once the task stop logic is performed, in at most two kill grace periods.
+     *
+     * @param taskName the task name
+     *
+     * @see Scheduler#setKillGracePeriod(long)
+     */
+    public void killTask(String taskName) {
+
+        // the task is removed and unlinked at once, so a task re-scheduled with the same name
+        // keeps its links with its upstream tasks
+        SchedulerTask task;
+        synchronized (tasks) {
+            task = tasks.remove(taskName);
+            if (task != null) {
+                task.scheduler = null;
+                unlinkUpstreamTasks(task);
+            }
+        }
+
+        if (task != null) {
+            admission.withdraw(task);
+            if (task.isStarting() || task.isExecuting()) {
+                task.taskKill(killGracePeriod);
+            }
+
+            unregisterTaskMBean(taskName);
+
+            SchedulerJournal current = journal;
+            if (current != null) {
+                current.recordKill(taskName);
+            }
+        }
+    }
+
+    /**
+     * Schedules a new task or re-schedules an existing task. If the task exists and it is running,
+     * the method does nothing.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
+     */
+    public void scheduleTask(String taskName, Class<?> taskClass, String taskDescription,
+                             Calendar taskStartTime, Calendar taskStopTime) {
+
+        synchronized (tasks) {
+            SchedulerTask task = tasks.get(taskName);
+            if (task == null) {
+                // the task is new
+                task = newTask(taskName, taskClass, taskDescription, taskStartTime, taskStopTime);
+
+                if (taskStartTime == null) {
+                    task.setDaemonTask(true);
+                    task.setDaemonExecuted(false);
+                }
+
+                register(task);
+            } else {
+                reschedule(task, taskStartTime, taskStopTime);
+            }
+
+            journal(task);
+        }
+    }
+
+    /**
+     * Schedules a new cron task or re-schedules an existing task as a cron task. If the task
+     * exists and it is running, the method does nothing.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    public void scheduleTask(String taskName, Class<?> taskClass, String taskDescription,
+                             CronExpression taskCronExpression, long taskWindowMillis) {
+
+        if (taskCronExpression == null) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
+        }
+
+        synchronized (tasks) {
+            SchedulerTask task = tasks.get(taskName);
+            if (task == null) {
+                // the task is new
+                task = newTask(taskName, taskClass, taskDescription, null, null);
+
+                task.setTaskCronExpression(taskCronExpression);
+                task.setTaskWindowMillis(taskWindowMillis);
+
+                register(task);
+            } else {
+                reschedule(task, taskCronExpression, taskWindowMillis);
+            }
+
+            journal(task);
+        }
+    }
+
+    /**
+     * Schedules a new dependent task or re-schedules an existing task as a dependent task. The
+     * task is started each time all its upstream tasks have finished successfully since its
+     * previous start. If the task exists and it is running, the method does nothing.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created, there are no upstream tasks, an upstream task does not
+     * exist or the task would depend on itself.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param upstreamTasks the names of the tasks that must finish before the task is started
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    public void scheduleTask(String taskName, Class<?> taskClass, String taskDescription,
+                             Collection<String> upstreamTasks, long taskWindowMillis) {
+
+        List<String> checkedUpstreamTasks = TaskDefinition.checkUpstreamTasks(upstreamTasks);
+
+        synchronized (tasks) {
+            checkDependencies(Collections.singletonMap(taskName, checkedUpstreamTasks));
+
+            SchedulerTask task = tasks.get(taskName);
+            if (task == null) {
+                // the task is new
+                task = newTask(taskName, taskClass, taskDescription, null, null);
+
+                task.setTaskWindowMillis(taskWindowMillis);
+                linkUpstreamTasks(task, checkedUpstreamTasks);
+
+                register(task);
+            } else {
+                reschedule(task, checkedUpstreamTasks, taskWindowMillis);
+            }
+
+            journal(task);
+        }
+    }
+
+    /**
+     * Checks that the upstream tasks of the dependent tasks being scheduled exist, either in the
+     * registry or among the tasks being scheduled, and that no task would depend on itself
+     * through its upstream tasks. Must be called holding the registry monitor.
      *
-     * @return the property value
+     * An <code>IllegalArgumentException</code> exception is thrown if an upstream task does not
+     * exist or the dependencies have a cycle.
      *
-     * @see Scheduler#tasks
-     */
-    public List<SchedulerTask> getTasks() {
-
-        return tasks;
-    }
-
-    /**
-     * Runs the scheduler. The method checks the start and stop times for each task asking them to
-     * start and stop in the scheduled times. When a task is stopped it is re-scheduled the same
-     * time in the following day.
+     * @param upstreamsByTask the upstream tasks of each task being scheduled, empty for tasks
+     *                        that are not dependent tasks
      */
-    @SuppressWarnings("PMD.CompareObjectsWithEquals")
-    public void run() {
+    private void checkDependencies(Map<String, List<String>> upstreamsByTask) {
 
-        Thread thisThread = Thread.currentThread();
-
-        while (thisThread == schedulerThread) {
-            Calendar now = Calendar.getInstance();
+        // removing dependencies never creates a cycle
+        boolean dependent = false;
+        for (List<String> upstreamTasks : upstreamsByTask.values()) {
+            dependent |= !upstreamTasks.isEmpty();
+        }
+        if (!dependent) {
+            return;
+        }
 
-            for (SchedulerTask task : tasks) {
-                if (task.isDaemonTask()) {
-                    checkDaemonStart(task);
-                    continue;
+        Map<String, List<String>> graph = new HashMap<String, List<String>>();
+        for (SchedulerTask task : tasks.values()) {
+            graph.put(task.getTaskName(), task.getUpstreamTasks());
+        }
+        graph.putAll(upstreamsByTask);
+
+        // the tasks are visited in topological order, from the tasks without upstream tasks;
+        // tasks in a cycle, or depending on one, are never visited
+        Map<String, Integer> pendingUpstreams = new HashMap<String, Integer>();
+        Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+        Deque<String> visits = new ArrayDeque<String>();
+
+        for (Map.Entry<String, List<String>> entry : graph.entrySet()) {
+            int pending = 0;
+            for (String upstreamTask : entry.getValue()) {
+                if (graph.containsKey(upstreamTask)) {
+                    List<String> upstreamDependents = dependents.get(upstreamTask);
+                    if (upstreamDependents == null) {
+                        upstreamDependents = new ArrayList<String>();
+                        dependents.put(upstreamTask, upstreamDependents);
+                    }
+                    upstreamDependents.add(entry.getKey());
+                    pending++;
+                } else if (upstreamsByTask.containsKey(entry.getKey())) {
+                    // existing tasks whose upstream task was removed just wait for it
+                    throw new IllegalArgumentException("SCHED_ERR_TASK_DEPENDENCY_NOT_FOUND"); //$NON-NLS-1$
                 }
+            }
 
-                runChecks(now, task);
+            if (pending == 0) {
+                visits.add(entry.getKey());
+            } else {
+                pendingUpstreams.put(entry.getKey(), Integer.valueOf(pending));
             }
+        }
 
-            try {
-                sleep(SCHEDULER_SLEEP_TIME);
-            } catch (InterruptedException ie) {
+        while (!visits.isEmpty()) {
+            List<String> visitDependents = dependents.get(visits.poll());
+            if (visitDependents == null) {
                 continue;
             }
+
+            for (String dependentTask : visitDependents) {
+                int pending = pendingUpstreams.get(dependentTask).intValue() - 1;
+                if (pending == 0) {
+                    pendingUpstreams.remove(dependentTask);
+                    visits.add(dependentTask);
+                } else {
+                    pendingUpstreams.put(dependentTask, Integer.valueOf(pending));
+                }
+            }
         }
 
-        if (schedulerThread == null) {
-            stopAllTasks();
+        if (!pendingUpstreams.isEmpty()) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_DEPENDENCY_CYCLE"); //$NON-NLS-1$
         }
     }
 
     /**
-     * Runs checks needed during task execution: start, stop and reschedule task checks.
+     * Sets the upstream tasks of a task, and updates the dependent tasks of its previous and new
+     * upstream tasks. Must be called holding the registry monitor.
      *
-     * @param now the current time
      * @param task the task
+     * @param upstreamTasks the names of the upstream tasks, empty if the task is not a dependent
+     *                      task
      */
-    private void runChecks(Calendar now, SchedulerTask task) {
+    private void linkUpstreamTasks(SchedulerTask task, List<String> upstreamTasks) {
 
-        checkRescheduleTask(now, task);
-        checkStopTask(now, task);
-        checkStartTask(now, task);
+        unlinkUpstreamTasks(task);
+        task.setUpstreamTasks(upstreamTasks);
+
+        for (String upstreamTask : upstreamTasks) {
+            Set<String> dependents = dependentTasks.get(upstreamTask);
+            if (dependents == null) {
+                dependents = new CopyOnWriteArraySet<String>();
+                dependentTasks.put(upstreamTask, dependents);
+            }
+            dependents.add(task.getTaskName());
+        }
     }
 
     /**
-     * Checks whether the task needs to be rescheduled.
+     * Removes a task from the dependent tasks of its upstream tasks. Must be called holding the
+     * registry monitor.
      *
-     * @param now the current time
      * @param task the task
      */
-    private void checkRescheduleTask(Calendar now, SchedulerTask task) {
-
-        if (task.getTaskNextStartTime() == null || task.getTaskNextStopTime() == null) {
-            task.setTaskNextStartTime(task.getTaskStartTime());
-
-            if (now.after(task.getTaskNextStartTime())) {
-                task.getTaskNextStartTime().add(Calendar.DAY_OF_MONTH, 1);
-            }
-
-            task.setTaskNextStopTime(task.getTaskStopTime());
-
-            if (task.getTaskNextStopTime().before(task.getTaskNextStartTime())) {
-                task.getTaskNextStopTime().add(Calendar.DAY_OF_MONTH, 1);
+    private void unlinkUpstreamTasks(SchedulerTask task) {
+
+        for (String upstreamTask : task.getUpstreamTasks()) {
+            Set<String> dependents = dependentTasks.get(upstreamTask);
+            if (dependents != null) {
+                dependents.remove(task.getTaskName());
+                if (dependents.isEmpty()) {
+                    dependentTasks.remove(upstreamTask);
+                }
             }
-
-            info("SCHED_LOG_TASK_SCHEDULED"); //$NON-NLS-1$
         }
     }
 
     /**
-     * Checks whether the task needs to be stopped.
+     * Records the current definition of a task in the journal, if there is an open journal.
      *
-     * @param now the current time
      * @param task the task
      */
-    private void checkStopTask(Calendar now, SchedulerTask task) {
+    private void journal(SchedulerTask task) {
 
-        if (task.isExecuting()
-            && !task.isStopping()
-            && (now.equals(task.getTaskNextStopTime())
-                || now.after(task.getTaskNextStopTime()))) {
-            task.taskStop();
+        SchedulerJournal current = journal;
+        if (current != null) {
+            current.recordSchedule(task);
         }
     }
 
     /**
-     * Checks whether the task needs to be started.
+     * Creates a new task instance.
      *
-     * @param now the current time
-     * @param task the task
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
+     *
+     * @return the new task
      */
-    private void checkStartTask(Calendar now, SchedulerTask task) {
+    private static SchedulerTask newTask(String taskName, Class<?> taskClass, String taskDescription,
+                                         Calendar taskStartTime, Calendar taskStopTime) {
 
-        if (!task.isStarting()
-            && !task.isExecuting()
-            && (now.equals(task.getTaskNextStartTime())
-                || now.after(task.getTaskNextStartTime()))) {
-            task.taskStart();
+        if (taskClass == null || taskDescription == null || taskDescription.length() == 0) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
         }
+
+        return TaskFactory.forClass(taskClass).newTask(taskName, taskDescription, taskStartTime, taskStopTime);
     }
 
     /**
-     * Checks whether a daemon task needs to be started.
+     * Adds a new task to the registry and wakes up the scheduler to check it.
      *
      * @param task the task
      */
-    private void checkDaemonStart(SchedulerTask task) {
+    private void register(SchedulerTask task) {
 
-        if (!task.isStarting() && !task.isExecuting() && !task.isDaemonExecuted()) {
-            info("SCHED_LOG_DAEMON_SCHEDULED"); //$NON-NLS-1$
+        tasks.putIfAbsent(task);
 
-            task.taskStart();
-        }
+        task.metrics.setSchedulerMetrics(metrics);
+        task.events = events;
+        task.watchdog = watchdog;
+        registerTaskMBean(task);
+
+        task.scheduler = this;
+        wakeUp(task);
     }
 
     /**
-     * Starts the scheduler process.
+     * Re-schedules an existing task. If the task is running, the method does nothing.
+     *
+     * @param task the task
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
      */
-    public void startScheduler() {
+    private void reschedule(SchedulerTask task, Calendar taskStartTime, Calendar taskStopTime) {
+
+        if (!task.isStarting() && !task.isExecuting()) {
+            task.catchUpFrom = SchedulerTask.NOT_SCHEDULED;
+            task.setTaskCronExpression(null);
+            task.setTaskWindowMillis(SchedulerTask.UNLIMITED_WINDOW);
+
+            if (taskStartTime == null) {
+                task.setTaskStartTime(null);
+                task.setTaskStopTime(null);
+                task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+                task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+                task.setDaemonTask(true);
+                task.setDaemonExecuted(false);
+            } else {
+                task.setTaskStartTime(taskStartTime);
+                task.setTaskStopTime(taskStopTime);
+                task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+                task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+                task.setDaemonTask(false);
+                task.setDaemonExecuted(false);
+            }
 
-        schedulerThread = new Thread(this);
-        schedulerThread.start();
+            linkUpstreamTasks(task, Collections.<String>emptyList());
+            wakeUp(task);
+        }
     }
 
     /**
-     * Checks the existence of a task with the given name.
-     *
-     * @return whether a task with the given name exists
+     * Re-schedules an existing task as a cron task. If the task is running, the method does
+     * nothing.
      *
-     * @param taskName the task name
+     * @param task the task
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds
      */
-    public boolean existsTask(String taskName) {
-
-        synchronized (tasks) {
-            for (SchedulerTask task : tasks) {
-                if (task.getTaskName().equals(taskName)) {
-                    return true;
-                }
-            }
+    private void reschedule(SchedulerTask task, CronExpression taskCronExpression, long taskWindowMillis) {
+
+        if (!task.isStarting() && !task.isExecuting()) {
+            task.catchUpFrom = SchedulerTask.NOT_SCHEDULED;
+            task.setTaskStartTime(null);
+            task.setTaskStopTime(null);
+            task.setTaskCronExpression(taskCronExpression);
+            task.setTaskWindowMillis(taskWindowMillis);
+            task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+            task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+            task.setDaemonTask(false);
+            task.setDaemonExecuted(false);
+
+            linkUpstreamTasks(task, Collections.<String>emptyList());
+            wakeUp(task);
         }
-        return false;
     }
 
     /**
-     * Kills a task. If the task does not exist or it is not running, the method does nothing.
+     * Re-schedules an existing task as a dependent task. If the task is running, the method does
+     * nothing. Must be called holding the registry monitor.
      *
-     * @param taskName the task name
+     * @param task the task
+     * @param upstreamTasks the names of the tasks that must finish before the task is started
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds
      */
-    public void killTask(String taskName) {
-
-        synchronized (tasks) {
-            for (SchedulerTask task : tasks) {
-                if (task.getTaskName().equals(taskName)) {
-                    if (task.isExecuting()) {
-                        task.taskKill();
-                    }
-                    getTasks().remove(task);
-                    break;
-                }
-            }
+    private void reschedule(SchedulerTask task, List<String> upstreamTasks, long taskWindowMillis) {
+
+        if (!task.isStarting() && !task.isExecuting()) {
+            task.catchUpFrom = SchedulerTask.NOT_SCHEDULED;
+            task.setTaskStartTime(null);
+            task.setTaskStopTime(null);
+            task.setTaskCronExpression(null);
+            task.setTaskWindowMillis(taskWindowMillis);
+            task.setTaskNextStartMillis(SchedulerTask.NOT_SCHEDULED);
+            task.setTaskNextStopMillis(SchedulerTask.NOT_SCHEDULED);
+            task.setDaemonTask(false);
+            task.setDaemonExecuted(false);
+
+            linkUpstreamTasks(task, upstreamTasks);
+            wakeUp(task);
         }
     }
 
     /**
      * Schedules a new task or re-schedules an existing task. If the task exists and it is running,
-     * the method does nothing.
+     * the method does nothing. The class is loaded using the scheduler class loader.
      *
      * An <code>IllegalArgumentException</code> exception is thrown if the task class
      * could not be successfully created.
      *
      * @param taskName the task name
-     * @param taskClass the task class
+     * @param taskClassName the task class name
      * @param taskDescription the task description
      * @param taskStartTime the task start time
      * @param taskStopTime the task stop time
+     *
+     * @see Scheduler#schedulerClassLoader
      */
-    public void scheduleTask(String taskName, Class<?> taskClass, String taskDescription,
+    public void scheduleTask(String taskName, String taskClassName, String taskDescription,
                              Calendar taskStartTime, Calendar taskStopTime) {
 
-        synchronized (tasks) {
-            if (rescheduleIfExist(taskName, taskStartTime, taskStopTime)) {
-                return;
-            }
-
-            // the task is new
-            if (taskClass == null || taskDescription == null || taskDescription.length() == 0) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
-            }
-
-            try {
-                SchedulerTask task =
-                    (SchedulerTask) taskClass
-                        .getConstructor(new Class[] {
-                            String.class, String.class, Calendar.class, Calendar.class})
-                        .newInstance(new Object[] {
-                            taskName, taskDescription, taskStartTime, taskStopTime});
-
-                if (taskStartTime == null) {
-                    task.setDaemonTask(true);
-                    task.setDaemonExecuted(false);
-                }
-
-                tasks.add(task);
-
-            } catch (NoSuchMethodException nsme) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_CLASS_INVALID", nsme); //$NON-NLS-1$
-            } catch (InstantiationException ie) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_CLASS_INVALID", ie); //$NON-NLS-1$
-            } catch (IllegalAccessException iae) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_CLASS_INVALID", iae); //$NON-NLS-1$
-            } catch (InvocationTargetException ite) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_CLASS_INVALID", ite); //$NON-NLS-1$
-            }
+        if (taskClassName == null || taskClassName.length() == 0) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
         }
+
+        scheduleTask(taskName, loadTaskClass(taskClassName), taskDescription, taskStartTime, taskStopTime);
     }
 
     /**
-     * Checks for the existence of a given task by name and re-schedules it.
+     * Schedules a new cron task or re-schedules an existing task as a cron task. If the task
+     * exists and it is running, the method does nothing. The class is loaded using the scheduler
+     * class loader.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created.
      *
      * @param taskName the task name
-     * @param taskStartTime the task start time
-     * @param taskStopTime the task stop time
+     * @param taskClassName the task class name
+     * @param taskDescription the task description
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
      *
-     * @return <code>true</code> if the task existed and was rescheduled
-     */
-    private boolean rescheduleIfExist(String taskName, Calendar taskStartTime, Calendar taskStopTime) {
-
-        for (SchedulerTask task : tasks) {
-            if (task.getTaskName().equals(taskName)) {
-                if (!task.isStarting() && !task.isExecuting()) {
-                    if (taskStartTime == null) {
-                        task.setTaskStartTime(null);
-                        task.setTaskStopTime(null);
-                        task.setTaskNextStartTime(null);
-                        task.setTaskNextStopTime(null);
-                        task.setDaemonTask(true);
-                        task.setDaemonExecuted(false);
-                    } else {
-                        task.setTaskStartTime(taskStartTime);
-                        task.setTaskStopTime(taskStopTime);
-                        task.setTaskNextStartTime(null);
-                        task.setTaskNextStopTime(null);
-                        task.setDaemonTask(false);
-                        task.setDaemonExecuted(false);
-                    }
-                }
+     * @see Scheduler#schedulerClassLoader
+     */
+    public void scheduleTask(String taskName, String taskClassName, String taskDescription,
+                             CronExpression taskCronExpression, long taskWindowMillis) {
 
-                return true;
-            }
+        if (taskClassName == null || taskClassName.length() == 0) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
         }
 
-        return false;
+        scheduleTask(taskName, loadTaskClass(taskClassName), taskDescription, taskCronExpression, taskWindowMillis);
     }
 
     /**
-     * Schedules a new task or re-schedules an existing task. If the task exists and it is running,
-     * the method does nothing. The class is loaded using the scheduler class loader.
+     * Schedules a new dependent task or re-schedules an existing task as a dependent task. If
+     * the task exists and it is running, the method does nothing. The class is loaded using the
+     * scheduler class loader.
      *
      * An <code>IllegalArgumentException</code> exception is thrown if the task class
-     * could not be successfully created.
+     * could not be successfully created, there are no upstream tasks, an upstream task does not
+     * exist or the task would depend on itself.
      *
      * @param taskName the task name
      * @param taskClassName the task class name
      * @param taskDescription the task description
-     * @param taskStartTime the task start time
-     * @param taskStopTime the task stop time
+     * @param upstreamTasks the names of the tasks that must finish before the task is started
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
      *
      * @see Scheduler#schedulerClassLoader
      */
     public void scheduleTask(String taskName, String taskClassName, String taskDescription,
-                             Calendar taskStartTime, Calendar taskStopTime) {
+                             Collection<String> upstreamTasks, long taskWindowMillis) {
+
+        if (taskClassName == null || taskClassName.length() == 0) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
+        }
+
+        scheduleTask(taskName, loadTaskClass(taskClassName), taskDescription, upstreamTasks, taskWindowMillis);
+    }
+
+    /**
+     * Loads a task class using the scheduler class loader. Loaded classes are cached, so each
+     * class is looked up only once.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * is not found.
+     *
+     * @param taskClassName the task class name
+     *
+     * @return the task class
+     *
+     * @see Scheduler#schedulerClassLoader
+     */
+    private Class<?> loadTaskClass(String taskClassName) {
+
+        Class<?> taskClass = taskClasses.get(taskClassName);
+        if (taskClass != null) {
+            return taskClass;
+        }
+
+        try {
+            taskClass = Class.forName(taskClassName, true, schedulerClassLoader);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_NOT_FOUND", cnfe); //$NON-NLS-1$
+        }
+
+        taskClasses.putIfAbsent(taskClassName, taskClass);
+        return taskClass;
+    }
+
+    /**
+     * Schedules new tasks or re-schedules existing tasks, in the collection order. Existing tasks
+     * that are running are not changed.
+     *
+     * All the task classes are loaded and checked before any task is scheduled, so if a class is
+     * not found or is not a valid task class no task is scheduled. Likewise, no task is scheduled
+     * if the upstream task of a dependent task does not exist or the dependencies of the tasks
+     * have a cycle. The tasks are then scheduled
+     * holding the scheduler lock once for the whole collection, so loading thousands of tasks
+     * does not contend with the scheduler thread for each task.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if a task class
+     * is not found or could not be successfully created, or the dependencies are not valid.
+     *
+     * @param definitions the task definitions
+     */
+    public void scheduleTasks(Collection<TaskDefinition> definitions) {
+
+        Class<?>[] resolvedClasses = new Class<?>[definitions.size()];
+
+        int i = 0;
+        for (TaskDefinition definition : definitions) {
+            Class<?> taskClass = definition.getTaskClass();
+            if (taskClass == null) {
+                taskClass = loadTaskClass(definition.getTaskClassName());
+            }
+
+            // fails fast if the class is not a valid task class
+            TaskFactory.forClass(taskClass);
+            resolvedClasses[i++] = taskClass;
+        }
 
         synchronized (tasks) {
-            if (taskClassName == null || taskClassName.length() == 0) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
+            Map<String, List<String>> upstreamsByTask = new HashMap<String, List<String>>();
+            for (TaskDefinition definition : definitions) {
+                upstreamsByTask.put(definition.getTaskName(), definition.getUpstreamTasks());
             }
+            checkDependencies(upstreamsByTask);
 
-            try {
-                Class<?> taskClass = Class.forName(taskClassName, true, schedulerClassLoader);
+            i = 0;
+            for (TaskDefinition definition : definitions) {
+                scheduleTask(definition, resolvedClasses[i++]);
+            }
+        }
+    }
+
+    /**
+     * Schedules a new task or re-schedules an existing task from its definition. The task group,
+     * priority, misfire policy, execution mode, supervision policy, run limits and upstream tasks
+     * are set before the scheduler can check the task, so they already apply to its first start.
+     * If the task exists and it is running, it is not changed. Must be called holding the
+     * registry monitor.
+     *
+     * @param definition the task definition
+     * @param taskClass the resolved task class
+     */
+    private void scheduleTask(TaskDefinition definition, Class<?> taskClass) {
+
+        CronExpression taskCronExpression = definition.getTaskCronExpression();
 
-                scheduleTask(taskName, taskClass, taskDescription, taskStartTime, taskStopTime);
+        SchedulerTask task = tasks.get(definition.getTaskName());
+        if (task == null) {
+            // the task is new
+            task = newTask(definition.getTaskName(), taskClass, definition.getTaskDescription(),
+                definition.getTaskStartTime(), definition.getTaskStopTime());
+
+            if (!definition.getUpstreamTasks().isEmpty()) {
+                task.setTaskWindowMillis(definition.getTaskWindowMillis());
+                linkUpstreamTasks(task, definition.getUpstreamTasks());
+            } else if (taskCronExpression != null) {
+                task.setTaskCronExpression(taskCronExpression);
+                task.setTaskWindowMillis(definition.getTaskWindowMillis());
+            } else if (definition.getTaskStartTime() == null) {
+                task.setDaemonTask(true);
+                task.setDaemonExecuted(false);
+            }
 
-            } catch (ClassNotFoundException cnfe) {
-                throw new IllegalArgumentException("SCHED_ERR_TASK_NOT_FOUND", cnfe); //$NON-NLS-1$
+            applyTaskSettings(task, definition);
+            register(task);
+        } else if (!task.isStarting() && !task.isExecuting()) {
+            applyTaskSettings(task, definition);
+            if (!definition.getUpstreamTasks().isEmpty()) {
+                reschedule(task, definition.getUpstreamTasks(), definition.getTaskWindowMillis());
+            } else if (taskCronExpression != null) {
+                reschedule(task, taskCronExpression, definition.getTaskWindowMillis());
+            } else {
+                reschedule(task, definition.getTaskStartTime(), definition.getTaskStopTime());
             }
         }
+
+        journal(task);
+    }
+
+    /**
+     * Sets the task settings that do not depend on the kind of schedule from its definition.
+     *
+     * @param task the task
+     * @param definition the task definition
+     */
+    private static void applyTaskSettings(SchedulerTask task, TaskDefinition definition) {
+
+        task.setTaskGroup(definition.getTaskGroup());
+        task.setTaskPriority(definition.getTaskPriority());
+        task.setMisfirePolicy(definition.getMisfirePolicy());
+        task.setMisfireTolerance(definition.getMisfireTolerance());
+        task.setExecutionMode(definition.getExecutionMode());
+        task.setExecutionPeriod(definition.getExecutionPeriod());
+        task.setSupervisionPolicy(definition.getSupervisionPolicy());
+        task.setMaxRunTime(definition.getMaxRunTime());
+        task.setIterationTimeout(definition.getIterationTimeout());
     }
 
     /**
@@ -673,13 +2950,79 @@ public final class Scheduler
     public void stopAllTasks() {
 
         synchronized (tasks) {
+            // the journal is closed first, so stopping the scheduler is not journaled as removals
+            SchedulerJournal current = journal;
+            journal = null;
+            resources.journal = null;
+            if (current != null) {
+                current.close();
+            }
+
             schedulerThread = null;
-            for (SchedulerTask task : tasks) {
-                if (task.isExecuting()) {
+            for (SchedulerTask task : tasks.values()) {
+                task.scheduler = null;
+                if (task.isStarting() || task.isExecuting()) {
                     task.taskStop();
                 }
             }
-            getTasks().clear();
+
+            unregisterMBeans();
+
+            SchedulerLeaseManager manager = leaseManager;
+            leaseManager = null;
+            resources.leaseManager = null;
+            if (manager != null) {
+                manager.close();
+            }
+
+            tasks.clear();
+            dependentTasks.clear();
+            admission.clear();
+            events.close();
+            for (SchedulerShard shard : shards) {
+                shard.clear();
+            }
+            wakeUpScheduler();
+        }
+
+        // running tasks finish in the owned executor threads, which are released afterwards
+        synchronized (taskExecutorLock) {
+            if (taskExecutorOwned) {
+                ((ExecutorService) taskExecutor).shutdown();
+            }
+            if (prepareExecutor != null) {
+                prepareExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Closes the scheduler: stops and removes all tasks, ends the scheduler thread and releases
+     * the journal, the task leases and the event dispatcher thread. Closing a closed scheduler
+     * does nothing, and a closed scheduler should not be used anymore.
+     *
+     * @see AutoCloseable#close()
+     */
+    public void close() {
+
+        stopAllTasks();
+        cleanable.clean();
+    }
+
+    /**
+     * Closes a task of the scheduler: the task is stopped and removed from the scheduling table,
+     * so it is not started again.
+     *
+     * @param task the task
+     *
+     * @see SchedulerTask#close()
+     */
+    void closeTask(SchedulerTask task) {
+
+        if (tasks.get(task.getTaskName()) == task) {
+            stopAndRemoveTask(task.getTaskName());
+        } else if (task.isStarting() || task.isExecuting()) {
+            task.taskStop();
         }
     }
 
@@ -691,15 +3034,26 @@ public final class Scheduler
      */
     public void stopAndRemoveTask(String taskName) {
 
+        SchedulerTask task;
         synchronized (tasks) {
-            for (SchedulerTask task : tasks) {
-                if (task.getTaskName().equals(taskName)) {
-                    if (task.isExecuting()) {
-                        task.taskStop();
-                    }
-                    getTasks().remove(task);
-                    break;
-                }
+            task = tasks.remove(taskName);
+            if (task != null) {
+                task.scheduler = null;
+                unlinkUpstreamTasks(task);
+            }
+        }
+
+        if (task != null) {
+            admission.withdraw(task);
+            if (task.isStarting() || task.isExecuting()) {
+                task.taskStop();
+            }
+
+            unregisterTaskMBean(taskName);
+
+            SchedulerJournal current = journal;
+            if (current != null) {
+                current.recordRemove(taskName);
             }
         }
     }
@@ -711,24 +3065,65 @@ public final class Scheduler
      */
     public void stopTask(String taskName) {
 
-        synchronized (tasks) {
-            for (SchedulerTask task : tasks) {
-                if (task.getTaskName().equals(taskName)) {
-                    if (task.isExecuting()) {
-                        task.taskStop();
-                    }
-                    break;
-                }
-            }
+        SchedulerTask task = tasks.get(taskName);
+        if (task != null && (task.isStarting() || task.isExecuting())) {
+            task.taskStop();
         }
     }
 
     /**
-     * Dummy log method.
-     *
-     * @param message the log message
+     * The resources of a scheduler released by its cleaner action. The resources are kept apart
+     * from the scheduler, so the action does not keep the scheduler reachable.
      */
-    private static void info(String message) {
-        System.out.println(message);
+    private static final class SchedulerResources
+        implements Runnable {
+
+        /**
+         * The open journal, or <code>null</code> if there is none.
+         */
+        @SuppressWarnings("PMD.AvoidUsingVolatile")
+        private volatile SchedulerJournal journal;
+
+        /**
+         * The task lease manager, or <code>null</code> if there is none.
+         */
+        @SuppressWarnings("PMD.AvoidUsingVolatile")
+        private volatile SchedulerLeaseManager leaseManager;
+
+        /**
+         * The event dispatcher.
+         */
+        private final SchedulerEventDispatcher events;
+
+        /**
+         * Constructor that sets the event dispatcher.
+         *
+         * @param events the event dispatcher
+         */
+        private SchedulerResources(SchedulerEventDispatcher events) {
+
+            super();
+            this.events = events;
+        }
+
+        /**
+         * Closes the journal, the task lease manager and the event dispatcher.
+         */
+        public void run() {
+
+            SchedulerJournal currentJournal = journal;
+            journal = null;
+            if (currentJournal != null) {
+                currentJournal.close();
+            }
+
+            SchedulerLeaseManager currentManager = leaseManager;
+            leaseManager = null;
+            if (currentManager != null) {
+                currentManager.close();
+            }
+
+            events.close();
+        }
     }
 }
@@ -0,0 +1,383 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Admission control of the task starts of a scheduler.
+ *
+ * The number of tasks that are starting, running or stopping can be limited globally and for
+ * each task group. A task due to start while a limit is reached waits in the admission queue,
+ * ordered by priority (higher first) and then by arrival, and is started as soon as a slot is
+ * released. A waiting task whose group is full does not block tasks of other groups behind it.
+ *
+ * The admission state is guarded by the admission monitor, which is only held to update the
+ * counters and the queue; tasks are started after the monitor is released.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#setConcurrencyLimit(int)
+ * @see Scheduler#setGroupConcurrencyLimit(String, int)
+ */
+final class SchedulerAdmission {
+
+    /**
+     * Value of the concurrency limits when the number of running tasks is not limited.
+     */
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * The group recorded for admitted tasks without a group.
+     */
+    private static final String NO_GROUP = ""; //$NON-NLS-1$
+
+    /**
+     * The scheduler that starts the admitted tasks.
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The maximum number of running tasks.
+     */
+    private int globalLimit = UNLIMITED;
+
+    /**
+     * The maximum number of running tasks in each group, indexed by group name.
+     */
+    private final Map<String, Integer> groupLimits = new HashMap<String, Integer>();
+
+    /**
+     * The admitted tasks that are running, i.e. that hold a slot, with the group they were
+     * admitted in.
+     */
+    private final Map<SchedulerTask, String> admitted = new IdentityHashMap<SchedulerTask, String>();
+
+    /**
+     * The number of running tasks in each group, indexed by group name.
+     */
+    private final Map<String, int[]> runningByGroup = new HashMap<String, int[]>();
+
+    /**
+     * The tasks waiting for a slot, in admission order.
+     */
+    private final TreeSet<Waiting> queue = new TreeSet<Waiting>(new Comparator<Waiting>() {
+
+        /**
+         * Orders the waiting tasks by descending priority and then by arrival.
+         *
+         * @param w1 the first waiting task
+         * @param w2 the second waiting task
+         *
+         * @return the comparison result
+         */
+        public int compare(Waiting w1, Waiting w2) {
+
+            if (w1.priority != w2.priority) {
+                return w1.priority > w2.priority ? -1 : 1;
+            }
+            return Long.compare(w1.sequence, w2.sequence);
+        }
+    });
+
+    /**
+     * The waiting tasks, indexed by task.
+     */
+    private final Map<SchedulerTask, Waiting> waiting = new IdentityHashMap<SchedulerTask, Waiting>();
+
+    /**
+     * The arrival sequence generator.
+     */
+    private long sequence;
+
+    /**
+     * Constructor that sets the scheduler.
+     *
+     * @param scheduler the scheduler that starts the admitted tasks
+     */
+    SchedulerAdmission(Scheduler scheduler) {
+
+        super();
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the maximum number of running tasks.
+     *
+     * @return the global limit
+     */
+    synchronized int getGlobalLimit() {
+
+        return globalLimit;
+    }
+
+    /**
+     * Sets the maximum number of running tasks. Waiting tasks are admitted if the new limit
+     * allows it.
+     *
+     * @param limit the global limit, or <code>UNLIMITED</code>
+     */
+    void setGlobalLimit(int limit) {
+
+        List<SchedulerTask> toStart;
+        synchronized (this) {
+            globalLimit = limit;
+            toStart = drain();
+        }
+        start(toStart);
+    }
+
+    /**
+     * Returns the maximum number of running tasks in a group.
+     *
+     * @param group the group name
+     *
+     * @return the group limit, or <code>UNLIMITED</code> if the group is not limited
+     */
+    synchronized int getGroupLimit(String group) {
+
+        Integer limit = groupLimits.get(group);
+        return limit == null ? UNLIMITED : limit.intValue();
+    }
+
+    /**
+     * Sets the maximum number of running tasks in a group. Waiting tasks are admitted if the new
+     * limit allows it.
+     *
+     * @param group the group name
+     * @param limit the group limit, or <code>UNLIMITED</code>
+     */
+    void setGroupLimit(String group, int limit) {
+
+        List<SchedulerTask> toStart;
+        synchronized (this) {
+            if (limit == UNLIMITED) {
+                groupLimits.remove(group);
+            } else {
+                groupLimits.put(group, Integer.valueOf(limit));
+            }
+            toStart = drain();
+        }
+        start(toStart);
+    }
+
+    /**
+     * Returns the number of tasks waiting for a slot.
+     *
+     * @return the admission queue length
+     */
+    synchronized int getQueueLength() {
+
+        return queue.size();
+    }
+
+    /**
+     * Checks whether a task is waiting for a slot.
+     *
+     * @param task the task
+     *
+     * @return whether the task is in the admission queue
+     */
+    synchronized boolean isWaiting(SchedulerTask task) {
+
+        return waiting.containsKey(task);
+    }
+
+    /**
+     * Requests a slot to start a task. The task is started now if there is a free slot and no
+     * task with higher priority is waiting for it, or queued otherwise. A task that is already
+     * waiting is not queued again.
+     *
+     * @param task the task
+     */
+    void submit(SchedulerTask task) {
+
+        List<SchedulerTask> toStart;
+        synchronized (this) {
+            if (waiting.containsKey(task) || admitted.containsKey(task)) {
+                return;
+            }
+
+            Waiting w = new Waiting(task, task.getTaskPriority(), sequence++, System.nanoTime());
+            waiting.put(task, w);
+            queue.add(w);
+
+            toStart = drain();
+        }
+        start(toStart);
+    }
+
+    /**
+     * Removes a task from the admission queue, e.g. because its start window has passed.
+     *
+     * @param task the task
+     *
+     * @return whether the task was waiting
+     */
+    synchronized boolean withdraw(SchedulerTask task) {
+
+        Waiting w = waiting.remove(task);
+        if (w == null) {
+            return false;
+        }
+        queue.remove(w);
+        return true;
+    }
+
+    /**
+     * Releases the slot of a task that is not running anymore, and starts the waiting tasks that
+     * can take it. Releasing a task that holds no slot does nothing.
+     *
+     * @param task the task
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    void release(SchedulerTask task) {
+
+        List<SchedulerTask> toStart;
+        synchronized (this) {
+            String group = admitted.remove(task);
+            if (group == null) {
+                return;
+            }
+
+            if (group != NO_GROUP) {
+                int[] running = runningByGroup.get(group);
+                if (--running[0] == 0) {
+                    runningByGroup.remove(group);
+                }
+            }
+
+            toStart = drain();
+        }
+        start(toStart);
+    }
+
+    /**
+     * Removes all the waiting tasks.
+     */
+    synchronized void clear() {
+
+        queue.clear();
+        waiting.clear();
+    }
+
+    /**
+     * Admits the waiting tasks that can take a slot, in admission order. Tasks that are not
+     * scheduled anymore, or that were started meanwhile, leave the queue without a slot. Must be
+     * called holding the admission monitor.
+     *
+     * @return the admitted tasks, to be started once the monitor is released
+     */
+    private List<SchedulerTask> drain() {
+
+        List<SchedulerTask> toStart = null;
+
+        Iterator<Waiting> it = queue.iterator();
+        while (it.hasNext() && admitted.size() < globalLimit) {
+            Waiting w = it.next();
+            SchedulerTask task = w.task;
+
+            if (task.scheduler != scheduler || task.getTaskState() != SchedulerTaskState.IDLE) {
+                it.remove();
+                waiting.remove(task);
+                continue;
+            }
+
+            String group = task.getTaskGroup();
+            int[] running = null;
+            if (group != null) {
+                running = runningByGroup.get(group);
+                Integer limit = groupLimits.get(group);
+                if (limit != null && running != null && running[0] >= limit.intValue()) {
+                    continue;
+                }
+                if (running == null) {
+                    running = new int[1];
+                    runningByGroup.put(group, running);
+                }
+                running[0]++;
+            }
+
+            it.remove();
+            waiting.remove(task);
+            admitted.put(task, group == null ? NO_GROUP : group);
+
+            task.metrics.recordAdmissionWait((System.nanoTime() - w.arrival) / 1000000);
+
+            if (toStart == null) {
+                toStart = new ArrayList<SchedulerTask>();
+            }
+            toStart.add(task);
+        }
+
+        return toStart;
+    }
+
+    /**
+     * Starts the admitted tasks. A task that could not be started releases its slot.
+     *
+     * @param toStart the admitted tasks, or <code>null</code>
+     */
+    private void start(List<SchedulerTask> toStart) {
+
+        if (toStart == null) {
+            return;
+        }
+
+        for (SchedulerTask task : toStart) {
+            task.admission = this;
+            if (!scheduler.startTask(task)) {
+                release(task);
+            }
+        }
+    }
+
+    /**
+     * A task waiting for a slot.
+     */
+    private static final class Waiting {
+
+        /**
+         * The task.
+         */
+        private final SchedulerTask task;
+
+        /**
+         * The task priority when it was queued.
+         */
+        private final int priority;
+
+        /**
+         * The arrival sequence.
+         */
+        private final long sequence;
+
+        /**
+         * The arrival instant, as returned by <code>System.nanoTime()</code>.
+         */
+        private final long arrival;
+
+        /**
+         * Constructor that sets the task, its priority and its arrival.
+         *
+         * @param task the task
+         * @param priority the task priority
+         * @param sequence the arrival sequence
+         * @param arrival the arrival instant
+         */
+        private Waiting(SchedulerTask task, int priority, long sequence, long arrival) {
+
+            super();
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.arrival = arrival;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Immutable task lifecycle event, delivered to the scheduler listeners.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerListener
+ */
+public final class SchedulerEvent {
+
+    /**
+     * The event type.
+     *
+     * @see SchedulerEvent#getType()
+     */
+    private final SchedulerEventType type;
+
+    /**
+     * The task name.
+     *
+     * @see SchedulerEvent#getTaskName()
+     */
+    private final String taskName;
+
+    /**
+     * The instant when the event happened, in milliseconds since the epoch.
+     *
+     * @see SchedulerEvent#getTimeMillis()
+     */
+    private final long timeMillis;
+
+    /**
+     * The scheduled start of the task execution, in milliseconds since the epoch, or
+     * <code>SchedulerTask.NOT_SCHEDULED</code>.
+     *
+     * @see SchedulerEvent#getScheduledMillis()
+     */
+    private final long scheduledMillis;
+
+    /**
+     * The error of a <code>FAILED</code> event, or <code>null</code>.
+     *
+     * @see SchedulerEvent#getError()
+     */
+    private final Throwable error;
+
+    /**
+     * Constructor that sets all the event fields.
+     *
+     * @param type the event type
+     * @param taskName the task name
+     * @param timeMillis the instant when the event happened
+     * @param scheduledMillis the scheduled start of the task execution
+     * @param error the error, or <code>null</code>
+     */
+    SchedulerEvent(SchedulerEventType type, String taskName, long timeMillis, long scheduledMillis,
+                   Throwable error) {
+
+        super();
+        this.type = type;
+        this.taskName = taskName;
+        this.timeMillis = timeMillis;
+        this.scheduledMillis = scheduledMillis;
+        this.error = error;
+    }
+
+    /**
+     * Returns the <code>type</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerEvent#type
+     */
+    public SchedulerEventType getType() {
+
+        return type;
+    }
+
+    /**
+     * Returns the <code>taskName</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerEvent#taskName
+     */
+    public String getTaskName() {
+
+        return taskName;
+    }
+
+    /**
+     * Returns the <code>timeMillis</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerEvent#timeMillis
+     */
+    public long getTimeMillis() {
+
+        return timeMillis;
+    }
+
+    /**
+     * Returns the <code>scheduledMillis</code> property value.
+     *
+     * @return the property value, or <code>SchedulerTask.NOT_SCHEDULED</code> for daemons and
+     *         tasks started or stopped on request
+     *
+     * @see SchedulerEvent#scheduledMillis
+     */
+    public long getScheduledMillis() {
+
+        return scheduledMillis;
+    }
+
+    /**
+     * Returns the <code>error</code> property value.
+     *
+     * @return the property value, or <code>null</code>
+     *
+     * @see SchedulerEvent#error
+     */
+    public Throwable getError() {
+
+        return error;
+    }
+
+    /**
+     * Returns a string representation of the event.
+     *
+     * @return the event type and task name
+     */
+    @Override
+    public String toString() {
+
+        return type + " " + taskName; //$NON-NLS-1$
+    }
+}
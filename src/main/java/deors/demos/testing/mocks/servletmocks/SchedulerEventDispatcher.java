@@ -0,0 +1,354 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dispatcher of the task lifecycle events of a scheduler to its listeners.
+ *
+ * Events are published into a pre-allocated ring buffer of mutable slots and consumed by a
+ * single dispatcher thread, which builds the immutable events and calls the listeners. Publishers
+ * claim a slot with a compare and set of the claim sequence, fill it, and publish it with a
+ * volatile write of the slot sequence, so publishing never locks nor allocates and the scheduler
+ * and task threads are never delayed by the listeners. If the buffer is full, the event is
+ * dropped and counted. Nothing is published while there are no listeners.
+ *
+ * The dispatcher thread is started with the first published event, and ends once the dispatcher
+ * is closed and the pending events are delivered.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerListener
+ */
+final class SchedulerEventDispatcher
+    implements Runnable {
+
+    /**
+     * The default number of slots of the ring buffer.
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The dispatcher thread name prefix.
+     */
+    private static final String DISPATCHER_THREAD_NAME_PREFIX = "scheduler-events-"; //$NON-NLS-1$
+
+    /**
+     * The maximum time the dispatcher thread parks without checking the ring buffer, in
+     * nanoseconds. A publisher unparks it, so this is only a safety net.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The ring buffer slots.
+     */
+    private final Slot[] slots;
+
+    /**
+     * The mask that maps a sequence to its slot.
+     */
+    private final int mask;
+
+    /**
+     * The next sequence to be claimed by a publisher.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The next sequence to be consumed by the dispatcher thread.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long consumed;
+
+    /**
+     * The registered listeners.
+     */
+    private final List<SchedulerListener> listeners = new CopyOnWriteArrayList<SchedulerListener>();
+
+    /**
+     * The number of dropped events.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The thread factory of the dispatcher thread.
+     */
+    private final SchedulerThreadFactory threadFactory =
+        new SchedulerThreadFactory(DISPATCHER_THREAD_NAME_PREFIX, true);
+
+    /**
+     * The dispatcher thread, or <code>null</code> if it is not running.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile Thread dispatcherThread;
+
+    /**
+     * Whether the dispatcher thread must end once the pending events are delivered.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile boolean closing;
+
+    /**
+     * Whether the dispatcher thread is parked, or about to park, waiting for events.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile boolean parked;
+
+    /**
+     * Constructor that allocates the ring buffer.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the capacity is not a
+     * positive power of two.
+     *
+     * @param capacity the number of slots of the ring buffer
+     */
+    SchedulerEventDispatcher(int capacity) {
+
+        super();
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("SCHED_ERR_EVENT_CAPACITY_INVALID"); //$NON-NLS-1$
+        }
+
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener the listener
+     */
+    void addListener(SchedulerListener listener) {
+
+        if (listener == null) {
+            throw new IllegalArgumentException("SCHED_ERR_LISTENER_NULL"); //$NON-NLS-1$
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    void removeListener(SchedulerListener listener) {
+
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of events dropped because the ring buffer was full.
+     *
+     * @return the number of dropped events
+     */
+    long getDroppedCount() {
+
+        return dropped.sum();
+    }
+
+    /**
+     * Publishes an event. The method returns immediately: the event is delivered later by the
+     * dispatcher thread, or dropped if the ring buffer is full.
+     *
+     * @param type the event type
+     * @param taskName the task name
+     * @param scheduledMillis the scheduled start of the task execution
+     * @param error the error, or <code>null</code>
+     */
+    void publish(SchedulerEventType type, String taskName, long scheduledMillis, Throwable error) {
+
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.taskName = taskName;
+        slot.timeMillis = System.currentTimeMillis();
+        slot.scheduledMillis = scheduledMillis;
+        slot.error = error;
+        slot.sequence = sequence;
+
+        Thread thread = dispatcherThread;
+        if (thread == null || closing) {
+            startDispatcher();
+        } else if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Starts the dispatcher thread if it is not running, or keeps it running if it was closing.
+     */
+    private synchronized void startDispatcher() {
+
+        closing = false;
+        if (dispatcherThread == null) {
+            dispatcherThread = threadFactory.newThread(this);
+            dispatcherThread.start();
+        } else {
+            LockSupport.unpark(dispatcherThread);
+        }
+    }
+
+    /**
+     * Asks the dispatcher thread to end once the pending events are delivered.
+     */
+    synchronized void close() {
+
+        closing = true;
+        Thread thread = dispatcherThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Delivers the published events to the listeners, in publication order.
+     */
+    public void run() {
+
+        long next = consumed;
+
+        while (true) {
+            Slot slot = slots[(int) next & mask];
+
+            if (slot.sequence != next) {
+                if (awaitEvent(slot, next)) {
+                    continue;
+                }
+                return;
+            }
+
+            SchedulerEvent event = new SchedulerEvent(
+                slot.type, slot.taskName, slot.timeMillis, slot.scheduledMillis, slot.error);
+            slot.taskName = null;
+            slot.error = null;
+
+            // the slot can be claimed again once the sequence is consumed
+            next++;
+            consumed = next;
+
+            dispatch(event);
+        }
+    }
+
+    /**
+     * Waits until the event with the given sequence is published, or the dispatcher is closed.
+     *
+     * @param slot the slot of the event
+     * @param sequence the event sequence
+     *
+     * @return whether the dispatcher thread must go on, or <code>false</code> if it must end
+     */
+    private boolean awaitEvent(Slot slot, long sequence) {
+
+        if (closing) {
+            synchronized (this) {
+                // no event can be claimed and left undelivered once the thread is cleared
+                if (closing && claimed.get() == sequence) {
+                    dispatcherThread = null;
+                    return false;
+                }
+            }
+        }
+
+        parked = true;
+        if (slot.sequence != sequence && !closing) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        parked = false;
+
+        // a claimed slot being filled is published in a few instructions
+        if (slot.sequence != sequence && claimed.get() > sequence) {
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * Delivers an event to all the listeners. Listener errors are logged and ignored.
+     *
+     * @param event the event
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void dispatch(SchedulerEvent event) {
+
+        for (SchedulerListener listener : listeners) {
+            try {
+                listener.schedulerEvent(event);
+
+            // CHECKSTYLE:OFF
+            } catch (Throwable t) {
+            // CHECKSTYLE:ON
+
+                SchedulerLog.log(SchedulerLogLevel.ERROR, "SCHED_LOG_ERR_LISTENER {}", //$NON-NLS-1$
+                    event.getTaskName(), t);
+            }
+        }
+    }
+
+    /**
+     * A ring buffer slot. Its fields are written by the publisher that claimed the slot before
+     * the sequence is published, and read by the dispatcher thread after.
+     */
+    private static final class Slot {
+
+        /**
+         * The sequence of the event in the slot, published last.
+         */
+        @SuppressWarnings("PMD.AvoidUsingVolatile")
+        private volatile long sequence = -1;
+
+        /**
+         * The event type.
+         */
+        private SchedulerEventType type;
+
+        /**
+         * The task name.
+         */
+        private String taskName;
+
+        /**
+         * The instant when the event happened.
+         */
+        private long timeMillis;
+
+        /**
+         * The scheduled start of the task execution.
+         */
+        private long scheduledMillis;
+
+        /**
+         * The error, or <code>null</code>.
+         */
+        private Throwable error;
+
+        /**
+         * Default constructor.
+         */
+        private Slot() {
+
+            super();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Types of the task lifecycle events published by a scheduler.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerEvent#getType()
+ */
+public enum SchedulerEventType {
+
+    /**
+     * The next start of a task was scheduled, or a daemon is about to be started.
+     */
+    SCHEDULED,
+
+    /**
+     * A task was prepared to start and its logic was submitted to the task executor.
+     */
+    STARTED,
+
+    /**
+     * A task was prepared to stop and is idle again.
+     */
+    STOPPED,
+
+    /**
+     * A task was killed.
+     */
+    KILLED,
+
+    /**
+     * A task failed to start, to run or to stop. The event has the error, if any.
+     */
+    FAILED
+}
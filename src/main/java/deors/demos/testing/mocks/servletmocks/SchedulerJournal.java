@@ -0,0 +1,589 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal with the schedule changes of a scheduler.
+ *
+ * Each schedule, remove and kill operation is appended to the journal file as a record with
+ * its length and checksum. Records are buffered and written to disk in batches by a background
+ * thread, so a single <code>fsync</code> call covers every operation since the previous one.
+ *
+ * The journal keeps in memory the last record of each task, so it is compacted by rewriting the
+ * file with one record per task when enough records have been appended. When the journal is
+ * opened, the file is replayed (stopping at the first torn or corrupted record) and compacted.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#openJournal(File)
+ */
+final class SchedulerJournal {
+
+    /**
+     * The journal file header.
+     */
+    private static final int JOURNAL_MAGIC = 0x53434A31;
+
+    /**
+     * The schedule operation code.
+     */
+    private static final byte OP_SCHEDULE = 1;
+
+    /**
+     * The remove operation code.
+     */
+    private static final byte OP_REMOVE = 2;
+
+    /**
+     * The kill operation code.
+     */
+    private static final byte OP_KILL = 3;
+
+    /**
+     * The daemon task kind.
+     */
+    private static final byte KIND_DAEMON = 1;
+
+    /**
+     * The daily task kind.
+     */
+    private static final byte KIND_DAILY = 2;
+
+    /**
+     * The cron task kind.
+     */
+    private static final byte KIND_CRON = 3;
+
+    /**
+     * The dependent task kind.
+     */
+    private static final byte KIND_DEPENDENT = 4;
+
+    /**
+     * The maximum record length. Longer lengths are considered a corrupted record.
+     */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    /**
+     * The interval between batched writes to disk, in milliseconds.
+     */
+    private static final long SYNC_INTERVAL = 50;
+
+    /**
+     * The number of appended records that triggers a compaction.
+     */
+    private static final int COMPACTION_THRESHOLD = 10000;
+
+    /**
+     * The temporary file suffix used during compactions.
+     */
+    private static final String COMPACTION_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+    /**
+     * The sync thread name prefix.
+     */
+    private static final String SYNC_THREAD_NAME_PREFIX = "scheduler-journal-"; //$NON-NLS-1$
+
+    /**
+     * The journal file.
+     */
+    private final File journalFile;
+
+    /**
+     * The last record of each task, in the order the tasks were last changed.
+     */
+    private final Map<String, byte[]> lastRecords = new LinkedHashMap<String, byte[]>();
+
+    /**
+     * Lock that guards the journal file stream and the last records map.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The journal file stream.
+     */
+    private FileOutputStream fileStream;
+
+    /**
+     * The buffered journal stream.
+     */
+    private DataOutputStream out;
+
+    /**
+     * Whether there are records not written to disk yet.
+     */
+    private boolean dirty;
+
+    /**
+     * The number of records appended since the last compaction.
+     */
+    private int appendedRecords;
+
+    /**
+     * The executor that writes the records to disk in batches.
+     */
+    private ScheduledExecutorService syncExecutor;
+
+    /**
+     * Constructor that sets the journal file.
+     *
+     * @param journalFile the journal file
+     */
+    SchedulerJournal(File journalFile) {
+
+        super();
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Opens the journal. The existing records are replayed in the scheduler, the file is
+     * compacted and the new records are appended to it.
+     *
+     * @param scheduler the scheduler
+     *
+     * @throws IOException an i/o exception
+     */
+    void open(Scheduler scheduler)
+        throws IOException {
+
+        synchronized (lock) {
+            read();
+            compactLocked();
+        }
+
+        List<byte[]> records;
+        synchronized (lock) {
+            records = new ArrayList<byte[]>(lastRecords.values());
+        }
+        for (byte[] record : records) {
+            apply(scheduler, record);
+        }
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(
+            new SchedulerThreadFactory(SYNC_THREAD_NAME_PREFIX, true));
+        syncExecutor.scheduleWithFixedDelay(new Runnable() {
+
+            /**
+             * Writes the pending records to disk.
+             */
+            public void run() {
+
+                sync();
+            }
+        }, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the journal file, keeping the last record of each task. The file is read up to
+     * the first torn or corrupted record.
+     *
+     * @throws IOException an i/o exception
+     */
+    private void read()
+        throws IOException {
+
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+
+            if (in.readInt() != JOURNAL_MAGIC) {
+                throw new IOException("SCHED_ERR_JOURNAL_INVALID"); //$NON-NLS-1$
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+
+                byte[] record = new byte[length];
+                in.readFully(record);
+
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                keep(record);
+            }
+        } catch (EOFException eofe) {
+            // end of the journal or torn record
+            return;
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Keeps a record as the last record of its task.
+     *
+     * @param record the record
+     *
+     * @throws IOException an i/o exception
+     */
+    private void keep(byte[] record)
+        throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        in.readByte();
+        String taskName = in.readUTF();
+
+        lastRecords.remove(taskName);
+        lastRecords.put(taskName, record);
+    }
+
+    /**
+     * Applies a replayed record in the scheduler. Records that are not valid anymore, e.g.
+     * because the task class does not exist, are skipped.
+     *
+     * @param scheduler the scheduler
+     * @param record the record
+     */
+    private static void apply(Scheduler scheduler, byte[] record) {
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            byte op = in.readByte();
+            String taskName = in.readUTF();
+
+            if (op == OP_REMOVE) {
+                scheduler.stopAndRemoveTask(taskName);
+                return;
+            }
+            if (op == OP_KILL) {
+                scheduler.killTask(taskName);
+                return;
+            }
+
+            String taskClassName = in.readUTF();
+            String taskDescription = in.readUTF();
+            byte kind = in.readByte();
+
+            if (kind == KIND_CRON) {
+                CronExpression cron = new CronExpression(in.readUTF());
+                scheduler.scheduleTask(taskName, taskClassName, taskDescription, cron, in.readLong());
+            } else if (kind == KIND_DEPENDENT) {
+                int count = in.readInt();
+                List<String> upstreamTasks = new ArrayList<String>(count);
+                for (int i = 0; i < count; i++) {
+                    upstreamTasks.add(in.readUTF());
+                }
+                scheduler.scheduleTask(taskName, taskClassName, taskDescription, upstreamTasks, in.readLong());
+            } else if (kind == KIND_DAILY) {
+                Calendar start = Scheduler.parseTime(in.readUTF());
+                Calendar stop = Scheduler.parseTime(in.readUTF());
+                scheduler.scheduleTask(taskName, taskClassName, taskDescription, start, stop);
+            } else {
+                scheduler.scheduleTask(taskName, taskClassName, taskDescription, (Calendar) null, null);
+            }
+        } catch (IOException ioe) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_JOURNAL_RECORD_INVALID", ioe); //$NON-NLS-1$
+        } catch (IllegalArgumentException iae) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_JOURNAL_RECORD_INVALID", iae); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Appends a schedule record with the current definition of a task.
+     *
+     * @param task the task
+     */
+    void recordSchedule(SchedulerTask task) {
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+
+            record.writeByte(OP_SCHEDULE);
+            record.writeUTF(task.getTaskName());
+            record.writeUTF(task.getClass().getName());
+            record.writeUTF(task.getTaskDescription());
+
+            CronExpression cron = task.getTaskCronExpression();
+            if (cron != null) {
+                record.writeByte(KIND_CRON);
+                record.writeUTF(cron.toString());
+                record.writeLong(task.getTaskWindowMillis());
+            } else if (task.isDependentTask()) {
+                List<String> upstreamTasks = task.getUpstreamTasks();
+                record.writeByte(KIND_DEPENDENT);
+                record.writeInt(upstreamTasks.size());
+                for (String upstreamTask : upstreamTasks) {
+                    record.writeUTF(upstreamTask);
+                }
+                record.writeLong(task.getTaskWindowMillis());
+            } else if (task.isDaemonTask()) {
+                record.writeByte(KIND_DAEMON);
+            } else {
+                record.writeByte(KIND_DAILY);
+                record.writeUTF(formatTime(task.getTaskStartTime()));
+                record.writeUTF(formatTime(task.getTaskStopTime()));
+            }
+
+            append(task.getTaskName(), bytes.toByteArray());
+        } catch (IOException ioe) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_JOURNAL_WRITE_FAILED", ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Appends a remove record.
+     *
+     * @param taskName the task name
+     */
+    void recordRemove(String taskName) {
+
+        recordOperation(OP_REMOVE, taskName);
+    }
+
+    /**
+     * Appends a kill record.
+     *
+     * @param taskName the task name
+     */
+    void recordKill(String taskName) {
+
+        recordOperation(OP_KILL, taskName);
+    }
+
+    /**
+     * Appends a record for an operation that only needs the task name.
+     *
+     * @param op the operation code
+     * @param taskName the task name
+     */
+    private void recordOperation(byte op, String taskName) {
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+
+            record.writeByte(op);
+            record.writeUTF(taskName);
+
+            append(taskName, bytes.toByteArray());
+        } catch (IOException ioe) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_JOURNAL_WRITE_FAILED", ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Formats a time in HH:MM:SS format.
+     *
+     * @param time the time
+     *
+     * @return the formatted time
+     */
+    private static String formatTime(Calendar time) {
+
+        return String.format("%02d:%02d:%02d", //$NON-NLS-1$
+            time.get(Calendar.HOUR_OF_DAY), time.get(Calendar.MINUTE), time.get(Calendar.SECOND));
+    }
+
+    /**
+     * Appends a record to the journal stream. The record is written to disk by the next batch.
+     *
+     * @param taskName the task name
+     * @param record the record
+     *
+     * @throws IOException an i/o exception
+     */
+    private void append(String taskName, byte[] record)
+        throws IOException {
+
+        synchronized (lock) {
+            if (out == null) {
+                return;
+            }
+
+            writeRecord(out, record);
+
+            lastRecords.remove(taskName);
+            lastRecords.put(taskName, record);
+
+            appendedRecords++;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes a record with its length and checksum.
+     *
+     * @param stream the journal stream
+     * @param record the record
+     *
+     * @throws IOException an i/o exception
+     */
+    private static void writeRecord(DataOutputStream stream, byte[] record)
+        throws IOException {
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        stream.writeInt(record.length);
+        stream.writeInt((int) crc.getValue());
+        stream.write(record);
+    }
+
+    /**
+     * Writes the pending records to disk, compacting the journal if enough records have been
+     * appended since the last compaction.
+     */
+    void sync() {
+
+        try {
+            FileOutputStream stream;
+            synchronized (lock) {
+                if (!dirty || out == null) {
+                    return;
+                }
+                if (appendedRecords >= COMPACTION_THRESHOLD) {
+                    compactLocked();
+                    return;
+                }
+
+                out.flush();
+                dirty = false;
+                stream = fileStream;
+            }
+
+            // appends are not blocked while the file is forced to disk
+            stream.getChannel().force(false);
+        } catch (IOException ioe) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_JOURNAL_WRITE_FAILED", ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Compacts the journal.
+     *
+     * @throws IOException an i/o exception
+     */
+    void compact()
+        throws IOException {
+
+        synchronized (lock) {
+            compactLocked();
+        }
+    }
+
+    /**
+     * Compacts the journal, rewriting the file with the last record of each task. The new file
+     * is written aside and forced to disk before replacing the journal file. Must be called
+     * holding the lock.
+     *
+     * @throws IOException an i/o exception
+     */
+    private void compactLocked()
+        throws IOException {
+
+        File compactedFile = new File(journalFile.getPath() + COMPACTION_SUFFIX);
+
+        FileOutputStream compactedStream = new FileOutputStream(compactedFile);
+        try {
+            DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(compactedStream));
+            compacted.writeInt(JOURNAL_MAGIC);
+            for (byte[] record : lastRecords.values()) {
+                writeRecord(compacted, record);
+            }
+            compacted.flush();
+            compactedStream.getChannel().force(true);
+        } finally {
+            compactedStream.close();
+        }
+
+        closeStream();
+
+        Files.move(compactedFile.toPath(), journalFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        openStream();
+
+        appendedRecords = 0;
+        dirty = false;
+    }
+
+    /**
+     * Opens the journal file stream in append mode.
+     *
+     * @throws FileNotFoundException if the journal file cannot be opened
+     */
+    private void openStream()
+        throws FileNotFoundException {
+
+        fileStream = new FileOutputStream(journalFile, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileStream));
+    }
+
+    /**
+     * Closes the journal file stream, writing the pending records to disk.
+     *
+     * @throws IOException an i/o exception
+     */
+    private void closeStream()
+        throws IOException {
+
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.flush();
+            fileStream.getChannel().force(false);
+        } finally {
+            out.close();
+            out = null;
+            fileStream = null;
+        }
+    }
+
+    /**
+     * Closes the journal, writing the pending records to disk.
+     */
+    void close() {
+
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+        }
+
+        synchronized (lock) {
+            try {
+                closeStream();
+            } catch (IOException ioe) {
+                SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_JOURNAL_WRITE_FAILED", ioe); //$NON-NLS-1$
+            }
+        }
+    }
+}
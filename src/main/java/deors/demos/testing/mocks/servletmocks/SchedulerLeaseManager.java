@@ -0,0 +1,429 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manager of the task leases used to coordinate several schedulers running the same tasks.
+ *
+ * Each task has a lease file in a shared directory with the lease owner (the node id), the last
+ * heartbeat timestamp and the last scheduled window started with the lease. A node must take the
+ * lease before starting a task. The lease is free if it has no owner or its heartbeat is older
+ * than the lease time to live, and a window is started only once, so the task runs in only one
+ * node at a time and the other nodes skip it.
+ *
+ * Lease files are read and written while holding a <code>FileChannel</code> lock. As those locks
+ * are held on behalf of the whole JVM, a JVM-wide lock per lease file is taken first, so several
+ * schedulers in the same JVM can share the directory too. Held leases are renewed by a heartbeat
+ * thread, and released when the task is not running anymore.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#setCoordination(File, String, long)
+ */
+final class SchedulerLeaseManager {
+
+    /**
+     * The JVM-wide locks of the lease files, indexed by canonical path.
+     */
+    private static final ConcurrentMap<String, Object> PATH_LOCKS = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * The lease file suffix.
+     */
+    private static final String LEASE_FILE_SUFFIX = ".lease"; //$NON-NLS-1$
+
+    /**
+     * The heartbeat thread name prefix.
+     */
+    private static final String HEARTBEAT_THREAD_NAME_PREFIX = "scheduler-lease-"; //$NON-NLS-1$
+
+    /**
+     * The number of heartbeats in each lease time to live.
+     */
+    private static final int HEARTBEATS_PER_TTL = 3;
+
+    /**
+     * The owner written in a released lease.
+     */
+    private static final String NO_OWNER = ""; //$NON-NLS-1$
+
+    /**
+     * The shared directory with the lease files.
+     */
+    private final File leaseDirectory;
+
+    /**
+     * The id of this node.
+     */
+    private final String nodeId;
+
+    /**
+     * The lease time to live, in milliseconds.
+     */
+    private final long leaseTtl;
+
+    /**
+     * The tasks whose lease is held by this node, indexed by task name.
+     */
+    private final ConcurrentMap<String, HeldLease> heldLeases = new ConcurrentHashMap<String, HeldLease>();
+
+    /**
+     * The executor that renews and releases the held leases.
+     */
+    private final ScheduledExecutorService heartbeatExecutor;
+
+    /**
+     * Constructor that sets the lease directory, the node id and the lease time to live, and
+     * starts the heartbeat thread.
+     *
+     * @param leaseDirectory the shared directory with the lease files
+     * @param nodeId the id of this node
+     * @param leaseTtl the lease time to live, in milliseconds
+     */
+    SchedulerLeaseManager(File leaseDirectory, String nodeId, long leaseTtl) {
+
+        super();
+        this.leaseDirectory = leaseDirectory;
+        this.nodeId = nodeId;
+        this.leaseTtl = leaseTtl;
+
+        long heartbeatInterval = Math.max(1, leaseTtl / HEARTBEATS_PER_TTL);
+
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(
+            new SchedulerThreadFactory(HEARTBEAT_THREAD_NAME_PREFIX, true));
+        heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+
+            /**
+             * Renews or releases the held leases.
+             */
+            public void run() {
+
+                heartbeat();
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the lease time to live.
+     *
+     * @return the lease time to live, in milliseconds
+     */
+    long getLeaseTtl() {
+
+        return leaseTtl;
+    }
+
+    /**
+     * Tries to take the lease of a task for a scheduled window.
+     *
+     * @param task the task
+     * @param window the scheduled start of the window, or <code>SchedulerTask.NOT_SCHEDULED</code>
+     *               for daemons, which are not bound to a window
+     *
+     * @return whether the lease was taken
+     */
+    boolean tryAcquire(SchedulerTask task, long window) {
+
+        try {
+            if (update(task.getTaskName(), Mode.ACQUIRE, window)) {
+                heldLeases.put(task.getTaskName(), new HeldLease(task, System.currentTimeMillis()));
+                return true;
+            }
+        } catch (IOException ioe) {
+            SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_LEASE_IO_FAILED {}", //$NON-NLS-1$
+                task.getTaskName(), ioe);
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the lease of a task is held by this node.
+     *
+     * @param taskName the task name
+     *
+     * @return whether the lease is held
+     */
+    boolean isHeld(String taskName) {
+
+        return heldLeases.containsKey(taskName);
+    }
+
+    /**
+     * Renews the leases of the running tasks and of the tasks waiting for admission, and releases
+     * the others. Leases taken in the last heartbeat interval are kept, as their tasks may not be
+     * started yet. If a lease was taken by another node meanwhile, the task is stopped.
+     */
+    void heartbeat() {
+
+        long releaseBefore = System.currentTimeMillis() - Math.max(1, leaseTtl / HEARTBEATS_PER_TTL);
+
+        for (HeldLease lease : heldLeases.values()) {
+            SchedulerTask task = lease.task;
+            try {
+                if (task.isStarting() || task.isExecuting() || isWaiting(task)
+                    || lease.acquired > releaseBefore) {
+                    if (!update(task.getTaskName(), Mode.RENEW, SchedulerTask.NOT_SCHEDULED)) {
+                        SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_LEASE_LOST {}", //$NON-NLS-1$
+                            task.getTaskName());
+                        heldLeases.remove(task.getTaskName(), lease);
+                        task.taskStop();
+                    }
+                } else {
+                    release(lease);
+                }
+            } catch (IOException ioe) {
+                SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_LEASE_IO_FAILED {}", //$NON-NLS-1$
+                    task.getTaskName(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a task is waiting in the admission queue of its scheduler.
+     *
+     * @param task the task
+     *
+     * @return whether the task is waiting for admission
+     */
+    private static boolean isWaiting(SchedulerTask task) {
+
+        Scheduler scheduler = task.scheduler;
+        return scheduler != null && scheduler.getAdmission().isWaiting(task);
+    }
+
+    /**
+     * Releases a held lease.
+     *
+     * @param lease the held lease
+     *
+     * @throws IOException an i/o exception
+     */
+    private void release(HeldLease lease)
+        throws IOException {
+
+        String taskName = lease.task.getTaskName();
+        if (heldLeases.remove(taskName, lease)) {
+            update(taskName, Mode.RELEASE, SchedulerTask.NOT_SCHEDULED);
+        }
+    }
+
+    /**
+     * Stops the heartbeat thread and releases all the held leases.
+     */
+    void close() {
+
+        heartbeatExecutor.shutdown();
+
+        for (HeldLease lease : heldLeases.values()) {
+            try {
+                release(lease);
+            } catch (IOException ioe) {
+                SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_LEASE_IO_FAILED {}", //$NON-NLS-1$
+                    lease.task.getTaskName(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Reads and updates a lease file while holding the JVM-wide and the file locks.
+     *
+     * @param taskName the task name
+     * @param mode the update mode
+     * @param window the scheduled start of the window, used when the lease is acquired
+     *
+     * @return whether the lease is held by this node after the update
+     *
+     * @throws IOException an i/o exception
+     */
+    private boolean update(String taskName, Mode mode, long window)
+        throws IOException {
+
+        File leaseFile = leaseFile(taskName);
+        String path = leaseFile.getCanonicalPath();
+
+        Object pathLock = PATH_LOCKS.get(path);
+        if (pathLock == null) {
+            Object newLock = new Object();
+            pathLock = PATH_LOCKS.putIfAbsent(path, newLock);
+            if (pathLock == null) {
+                pathLock = newLock;
+            }
+        }
+
+        synchronized (pathLock) {
+            RandomAccessFile raf = new RandomAccessFile(leaseFile, "rw"); //$NON-NLS-1$
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock fileLock = channel.lock();
+                try {
+                    return update(raf, mode, window);
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Reads and updates a locked lease file.
+     *
+     * @param raf the lease file
+     * @param mode the update mode
+     * @param window the scheduled start of the window, used when the lease is acquired
+     *
+     * @return whether the lease is held by this node after the update
+     *
+     * @throws IOException an i/o exception
+     */
+    private boolean update(RandomAccessFile raf, Mode mode, long window)
+        throws IOException {
+
+        String owner = NO_OWNER;
+        long heartbeat = 0;
+        long lastWindow = SchedulerTask.NOT_SCHEDULED;
+
+        if (raf.length() > 0) {
+            try {
+                owner = raf.readUTF();
+                heartbeat = raf.readLong();
+                lastWindow = raf.readLong();
+            } catch (EOFException eofe) {
+                // a torn lease file is considered free
+                owner = NO_OWNER;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        boolean ownedByThisNode = owner.equals(nodeId);
+        boolean free = owner.length() == 0 || ownedByThisNode || now - heartbeat > leaseTtl;
+
+        switch (mode) {
+            case ACQUIRE:
+                // a window already started with the lease is not started again
+                if (!free || window != SchedulerTask.NOT_SCHEDULED && window <= lastWindow) {
+                    return false;
+                }
+                write(raf, nodeId, now, Math.max(window, lastWindow));
+                return true;
+            case RENEW:
+                if (!ownedByThisNode) {
+                    return false;
+                }
+                write(raf, nodeId, now, lastWindow);
+                return true;
+            default:
+                if (ownedByThisNode) {
+                    write(raf, NO_OWNER, 0, lastWindow);
+                }
+                return false;
+        }
+    }
+
+    /**
+     * Writes a lease file and forces it to disk.
+     *
+     * @param raf the lease file
+     * @param owner the lease owner
+     * @param heartbeat the heartbeat timestamp
+     * @param window the last scheduled window started with the lease
+     *
+     * @throws IOException an i/o exception
+     */
+    private static void write(RandomAccessFile raf, String owner, long heartbeat, long window)
+        throws IOException {
+
+        raf.seek(0);
+        raf.writeUTF(owner);
+        raf.writeLong(heartbeat);
+        raf.writeLong(window);
+        raf.setLength(raf.getFilePointer());
+        raf.getChannel().force(false);
+    }
+
+    /**
+     * Returns the lease file of a task. Task names are escaped so they are valid file names.
+     *
+     * @param taskName the task name
+     *
+     * @return the lease file
+     */
+    private File leaseFile(String taskName) {
+
+        StringBuilder fileName = new StringBuilder(taskName.length() + LEASE_FILE_SUFFIX.length() + 9);
+        for (int i = 0; i < taskName.length(); i++) {
+            char c = taskName.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '.') {
+                fileName.append(c);
+            } else {
+                fileName.append('_');
+            }
+        }
+        fileName.append('_').append(Integer.toHexString(taskName.hashCode()));
+        fileName.append(LEASE_FILE_SUFFIX);
+
+        return new File(leaseDirectory, fileName.toString());
+    }
+
+    /**
+     * A lease held by this node.
+     */
+    private static final class HeldLease {
+
+        /**
+         * The task.
+         */
+        private final SchedulerTask task;
+
+        /**
+         * The instant when the lease was taken, in milliseconds since the epoch.
+         */
+        private final long acquired;
+
+        /**
+         * Constructor that sets the task and the instant when the lease was taken.
+         *
+         * @param task the task
+         * @param acquired the instant when the lease was taken
+         */
+        private HeldLease(SchedulerTask task, long acquired) {
+
+            super();
+            this.task = task;
+            this.acquired = acquired;
+        }
+    }
+
+    /**
+     * Lease file update modes.
+     */
+    private enum Mode {
+
+        /**
+         * The lease is taken if it is free.
+         */
+        ACQUIRE,
+
+        /**
+         * The heartbeat of a held lease is renewed.
+         */
+        RENEW,
+
+        /**
+         * A held lease is released.
+         */
+        RELEASE
+    }
+}
@@ -0,0 +1,24 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Listener of the task lifecycle events of a scheduler.
+ *
+ * Events are delivered in publication order by a single dispatcher thread, never by the
+ * scheduler or the task threads, so a slow listener only delays the delivery of later events.
+ * If listeners fall so far behind that the event buffer is full, new events are dropped and
+ * counted in the scheduler metrics.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#addSchedulerListener(SchedulerListener)
+ */
+public interface SchedulerListener {
+
+    /**
+     * Receives a task lifecycle event. Exceptions thrown by this method are logged and ignored.
+     *
+     * @param event the event
+     */
+    void schedulerEvent(SchedulerEvent event);
+}
@@ -0,0 +1,352 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous log of the scheduler classes.
+ *
+ * Messages are patterns where each <code>{}</code> is replaced by the next argument. The level is
+ * checked before anything is done, so a disabled message costs a volatile read. Enabled messages
+ * are put in a bounded queue with their arguments, and a writer thread formats them and writes
+ * them to the standard output in batches, so the scheduler and task threads never format
+ * messages nor contend for the standard output lock. If the queue is full, messages are dropped
+ * and counted. A trailing <code>Throwable</code> argument without a placeholder is written after
+ * the message.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#setLogLevel(SchedulerLogLevel)
+ */
+final class SchedulerLog {
+
+    /**
+     * The capacity of the message queue.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * The maximum number of messages written in each batch.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The placeholder replaced by the message arguments.
+     */
+    private static final String PLACEHOLDER = "{}"; //$NON-NLS-1$
+
+    /**
+     * The writer thread name prefix.
+     */
+    private static final String WRITER_THREAD_NAME_PREFIX = "scheduler-log-"; //$NON-NLS-1$
+
+    /**
+     * The messages waiting to be written.
+     */
+    private static final BlockingQueue<Record> QUEUE = new ArrayBlockingQueue<Record>(QUEUE_CAPACITY);
+
+    /**
+     * The number of dropped messages.
+     */
+    private static final LongAdder DROPPED = new LongAdder();
+
+    /**
+     * The number of messages taken by the writer thread and not written yet.
+     */
+    private static final LongAdder IN_FLIGHT = new LongAdder();
+
+    /**
+     * The current log level.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private static volatile SchedulerLogLevel level = SchedulerLogLevel.INFO;
+
+    /**
+     * The writer thread, or <code>null</code> if it was not started yet.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private static volatile Thread writerThread;
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private SchedulerLog() {
+
+        super();
+    }
+
+    /**
+     * Returns the current log level.
+     *
+     * @return the log level
+     */
+    static SchedulerLogLevel getLevel() {
+
+        return level;
+    }
+
+    /**
+     * Sets the current log level.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the level
+     * is <code>null</code>.
+     *
+     * @param newLevel the log level
+     */
+    static void setLevel(SchedulerLogLevel newLevel) {
+
+        if (newLevel == null) {
+            throw new IllegalArgumentException("SCHED_ERR_LOG_LEVEL_INVALID"); //$NON-NLS-1$
+        }
+        level = newLevel;
+    }
+
+    /**
+     * Checks whether messages of a level are logged.
+     *
+     * @param messageLevel the message level
+     *
+     * @return whether the messages are logged
+     */
+    static boolean isEnabled(SchedulerLogLevel messageLevel) {
+
+        return messageLevel.compareTo(level) <= 0 && level != SchedulerLogLevel.OFF;
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full.
+     *
+     * @return the number of dropped messages
+     */
+    static long getDroppedCount() {
+
+        return DROPPED.sum();
+    }
+
+    /**
+     * Logs a message without arguments.
+     *
+     * @param messageLevel the message level
+     * @param message the message
+     */
+    static void log(SchedulerLogLevel messageLevel, String message) {
+
+        if (isEnabled(messageLevel)) {
+            enqueue(new Record(messageLevel, message, null));
+        }
+    }
+
+    /**
+     * Logs a message with one argument.
+     *
+     * @param messageLevel the message level
+     * @param pattern the message pattern
+     * @param arg the argument
+     */
+    static void log(SchedulerLogLevel messageLevel, String pattern, Object arg) {
+
+        if (isEnabled(messageLevel)) {
+            enqueue(new Record(messageLevel, pattern, new Object[] {arg}));
+        }
+    }
+
+    /**
+     * Logs a message with two arguments.
+     *
+     * @param messageLevel the message level
+     * @param pattern the message pattern
+     * @param arg1 the first argument
+     * @param arg2 the second argument
+     */
+    static void log(SchedulerLogLevel messageLevel, String pattern, Object arg1, Object arg2) {
+
+        if (isEnabled(messageLevel)) {
+            enqueue(new Record(messageLevel, pattern, new Object[] {arg1, arg2}));
+        }
+    }
+
+    /**
+     * Logs a message with three arguments.
+     *
+     * @param messageLevel the message level
+     * @param pattern the message pattern
+     * @param arg1 the first argument
+     * @param arg2 the second argument
+     * @param arg3 the third argument
+     */
+    static void log(SchedulerLogLevel messageLevel, String pattern, Object arg1, Object arg2, Object arg3) {
+
+        if (isEnabled(messageLevel)) {
+            enqueue(new Record(messageLevel, pattern, new Object[] {arg1, arg2, arg3}));
+        }
+    }
+
+    /**
+     * Waits until the queued messages are written.
+     *
+     * @param timeoutMillis the maximum time to wait, in milliseconds
+     *
+     * @return whether all the messages were written
+     *
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    static boolean flush(long timeoutMillis)
+        throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!QUEUE.isEmpty() || IN_FLIGHT.sum() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Puts a message in the queue, or drops it if the queue is full, and starts the writer thread
+     * if needed.
+     *
+     * @param record the message
+     */
+    private static void enqueue(Record record) {
+
+        if (!QUEUE.offer(record)) {
+            DROPPED.increment();
+        }
+
+        if (writerThread == null) {
+            startWriter();
+        }
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    private static synchronized void startWriter() {
+
+        if (writerThread == null) {
+            SchedulerThreadFactory threadFactory = new SchedulerThreadFactory(WRITER_THREAD_NAME_PREFIX, true);
+            Thread thread = threadFactory.newThread(new Runnable() {
+
+                /**
+                 * Writes the queued messages until the JVM ends.
+                 */
+                public void run() {
+
+                    writeMessages();
+                }
+            });
+            thread.start();
+            writerThread = thread;
+        }
+    }
+
+    /**
+     * Takes the queued messages and writes them in batches, with a single write to the standard
+     * output for each batch.
+     */
+    private static void writeMessages() {
+
+        List<Record> batch = new ArrayList<Record>(BATCH_SIZE);
+        StringBuilder text = new StringBuilder();
+
+        while (true) {
+            try {
+                Record first = QUEUE.take();
+                IN_FLIGHT.increment();
+                batch.add(first);
+            } catch (InterruptedException ie) {
+                continue;
+            }
+
+            int taken = QUEUE.drainTo(batch, BATCH_SIZE - 1);
+            IN_FLIGHT.add(taken);
+
+            for (Record record : batch) {
+                record.format(text);
+                text.append(System.lineSeparator());
+            }
+
+            PrintStream out = System.out;
+            out.print(text);
+            out.flush();
+
+            IN_FLIGHT.add(-batch.size());
+            batch.clear();
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * A queued message.
+     */
+    private static final class Record {
+
+        /**
+         * The message level.
+         */
+        private final SchedulerLogLevel level;
+
+        /**
+         * The message pattern.
+         */
+        private final String pattern;
+
+        /**
+         * The message arguments, or <code>null</code>.
+         */
+        private final Object[] args;
+
+        /**
+         * Constructor that sets the message fields.
+         *
+         * @param level the message level
+         * @param pattern the message pattern
+         * @param args the message arguments, or <code>null</code>
+         */
+        private Record(SchedulerLogLevel level, String pattern, Object[] args) {
+
+            super();
+            this.level = level;
+            this.pattern = pattern;
+            this.args = args;
+        }
+
+        /**
+         * Formats the message, replacing each placeholder with the next argument. Arguments
+         * without a placeholder are appended to the message.
+         *
+         * @param text the buffer where the message is formatted
+         */
+        private void format(StringBuilder text) {
+
+            text.append(level.name()).append(' ');
+
+            if (args == null) {
+                text.append(pattern);
+                return;
+            }
+
+            int from = 0;
+            int arg = 0;
+            int placeholder = pattern.indexOf(PLACEHOLDER);
+            while (placeholder >= 0 && arg < args.length) {
+                text.append(pattern, from, placeholder).append(args[arg++]);
+                from = placeholder + PLACEHOLDER.length();
+                placeholder = pattern.indexOf(PLACEHOLDER, from);
+            }
+            text.append(pattern, from, pattern.length());
+
+            while (arg < args.length) {
+                text.append(' ').append(args[arg++]);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Levels of the scheduler log messages. A level enables its messages and the messages of the
+ * levels before it, e.g. <code>WARN</code> enables warnings and errors.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#setLogLevel(SchedulerLogLevel)
+ */
+public enum SchedulerLogLevel {
+
+    /**
+     * No message is logged.
+     */
+    OFF,
+
+    /**
+     * Failures of the tasks and of the scheduler.
+     */
+    ERROR,
+
+    /**
+     * Abnormal situations handled by the scheduler, e.g. missed starts or lost leases.
+     */
+    WARN,
+
+    /**
+     * Task lifecycle outcomes, e.g. task scheduled, started or stopped. This is the default level.
+     */
+    INFO,
+
+    /**
+     * Intermediate task lifecycle steps, e.g. task starting or stopping.
+     */
+    DEBUG
+}
@@ -0,0 +1,191 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Management interface with the scheduler metrics.
+ *
+ * Durations are reported in nanoseconds and scheduling lags (the delay between the scheduled and
+ * the actual start of the tasks) in milliseconds. Percentiles are upper bounds with a relative
+ * error below 12.5%.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#registerMBeans(String)
+ */
+public interface SchedulerMXBean {
+
+    /**
+     * Returns the number of scheduled tasks.
+     *
+     * @return the number of scheduled tasks
+     */
+    int getTaskCount();
+
+    /**
+     * Returns the number of tasks that are starting, running or stopping.
+     *
+     * @return the number of running tasks
+     */
+    int getRunningTaskCount();
+
+    /**
+     * Returns the number of scheduler shards.
+     *
+     * @return the number of scheduler shards
+     */
+    int getShardCount();
+
+    /**
+     * Returns the number of scheduler ticks, i.e. the number of task checks done when a task
+     * deadline expires.
+     *
+     * @return the number of scheduler ticks
+     */
+    long getTickCount();
+
+    /**
+     * Returns the mean tick duration.
+     *
+     * @return the mean tick duration in nanoseconds
+     */
+    double getTickMeanNanos();
+
+    /**
+     * Returns the maximum tick duration.
+     *
+     * @return the maximum tick duration in nanoseconds
+     */
+    long getTickMaxNanos();
+
+    /**
+     * Returns the 99th percentile of the tick duration.
+     *
+     * @return the 99th percentile of the tick duration in nanoseconds
+     */
+    long getTickP99Nanos();
+
+    /**
+     * Returns the mean scheduling lag of all the tasks.
+     *
+     * @return the mean scheduling lag in milliseconds
+     */
+    double getLagMeanMillis();
+
+    /**
+     * Returns the maximum scheduling lag of all the tasks.
+     *
+     * @return the maximum scheduling lag in milliseconds
+     */
+    long getLagMaxMillis();
+
+    /**
+     * Returns the 99th percentile of the scheduling lag of all the tasks.
+     *
+     * @return the 99th percentile of the scheduling lag in milliseconds
+     */
+    long getLagP99Millis();
+
+    /**
+     * Returns the number of task starts.
+     *
+     * @return the number of task starts
+     */
+    long getStartCount();
+
+    /**
+     * Returns the number of task kills.
+     *
+     * @return the number of task kills
+     */
+    long getKillCount();
+
+    /**
+     * Returns the number of task errors, i.e. exceptions thrown when a task is prepared to start
+     * or stop or while its logic is executed.
+     *
+     * @return the number of task errors
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the number of restarts of failed daemons.
+     *
+     * @return the number of restarts
+     */
+    long getRestartCount();
+
+    /**
+     * Returns the number of times the circuit of a daemon in a crash loop opened, i.e. its
+     * consecutive failures exceeded the maximum restarts of its supervision policy.
+     *
+     * @return the number of circuit openings
+     */
+    long getCircuitOpenCount();
+
+    /**
+     * Returns the number of task runs and calls of task logic timed out by the watchdog, i.e.
+     * longer than the task maximum run time or iteration timeout.
+     *
+     * @return the number of timeouts
+     */
+    long getTimeoutCount();
+
+    /**
+     * Returns the number of missed task starts, i.e. starts checked later than the task misfire
+     * tolerance or after the task window ended.
+     *
+     * @return the number of missed task starts
+     */
+    long getMisfireCount();
+
+    /**
+     * Returns the maximum delay of the missed task starts.
+     *
+     * @return the maximum delay in milliseconds
+     */
+    long getMisfireLagMaxMillis();
+
+    /**
+     * Returns the number of task lifecycle events dropped because the event buffer was full,
+     * i.e. the scheduler listeners fell behind.
+     *
+     * @return the number of dropped events
+     */
+    long getDroppedEventCount();
+
+    /**
+     * Returns the number of log messages dropped because the log queue was full, i.e. the log
+     * writer fell behind.
+     *
+     * @return the number of dropped log messages
+     */
+    long getDroppedLogCount();
+
+    /**
+     * Returns the number of tasks waiting in the admission queue for a concurrency slot.
+     *
+     * @return the admission queue length
+     */
+    int getAdmissionQueueLength();
+
+    /**
+     * Returns the mean time the task starts waited in the admission queue.
+     *
+     * @return the mean wait time in milliseconds
+     */
+    double getAdmissionWaitMeanMillis();
+
+    /**
+     * Returns the maximum time a task start waited in the admission queue.
+     *
+     * @return the maximum wait time in milliseconds
+     */
+    long getAdmissionWaitMaxMillis();
+
+    /**
+     * Returns the 99th percentile of the time the task starts waited in the admission queue.
+     *
+     * @return the 99th percentile of the wait time in milliseconds
+     */
+    long getAdmissionWaitP99Millis();
+}
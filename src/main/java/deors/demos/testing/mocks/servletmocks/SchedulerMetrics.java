@@ -0,0 +1,462 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a scheduler. Values are recorded with lock-free counters and histograms, so the
+ * instrumentation does not slow down the scheduler threads.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class SchedulerMetrics
+    implements SchedulerMXBean {
+
+    /**
+     * The scheduler.
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The tick durations, in nanoseconds.
+     */
+    private final LatencyHistogram ticks = new LatencyHistogram();
+
+    /**
+     * The scheduling lags of all the tasks, in milliseconds.
+     */
+    private final LatencyHistogram lags = new LatencyHistogram();
+
+    /**
+     * The admission queue wait times of all the tasks, in milliseconds.
+     */
+    private final LatencyHistogram admissionWaits = new LatencyHistogram();
+
+    /**
+     * The number of task starts.
+     */
+    private final LongAdder starts = new LongAdder();
+
+    /**
+     * The number of task kills.
+     */
+    private final LongAdder kills = new LongAdder();
+
+    /**
+     * The number of task errors.
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * The number of restarts of failed daemons.
+     */
+    private final LongAdder restarts = new LongAdder();
+
+    /**
+     * The number of times the circuit of a daemon in a crash loop opened.
+     */
+    private final LongAdder circuitOpens = new LongAdder();
+
+    /**
+     * The number of task runs and calls of task logic timed out by the watchdog.
+     */
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * The delays of the missed task starts, in milliseconds.
+     */
+    private final LatencyHistogram misfires = new LatencyHistogram();
+
+    /**
+     * Constructor that sets the scheduler.
+     *
+     * @param scheduler the scheduler
+     */
+    SchedulerMetrics(Scheduler scheduler) {
+
+        super();
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Records a tick duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void recordTick(long nanos) {
+
+        ticks.record(nanos);
+    }
+
+    /**
+     * Records the scheduling lag of a task start.
+     *
+     * @param millis the lag in milliseconds
+     */
+    void recordLag(long millis) {
+
+        lags.record(millis);
+    }
+
+    /**
+     * Records the time a task start waited in the admission queue.
+     *
+     * @param millis the wait time in milliseconds
+     */
+    void recordAdmissionWait(long millis) {
+
+        admissionWaits.record(millis);
+    }
+
+    /**
+     * Records a missed task start.
+     *
+     * @param millis the delay of the start in milliseconds
+     */
+    void recordMisfire(long millis) {
+
+        misfires.record(millis);
+    }
+
+    /**
+     * Records a task start.
+     */
+    void recordStart() {
+
+        starts.increment();
+    }
+
+    /**
+     * Records a task kill.
+     */
+    void recordKill() {
+
+        kills.increment();
+    }
+
+    /**
+     * Records a task error.
+     */
+    void recordError() {
+
+        errors.increment();
+    }
+
+    /**
+     * Records the restart of a failed daemon.
+     */
+    void recordRestart() {
+
+        restarts.increment();
+    }
+
+    /**
+     * Records the opening of the circuit of a daemon in a crash loop.
+     */
+    void recordCircuitOpen() {
+
+        circuitOpens.increment();
+    }
+
+    /**
+     * Records a task run or call of task logic timed out by the watchdog.
+     */
+    void recordTimeout() {
+
+        timeouts.increment();
+    }
+
+    /**
+     * Returns the number of scheduled tasks.
+     *
+     * @return the number of scheduled tasks
+     *
+     * @see SchedulerMXBean#getTaskCount()
+     */
+    public int getTaskCount() {
+
+        return scheduler.getTaskRegistry().size();
+    }
+
+    /**
+     * Returns the number of tasks that are starting, running or stopping.
+     *
+     * @return the number of running tasks
+     *
+     * @see SchedulerMXBean#getRunningTaskCount()
+     */
+    public int getRunningTaskCount() {
+
+        int running = 0;
+        for (SchedulerTask task : scheduler.getTaskRegistry().values()) {
+            if (task.isStarting() || task.isExecuting()) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Returns the number of scheduler shards.
+     *
+     * @return the number of scheduler shards
+     *
+     * @see SchedulerMXBean#getShardCount()
+     */
+    public int getShardCount() {
+
+        return scheduler.getShardCount();
+    }
+
+    /**
+     * Returns the number of scheduler ticks.
+     *
+     * @return the number of scheduler ticks
+     *
+     * @see SchedulerMXBean#getTickCount()
+     */
+    public long getTickCount() {
+
+        return ticks.getCount();
+    }
+
+    /**
+     * Returns the mean tick duration.
+     *
+     * @return the mean tick duration in nanoseconds
+     *
+     * @see SchedulerMXBean#getTickMeanNanos()
+     */
+    public double getTickMeanNanos() {
+
+        return ticks.getMean();
+    }
+
+    /**
+     * Returns the maximum tick duration.
+     *
+     * @return the maximum tick duration in nanoseconds
+     *
+     * @see SchedulerMXBean#getTickMaxNanos()
+     */
+    public long getTickMaxNanos() {
+
+        return ticks.getMax();
+    }
+
+    /**
+     * Returns the 99th percentile of the tick duration.
+     *
+     * @return the 99th percentile of the tick duration in nanoseconds
+     *
+     * @see SchedulerMXBean#getTickP99Nanos()
+     */
+    public long getTickP99Nanos() {
+
+        return ticks.getPercentile(99);
+    }
+
+    /**
+     * Returns the mean scheduling lag of all the tasks.
+     *
+     * @return the mean scheduling lag in milliseconds
+     *
+     * @see SchedulerMXBean#getLagMeanMillis()
+     */
+    public double getLagMeanMillis() {
+
+        return lags.getMean();
+    }
+
+    /**
+     * Returns the maximum scheduling lag of all the tasks.
+     *
+     * @return the maximum scheduling lag in milliseconds
+     *
+     * @see SchedulerMXBean#getLagMaxMillis()
+     */
+    public long getLagMaxMillis() {
+
+        return lags.getMax();
+    }
+
+    /**
+     * Returns the 99th percentile of the scheduling lag of all the tasks.
+     *
+     * @return the 99th percentile of the scheduling lag in milliseconds
+     *
+     * @see SchedulerMXBean#getLagP99Millis()
+     */
+    public long getLagP99Millis() {
+
+        return lags.getPercentile(99);
+    }
+
+    /**
+     * Returns the number of task starts.
+     *
+     * @return the number of task starts
+     *
+     * @see SchedulerMXBean#getStartCount()
+     */
+    public long getStartCount() {
+
+        return starts.sum();
+    }
+
+    /**
+     * Returns the number of task kills.
+     *
+     * @return the number of task kills
+     *
+     * @see SchedulerMXBean#getKillCount()
+     */
+    public long getKillCount() {
+
+        return kills.sum();
+    }
+
+    /**
+     * Returns the number of task errors.
+     *
+     * @return the number of task errors
+     *
+     * @see SchedulerMXBean#getErrorCount()
+     */
+    public long getErrorCount() {
+
+        return errors.sum();
+    }
+
+    /**
+     * Returns the number of restarts of failed daemons.
+     *
+     * @return the number of restarts
+     *
+     * @see SchedulerMXBean#getRestartCount()
+     */
+    public long getRestartCount() {
+
+        return restarts.sum();
+    }
+
+    /**
+     * Returns the number of times the circuit of a daemon in a crash loop opened.
+     *
+     * @return the number of circuit openings
+     *
+     * @see SchedulerMXBean#getCircuitOpenCount()
+     */
+    public long getCircuitOpenCount() {
+
+        return circuitOpens.sum();
+    }
+
+    /**
+     * Returns the number of task runs and calls of task logic timed out by the watchdog.
+     *
+     * @return the number of timeouts
+     *
+     * @see SchedulerMXBean#getTimeoutCount()
+     */
+    public long getTimeoutCount() {
+
+        return timeouts.sum();
+    }
+
+    /**
+     * Returns the number of missed task starts.
+     *
+     * @return the number of missed task starts
+     *
+     * @see SchedulerMXBean#getMisfireCount()
+     */
+    public long getMisfireCount() {
+
+        return misfires.getCount();
+    }
+
+    /**
+     * Returns the maximum delay of the missed task starts.
+     *
+     * @return the maximum delay in milliseconds
+     *
+     * @see SchedulerMXBean#getMisfireLagMaxMillis()
+     */
+    public long getMisfireLagMaxMillis() {
+
+        return misfires.getMax();
+    }
+
+    /**
+     * Returns the number of task lifecycle events dropped because the listeners fell behind.
+     *
+     * @return the number of dropped events
+     *
+     * @see SchedulerMXBean#getDroppedEventCount()
+     */
+    public long getDroppedEventCount() {
+
+        return scheduler.getEventDispatcher().getDroppedCount();
+    }
+
+    /**
+     * Returns the number of log messages dropped because the log writer fell behind.
+     *
+     * @return the number of dropped log messages
+     *
+     * @see SchedulerMXBean#getDroppedLogCount()
+     */
+    public long getDroppedLogCount() {
+
+        return SchedulerLog.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of tasks waiting in the admission queue.
+     *
+     * @return the admission queue length
+     *
+     * @see SchedulerMXBean#getAdmissionQueueLength()
+     */
+    public int getAdmissionQueueLength() {
+
+        return scheduler.getAdmission().getQueueLength();
+    }
+
+    /**
+     * Returns the mean time the task starts waited in the admission queue.
+     *
+     * @return the mean wait time in milliseconds
+     *
+     * @see SchedulerMXBean#getAdmissionWaitMeanMillis()
+     */
+    public double getAdmissionWaitMeanMillis() {
+
+        return admissionWaits.getMean();
+    }
+
+    /**
+     * Returns the maximum time a task start waited in the admission queue.
+     *
+     * @return the maximum wait time in milliseconds
+     *
+     * @see SchedulerMXBean#getAdmissionWaitMaxMillis()
+     */
+    public long getAdmissionWaitMaxMillis() {
+
+        return admissionWaits.getMax();
+    }
+
+    /**
+     * Returns the 99th percentile of the time the task starts waited in the admission queue.
+     *
+     * @return the 99th percentile of the wait time in milliseconds
+     *
+     * @see SchedulerMXBean#getAdmissionWaitP99Millis()
+     */
+    public long getAdmissionWaitP99Millis() {
+
+        return admissionWaits.getPercentile(99);
+    }
+}
@@ -1,10 +1,12 @@
 package deors.demos.testing.mocks.servletmocks;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -20,7 +22,9 @@ import javax.servlet.http.HttpServletResponse;
  * Servlet used to initialize and manager a task scheduler using HTTP request.
  *
  * The scheduler is started when the servlet is initialized if the <code>iniFileName</code>
- * servlet parameter is informed.
+ * servlet parameter is informed. If the <code>journalFileName</code> servlet parameter is
+ * informed, the changes made with the servlet commands are recorded in that journal file and
+ * replayed each time the scheduler is started.
  *
  * To change the schedule list, HTTP GET and POST requests can be sent to the servlet. The
  * <code>command</code> request parameter value is the configuration command that is requested:
@@ -49,6 +53,11 @@ import javax.servlet.http.HttpServletResponse;
  * starting time the configured daemon id string. Scheduling times are in HH:MM:SS format.</li>
  * </ol>
  *
+ * For the <code>add</code> and <code>schedule</code> commands, the <code>taskStartTime</code>
+ * parameter can also be a cron expression. In that case, the <code>taskStopTime</code> parameter
+ * is the maximum run time of each execution in HH:MM:SS format, or the daemon id string if the
+ * task is not stopped by the scheduler.
+ *
  * @author deors
  * @version 1.0
  */
@@ -60,6 +69,17 @@ public final class SchedulerServlet
      */
     private static final long serialVersionUID = 4170931961517840836L;
 
+    /**
+     * The kill thread name prefix.
+     */
+    private static final String KILL_THREAD_NAME_PREFIX = "scheduler-kill-"; //$NON-NLS-1$
+
+    /**
+     * The factory of the threads that kill tasks.
+     */
+    private static final SchedulerThreadFactory KILL_THREAD_FACTORY =
+        new SchedulerThreadFactory(KILL_THREAD_NAME_PREFIX, true);
+
     /**
      * The scheduler.
      */
@@ -75,6 +95,11 @@ public final class SchedulerServlet
      */
     private static String lastIniFileName;
 
+    /**
+     * The schedule journal file name, or <code>null</code> if changes are not journaled.
+     */
+    private static String journalFileName;
+
     /**
      * Request parameter with the configuration command.
      */
@@ -120,6 +145,11 @@ public final class SchedulerServlet
      */
     private static final String PARAM_INI_FILE_NAME = "iniFileName"; //$NON-NLS-1$
 
+    /**
+     * Servlet parameter that contains the schedule journal file name.
+     */
+    private static final String PARAM_JOURNAL_FILE_NAME = "journalFileName"; //$NON-NLS-1$
+
     /**
      * Request parameter that contains the task name.
      */
@@ -160,6 +190,16 @@ public final class SchedulerServlet
      */
     private static final String TEMPLATE_TASK_INFO = "TASK_INFO"; //$NON-NLS-1$
 
+    /**
+     * Separator of the upstream task names in the task info.
+     */
+    private static final String UPSTREAM_TASKS_SEPARATOR = ", "; //$NON-NLS-1$
+
+    /**
+     * Token used in templates to print the task statistics.
+     */
+    private static final String TEMPLATE_TASK_STATS = "TASK_STATS"; //$NON-NLS-1$
+
     /**
      * Token used in templates to print the task name.
      */
@@ -421,6 +461,8 @@ public final class SchedulerServlet
 
         String iniFileName = config.getInitParameter(PARAM_INI_FILE_NAME);
 
+        journalFileName = config.getInitParameter(PARAM_JOURNAL_FILE_NAME);
+
         if (iniFileName == null || iniFileName.isEmpty()) {
             runScheduler();
         } else {
@@ -442,6 +484,8 @@ public final class SchedulerServlet
 
         sch = new Scheduler();
 
+        openJournal();
+
         sch.schedulerThread = new Thread(sch);
         sch.schedulerThread.start();
 
@@ -449,6 +493,25 @@ public final class SchedulerServlet
         lastIniFileName = null;
     }
 
+    /**
+     * Opens the schedule journal if the <code>journalFileName</code> servlet parameter was given.
+     *
+     * @throws ServletException a servlet exception
+     */
+    private void openJournal()
+        throws ServletException {
+
+        if (journalFileName == null || journalFileName.length() == 0) {
+            return;
+        }
+
+        try {
+            sch.openJournal(new File(journalFileName));
+        } catch (IOException ioe) {
+            throw new ServletException("SCHED_LOG_EXCEPTION_JOURNAL_FILE_INVALID", ioe); //$NON-NLS-1$
+        }
+    }
+
     /**
      * Runs the scheduler.
      *
@@ -470,6 +533,8 @@ public final class SchedulerServlet
         try {
             sch = new Scheduler(iniFileName);
 
+            openJournal();
+
             sch.schedulerThread = new Thread(sch);
             sch.schedulerThread.start();
         } catch (IOException ioe) {
@@ -674,7 +739,28 @@ public final class SchedulerServlet
 
         String taskDescription = parseTaskDescription(request, newErrors);
 
-        Calendar taskStartTime = parseTaskStartTime(request, newErrors);
+        String tempStartTime = request.getParameter(PARAM_TASK_START_TIME);
+
+        if (CronExpression.isCronExpression(tempStartTime)) {
+            CronExpression taskCronExpression = parseTaskCronExpression(tempStartTime, newErrors);
+
+            long taskWindowMillis = parseTaskWindow(request, newErrors);
+
+            if (newErrors.isEmpty()) {
+                try {
+                    scheduleTask(taskName, taskClassName, taskDescription, taskCronExpression, taskWindowMillis);
+                    messages.add("SCHED_SERVLET_LOG_TASK_SCHEDULED" + taskName); //$NON-NLS-1$
+
+                } catch (IllegalArgumentException iae) {
+                    errors.add(iae.getMessage());
+                }
+            } else {
+                errors.addAll(newErrors);
+            }
+            return;
+        }
+
+        Calendar taskStartTime = parseTaskStartTime(tempStartTime, newErrors);
 
         Calendar taskStopTime = parseTaskStopTime(request, newErrors);
 
@@ -708,7 +794,33 @@ public final class SchedulerServlet
 
         String taskName = parseTaskName(request, newErrors);
 
-        Calendar taskStartTime = parseTaskStartTime(request, newErrors);
+        String tempStartTime = request.getParameter(PARAM_TASK_START_TIME);
+
+        if (CronExpression.isCronExpression(tempStartTime)) {
+            CronExpression taskCronExpression = parseTaskCronExpression(tempStartTime, newErrors);
+
+            long taskWindowMillis = parseTaskWindow(request, newErrors);
+
+            if (newErrors.isEmpty()) {
+                if (sch.existsTask(taskName)) {
+
+                    try {
+                        scheduleTask(taskName, (Class<?>) null, null, taskCronExpression, taskWindowMillis);
+                        messages.add("SCHED_SERVLET_LOG_TASK_SCHEDULED" + taskName); //$NON-NLS-1$
+
+                    } catch (IllegalArgumentException iae) {
+                        errors.add(iae.getMessage());
+                    }
+                } else {
+                    errors.add("SCHED_SERVLET_LOG_TASK_NOT_EXIST" + taskName); //$NON-NLS-1$
+                }
+            } else {
+                errors.addAll(newErrors);
+            }
+            return;
+        }
+
+        Calendar taskStartTime = parseTaskStartTime(tempStartTime, newErrors);
 
         Calendar taskStopTime = parseTaskStopTime(request, newErrors);
 
@@ -793,14 +905,13 @@ public final class SchedulerServlet
     /**
      * Parses the task start time.
      *
-     * @param request the HTTP request
+     * @param tempStartTime the task start time request parameter
      * @param newErrors list for errors during validation
      *
      * @return the task start time
      */
-    private Calendar parseTaskStartTime(HttpServletRequest request, List<String> newErrors) {
+    private Calendar parseTaskStartTime(String tempStartTime, List<String> newErrors) {
 
-        String tempStartTime = request.getParameter(PARAM_TASK_START_TIME);
         Calendar taskStartTime = null;
 
         if (tempStartTime == null || tempStartTime.length() == 0) {
@@ -820,6 +931,59 @@ public final class SchedulerServlet
         return taskStartTime;
     }
 
+    /**
+     * Parses the task cron expression, sent as the task start time.
+     *
+     * @param tempStartTime the task start time request parameter
+     * @param newErrors list for errors during validation
+     *
+     * @return the task cron expression
+     */
+    private CronExpression parseTaskCronExpression(String tempStartTime, List<String> newErrors) {
+
+        CronExpression taskCronExpression = null;
+
+        try {
+            taskCronExpression = new CronExpression(tempStartTime);
+
+        } catch (IllegalArgumentException iae) {
+
+            newErrors.add("SCHED_SERVLET_ERR_INVALID_TASK_START"); //$NON-NLS-1$
+        }
+
+        return taskCronExpression;
+    }
+
+    /**
+     * Parses the cron task window, sent as the task stop time.
+     *
+     * @param request the HTTP request
+     * @param newErrors list for errors during validation
+     *
+     * @return the task window in milliseconds
+     */
+    private long parseTaskWindow(HttpServletRequest request, List<String> newErrors) {
+
+        String tempWindow = request.getParameter(PARAM_TASK_STOP_TIME);
+        long taskWindowMillis = SchedulerTask.UNLIMITED_WINDOW;
+
+        if (tempWindow == null || tempWindow.length() == 0) {
+
+            newErrors.add("SCHED_SERVLET_ERR_NO_TASK_STOP"); //$NON-NLS-1$
+
+        } else {
+            try {
+                taskWindowMillis = Scheduler.parseWindow(tempWindow);
+
+            } catch (IllegalArgumentException iae) {
+
+                newErrors.add("SCHED_SERVLET_ERR_INVALID_TASK_STOP"); //$NON-NLS-1$
+            }
+        }
+
+        return taskWindowMillis;
+    }
+
     /**
      * Parses the task stop time.
      *
@@ -1104,16 +1268,24 @@ public final class SchedulerServlet
         replacements.put(TEMPLATE_TASK_DESCRIPTION, task.getTaskDescription());
         replacements.put(TEMPLATE_TASK_CLASS_NAME, task.getClass().getName());
 
+        // the task state is read once so all the row is consistent
+        SchedulerTaskState state = task.getTaskState();
+
         // task state
-        prepareTaskState(task, replacements);
+        prepareTaskState(task, state, replacements);
 
         // task info
         prepareTaskInformation(task, replacements);
 
+        // task statistics
+        prepareTaskStatistics(task, replacements);
+
         // task header
         templateTaskItem1.processTemplate(replacements, out);
 
-        if (task.isExecuting() || task.isStarting()) {
+        if (state == SchedulerTaskState.STARTING
+            || state == SchedulerTaskState.RUNNING
+            || state == SchedulerTaskState.STOPPING) {
             // adds stop and kill buttons
             templateTaskItem3.processTemplate(replacements, out);
         } else {
@@ -1126,22 +1298,34 @@ public final class SchedulerServlet
      * Prepares the task state.
      *
      * @param task the task information
+     * @param state the task state
      * @param replacements the replacements map
      */
-    private void prepareTaskState(SchedulerTask task, Map<String, String> replacements) {
-
-        if (task.isStarting()) {
-            replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_STARTING"); //$NON-NLS-1$
-        } else if (task.isStopping()) {
-            replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_STOPPING"); //$NON-NLS-1$
-        } else if (task.isExecuting()) {
-            if (task.taskThread == null) {
-                replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_THREAD_NULL"); //$NON-NLS-1$
-            } else {
-                replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_RUNNING" + task.taskThread.toString()); //$NON-NLS-1$
-            }
-        } else {
-            replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_IDLE"); //$NON-NLS-1$
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private void prepareTaskState(SchedulerTask task, SchedulerTaskState state,
+                                  Map<String, String> replacements) {
+
+        switch (state) {
+            case STARTING:
+                replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_STARTING"); //$NON-NLS-1$
+                break;
+            case STOPPING:
+                replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_STOPPING"); //$NON-NLS-1$
+                break;
+            case RUNNING:
+                Thread taskThread = task.taskThread;
+                if (taskThread == null || taskThread == SchedulerTask.UNBOUND_THREAD) {
+                    replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_THREAD_NULL"); //$NON-NLS-1$
+                } else {
+                    replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_RUNNING" + taskThread.toString()); //$NON-NLS-1$
+                }
+                break;
+            case KILLED:
+                replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_KILLED"); //$NON-NLS-1$
+                break;
+            default:
+                replacements.put(TEMPLATE_TASK_STATE, "SCHED_SERVLET_STATE_IDLE"); //$NON-NLS-1$
+                break;
         }
     }
 
@@ -1154,18 +1338,31 @@ public final class SchedulerServlet
     @SuppressWarnings("PMD.ConfusingTernary")
     private void prepareTaskInformation(SchedulerTask task, Map<String, String> replacements) {
 
+        long nextStart = task.getTaskNextStartMillis();
+        long nextStop = task.getTaskNextStopMillis();
+
         if (task.isDaemonTask()) {
             if (task.isDaemonExecuted()) {
                 replacements.put(TEMPLATE_TASK_INFO, "SCHED_SERVLET_INFO_DAEMON_EXECUTED"); //$NON-NLS-1$
             } else {
                 replacements.put(TEMPLATE_TASK_INFO, "SCHED_SERVLET_INFO_DAEMON_IDLE"); //$NON-NLS-1$
             }
-        } else if (task.getTaskNextStartTime() != null
-                   && task.getTaskNextStopTime() != null) {
+        } else if (task.isDependentTask()) {
+            replacements.put(TEMPLATE_TASK_INFO,
+                "SCHED_SERVLET_INFO_DEPENDENT" //$NON-NLS-1$
+                + String.join(UPSTREAM_TASKS_SEPARATOR, task.getUpstreamTasks()));
+        } else if (task.getTaskCronExpression() != null
+                   && nextStart != SchedulerTask.NOT_SCHEDULED) {
+            replacements.put(TEMPLATE_TASK_INFO,
+                "SCHED_SERVLET_INFO_CRON" //$NON-NLS-1$
+                + task.getTaskCronExpression()
+                + (nextStart == CronExpression.NEVER ? "" : dateFormatter.format(new Date(nextStart)))); //$NON-NLS-1$
+        } else if (nextStart != SchedulerTask.NOT_SCHEDULED
+                   && nextStop != SchedulerTask.NOT_SCHEDULED) {
             replacements.put(TEMPLATE_TASK_INFO,
                 "SCHED_SERVLET_INFO_SCHEDULED" //$NON-NLS-1$
-                + dateFormatter.format(task.getTaskNextStartTime().getTime())
-                + dateFormatter.format(task.getTaskNextStopTime().getTime()));
+                + dateFormatter.format(new Date(nextStart))
+                + dateFormatter.format(new Date(nextStop)));
         } else if (task.getTaskStartTime() != null
                    && task.getTaskStopTime() != null) {
             replacements.put(TEMPLATE_TASK_INFO,
@@ -1177,6 +1374,52 @@ public final class SchedulerServlet
         }
     }
 
+    /**
+     * Prepares the task statistics: the number of task logic calls, the calls per second in the
+     * current or last run, the minimum, mean, 99th percentile and maximum call durations in
+     * microseconds, and the last task error, if any.
+     *
+     * @param task the task information
+     * @param replacements the replacements map
+     */
+    private void prepareTaskStatistics(SchedulerTask task, Map<String, String> replacements) {
+
+        SchedulerTaskMXBean metrics = task.getMetrics();
+        long iterations = metrics.getIterationCount();
+
+        StringBuilder stats = new StringBuilder();
+        if (iterations == 0) {
+            stats.append("SCHED_SERVLET_STATS_NOT_AVAILABLE"); //$NON-NLS-1$
+        } else {
+            stats.append("SCHED_SERVLET_STATS") //$NON-NLS-1$
+                .append(iterations)
+                .append(' ').append(Math.round(metrics.getIterationThroughput()))
+                .append(' ').append(toMicros(metrics.getIterationMinNanos()))
+                .append(' ').append(toMicros(Math.round(metrics.getIterationMeanNanos())))
+                .append(' ').append(toMicros(metrics.getIterationP99Nanos()))
+                .append(' ').append(toMicros(metrics.getIterationMaxNanos()));
+        }
+
+        String lastError = metrics.getLastError();
+        if (lastError != null) {
+            stats.append("SCHED_SERVLET_STATS_LAST_ERROR").append(lastError); //$NON-NLS-1$
+        }
+
+        replacements.put(TEMPLATE_TASK_STATS, stats.toString());
+    }
+
+    /**
+     * Converts a duration in nanoseconds to microseconds.
+     *
+     * @param nanos the duration in nanoseconds
+     *
+     * @return the duration in microseconds
+     */
+    private static long toMicros(long nanos) {
+
+        return nanos / 1000;
+    }
+
     /**
      * Checks the existence of a task with the given name.
      *
@@ -1193,6 +1436,8 @@ public final class SchedulerServlet
      * Kills a task. If the task does not exist or it is not running, the method does nothing. The
      * killing is done in another thread, because the servlet catches the
      * <code>java.lang.TreadDeath</code> error and does not throw it, so the thread does not stop.
+     * The thread is not taken from the scheduler task executor, so a kill never waits behind the
+     * stuck tasks it is meant to kill.
      *
      * @param taskName the task name
      *
@@ -1200,22 +1445,23 @@ public final class SchedulerServlet
      */
     public static void killTask(String taskName) {
 
-        if (sch == null) {
+        final Scheduler s = sch;
+        if (s == null) {
             return;
         }
 
         final String t = taskName;
 
-        Thread killThread = new Thread() {
+        Thread killThread = KILL_THREAD_FACTORY.newThread(new Runnable() {
 
             /**
              * Forces the killing of a task.
              */
             public void run() {
 
-                sch.killTask(t);
+                s.killTask(t);
             }
-        };
+        });
 
         killThread.start();
     }
@@ -1261,6 +1507,47 @@ public final class SchedulerServlet
         }
     }
 
+    /**
+     * Schedules a new cron task or re-schedules an existing task as a cron task.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds
+     */
+    public static void scheduleTask(String taskName, Class<?> taskClass, String taskDescription,
+                                    CronExpression taskCronExpression, long taskWindowMillis) {
+
+        if (sch != null) {
+            sch.scheduleTask(taskName, taskClass, taskDescription, taskCronExpression, taskWindowMillis);
+        }
+    }
+
+    /**
+     * Schedules a new cron task or re-schedules an existing task as a cron task.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task class
+     * could not be successfully created.
+     *
+     * @param taskName the task name
+     * @param taskClassName the task class name
+     * @param taskDescription the task description
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds
+     */
+    public static void scheduleTask(String taskName, String taskClassName,
+                                    String taskDescription, CronExpression taskCronExpression,
+                                    long taskWindowMillis) {
+
+        if (sch != null) {
+            sch.scheduleTask(taskName, taskClassName, taskDescription, taskCronExpression, taskWindowMillis);
+        }
+    }
+
     /**
      * Stops and removes all tasks from the scheduling table and ends the scheduler thread.
      */
@@ -1303,6 +1590,7 @@ public final class SchedulerServlet
     static void resetScheduler() {
 
         lastIniFileName = null;
+        journalFileName = null;
         initialized = false;
         sch = null;
     }
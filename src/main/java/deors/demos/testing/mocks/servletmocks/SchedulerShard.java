@@ -0,0 +1,300 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler shard. Each shard owns a partition of the scheduler tasks, selected by the task
+ * name hash, and checks them in its own thread using its own deadline queue, so a task that is
+ * slow to start only delays the tasks in the same shard.
+ *
+ * The deadline queue is a binary heap where each entry knows its position, so the entry
+ * superseded by a schedule change is removed in logarithmic time and the queue holds at most
+ * one entry per task.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#setShardCount(int)
+ */
+final class SchedulerShard
+    implements Runnable {
+
+    /**
+     * The shard thread name prefix.
+     */
+    private static final String SHARD_THREAD_NAME_PREFIX = "scheduler-shard-"; //$NON-NLS-1$
+
+    /**
+     * The scheduler that owns the shard.
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The shard index.
+     */
+    private final int index;
+
+    /**
+     * The initial capacity of the deadline queue.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The deadline queue with the next instant when each task in the shard must be checked, as
+     * a binary heap ordered by deadline. Guarded by this shard monitor.
+     */
+    private ScheduleEntry[] heap = new ScheduleEntry[INITIAL_CAPACITY];
+
+    /**
+     * The number of entries in the deadline queue. Guarded by this shard monitor.
+     */
+    private int size;
+
+    /**
+     * The scheduler thread the shard thread is serving. The shard thread ends when the
+     * scheduler thread changes.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile Thread owner;
+
+    /**
+     * Constructor that sets the scheduler and the shard index.
+     *
+     * @param scheduler the scheduler that owns the shard
+     * @param index the shard index
+     */
+    SchedulerShard(Scheduler scheduler, int index) {
+
+        super();
+        this.scheduler = scheduler;
+        this.index = index;
+    }
+
+    /**
+     * Returns the shard index.
+     *
+     * @return the shard index
+     */
+    int getIndex() {
+
+        return index;
+    }
+
+    /**
+     * Adds an entry to the shard deadline queue.
+     *
+     * @param entry the schedule entry
+     */
+    synchronized void offer(ScheduleEntry entry) {
+
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        siftUp(size++, entry);
+        if (entry.index == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Queues the entry of a task, removing the entry it replaces. The task entry and the queue
+     * are updated under the shard monitor, so a replaced entry is never queued after its removal.
+     *
+     * @param task the task
+     * @param entry the new schedule entry
+     */
+    synchronized void replace(SchedulerTask task, ScheduleEntry entry) {
+
+        ScheduleEntry previous = task.scheduleEntry.getAndSet(entry);
+        if (previous != null) {
+            remove(previous);
+        }
+        offer(entry);
+    }
+
+    /**
+     * Queues the entry of a task, unless the task was queued again since its last entry expired.
+     *
+     * @param task the task
+     * @param entry the new schedule entry
+     */
+    synchronized void requeue(SchedulerTask task, ScheduleEntry entry) {
+
+        if (task.scheduleEntry.compareAndSet(null, entry)) {
+            offer(entry);
+        }
+    }
+
+    /**
+     * Removes an entry from the shard deadline queue, if it is still queued.
+     *
+     * @param entry the schedule entry
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    synchronized void remove(ScheduleEntry entry) {
+
+        // after a shard count change the entry may be queued in an old shard
+        int i = entry.index;
+        if (i >= 0 && i < size && heap[i] == entry) {
+            removeAt(i);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the shard deadline queue, including the stale ones.
+     *
+     * @return the number of queued entries
+     */
+    synchronized int size() {
+
+        return size;
+    }
+
+    /**
+     * Waits for the next expired entry in the shard deadline queue.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     *
+     * @return the expired entry, or <code>null</code> if the timeout elapsed
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized ScheduleEntry poll(long timeout)
+        throws InterruptedException {
+
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            long wait = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+            if (size > 0) {
+                long delay = heap[0].getDeadline() - System.currentTimeMillis();
+                if (delay <= 0) {
+                    ScheduleEntry entry = heap[0];
+                    removeAt(0);
+                    return entry;
+                }
+                wait = Math.min(wait, delay);
+            }
+            if (wait <= 0) {
+                return null;
+            }
+            wait(wait);
+        }
+    }
+
+    /**
+     * Wakes up the shard thread without checking any task.
+     */
+    void wakeUp() {
+
+        offer(new ScheduleEntry(null, 0));
+    }
+
+    /**
+     * Removes all the entries from the shard deadline queue.
+     */
+    synchronized void clear() {
+
+        for (int i = 0; i < size; i++) {
+            heap[i].index = -1;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Starts a thread for the shard.
+     *
+     * @param schedulerThread the scheduler thread the shard thread is serving
+     */
+    void start(Thread schedulerThread) {
+
+        owner = schedulerThread;
+
+        Thread t = new Thread(this, SHARD_THREAD_NAME_PREFIX + index);
+        t.start();
+    }
+
+    /**
+     * Runs the shard checks until the scheduler thread changes.
+     */
+    public void run() {
+
+        scheduler.runShard(this, owner);
+    }
+
+    /**
+     * Removes the entry at the given heap position.
+     *
+     * @param i the heap position
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private void removeAt(int i) {
+
+        ScheduleEntry removed = heap[i];
+        removed.index = -1;
+
+        int last = --size;
+        ScheduleEntry moved = heap[last];
+        heap[last] = null;
+        if (i != last) {
+            siftDown(i, moved);
+            if (heap[i] == moved) {
+                siftUp(i, moved);
+            }
+        }
+    }
+
+    /**
+     * Moves an entry up the heap from the given position until its parent has an earlier
+     * deadline.
+     *
+     * @param i the heap position
+     * @param entry the schedule entry
+     */
+    private void siftUp(int i, ScheduleEntry entry) {
+
+        int k = i;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            ScheduleEntry p = heap[parent];
+            if (entry.getDeadline() >= p.getDeadline()) {
+                break;
+            }
+            heap[k] = p;
+            p.index = k;
+            k = parent;
+        }
+        heap[k] = entry;
+        entry.index = k;
+    }
+
+    /**
+     * Moves an entry down the heap from the given position until its children have later
+     * deadlines.
+     *
+     * @param i the heap position
+     * @param entry the schedule entry
+     */
+    private void siftDown(int i, ScheduleEntry entry) {
+
+        int k = i;
+        int half = size >>> 1;
+        while (k < half) {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if (right < size && heap[right].getDeadline() < heap[child].getDeadline()) {
+                child = right;
+            }
+            ScheduleEntry c = heap[child];
+            if (entry.getDeadline() <= c.getDeadline()) {
+                break;
+            }
+            heap[k] = c;
+            c.index = k;
+            k = child;
+        }
+        heap[k] = entry;
+        entry.index = k;
+    }
+}
@@ -1,6 +1,17 @@
 package deors.demos.testing.mocks.servletmocks;
 
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Abstract class that represents a scheduler task.
@@ -9,32 +20,43 @@ import java.util.Calendar;
  * <code>taskPrepareStart()</code>, <code>taskPrepareStop()</code> and <code>taskLogic()</code>
  * methods.
  *
+ * While the task is running, the task logic is called again as soon as it returns, unless the
+ * task has a paced execution mode, set with <code>setExecutionMode(ExecutionMode)</code> and
+ * <code>setExecutionPeriod(long)</code>, in which case the task thread is parked between calls.
+ *
+ * A daemon task runs once, unless it has a supervision policy, set with
+ * <code>setSupervisionPolicy(SupervisionPolicy)</code>, in which case it is restarted when it
+ * fails.
+ *
+ * A dependent task has no start time of its own: it is started by the scheduler each time all its
+ * upstream tasks have finished successfully, i.e. stopped without failing.
+ *
+ * The scheduler watchdog enforces the limits of the task runs, set with
+ * <code>setMaxRunTime(long)</code> and <code>setIterationTimeout(long)</code>. The task logic
+ * only sees the stop request between calls, so a call blocked forever would keep its thread
+ * busy forever; past a limit, the run fails and the watchdog escalates from a stop request to an
+ * interrupt and finally to abandoning the thread, one kill grace period apart. The task itself is
+ * not removed, and it is started again on its next start once the abandoned thread leaves the
+ * task logic.
+ *
+ * A task that is not needed anymore is closed with <code>close()</code>, which stops it and
+ * removes it from its scheduler. A running task is always reachable from its task thread, so it
+ * is never released by the garbage collector before it stops.
+ *
  * @author deors
  * @version 1.0
  */
 public abstract class SchedulerTask
-    implements Runnable {
-
-    /**
-     * The task execution flag.
-     *
-     * @see SchedulerTask#isExecuting()
-     */
-    private boolean executing;
-
-    /**
-     * The task starting flag.
-     *
-     * @see SchedulerTask#isStarting()
-     */
-    private boolean starting;
+    implements Runnable, AutoCloseable {
 
     /**
-     * The task stopping flag.
+     * The task lifecycle state. All transitions are done with compare-and-set operations, so
+     * every thread observes a consistent state without locking.
      *
-     * @see SchedulerTask#isStopping()
+     * @see SchedulerTask#getTaskState()
      */
-    private boolean stopping;
+    private final AtomicReference<SchedulerTaskState> state =
+        new AtomicReference<SchedulerTaskState>(SchedulerTaskState.IDLE);
 
     /**
      * The task name.
@@ -69,20 +91,142 @@ public abstract class SchedulerTask
     private Calendar taskStopTime;
 
     /**
-     * The task next start time.
+     * The task cron expression, or <code>null</code> if the task is a daily task or a daemon.
      *
-     * @see SchedulerTask#getTaskNextStartTime()
-     * @see SchedulerTask#setTaskNextStartTime(Calendar)
+     * @see SchedulerTask#getTaskCronExpression()
+     * @see SchedulerTask#setTaskCronExpression(CronExpression)
      */
-    private Calendar taskNextStartTime;
+    private CronExpression taskCronExpression;
 
     /**
-     * The task next stop time.
+     * The maximum run time, in milliseconds, of each execution of a cron task, or
+     * <code>UNLIMITED_WINDOW</code> if the task is not stopped by the scheduler.
      *
-     * @see SchedulerTask#getTaskNextStopTime()
-     * @see SchedulerTask#setTaskNextStopTime(Calendar)
+     * @see SchedulerTask#getTaskWindowMillis()
+     * @see SchedulerTask#setTaskWindowMillis(long)
+     */
+    private long taskWindowMillis = UNLIMITED_WINDOW;
+
+    /**
+     * The task group, used to limit the number of running tasks in the group, or
+     * <code>null</code> if the task does not belong to any group.
+     *
+     * @see SchedulerTask#getTaskGroup()
+     * @see SchedulerTask#setTaskGroup(String)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile String taskGroup;
+
+    /**
+     * The task priority. When the number of running tasks is limited, tasks with higher
+     * priority are started first.
+     *
+     * @see SchedulerTask#getTaskPriority()
+     * @see SchedulerTask#setTaskPriority(int)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile int taskPriority;
+
+    /**
+     * The policy applied when a start of the task is missed.
+     *
+     * @see SchedulerTask#getMisfirePolicy()
+     * @see SchedulerTask#setMisfirePolicy(MisfirePolicy)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile MisfirePolicy misfirePolicy = MisfirePolicy.COALESCE;
+
+    /**
+     * The maximum delay, in milliseconds, of a start that is not considered missed.
+     *
+     * @see SchedulerTask#getMisfireTolerance()
+     * @see SchedulerTask#setMisfireTolerance(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long misfireTolerance = DEFAULT_MISFIRE_TOLERANCE;
+
+    /**
+     * The mode of calling the task logic while the task is running.
+     *
+     * @see SchedulerTask#getExecutionMode()
+     * @see SchedulerTask#setExecutionMode(ExecutionMode)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile ExecutionMode executionMode = ExecutionMode.CONTINUOUS;
+
+    /**
+     * The period, in milliseconds, between the calls of the task logic in the paced modes.
+     *
+     * @see SchedulerTask#getExecutionPeriod()
+     * @see SchedulerTask#setExecutionPeriod(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long executionPeriod;
+
+    /**
+     * The maximum time, in milliseconds, of each run of the task, or zero if it is unlimited.
+     *
+     * @see SchedulerTask#getMaxRunTime()
+     * @see SchedulerTask#setMaxRunTime(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long maxRunTime;
+
+    /**
+     * The maximum time, in milliseconds, of each call of the task logic, or zero if it is
+     * unlimited.
+     *
+     * @see SchedulerTask#getIterationTimeout()
+     * @see SchedulerTask#setIterationTimeout(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long iterationTimeout;
+
+    /**
+     * Default value of the misfire tolerance, in milliseconds.
+     */
+    public static final long DEFAULT_MISFIRE_TOLERANCE = 60000;
+
+    /**
+     * The instant from which the next start is computed after a missed execution started with
+     * the <code>FIRE_NOW</code> policy, or <code>NOT_SCHEDULED</code> (used by the
+     * <code>Scheduler</code> class).
      */
-    private Calendar taskNextStopTime;
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    volatile long catchUpFrom = NOT_SCHEDULED;
+
+    /**
+     * The pattern of the task log messages, with the message key and the task name.
+     */
+    private static final String LOG_PATTERN = "{} {}"; //$NON-NLS-1$
+
+    /**
+     * Value of the cron task window when the task is not stopped by the scheduler.
+     */
+    public static final long UNLIMITED_WINDOW = Long.MAX_VALUE;
+
+    /**
+     * The task next start time, in milliseconds since the epoch, or <code>NOT_SCHEDULED</code>.
+     *
+     * @see SchedulerTask#getTaskNextStartMillis()
+     * @see SchedulerTask#setTaskNextStartMillis(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long taskNextStartMillis = NOT_SCHEDULED;
+
+    /**
+     * The task next stop time, in milliseconds since the epoch, or <code>NOT_SCHEDULED</code>.
+     *
+     * @see SchedulerTask#getTaskNextStopMillis()
+     * @see SchedulerTask#setTaskNextStopMillis(long)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long taskNextStopMillis = NOT_SCHEDULED;
+
+    /**
+     * Value of the next start and stop times when the task is not scheduled.
+     */
+    public static final long NOT_SCHEDULED = Long.MIN_VALUE;
 
     /**
      * The task thread.
@@ -91,12 +235,113 @@ public abstract class SchedulerTask
     volatile Thread taskThread;
 
     /**
-     * The task thread saved for killing it if needed (e.g. the thread
-     * is not responding to the stop signal).
+     * Placeholder for the task thread while the task waits in the executor to be run. It is
+     * never started.
+     */
+    static final Thread UNBOUND_THREAD = new Thread("scheduler-task-unbound"); //$NON-NLS-1$
+
+    /**
+     * Executor that runs the start preparation in the thread that starts the task.
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        /**
+         * Runs the command in the calling thread.
+         *
+         * @param command the command
+         */
+        public void execute(Runnable command) {
+
+            command.run();
+        }
+    };
+
+    /**
+     * The start preparation in progress, or <code>null</code> if the task is not starting.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile FutureTask<Void> prepareFuture;
+
+    /**
+     * The instant, in milliseconds since the epoch, when the start preparation in progress times
+     * out (used by the <code>Scheduler</code> class).
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    volatile long prepareDeadline = Long.MAX_VALUE;
+
+    /**
+     * Lock used to move the task to the <code>STARTING</code> state and out of it from the
+     * start preparation, so a preparation that outlived its start never takes over a later one.
+     */
+    private final Object startLock = new Object();
+
+    /**
+     * The number of the current start, incremented on each start. Guarded by the
+     * <code>startLock</code> monitor.
+     */
+    private long startGeneration;
+
+    /**
+     * Atomic updater used to bind the executor thread to the task.
+     */
+    private static final AtomicReferenceFieldUpdater<SchedulerTask, Thread> TASK_THREAD_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(SchedulerTask.class, Thread.class, "taskThread"); //$NON-NLS-1$
+
+    /**
+     * The thread running the task logic, saved for interrupting it if needed (e.g. the thread
+     * is not responding to the stop signal), or <code>null</code> if the logic is not running.
+     * It is cleared holding the <code>killLock</code> monitor.
      */
     @SuppressWarnings("PMD.AvoidUsingVolatile")
     volatile Thread taskThread4Kill;
 
+    /**
+     * Lock used to wait for the end of the task logic and to interrupt its thread only while it
+     * is still running the logic.
+     */
+    private final Object killLock = new Object();
+
+    /**
+     * The scheduler that owns this task, or <code>null</code> if the task is not scheduled
+     * (used to wake up the scheduler when the task state changes).
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    volatile Scheduler scheduler;
+
+    /**
+     * The admission control where this task holds a slot while it is running, or
+     * <code>null</code> (used by the <code>SchedulerAdmission</code> class).
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    volatile SchedulerAdmission admission;
+
+    /**
+     * The dispatcher of the lifecycle events of the task, or <code>null</code> if the task was
+     * never scheduled (used by the <code>Scheduler</code> class).
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    volatile SchedulerEventDispatcher events;
+
+    /**
+     * The watchdog that enforces the limits of the task runs, or <code>null</code> if the task
+     * was never scheduled (used by the <code>Scheduler</code> class).
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    volatile SchedulerWatchdog watchdog;
+
+    /**
+     * The current entry of this task in the scheduler deadline queue (used by the
+     * <code>Scheduler</code> class to discard stale entries).
+     */
+    final AtomicReference<ScheduleEntry> scheduleEntry = new AtomicReference<ScheduleEntry>();
+
+    /**
+     * The task metrics.
+     *
+     * @see SchedulerTask#getMetrics()
+     */
+    final SchedulerTaskMetrics metrics = new SchedulerTaskMetrics(this);
+
     /**
      * This flag indicates whether this task has been scheduled as a daemon (used by the
      * <code>Scheduler</code> class).
@@ -106,45 +351,66 @@ public abstract class SchedulerTask
     /**
      * This flag indicates whether this task (if a daemon) has been already started (used by the
      * <code>Scheduler</code> class so a daemon does not start again after its first execution).
+     * It is written by the thread that owns the current state transition, before the transition
+     * is published.
      */
-    private boolean daemonExecuted;
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile boolean daemonExecuted;
 
     /**
-     * Text used in the <code>toString()</code> method to surround the task description.
+     * The supervision policy of the task, if a daemon, or <code>null</code> if the daemon is not
+     * restarted when it fails.
+     *
+     * @see SchedulerTask#getSupervisionPolicy()
+     * @see SchedulerTask#setSupervisionPolicy(SupervisionPolicy)
      */
-    private static final String TASK_DESCRIPTION_END = ")"; //$NON-NLS-1$
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile SupervisionPolicy supervisionPolicy;
 
     /**
-     * Text used in the <code>toString()</code> method to surround the task description.
+     * The number of consecutive failures of the task, if a supervised daemon. It is written by
+     * the thread that owns the stop transition.
      */
-    private static final String TASK_DESCRIPTION_START = " ("; //$NON-NLS-1$
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile int consecutiveFailures;
 
     /**
-     * The finalizer guardian.
+     * The duration, in nanoseconds, of the current run if its logic failed, or
+     * <code>NOT_FAILED</code>.
      */
-    final Object finalizerGuardian = new Object() {
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long failedRunNanos = NOT_FAILED;
 
-        /**
-         * Finalizes the object by stopping the task.
-         *
-         * @throws java.lang.Throwable a throwable object
-         *
-         * @see java.lang.Object#finalize()
-         */
-        protected void finalize()
-            // CHECKSTYLE:OFF
-            throws java.lang.Throwable {
-            // CHECKSTYLE:ON
-
-            try {
-                if (isExecuting()) {
-                    taskAutoStop();
-                }
-            } finally {
-                super.finalize();
-            }
-        }
-    };
+    /**
+     * The names of the tasks that must finish before this task is started, empty if the task is
+     * not a dependent task.
+     *
+     * @see SchedulerTask#getUpstreamTasks()
+     * @see SchedulerTask#setUpstreamTasks(List)
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile List<String> upstreamTasks = Collections.emptyList();
+
+    /**
+     * The names of the upstream tasks that have finished successfully since this task was last
+     * started (used by the <code>Scheduler</code> class).
+     */
+    final Set<String> completedUpstreams = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Value of the failed run duration when the run did not fail.
+     */
+    private static final long NOT_FAILED = -1;
+
+    /**
+     * Text used in the <code>toString()</code> method to surround the task description.
+     */
+    private static final String TASK_DESCRIPTION_END = ")"; //$NON-NLS-1$
+
+    /**
+     * Text used in the <code>toString()</code> method to surround the task description.
+     */
+    private static final String TASK_DESCRIPTION_START = " ("; //$NON-NLS-1$
 
     /**
      * Task constructor.
@@ -189,27 +455,63 @@ public abstract class SchedulerTask
     }
 
     /**
-     * Returns the <code>taskNextStartTime</code> property value.
+     * Returns the task metrics.
      *
-     * @return the property value
+     * @return the task metrics
+     *
+     * @see SchedulerTask#metrics
+     */
+    public SchedulerTaskMXBean getMetrics() {
+
+        return metrics;
+    }
+
+    /**
+     * Returns the task next start time as a new <code>java.util.Calendar</code> object.
      *
-     * @see SchedulerTask#taskNextStartTime
+     * @return the task next start time or <code>null</code> if the task is not scheduled
+     *
+     * @see SchedulerTask#taskNextStartMillis
      * @see SchedulerTask#setTaskNextStartTime(Calendar)
      */
     public Calendar getTaskNextStartTime() {
-        return taskNextStartTime;
+        return toCalendar(taskNextStartMillis);
     }
 
     /**
-     * Returns the <code>taskNextStopTime</code> property value.
+     * Returns the task next stop time as a new <code>java.util.Calendar</code> object.
      *
-     * @return the property value
+     * @return the task next stop time or <code>null</code> if the task is not scheduled
      *
-     * @see SchedulerTask#taskNextStopTime
+     * @see SchedulerTask#taskNextStopMillis
      * @see SchedulerTask#setTaskNextStopTime(Calendar)
      */
     public Calendar getTaskNextStopTime() {
-        return taskNextStopTime;
+        return toCalendar(taskNextStopMillis);
+    }
+
+    /**
+     * Returns the <code>taskNextStartMillis</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#taskNextStartMillis
+     * @see SchedulerTask#setTaskNextStartMillis(long)
+     */
+    public long getTaskNextStartMillis() {
+        return taskNextStartMillis;
+    }
+
+    /**
+     * Returns the <code>taskNextStopMillis</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#taskNextStopMillis
+     * @see SchedulerTask#setTaskNextStopMillis(long)
+     */
+    public long getTaskNextStopMillis() {
+        return taskNextStopMillis;
     }
 
     /**
@@ -236,6 +538,30 @@ public abstract class SchedulerTask
         return taskStopTime;
     }
 
+    /**
+     * Returns the <code>taskCronExpression</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#taskCronExpression
+     * @see SchedulerTask#setTaskCronExpression(CronExpression)
+     */
+    public CronExpression getTaskCronExpression() {
+        return taskCronExpression;
+    }
+
+    /**
+     * Returns the <code>taskWindowMillis</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#taskWindowMillis
+     * @see SchedulerTask#setTaskWindowMillis(long)
+     */
+    public long getTaskWindowMillis() {
+        return taskWindowMillis;
+    }
+
     /**
      * Returns the <code>daemonExecuted</code> property value.
      *
@@ -261,76 +587,275 @@ public abstract class SchedulerTask
     }
 
     /**
-     * Returns the <code>executing</code> property value.
+     * Returns whether the task is a dependent task, i.e. it is started when its upstream tasks
+     * finish instead of at a start time.
      *
-     * @return the property value
+     * @return whether the task is a dependent task
+     *
+     * @see SchedulerTask#getUpstreamTasks()
+     */
+    public boolean isDependentTask() {
+        return !upstreamTasks.isEmpty();
+    }
+
+    /**
+     * Returns the <code>upstreamTasks</code> property value.
+     *
+     * @return the property value, an unmodifiable list
+     *
+     * @see SchedulerTask#upstreamTasks
+     * @see SchedulerTask#setUpstreamTasks(List)
+     */
+    public List<String> getUpstreamTasks() {
+        return upstreamTasks;
+    }
+
+    /**
+     * Returns the task lifecycle state.
+     *
+     * @return the task state
+     *
+     * @see SchedulerTask#state
+     */
+    public SchedulerTaskState getTaskState() {
+        return state.get();
+    }
+
+    /**
+     * Returns whether the task is executing, i.e. it is running or stopping.
      *
-     * @see SchedulerTask#executing
+     * @return whether the task is executing
+     *
+     * @see SchedulerTask#getTaskState()
      */
     public boolean isExecuting() {
-        return executing;
+        SchedulerTaskState current = state.get();
+        return current == SchedulerTaskState.RUNNING || current == SchedulerTaskState.STOPPING;
     }
 
     /**
-     * Returns the <code>starting</code> property value.
+     * Returns whether the task is starting.
      *
-     * @return the property value
+     * @return whether the task is starting
      *
-     * @see SchedulerTask#starting
+     * @see SchedulerTask#getTaskState()
      */
     public boolean isStarting() {
-        return starting;
+        return state.get() == SchedulerTaskState.STARTING;
     }
 
     /**
-     * Returns the <code>stopping</code> property value.
+     * Returns whether the task is stopping.
      *
-     * @return the property value
+     * @return whether the task is stopping
      *
-     * @see SchedulerTask#stopping
+     * @see SchedulerTask#getTaskState()
      */
     public boolean isStopping() {
-        return stopping;
+        return state.get() == SchedulerTaskState.STOPPING;
     }
 
     /**
-     * Executes the task logic.
+     * Executes the task logic. The executor thread running this method is bound to the task,
+     * unless the task was asked to stop while waiting in the executor.
      *
      * @see SchedulerTask#taskLogic()
      */
-    @SuppressWarnings({
-        "PMD.CompareObjectsWithEquals",
-        "PMD.AvoidCatchingThrowable"
-    })
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
     public void run() {
 
         Thread thisThread = Thread.currentThread();
 
+        SchedulerWatchdog.Watch watch = null;
+        if (TASK_THREAD_UPDATER.compareAndSet(this, UNBOUND_THREAD, thisThread)) {
+            taskThread4Kill = thisThread;
+            watch = watchRun();
+        }
+
+        long scheduledStart = taskNextStartMillis;
+        if (scheduledStart != NOT_SCHEDULED) {
+            metrics.recordLag(System.currentTimeMillis() - scheduledStart);
+        }
+
         try {
-            while (thisThread == taskThread) {
-                taskLogic();
+            runLogic(thisThread, watch);
+        } finally {
+            synchronized (killLock) {
+                if (taskThread4Kill == thisThread) {
+                    taskThread4Kill = null;
+
+                    // an interrupt sent by a kill is not left in the executor thread
+                    Thread.interrupted();
+                }
+                if (watch != null) {
+                    watch.ended = true;
+                    watchdog.unwatch(watch);
+                }
+                killLock.notifyAll();
             }
-        } catch (ThreadDeath td) {
-            taskThread = null;
+        }
+    }
 
-            info("SCHED_LOG_TASK_KILLED_VM"); //$NON-NLS-1$
+    /**
+     * Starts watching the current run of the task, if the task has run limits and a watchdog.
+     *
+     * @return the watch of the run, or <code>null</code> if the run is not watched
+     */
+    private SchedulerWatchdog.Watch watchRun() {
 
-            throw td;
+        SchedulerWatchdog current = watchdog;
+        if (current == null) {
+            return null;
+        }
+
+        Scheduler owner = scheduler;
+        long gracePeriod = owner == null ? Scheduler.DEFAULT_KILL_GRACE_PERIOD : owner.getKillGracePeriod();
+        return current.watch(this, maxRunTime, iterationTimeout, gracePeriod);
+    }
+
+    /**
+     * Runs the task logic while the given thread is bound to the task, and stops the task
+     * afterwards.
+     *
+     * @param thisThread the thread running the task logic
+     * @param watch the watch of the run, or <code>null</code> if the run is not watched
+     */
+    @SuppressWarnings({
+        "PMD.CompareObjectsWithEquals",
+        "PMD.AvoidCatchingThrowable"
+    })
+    private void runLogic(Thread thisThread, SchedulerWatchdog.Watch watch) {
+
+        long runStart = System.nanoTime();
+        metrics.recordRunStart(runStart);
+
+        Throwable failure = null;
+        try {
+            long nextCall = runStart;
+            while (thisThread == taskThread) {
+                long callStart = System.nanoTime();
+                if (watch != null) {
+                    watch.iterationStart = callStart;
+                }
+                taskLogic();
+                long callEnd = System.nanoTime();
+                if (watch != null) {
+                    watch.iterationStart = SchedulerWatchdog.NOT_ITERATING;
+                }
+                metrics.recordIteration(callEnd - callStart);
+                nextCall = pace(thisThread, nextCall, callEnd);
+            }
+        } catch (ThreadDeath td) {
+            taskThread = null;
+
+            warn("SCHED_LOG_TASK_KILLED_VM"); //$NON-NLS-1$
+
+            throw td;
 
         // CHECKSTYLE:OFF
         } catch (Throwable t) {
         // CHECKSTYLE:ON
 
+            failure = t;
+        }
+
+        boolean abandoned = endWatch(watch);
+
+        if (failure != null) {
             taskThread = null;
 
-            info("SCHED_LOG_ERR_TASK_RUNNING"); //$NON-NLS-1$
+            // the failure of a run abandoned by the watchdog was recorded when it timed out
+            if (!abandoned) {
+                failedRunNanos = System.nanoTime() - runStart;
+
+                metrics.recordError(failure);
+                publish(SchedulerEventType.FAILED, taskNextStartMillis, failure);
+            }
+
+            error("SCHED_LOG_ERR_TASK_RUNNING", failure); //$NON-NLS-1$
         }
 
+        metrics.recordRun(System.nanoTime() - runStart);
+
         if (taskThread == null) {
             taskAutoStop();
         }
     }
 
+    /**
+     * Marks the logic of a watched run as ended.
+     *
+     * @param watch the watch of the run, or <code>null</code> if the run is not watched
+     *
+     * @return whether the watchdog abandoned the thread running the logic
+     */
+    private boolean endWatch(SchedulerWatchdog.Watch watch) {
+
+        if (watch == null) {
+            return false;
+        }
+
+        synchronized (killLock) {
+            watch.ended = true;
+            return watch.abandoned;
+        }
+    }
+
+    /**
+     * Parks the task thread until the next call of the task logic is due, according to the task
+     * execution mode. The thread is unparked when the task is asked to stop, and it is not parked
+     * at all if it is interrupted, so the task logic is called again and can see the interrupt.
+     *
+     * @param thisThread the thread running the task logic
+     * @param lastCall the instant when the last call was due, in nanoseconds
+     * @param now the instant when the last call ended, in nanoseconds
+     *
+     * @return the instant when the next call is due, in nanoseconds
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private long pace(Thread thisThread, long lastCall, long now) {
+
+        ExecutionMode mode = executionMode;
+        if (mode == ExecutionMode.CONTINUOUS) {
+            return now;
+        }
+
+        long period = TimeUnit.MILLISECONDS.toNanos(executionPeriod);
+        long nextCall;
+        if (mode == ExecutionMode.FIXED_DELAY) {
+            nextCall = now + period;
+        } else {
+            // the next call is due one period after the last one was due, not after it started,
+            // and if it is already overdue the calls that did not fit are skipped
+            nextCall = lastCall + period;
+            if (now - nextCall > 0) {
+                nextCall = now;
+            }
+        }
+
+        long remaining = nextCall - now;
+        while (remaining > 0 && thisThread == taskThread && !thisThread.isInterrupted()) {
+            LockSupport.parkNanos(this, remaining);
+            remaining = nextCall - System.nanoTime();
+        }
+        return nextCall;
+    }
+
+    /**
+     * Returns whether the task was asked to stop. Task logic that runs for a long time should
+     * check it regularly and return as soon as it is <code>true</code>; reading it is as cheap as
+     * reading a volatile field.
+     *
+     * A task that does not return after being asked to stop is interrupted when it is killed,
+     * so blocking operations should also end when the thread is interrupted.
+     *
+     * @return whether the task was asked to stop, or is not running
+     */
+    public boolean isStopRequested() {
+
+        return taskThread == null;
+    }
+
     /**
      * Sets the <code>daemonExecuted</code> property value.
      *
@@ -343,6 +868,20 @@ public abstract class SchedulerTask
         this.daemonExecuted = daemonExecuted;
     }
 
+    /**
+     * Sets the <code>upstreamTasks</code> property value, and forgets the upstream tasks that
+     * have already finished.
+     *
+     * @param upstreamTasks the property new value, empty if the task is not a dependent task
+     *
+     * @see SchedulerTask#upstreamTasks
+     * @see SchedulerTask#getUpstreamTasks()
+     */
+    void setUpstreamTasks(List<String> upstreamTasks) {
+        this.upstreamTasks = Collections.unmodifiableList(upstreamTasks);
+        completedUpstreams.clear();
+    }
+
     /**
      * Sets the <code>daemonTask</code> property value.
      *
@@ -380,27 +919,366 @@ public abstract class SchedulerTask
     }
 
     /**
-     * Sets the <code>taskNextStartTime</code> property value.
+     * Sets the <code>taskCronExpression</code> property value.
+     *
+     * @param taskCronExpression the property new value
+     *
+     * @see SchedulerTask#taskCronExpression
+     * @see SchedulerTask#getTaskCronExpression()
+     */
+    public void setTaskCronExpression(CronExpression taskCronExpression) {
+        this.taskCronExpression = taskCronExpression;
+    }
+
+    /**
+     * Sets the <code>taskWindowMillis</code> property value.
+     *
+     * @param taskWindowMillis the property new value
+     *
+     * @see SchedulerTask#taskWindowMillis
+     * @see SchedulerTask#getTaskWindowMillis()
+     */
+    public void setTaskWindowMillis(long taskWindowMillis) {
+        this.taskWindowMillis = taskWindowMillis;
+    }
+
+    /**
+     * Returns the <code>taskGroup</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#taskGroup
+     * @see SchedulerTask#setTaskGroup(String)
+     */
+    public String getTaskGroup() {
+        return taskGroup;
+    }
+
+    /**
+     * Sets the <code>taskGroup</code> property value. An empty group name means no group.
+     *
+     * @param taskGroup the property new value
+     *
+     * @see SchedulerTask#taskGroup
+     * @see SchedulerTask#getTaskGroup()
+     */
+    public void setTaskGroup(String taskGroup) {
+        this.taskGroup = taskGroup == null || taskGroup.length() == 0 ? null : taskGroup;
+    }
+
+    /**
+     * Returns the <code>taskPriority</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#taskPriority
+     * @see SchedulerTask#setTaskPriority(int)
+     */
+    public int getTaskPriority() {
+        return taskPriority;
+    }
+
+    /**
+     * Sets the <code>taskPriority</code> property value.
+     *
+     * @param taskPriority the property new value
+     *
+     * @see SchedulerTask#taskPriority
+     * @see SchedulerTask#getTaskPriority()
+     */
+    public void setTaskPriority(int taskPriority) {
+        this.taskPriority = taskPriority;
+    }
+
+    /**
+     * Returns the <code>misfirePolicy</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#misfirePolicy
+     * @see SchedulerTask#setMisfirePolicy(MisfirePolicy)
+     */
+    public MisfirePolicy getMisfirePolicy() {
+        return misfirePolicy;
+    }
+
+    /**
+     * Sets the <code>misfirePolicy</code> property value.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the policy
+     * is <code>null</code>.
+     *
+     * @param misfirePolicy the property new value
+     *
+     * @see SchedulerTask#misfirePolicy
+     * @see SchedulerTask#getMisfirePolicy()
+     */
+    public void setMisfirePolicy(MisfirePolicy misfirePolicy) {
+        if (misfirePolicy == null) {
+            throw new IllegalArgumentException("SCHED_ERR_MISFIRE_POLICY_INVALID"); //$NON-NLS-1$
+        }
+        this.misfirePolicy = misfirePolicy;
+    }
+
+    /**
+     * Returns the <code>misfireTolerance</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#misfireTolerance
+     * @see SchedulerTask#setMisfireTolerance(long)
+     */
+    public long getMisfireTolerance() {
+        return misfireTolerance;
+    }
+
+    /**
+     * Sets the <code>misfireTolerance</code> property value.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the tolerance
+     * is negative.
+     *
+     * @param misfireTolerance the property new value, in milliseconds
+     *
+     * @see SchedulerTask#misfireTolerance
+     * @see SchedulerTask#getMisfireTolerance()
+     */
+    public void setMisfireTolerance(long misfireTolerance) {
+        if (misfireTolerance < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_MISFIRE_TOLERANCE_INVALID"); //$NON-NLS-1$
+        }
+        this.misfireTolerance = misfireTolerance;
+    }
+
+    /**
+     * Returns the <code>executionMode</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#executionMode
+     * @see SchedulerTask#setExecutionMode(ExecutionMode)
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets the <code>executionMode</code> property value. A running task applies the new mode
+     * from the next call of the task logic.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the mode
+     * is <code>null</code>.
+     *
+     * @param executionMode the property new value
+     *
+     * @see SchedulerTask#executionMode
+     * @see SchedulerTask#getExecutionMode()
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        if (executionMode == null) {
+            throw new IllegalArgumentException("SCHED_ERR_EXECUTION_MODE_INVALID"); //$NON-NLS-1$
+        }
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Returns the <code>executionPeriod</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#executionPeriod
+     * @see SchedulerTask#setExecutionPeriod(long)
+     */
+    public long getExecutionPeriod() {
+        return executionPeriod;
+    }
+
+    /**
+     * Sets the <code>executionPeriod</code> property value.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the period
+     * is negative.
+     *
+     * @param executionPeriod the property new value, in milliseconds
+     *
+     * @see SchedulerTask#executionPeriod
+     * @see SchedulerTask#getExecutionPeriod()
+     */
+    public void setExecutionPeriod(long executionPeriod) {
+        if (executionPeriod < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_EXECUTION_PERIOD_INVALID"); //$NON-NLS-1$
+        }
+        this.executionPeriod = executionPeriod;
+    }
+
+    /**
+     * Returns the <code>maxRunTime</code> property value.
+     *
+     * @return the property value, in milliseconds
+     *
+     * @see SchedulerTask#maxRunTime
+     * @see SchedulerTask#setMaxRunTime(long)
+     */
+    public long getMaxRunTime() {
+        return maxRunTime;
+    }
+
+    /**
+     * Sets the <code>maxRunTime</code> property value. A run longer than the maximum run time
+     * fails and is stopped by the scheduler watchdog. It applies from the next run.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the time
+     * is negative.
+     *
+     * @param maxRunTime the property new value, in milliseconds, or zero if it is unlimited
+     *
+     * @see SchedulerTask#maxRunTime
+     * @see SchedulerTask#getMaxRunTime()
+     */
+    public void setMaxRunTime(long maxRunTime) {
+        if (maxRunTime < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_MAX_RUN_TIME_INVALID"); //$NON-NLS-1$
+        }
+        this.maxRunTime = maxRunTime;
+    }
+
+    /**
+     * Returns the <code>iterationTimeout</code> property value.
+     *
+     * @return the property value, in milliseconds
+     *
+     * @see SchedulerTask#iterationTimeout
+     * @see SchedulerTask#setIterationTimeout(long)
+     */
+    public long getIterationTimeout() {
+        return iterationTimeout;
+    }
+
+    /**
+     * Sets the <code>iterationTimeout</code> property value. A run with a call of the task logic
+     * longer than the iteration timeout fails and is stopped by the scheduler watchdog. It
+     * applies from the next run.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the timeout
+     * is negative.
      *
-     * @param taskNextStartTime the property new value
+     * @param iterationTimeout the property new value, in milliseconds, or zero if it is
+     *                         unlimited
      *
-     * @see SchedulerTask#taskNextStartTime
+     * @see SchedulerTask#iterationTimeout
+     * @see SchedulerTask#getIterationTimeout()
+     */
+    public void setIterationTimeout(long iterationTimeout) {
+        if (iterationTimeout < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_ITERATION_TIMEOUT_INVALID"); //$NON-NLS-1$
+        }
+        this.iterationTimeout = iterationTimeout;
+    }
+
+    /**
+     * Returns the <code>supervisionPolicy</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SchedulerTask#supervisionPolicy
+     * @see SchedulerTask#setSupervisionPolicy(SupervisionPolicy)
+     */
+    public SupervisionPolicy getSupervisionPolicy() {
+        return supervisionPolicy;
+    }
+
+    /**
+     * Sets the <code>supervisionPolicy</code> property value, and resets the consecutive
+     * failures of the task. The policy only applies to daemon tasks.
+     *
+     * @param supervisionPolicy the property new value, or <code>null</code> if the daemon is not
+     *                          restarted when it fails
+     *
+     * @see SchedulerTask#supervisionPolicy
+     * @see SchedulerTask#getSupervisionPolicy()
+     */
+    public void setSupervisionPolicy(SupervisionPolicy supervisionPolicy) {
+        this.supervisionPolicy = supervisionPolicy;
+        this.consecutiveFailures = 0;
+    }
+
+    /**
+     * Sets the task next start time. The calendar is not retained by the task.
+     *
+     * @param taskNextStartTime the task next start time or <code>null</code> to unschedule it
+     *
+     * @see SchedulerTask#taskNextStartMillis
      * @see SchedulerTask#getTaskNextStartTime()
      */
     public void setTaskNextStartTime(Calendar taskNextStartTime) {
-        this.taskNextStartTime = taskNextStartTime;
+        this.taskNextStartMillis = toMillis(taskNextStartTime);
     }
 
     /**
-     * Sets the <code>taskNextStopTime</code> property value.
+     * Sets the task next stop time. The calendar is not retained by the task.
      *
-     * @param taskNextStopTime the property new value
+     * @param taskNextStopTime the task next stop time or <code>null</code> to unschedule it
      *
-     * @see SchedulerTask#taskNextStopTime
+     * @see SchedulerTask#taskNextStopMillis
      * @see SchedulerTask#getTaskNextStopTime()
      */
     public void setTaskNextStopTime(Calendar taskNextStopTime) {
-        this.taskNextStopTime = taskNextStopTime;
+        this.taskNextStopMillis = toMillis(taskNextStopTime);
+    }
+
+    /**
+     * Sets the <code>taskNextStartMillis</code> property value.
+     *
+     * @param taskNextStartMillis the property new value
+     *
+     * @see SchedulerTask#taskNextStartMillis
+     * @see SchedulerTask#getTaskNextStartMillis()
+     */
+    public void setTaskNextStartMillis(long taskNextStartMillis) {
+        this.taskNextStartMillis = taskNextStartMillis;
+    }
+
+    /**
+     * Sets the <code>taskNextStopMillis</code> property value.
+     *
+     * @param taskNextStopMillis the property new value
+     *
+     * @see SchedulerTask#taskNextStopMillis
+     * @see SchedulerTask#getTaskNextStopMillis()
+     */
+    public void setTaskNextStopMillis(long taskNextStopMillis) {
+        this.taskNextStopMillis = taskNextStopMillis;
+    }
+
+    /**
+     * Converts a time in milliseconds since the epoch to a new calendar.
+     *
+     * @param millis the time in milliseconds or <code>NOT_SCHEDULED</code>
+     *
+     * @return the calendar or <code>null</code> if the time is <code>NOT_SCHEDULED</code>
+     */
+    private static Calendar toCalendar(long millis) {
+
+        if (millis == NOT_SCHEDULED) {
+            return null;
+        }
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+
+    /**
+     * Converts a calendar to a time in milliseconds since the epoch.
+     *
+     * @param calendar the calendar or <code>null</code>
+     *
+     * @return the time in milliseconds or <code>NOT_SCHEDULED</code> if the calendar is
+     *         <code>null</code>
+     */
+    private static long toMillis(Calendar calendar) {
+
+        return calendar == null ? NOT_SCHEDULED : calendar.getTimeInMillis();
     }
 
     /**
@@ -432,61 +1310,316 @@ public abstract class SchedulerTask
      *
      * @see SchedulerTask#taskPrepareStop()
      */
-    @SuppressWarnings("PMD.AvoidCatchingThrowable")
     protected void taskAutoStop() {
 
-        if (executing && !stopping) {
-            info("SCHED_LOG_TASK_STOPPING"); //$NON-NLS-1$
+        stopExecution(SchedulerTaskState.IDLE);
+    }
 
-            taskThread = null;
+    /**
+     * Stops the task execution if the task is running, leaving it in the given state. Only the
+     * thread that moves the task from <code>RUNNING</code> to <code>STOPPING</code> performs the
+     * stop logic.
+     *
+     * @param finalState the state of the task once stopped
+     *
+     * @return whether this call stopped the task
+     *
+     * @see SchedulerTask#taskPrepareStop()
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private boolean stopExecution(SchedulerTaskState finalState) {
+
+        if (!state.compareAndSet(SchedulerTaskState.RUNNING, SchedulerTaskState.STOPPING)) {
+            return false;
+        }
+
+        debug("SCHED_LOG_TASK_STOPPING"); //$NON-NLS-1$
 
-            setTaskNextStartTime(null);
-            setTaskNextStopTime(null);
+        taskThread = null;
 
-            try {
-                stopping = true;
-                taskPrepareStop();
-                stopping = false;
+        long scheduledStart = taskNextStartMillis;
+        taskNextStartMillis = NOT_SCHEDULED;
+        taskNextStopMillis = NOT_SCHEDULED;
 
-                executing = false;
+        long prepareStart = System.nanoTime();
 
-                if (daemonTask) {
-                    daemonExecuted = true;
+        boolean succeeded = finalState == SchedulerTaskState.IDLE && failedRunNanos == NOT_FAILED;
+
+        try {
+            taskPrepareStop();
+
+            info("SCHED_LOG_TASK_STOPPED"); //$NON-NLS-1$
+
+        // CHECKSTYLE:OFF
+        } catch (Throwable t) {
+        // CHECKSTYLE:ON
+
+            succeeded = false;
+            metrics.recordError(t);
+            publish(SchedulerEventType.FAILED, scheduledStart, t);
+
+            error("SCHED_LOG_ERR_TASK_STOPPING", t); //$NON-NLS-1$
+        }
+
+        metrics.recordStop(System.nanoTime() - prepareStart);
+
+        if (daemonTask) {
+            // daemons stopped or killed by the scheduler are never restarted
+            endDaemonExecution(finalState == SchedulerTaskState.IDLE ? failedRunNanos : NOT_FAILED);
+        }
+
+        state.set(finalState);
+
+        publish(finalState == SchedulerTaskState.KILLED
+            ? SchedulerEventType.KILLED : SchedulerEventType.STOPPED, scheduledStart, null);
+
+        releaseAdmission();
+        taskChanged();
+
+        if (succeeded) {
+            taskCompleted();
+        }
+
+        return true;
+    }
+
+    /**
+     * Ends an execution of the task, if a daemon. A failed daemon with a supervision policy is
+     * scheduled to restart after its backoff; otherwise the daemon is marked as executed, so it
+     * does not start again.
+     *
+     * @param runNanos the duration of the failed run in nanoseconds, or <code>NOT_FAILED</code>
+     *
+     * @see SupervisionPolicy
+     */
+    private void endDaemonExecution(long runNanos) {
+
+        SupervisionPolicy policy = supervisionPolicy;
+        if (policy == null || runNanos == NOT_FAILED) {
+            daemonExecuted = true;
+            return;
+        }
+
+        // a daemon that failed after running longer than the maximum backoff was healthy
+        if (TimeUnit.NANOSECONDS.toMillis(runNanos) >= policy.getMaxBackoff()) {
+            consecutiveFailures = 0;
+        }
+
+        int failures = consecutiveFailures + 1;
+        consecutiveFailures = failures;
+
+        long backoff;
+        if (failures > policy.getMaxRestarts()) {
+            metrics.recordCircuitOpen();
+
+            error("SCHED_LOG_TASK_CIRCUIT_OPEN"); //$NON-NLS-1$
+
+            if (policy.getCircuitOpenTime() == SupervisionPolicy.NEVER) {
+                daemonExecuted = true;
+                return;
+            }
+
+            // the daemon is restarted once, and the circuit opens again if it fails again
+            consecutiveFailures = policy.getMaxRestarts();
+            backoff = policy.getCircuitOpenTime();
+        } else {
+            backoff = policy.backoff(failures);
+        }
+
+        metrics.recordRestart();
+
+        warn("SCHED_LOG_TASK_RESTART_SCHEDULED"); //$NON-NLS-1$
+
+        long now = System.currentTimeMillis();
+        taskNextStartMillis = backoff > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + backoff;
+    }
+
+    /**
+     * Notifies the scheduler that owns this task that the task state has changed, so the
+     * task is checked again without waiting for its next scheduled deadline.
+     */
+    private void taskChanged() {
+
+        Scheduler owner = scheduler;
+        if (owner != null) {
+            owner.wakeUp(this);
+        }
+    }
+
+    /**
+     * Notifies the scheduler that owns this task that the task has finished successfully, so the
+     * dependent tasks waiting for it are checked.
+     */
+    private void taskCompleted() {
+
+        Scheduler owner = scheduler;
+        if (owner != null) {
+            owner.taskCompleted(this);
+        }
+    }
+
+    /**
+     * Kills the task, leaving it in the <code>KILLED</code> state. Threads are never stopped
+     * abruptly, as they may hold locks or leave shared state inconsistent; instead, the kill
+     * escalates in steps bounded by the grace period:
+     *
+     * <ol>
+     * <li>the task is asked to stop, so <code>isStopRequested()</code> returns <code>true</code>
+     *     and the logic can return by itself;</li>
+     * <li>if the logic is still running after the grace period, its thread is interrupted;</li>
+     * <li>if the logic is still running after another grace period, the thread is abandoned.</li>
+     * </ol>
+     *
+     * The task stop logic is then performed, in this thread if the task thread did not do it,
+     * so the task resources are released in at most two grace periods.
+     *
+     * @param gracePeriod the time to wait in each step, in milliseconds
+     *
+     * @see SchedulerTask#isStopRequested()
+     * @see SchedulerTask#taskPrepareStop()
+     */
+    void taskKill(long gracePeriod) {
+
+        debug("SCHED_LOG_TASK_KILLING"); //$NON-NLS-1$
+
+        metrics.recordKill();
+
+        // the cancellation token is set first, so the task logic can end by itself
+        requestStop();
+
+        if (state.compareAndSet(SchedulerTaskState.STARTING, SchedulerTaskState.KILLED)) {
+            // the start preparation in progress is interrupted and discarded
+            cancelPrepare();
+            publish(SchedulerEventType.KILLED, taskNextStartMillis, null);
+            releaseAdmission();
+        } else {
+            if (!awaitLogicEnd(gracePeriod)) {
+                interruptLogic();
+
+                if (!awaitLogicEnd(gracePeriod)) {
+                    warn("SCHED_LOG_TASK_THREAD_ABANDONED"); //$NON-NLS-1$
                 }
+            }
+
+            if (!stopExecution(SchedulerTaskState.KILLED)
+                && state.compareAndSet(SchedulerTaskState.IDLE, SchedulerTaskState.KILLED)) {
+                publish(SchedulerEventType.KILLED, taskNextStartMillis, null);
+            }
+        }
+
+        info("SCHED_LOG_TASK_KILLED"); //$NON-NLS-1$
+    }
 
-                info("SCHED_LOG_TASK_STOPPED"); //$NON-NLS-1$
+    /**
+     * Waits for the task logic to end.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     *
+     * @return whether the task logic is not running
+     */
+    private boolean awaitLogicEnd(long timeout) {
 
-            // CHECKSTYLE:OFF
-            } catch (Throwable t) {
-            // CHECKSTYLE:ON
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
 
-                info("SCHED_LOG_ERR_TASK_STOPPING"); //$NON-NLS-1$
+        synchronized (killLock) {
+            while (taskThread4Kill != null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(killLock, remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
             }
+            return true;
         }
     }
 
     /**
-     * Kills the task. This method uses the deprecated <code>java.lang.Thread.stop()</code> method
-     * to stop the running thread and invokes the task <code>taskAutoStop()</code> method to try
-     * to perform the task stop logic.
+     * Marks a watched run past its limits as failed and asks the task to stop. This method is
+     * called by the scheduler watchdog.
      *
-     * @see java.lang.Thread#stop()
-     * @see SchedulerTask#taskAutoStop()
+     * @param watch the watch of the run
+     * @param runNanos the duration of the run, in nanoseconds
+     * @param message the log message of the exceeded limit
+     *
+     * @return whether the run was still running its logic
      */
-    @SuppressWarnings("deprecation")
-    void taskKill() {
+    boolean taskTimedOut(SchedulerWatchdog.Watch watch, long runNanos, String message) {
+
+        synchronized (killLock) {
+            if (watch.ended || state.get() != SchedulerTaskState.RUNNING) {
+                return false;
+            }
+            failedRunNanos = runNanos;
+        }
 
-        info("SCHED_LOG_TASK_KILLING"); //$NON-NLS-1$
+        TimeoutException timeout = new TimeoutException(message);
+        metrics.recordTimeout();
+        metrics.recordError(timeout);
+        publish(SchedulerEventType.FAILED, taskNextStartMillis, timeout);
 
-        if (taskThread != null) {
-            taskThread.stop();
+        warn(message);
+
+        requestStop();
+        return true;
+    }
+
+    /**
+     * Interrupts the thread running the task logic of a watched run, unless the logic has ended.
+     * This method is called by the scheduler watchdog.
+     *
+     * @param watch the watch of the run
+     */
+    void interruptLogic(SchedulerWatchdog.Watch watch) {
+
+        synchronized (killLock) {
+            if (!watch.ended) {
+                interruptLogic();
+            }
         }
-        if (taskThread4Kill != null) {
-            taskThread4Kill.stop();
+    }
+
+    /**
+     * Abandons the thread running the task logic of a watched run that did not end after being
+     * asked to stop and interrupted: the run is no longer watched and nobody waits for it. The
+     * task stays running, so it is never started again while the abandoned thread is still in
+     * its logic; once the logic returns, the run ends as failed and the task is started again on
+     * its next start. This method is called by the scheduler watchdog.
+     *
+     * @param watch the watch of the run
+     */
+    void abandonRun(SchedulerWatchdog.Watch watch) {
+
+        synchronized (killLock) {
+            if (watch.ended) {
+                return;
+            }
+            watch.abandoned = true;
+            taskThread4Kill = null;
+            killLock.notifyAll();
         }
-        taskAutoStop();
 
-        info("SCHED_LOG_TASK_KILLED"); //$NON-NLS-1$
+        warn("SCHED_LOG_TASK_THREAD_ABANDONED"); //$NON-NLS-1$
+
+        metrics.recordKill();
+    }
+
+    /**
+     * Interrupts the thread running the task logic, if it is still running it.
+     */
+    private void interruptLogic() {
+
+        synchronized (killLock) {
+            Thread t = taskThread4Kill;
+            if (t != null) {
+                debug("SCHED_LOG_TASK_INTERRUPTING"); //$NON-NLS-1$
+                t.interrupt();
+            }
+        }
     }
 
     /**
@@ -495,7 +1628,9 @@ public abstract class SchedulerTask
     protected abstract void taskLogic();
 
     /**
-     * Prepares the task start.
+     * Prepares the task start. When the task is started by the scheduler, this method runs in a
+     * preparation thread, not in the scheduler thread, and it is interrupted if it takes longer
+     * than the scheduler prepare timeout.
      *
      * @throws java.lang.Throwable a <code>Throwable</code> object
      */
@@ -515,51 +1650,253 @@ public abstract class SchedulerTask
         // CHECKSTYLE:ON
 
     /**
-     * Starts the task thread execution. This method is called by the scheduler.
+     * Starts the task execution in the given executor. The start preparation runs in the calling
+     * thread.
+     *
+     * @param executor the executor that runs the task logic
+     *
+     * @return whether the task was idle and is now starting
+     *
+     * @see SchedulerTask#taskPrepareStart()
+     */
+    boolean taskStart(Executor executor) {
+
+        return taskStart(DIRECT_EXECUTOR, executor, Long.MAX_VALUE);
+    }
+
+    /**
+     * Starts the task execution. This method is called by the scheduler.
+     *
+     * The task moves to the <code>STARTING</code> state and the start preparation is submitted to
+     * the preparation executor, so the calling thread never waits for it. Once prepared, the task
+     * moves to the <code>RUNNING</code> state and its logic is submitted to the task executor. If
+     * the task is asked to stop while starting, it stops as soon as it is prepared.
+     *
+     * @param prepareExecutor the executor that runs the start preparation
+     * @param executor the executor that runs the task logic
+     * @param prepareTimeoutMillis the maximum time to wait for the start preparation, in
+     *                             milliseconds
+     *
+     * @return whether the task was idle and is now starting
+     *
+     * @see SchedulerTask#taskPrepareStart()
+     * @see SchedulerTask#taskPrepareTimeout()
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    boolean taskStart(Executor prepareExecutor, final Executor executor, long prepareTimeoutMillis) {
+
+        final long generation;
+        synchronized (startLock) {
+            if (!state.compareAndSet(SchedulerTaskState.IDLE, SchedulerTaskState.STARTING)) {
+                return false;
+            }
+            generation = ++startGeneration;
+        }
+
+        debug("SCHED_LOG_TASK_STARTING"); //$NON-NLS-1$
+
+        daemonExecuted = false;
+        failedRunNanos = NOT_FAILED;
+        taskThread = UNBOUND_THREAD;
+
+        long now = System.currentTimeMillis();
+        prepareDeadline = prepareTimeoutMillis > Long.MAX_VALUE - now
+            ? Long.MAX_VALUE : now + prepareTimeoutMillis;
+
+        FutureTask<Void> prepare = new FutureTask<Void>(new Runnable() {
+
+            /**
+             * Prepares the task start and runs the task logic.
+             */
+            public void run() {
+
+                prepareStart(executor, generation);
+            }
+        }, null);
+        prepareFuture = prepare;
+
+        try {
+            prepareExecutor.execute(prepare);
+
+        // CHECKSTYLE:OFF
+        } catch (Throwable t) {
+        // CHECKSTYLE:ON
+
+            if (state.compareAndSet(SchedulerTaskState.STARTING, SchedulerTaskState.STOPPING)) {
+                error("SCHED_LOG_ERR_TASK_STARTING", t); //$NON-NLS-1$
+
+                abortStart(t);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Prepares the task start and submits the task logic to the task executor. If the task was
+     * killed or its preparation timed out meanwhile, the preparation is discarded, even if the
+     * task is starting again.
+     *
+     * @param executor the executor that runs the task logic
+     * @param generation the number of the start being prepared
      *
      * @see SchedulerTask#taskPrepareStart()
      */
     @SuppressWarnings("PMD.AvoidCatchingThrowable")
-    void taskStart() {
+    private void prepareStart(Executor executor, long generation) {
 
-        if (!starting && !executing && !stopping) {
-            info("SCHED_LOG_TASK_STARTING"); //$NON-NLS-1$
+        boolean started = false;
+        try {
+            long prepareStart = System.nanoTime();
 
-            try {
-                daemonExecuted = false;
+            taskPrepareStart();
 
-                starting = true;
-                taskPrepareStart();
-                starting = false;
+            if (!leaveStart(generation, SchedulerTaskState.RUNNING)) {
+                warn("SCHED_LOG_TASK_PREPARE_DISCARDED"); //$NON-NLS-1$
+                return;
+            }
+            started = true;
 
-                executing = true;
+            metrics.recordStart(System.nanoTime() - prepareStart);
 
-                taskThread = new Thread(this);
-                taskThread.start();
+            prepareFuture = null;
 
-                info("SCHED_LOG_TASK_STARTED"); //$NON-NLS-1$
+            publish(SchedulerEventType.STARTED, taskNextStartMillis, null);
 
-            // CHECKSTYLE:OFF
-            } catch (Throwable t) {
-            // CHECKSTYLE:ON
+            // a task asked to stop while starting is stopped without running its logic
+            if (taskThread == null) {
+                taskAutoStop();
+                return;
+            }
 
-                taskThread = null;
+            taskChanged();
 
-                starting = false;
-                executing = false;
+            executor.execute(this);
 
-                if (daemonTask) {
-                    daemonExecuted = true;
-                }
+            info("SCHED_LOG_TASK_STARTED"); //$NON-NLS-1$
+
+        // CHECKSTYLE:OFF
+        } catch (Throwable t) {
+        // CHECKSTYLE:ON
 
-                setTaskNextStartTime(null);
-                setTaskNextStopTime(null);
+            // if the preparation timed out or the task was killed, the failure is already handled
+            if (started ? state.compareAndSet(SchedulerTaskState.RUNNING, SchedulerTaskState.STOPPING)
+                : leaveStart(generation, SchedulerTaskState.STOPPING)) {
+                error("SCHED_LOG_ERR_TASK_STARTING", t); //$NON-NLS-1$
 
-                info("SCHED_LOG_ERR_TASK_STARTING"); //$NON-NLS-1$
+                abortStart(t);
             }
         }
     }
 
+    /**
+     * Moves the task out of the <code>STARTING</code> state, only if it is still in the start
+     * being prepared.
+     *
+     * @param generation the number of the start being prepared
+     * @param next the next state
+     *
+     * @return whether the task moved to the next state
+     */
+    private boolean leaveStart(long generation, SchedulerTaskState next) {
+
+        synchronized (startLock) {
+            return generation == startGeneration
+                && state.compareAndSet(SchedulerTaskState.STARTING, next);
+        }
+    }
+
+    /**
+     * Abandons the start preparation in progress because it timed out. The preparation thread is
+     * interrupted before the task is left idle, as if the preparation had failed; a preparation
+     * that ignores the interruption is discarded when it ends. This method is called by the
+     * scheduler.
+     *
+     * @return whether the preparation was abandoned, i.e. it had not finished yet
+     */
+    boolean taskPrepareTimeout() {
+
+        if (!state.compareAndSet(SchedulerTaskState.STARTING, SchedulerTaskState.STOPPING)) {
+            return false;
+        }
+
+        error("SCHED_LOG_ERR_TASK_PREPARE_TIMEOUT"); //$NON-NLS-1$
+
+        cancelPrepare();
+
+        abortStart(new TimeoutException("SCHED_ERR_TASK_PREPARE_TIMEOUT")); //$NON-NLS-1$
+
+        return true;
+    }
+
+    /**
+     * Interrupts the start preparation in progress, if any.
+     */
+    private void cancelPrepare() {
+
+        FutureTask<Void> prepare = prepareFuture;
+        prepareFuture = null;
+        if (prepare != null) {
+            prepare.cancel(true);
+        }
+    }
+
+    /**
+     * Leaves the task idle after a failed start. The caller must have moved the task to the
+     * <code>STOPPING</code> state.
+     *
+     * @param cause the reason why the start failed
+     */
+    private void abortStart(Throwable cause) {
+
+        taskThread = null;
+        prepareFuture = null;
+
+        long scheduledStart = taskNextStartMillis;
+        taskNextStartMillis = NOT_SCHEDULED;
+        taskNextStopMillis = NOT_SCHEDULED;
+
+        if (daemonTask) {
+            endDaemonExecution(0);
+        }
+
+        metrics.recordError(cause);
+
+        state.set(SchedulerTaskState.IDLE);
+
+        publish(SchedulerEventType.FAILED, scheduledStart, cause);
+
+        releaseAdmission();
+        taskChanged();
+    }
+
+    /**
+     * Publishes a lifecycle event of the task, if the task was ever scheduled.
+     *
+     * @param type the event type
+     * @param scheduledStart the scheduled start of the task execution
+     * @param error the error, or <code>null</code>
+     */
+    private void publish(SchedulerEventType type, long scheduledStart, Throwable error) {
+
+        SchedulerEventDispatcher dispatcher = events;
+        if (dispatcher != null) {
+            dispatcher.publish(type, taskName, scheduledStart, error);
+        }
+    }
+
+    /**
+     * Releases the admission slot held by the task, if any, so waiting tasks can start.
+     */
+    private void releaseAdmission() {
+
+        SchedulerAdmission current = admission;
+        if (current != null) {
+            admission = null;
+            current.release(this);
+        }
+    }
+
     /**
      * Stops the task thread execution. This method is called by the scheduler.
      *
@@ -567,10 +1904,43 @@ public abstract class SchedulerTask
      */
     void taskStop() {
 
-        if (taskThread != null) {
-            info("SCHED_LOG_TASK_ASKED_STOP"); //$NON-NLS-1$
-            taskThread4Kill = taskThread;
-            taskThread = null;
+        if (requestStop()) {
+            debug("SCHED_LOG_TASK_ASKED_STOP"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Clears the thread bound to the task, so the task logic is not called again, and unparks
+     * the thread in case it is waiting for the next call of a paced execution mode.
+     *
+     * @return whether a thread was bound to the task
+     */
+    private boolean requestStop() {
+
+        Thread t = TASK_THREAD_UPDATER.getAndSet(this, null);
+        if (t == null) {
+            return false;
+        }
+        LockSupport.unpark(t);
+        return true;
+    }
+
+    /**
+     * Closes the task: the task is asked to stop if it is starting or running and, if it is
+     * scheduled, it is removed from its scheduler, so it is not started again. Closing a closed
+     * task does nothing.
+     *
+     * @see AutoCloseable#close()
+     */
+    public void close() {
+
+        Scheduler current = scheduler;
+        if (current == null) {
+            if (isStarting() || isExecuting()) {
+                taskStop();
+            }
+        } else {
+            current.closeTask(this);
         }
     }
 
@@ -585,11 +1955,48 @@ public abstract class SchedulerTask
     }
 
     /**
-     * Dummy log method.
+     * Logs a debug message about this task.
+     *
+     * @param message the log message
+     */
+    private void debug(String message) {
+        SchedulerLog.log(SchedulerLogLevel.DEBUG, LOG_PATTERN, message, taskName);
+    }
+
+    /**
+     * Logs an information message about this task.
+     *
+     * @param message the log message
+     */
+    private void info(String message) {
+        SchedulerLog.log(SchedulerLogLevel.INFO, LOG_PATTERN, message, taskName);
+    }
+
+    /**
+     * Logs a warning message about this task.
+     *
+     * @param message the log message
+     */
+    private void warn(String message) {
+        SchedulerLog.log(SchedulerLogLevel.WARN, LOG_PATTERN, message, taskName);
+    }
+
+    /**
+     * Logs an error message about this task.
+     *
+     * @param message the log message
+     */
+    private void error(String message) {
+        SchedulerLog.log(SchedulerLogLevel.ERROR, LOG_PATTERN, message, taskName);
+    }
+
+    /**
+     * Logs an error message about this task, with its cause.
      *
      * @param message the log message
+     * @param cause the error cause
      */
-    private static void info(String message) {
-        System.out.println(message);
+    private void error(String message, Throwable cause) {
+        SchedulerLog.log(SchedulerLogLevel.ERROR, LOG_PATTERN, message, taskName, cause);
     }
 }
@@ -0,0 +1,247 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Management interface with the metrics of a scheduler task.
+ *
+ * Durations are reported in nanoseconds and scheduling lags (the delay between the scheduled and
+ * the actual start of the task) in milliseconds. Percentiles are upper bounds with a relative
+ * error below 12.5%.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTask#getMetrics()
+ */
+public interface SchedulerTaskMXBean {
+
+    /**
+     * Returns the task name.
+     *
+     * @return the task name
+     */
+    String getTaskName();
+
+    /**
+     * Returns the task lifecycle state.
+     *
+     * @return the task state name
+     */
+    String getTaskState();
+
+    /**
+     * Returns the number of task starts.
+     *
+     * @return the number of task starts
+     */
+    long getStartCount();
+
+    /**
+     * Returns the number of task kills.
+     *
+     * @return the number of task kills
+     */
+    long getKillCount();
+
+    /**
+     * Returns the number of task errors.
+     *
+     * @return the number of task errors
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the number of restarts of failed daemons.
+     *
+     * @return the number of restarts
+     */
+    long getRestartCount();
+
+    /**
+     * Returns the number of times the circuit of a daemon in a crash loop opened, i.e. its
+     * consecutive failures exceeded the maximum restarts of its supervision policy.
+     *
+     * @return the number of circuit openings
+     */
+    long getCircuitOpenCount();
+
+    /**
+     * Returns the number of runs and calls of the task logic timed out by the watchdog, i.e.
+     * longer than the task maximum run time or iteration timeout.
+     *
+     * @return the number of timeouts
+     */
+    long getTimeoutCount();
+
+    /**
+     * Returns the scheduling lag of the last start.
+     *
+     * @return the last scheduling lag in milliseconds
+     */
+    long getLastLagMillis();
+
+    /**
+     * Returns the mean scheduling lag.
+     *
+     * @return the mean scheduling lag in milliseconds
+     */
+    double getLagMeanMillis();
+
+    /**
+     * Returns the maximum scheduling lag.
+     *
+     * @return the maximum scheduling lag in milliseconds
+     */
+    long getLagMaxMillis();
+
+    /**
+     * Returns the mean duration of <code>taskPrepareStart()</code>.
+     *
+     * @return the mean duration in nanoseconds
+     */
+    double getPrepareStartMeanNanos();
+
+    /**
+     * Returns the maximum duration of <code>taskPrepareStart()</code>.
+     *
+     * @return the maximum duration in nanoseconds
+     */
+    long getPrepareStartMaxNanos();
+
+    /**
+     * Returns the mean duration of <code>taskPrepareStop()</code>.
+     *
+     * @return the mean duration in nanoseconds
+     */
+    double getPrepareStopMeanNanos();
+
+    /**
+     * Returns the maximum duration of <code>taskPrepareStop()</code>.
+     *
+     * @return the maximum duration in nanoseconds
+     */
+    long getPrepareStopMaxNanos();
+
+    /**
+     * Returns the number of completed runs.
+     *
+     * @return the number of completed runs
+     */
+    long getRunCount();
+
+    /**
+     * Returns the mean run duration.
+     *
+     * @return the mean run duration in nanoseconds
+     */
+    double getRunMeanNanos();
+
+    /**
+     * Returns the maximum run duration.
+     *
+     * @return the maximum run duration in nanoseconds
+     */
+    long getRunMaxNanos();
+
+    /**
+     * Returns the 99th percentile of the run duration.
+     *
+     * @return the 99th percentile of the run duration in nanoseconds
+     */
+    long getRunP99Nanos();
+
+    /**
+     * Returns the number of missed starts, i.e. starts checked later than the misfire tolerance
+     * or after the task window ended.
+     *
+     * @return the number of missed starts
+     */
+    long getMisfireCount();
+
+    /**
+     * Returns the maximum delay of the missed starts.
+     *
+     * @return the maximum delay in milliseconds
+     */
+    long getMisfireLagMaxMillis();
+
+    /**
+     * Returns the mean time the starts waited in the admission queue.
+     *
+     * @return the mean wait time in milliseconds
+     */
+    double getAdmissionWaitMeanMillis();
+
+    /**
+     * Returns the maximum time a start waited in the admission queue.
+     *
+     * @return the maximum wait time in milliseconds
+     */
+    long getAdmissionWaitMaxMillis();
+
+    /**
+     * Returns the number of <code>taskLogic()</code> calls.
+     *
+     * @return the number of calls
+     */
+    long getIterationCount();
+
+    /**
+     * Returns the number of <code>taskLogic()</code> calls per second in the current run, or in
+     * the last run if the task is not running.
+     *
+     * @return the calls per second
+     */
+    double getIterationThroughput();
+
+    /**
+     * Returns the minimum <code>taskLogic()</code> call duration.
+     *
+     * @return the minimum call duration in nanoseconds
+     */
+    long getIterationMinNanos();
+
+    /**
+     * Returns the mean <code>taskLogic()</code> call duration.
+     *
+     * @return the mean call duration in nanoseconds
+     */
+    double getIterationMeanNanos();
+
+    /**
+     * Returns the 99th percentile of the <code>taskLogic()</code> call duration.
+     *
+     * @return the 99th percentile of the call duration in nanoseconds
+     */
+    long getIterationP99Nanos();
+
+    /**
+     * Returns the maximum <code>taskLogic()</code> call duration.
+     *
+     * @return the maximum call duration in nanoseconds
+     */
+    long getIterationMaxNanos();
+
+    /**
+     * Returns the number of subtasks of the current or last <code>taskLogic()</code> call, if
+     * the task is a parallel task.
+     *
+     * @return the number of subtasks, or zero if the task is not a parallel task
+     */
+    long getSubtaskCount();
+
+    /**
+     * Returns the number of completed subtasks of the current or last <code>taskLogic()</code>
+     * call, if the task is a parallel task. Subtasks skipped because the task was asked to stop
+     * are not completed.
+     *
+     * @return the number of completed subtasks
+     */
+    long getCompletedSubtaskCount();
+
+    /**
+     * Returns the last task error.
+     *
+     * @return the last error description, or <code>null</code> if the task never failed
+     */
+    String getLastError();
+}
@@ -0,0 +1,756 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a scheduler task. Values are recorded with lock-free counters and histograms, and
+ * are also added to the metrics of the scheduler that owns the task.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class SchedulerTaskMetrics
+    implements SchedulerTaskMXBean {
+
+    /**
+     * The task.
+     */
+    private final SchedulerTask task;
+
+    /**
+     * The metrics of the scheduler that owns the task, or <code>null</code> if the task was
+     * never scheduled.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile SchedulerMetrics schedulerMetrics;
+
+    /**
+     * The number of task starts.
+     */
+    private final LongAdder starts = new LongAdder();
+
+    /**
+     * The number of task kills.
+     */
+    private final LongAdder kills = new LongAdder();
+
+    /**
+     * The number of task errors.
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * The number of restarts of failed daemons.
+     */
+    private final LongAdder restarts = new LongAdder();
+
+    /**
+     * The number of times the circuit of a daemon in a crash loop opened.
+     */
+    private final LongAdder circuitOpens = new LongAdder();
+
+    /**
+     * The number of runs and calls of the task logic timed out by the watchdog.
+     */
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * The delays of the missed starts, in milliseconds.
+     */
+    private final LatencyHistogram misfires = new LatencyHistogram();
+
+    /**
+     * The scheduling lag of the last start, in milliseconds.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long lastLag;
+
+    /**
+     * The scheduling lags, in milliseconds.
+     */
+    private final LatencyHistogram lags = new LatencyHistogram();
+
+    /**
+     * The <code>taskPrepareStart()</code> durations, in nanoseconds.
+     */
+    private final LatencyHistogram prepareStarts = new LatencyHistogram();
+
+    /**
+     * The <code>taskPrepareStop()</code> durations, in nanoseconds.
+     */
+    private final LatencyHistogram prepareStops = new LatencyHistogram();
+
+    /**
+     * The run durations, in nanoseconds.
+     */
+    private final LatencyHistogram runs = new LatencyHistogram();
+
+    /**
+     * The admission queue wait times, in milliseconds.
+     */
+    private final LatencyHistogram admissionWaits = new LatencyHistogram();
+
+    /**
+     * The <code>taskLogic()</code> call durations, in nanoseconds.
+     */
+    private final LatencyHistogram iterations = new LatencyHistogram();
+
+    /**
+     * The instant when the current or last run started, in nanoseconds, or
+     * <code>NO_INSTANT</code> if the task never ran.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long runStart = NO_INSTANT;
+
+    /**
+     * The instant when the last run ended, in nanoseconds, or <code>NO_INSTANT</code> while the
+     * task is running.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long runEnd = NO_INSTANT;
+
+    /**
+     * The number of <code>taskLogic()</code> calls when the current or last run started.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long runStartIterations;
+
+    /**
+     * The number of subtasks of the current or last <code>taskLogic()</code> call of a parallel
+     * task.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile long subtaskCount;
+
+    /**
+     * The number of completed subtasks of the current or last <code>taskLogic()</code> call of a
+     * parallel task.
+     */
+    private final LongAdder completedSubtasks = new LongAdder();
+
+    /**
+     * The last task error, or <code>null</code> if the task never failed.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile Throwable lastError;
+
+    /**
+     * Value of the run start and end instants when they are not known.
+     */
+    private static final long NO_INSTANT = Long.MIN_VALUE;
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Constructor that sets the task.
+     *
+     * @param task the task
+     */
+    SchedulerTaskMetrics(SchedulerTask task) {
+
+        super();
+        this.task = task;
+    }
+
+    /**
+     * Sets the metrics of the scheduler that owns the task.
+     *
+     * @param schedulerMetrics the scheduler metrics
+     */
+    void setSchedulerMetrics(SchedulerMetrics schedulerMetrics) {
+
+        this.schedulerMetrics = schedulerMetrics;
+    }
+
+    /**
+     * Records a task start and its <code>taskPrepareStart()</code> duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void recordStart(long nanos) {
+
+        starts.increment();
+        prepareStarts.record(nanos);
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordStart();
+        }
+    }
+
+    /**
+     * Records a <code>taskPrepareStop()</code> duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void recordStop(long nanos) {
+
+        prepareStops.record(nanos);
+    }
+
+    /**
+     * Records the scheduling lag of a start.
+     *
+     * @param millis the lag in milliseconds
+     */
+    void recordLag(long millis) {
+
+        lastLag = millis;
+        lags.record(millis);
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordLag(millis);
+        }
+    }
+
+    /**
+     * Records the time a start waited in the admission queue.
+     *
+     * @param millis the wait time in milliseconds
+     */
+    void recordAdmissionWait(long millis) {
+
+        admissionWaits.record(millis);
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordAdmissionWait(millis);
+        }
+    }
+
+    /**
+     * Records a missed start.
+     *
+     * @param millis the delay of the start in milliseconds
+     */
+    void recordMisfire(long millis) {
+
+        misfires.record(millis);
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordMisfire(millis);
+        }
+    }
+
+    /**
+     * Records the start of a run, from which the iteration throughput is measured.
+     *
+     * @param nanos the instant when the run started, in nanoseconds
+     */
+    void recordRunStart(long nanos) {
+
+        runStartIterations = iterations.getCount();
+        runEnd = NO_INSTANT;
+        runStart = nanos;
+    }
+
+    /**
+     * Records a <code>taskLogic()</code> call duration. This is called by the task thread after
+     * each call, and it does not allocate.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void recordIteration(long nanos) {
+
+        iterations.record(nanos);
+    }
+
+    /**
+     * Records the start of a <code>taskLogic()</code> call of a parallel task, and resets the
+     * completed subtasks. This is called by the task thread before any subtask runs.
+     *
+     * @param count the number of subtasks of the call
+     */
+    void recordSubtasks(long count) {
+
+        completedSubtasks.reset();
+        subtaskCount = count;
+    }
+
+    /**
+     * Records a completed subtask of a parallel task. This is called concurrently by the threads
+     * running the subtasks, and it does not allocate.
+     */
+    void recordSubtaskCompleted() {
+
+        completedSubtasks.increment();
+    }
+
+    /**
+     * Records a run duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void recordRun(long nanos) {
+
+        runs.record(nanos);
+        runEnd = runStart + nanos;
+    }
+
+    /**
+     * Records a task kill.
+     */
+    void recordKill() {
+
+        kills.increment();
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordKill();
+        }
+    }
+
+    /**
+     * Records the restart of the task after a failure.
+     */
+    void recordRestart() {
+
+        restarts.increment();
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordRestart();
+        }
+    }
+
+    /**
+     * Records the opening of the task circuit after too many consecutive failures.
+     */
+    void recordCircuitOpen() {
+
+        circuitOpens.increment();
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordCircuitOpen();
+        }
+    }
+
+    /**
+     * Records a run or call of the task logic timed out by the watchdog.
+     */
+    void recordTimeout() {
+
+        timeouts.increment();
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordTimeout();
+        }
+    }
+
+    /**
+     * Records a task error.
+     *
+     * @param error the error
+     */
+    void recordError(Throwable error) {
+
+        errors.increment();
+        lastError = error;
+
+        SchedulerMetrics parent = schedulerMetrics;
+        if (parent != null) {
+            parent.recordError();
+        }
+    }
+
+    /**
+     * Returns the task name.
+     *
+     * @return the task name
+     *
+     * @see SchedulerTaskMXBean#getTaskName()
+     */
+    public String getTaskName() {
+
+        return task.getTaskName();
+    }
+
+    /**
+     * Returns the task lifecycle state.
+     *
+     * @return the task state name
+     *
+     * @see SchedulerTaskMXBean#getTaskState()
+     */
+    public String getTaskState() {
+
+        return task.getTaskState().name();
+    }
+
+    /**
+     * Returns the number of task starts.
+     *
+     * @return the number of task starts
+     *
+     * @see SchedulerTaskMXBean#getStartCount()
+     */
+    public long getStartCount() {
+
+        return starts.sum();
+    }
+
+    /**
+     * Returns the number of task kills.
+     *
+     * @return the number of task kills
+     *
+     * @see SchedulerTaskMXBean#getKillCount()
+     */
+    public long getKillCount() {
+
+        return kills.sum();
+    }
+
+    /**
+     * Returns the number of task errors.
+     *
+     * @return the number of task errors
+     *
+     * @see SchedulerTaskMXBean#getErrorCount()
+     */
+    public long getErrorCount() {
+
+        return errors.sum();
+    }
+
+    /**
+     * Returns the number of restarts of failed daemons.
+     *
+     * @return the number of restarts
+     *
+     * @see SchedulerTaskMXBean#getRestartCount()
+     */
+    public long getRestartCount() {
+
+        return restarts.sum();
+    }
+
+    /**
+     * Returns the number of times the circuit of a daemon in a crash loop opened.
+     *
+     * @return the number of circuit openings
+     *
+     * @see SchedulerTaskMXBean#getCircuitOpenCount()
+     */
+    public long getCircuitOpenCount() {
+
+        return circuitOpens.sum();
+    }
+
+    /**
+     * Returns the number of runs and calls of the task logic timed out by the watchdog.
+     *
+     * @return the number of timeouts
+     *
+     * @see SchedulerTaskMXBean#getTimeoutCount()
+     */
+    public long getTimeoutCount() {
+
+        return timeouts.sum();
+    }
+
+    /**
+     * Returns the number of missed starts.
+     *
+     * @return the number of missed starts
+     *
+     * @see SchedulerTaskMXBean#getMisfireCount()
+     */
+    public long getMisfireCount() {
+
+        return misfires.getCount();
+    }
+
+    /**
+     * Returns the maximum delay of the missed starts.
+     *
+     * @return the maximum delay in milliseconds
+     *
+     * @see SchedulerTaskMXBean#getMisfireLagMaxMillis()
+     */
+    public long getMisfireLagMaxMillis() {
+
+        return misfires.getMax();
+    }
+
+    /**
+     * Returns the scheduling lag of the last start.
+     *
+     * @return the last scheduling lag in milliseconds
+     *
+     * @see SchedulerTaskMXBean#getLastLagMillis()
+     */
+    public long getLastLagMillis() {
+
+        return lastLag;
+    }
+
+    /**
+     * Returns the mean scheduling lag.
+     *
+     * @return the mean scheduling lag in milliseconds
+     *
+     * @see SchedulerTaskMXBean#getLagMeanMillis()
+     */
+    public double getLagMeanMillis() {
+
+        return lags.getMean();
+    }
+
+    /**
+     * Returns the maximum scheduling lag.
+     *
+     * @return the maximum scheduling lag in milliseconds
+     *
+     * @see SchedulerTaskMXBean#getLagMaxMillis()
+     */
+    public long getLagMaxMillis() {
+
+        return lags.getMax();
+    }
+
+    /**
+     * Returns the mean duration of <code>taskPrepareStart()</code>.
+     *
+     * @return the mean duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getPrepareStartMeanNanos()
+     */
+    public double getPrepareStartMeanNanos() {
+
+        return prepareStarts.getMean();
+    }
+
+    /**
+     * Returns the maximum duration of <code>taskPrepareStart()</code>.
+     *
+     * @return the maximum duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getPrepareStartMaxNanos()
+     */
+    public long getPrepareStartMaxNanos() {
+
+        return prepareStarts.getMax();
+    }
+
+    /**
+     * Returns the mean duration of <code>taskPrepareStop()</code>.
+     *
+     * @return the mean duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getPrepareStopMeanNanos()
+     */
+    public double getPrepareStopMeanNanos() {
+
+        return prepareStops.getMean();
+    }
+
+    /**
+     * Returns the maximum duration of <code>taskPrepareStop()</code>.
+     *
+     * @return the maximum duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getPrepareStopMaxNanos()
+     */
+    public long getPrepareStopMaxNanos() {
+
+        return prepareStops.getMax();
+    }
+
+    /**
+     * Returns the number of completed runs.
+     *
+     * @return the number of completed runs
+     *
+     * @see SchedulerTaskMXBean#getRunCount()
+     */
+    public long getRunCount() {
+
+        return runs.getCount();
+    }
+
+    /**
+     * Returns the mean run duration.
+     *
+     * @return the mean run duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getRunMeanNanos()
+     */
+    public double getRunMeanNanos() {
+
+        return runs.getMean();
+    }
+
+    /**
+     * Returns the maximum run duration.
+     *
+     * @return the maximum run duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getRunMaxNanos()
+     */
+    public long getRunMaxNanos() {
+
+        return runs.getMax();
+    }
+
+    /**
+     * Returns the 99th percentile of the run duration.
+     *
+     * @return the 99th percentile of the run duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getRunP99Nanos()
+     */
+    public long getRunP99Nanos() {
+
+        return runs.getPercentile(99);
+    }
+
+    /**
+     * Returns the mean time the starts waited in the admission queue.
+     *
+     * @return the mean wait time in milliseconds
+     *
+     * @see SchedulerTaskMXBean#getAdmissionWaitMeanMillis()
+     */
+    public double getAdmissionWaitMeanMillis() {
+
+        return admissionWaits.getMean();
+    }
+
+    /**
+     * Returns the maximum time a start waited in the admission queue.
+     *
+     * @return the maximum wait time in milliseconds
+     *
+     * @see SchedulerTaskMXBean#getAdmissionWaitMaxMillis()
+     */
+    public long getAdmissionWaitMaxMillis() {
+
+        return admissionWaits.getMax();
+    }
+
+    /**
+     * Returns the number of <code>taskLogic()</code> calls.
+     *
+     * @return the number of calls
+     *
+     * @see SchedulerTaskMXBean#getIterationCount()
+     */
+    public long getIterationCount() {
+
+        return iterations.getCount();
+    }
+
+    /**
+     * Returns the number of subtasks of the current or last <code>taskLogic()</code> call, if
+     * the task is a parallel task.
+     *
+     * @return the number of subtasks, or zero if the task is not a parallel task
+     *
+     * @see SchedulerTaskMXBean#getSubtaskCount()
+     */
+    public long getSubtaskCount() {
+
+        return subtaskCount;
+    }
+
+    /**
+     * Returns the number of completed subtasks of the current or last <code>taskLogic()</code>
+     * call, if the task is a parallel task.
+     *
+     * @return the number of completed subtasks
+     *
+     * @see SchedulerTaskMXBean#getCompletedSubtaskCount()
+     */
+    public long getCompletedSubtaskCount() {
+
+        return completedSubtasks.sum();
+    }
+
+    /**
+     * Returns the number of <code>taskLogic()</code> calls per second in the current run, or in
+     * the last run if the task is not running.
+     *
+     * @return the calls per second, or zero if the task never ran
+     *
+     * @see SchedulerTaskMXBean#getIterationThroughput()
+     */
+    public double getIterationThroughput() {
+
+        long start = runStart;
+        long end = runEnd;
+        long elapsed = (end == NO_INSTANT ? System.nanoTime() : end) - start;
+        if (start == NO_INSTANT || elapsed <= 0) {
+            return 0;
+        }
+        return (iterations.getCount() - runStartIterations) * NANOS_PER_SECOND / elapsed;
+    }
+
+    /**
+     * Returns the minimum <code>taskLogic()</code> call duration.
+     *
+     * @return the minimum call duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getIterationMinNanos()
+     */
+    public long getIterationMinNanos() {
+
+        return iterations.getMin();
+    }
+
+    /**
+     * Returns the mean <code>taskLogic()</code> call duration.
+     *
+     * @return the mean call duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getIterationMeanNanos()
+     */
+    public double getIterationMeanNanos() {
+
+        return iterations.getMean();
+    }
+
+    /**
+     * Returns the 99th percentile of the <code>taskLogic()</code> call duration.
+     *
+     * @return the 99th percentile of the call duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getIterationP99Nanos()
+     */
+    public long getIterationP99Nanos() {
+
+        return iterations.getPercentile(99);
+    }
+
+    /**
+     * Returns the maximum <code>taskLogic()</code> call duration.
+     *
+     * @return the maximum call duration in nanoseconds
+     *
+     * @see SchedulerTaskMXBean#getIterationMaxNanos()
+     */
+    public long getIterationMaxNanos() {
+
+        return iterations.getMax();
+    }
+
+    /**
+     * Returns the last task error.
+     *
+     * @return the last error description, or <code>null</code> if the task never failed
+     *
+     * @see SchedulerTaskMXBean#getLastError()
+     */
+    public String getLastError() {
+
+        Throwable error = lastError;
+        return error == null ? null : error.toString();
+    }
+}
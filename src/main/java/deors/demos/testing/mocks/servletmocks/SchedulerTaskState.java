@@ -0,0 +1,42 @@
+package deors.demos.testing.mocks.servletmocks;
+
+/**
+ * Lifecycle states of a scheduler task.
+ *
+ * A task moves from <code>IDLE</code> to <code>STARTING</code> while it is prepared to start,
+ * to <code>RUNNING</code> while its logic is executed, and to <code>STOPPING</code> while it is
+ * prepared to stop, returning then to <code>IDLE</code>. A killed task ends in the
+ * <code>KILLED</code> state.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTask#getTaskState()
+ */
+public enum SchedulerTaskState {
+
+    /**
+     * The task is not running and waits to be started.
+     */
+    IDLE,
+
+    /**
+     * The task is being prepared to start.
+     */
+    STARTING,
+
+    /**
+     * The task logic is being executed.
+     */
+    RUNNING,
+
+    /**
+     * The task is being prepared to stop.
+     */
+    STOPPING,
+
+    /**
+     * The task was killed.
+     */
+    KILLED
+}
@@ -0,0 +1,59 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory used by the scheduler executors. Threads are named with a common prefix
+ * followed by a sequence number, so they can be easily identified in thread dumps.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class SchedulerThreadFactory
+    implements ThreadFactory {
+
+    /**
+     * The thread name prefix.
+     */
+    private final String namePrefix;
+
+    /**
+     * Whether the threads are created as daemon threads.
+     */
+    private final boolean daemon;
+
+    /**
+     * The thread sequence number.
+     */
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Constructor that sets the thread name prefix and whether the threads are daemons.
+     *
+     * @param namePrefix the thread name prefix
+     * @param daemon whether the threads are created as daemon threads
+     */
+    SchedulerThreadFactory(String namePrefix, boolean daemon) {
+
+        super();
+        this.namePrefix = namePrefix;
+        this.daemon = daemon;
+    }
+
+    /**
+     * Creates a new named thread.
+     *
+     * @param r the runnable executed by the thread
+     *
+     * @return the new thread
+     *
+     * @see ThreadFactory#newThread(Runnable)
+     */
+    public Thread newThread(Runnable r) {
+
+        Thread t = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+        t.setDaemon(daemon);
+        return t;
+    }
+}
@@ -0,0 +1,470 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watchdog that enforces the maximum run time and the iteration timeout of the running tasks of
+ * a scheduler.
+ *
+ * Each watched run is kept in a binary heap ordered by its next deadline, and a single watchdog
+ * thread waits for the earliest one. The task thread only writes the start of each call of the
+ * task logic, so the calls are never delayed; each watched run is checked at most once per
+ * iteration timeout, and re-queued in logarithmic time. Runs without limits are not watched, so
+ * the watchdog cost depends only on the running tasks that have limits, never on the number of
+ * scheduled tasks.
+ *
+ * A run past its deadline is escalated in steps separated by the kill grace period: the run is
+ * marked as failed and the task is asked to stop; then the thread running the task logic is
+ * interrupted; and finally the thread is abandoned, so the run is no longer watched. Only the run
+ * is killed: the task stays in its scheduler, and it is started again on its next start once the
+ * abandoned thread leaves the task logic, so a task stuck forever never piles up threads.
+ *
+ * The watchdog thread is started with the first watched run, and ends when no run is watched.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTask#setMaxRunTime(long)
+ * @see SchedulerTask#setIterationTimeout(long)
+ */
+final class SchedulerWatchdog
+    implements Runnable {
+
+    /**
+     * Value of the start of the current call of the task logic when the logic is not being called.
+     */
+    static final long NOT_ITERATING = Long.MIN_VALUE;
+
+    /**
+     * The watchdog thread name prefix.
+     */
+    private static final String WATCHDOG_THREAD_NAME_PREFIX = "scheduler-watchdog-"; //$NON-NLS-1$
+
+    /**
+     * The initial capacity of the heap.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The factory of the watchdog threads.
+     */
+    private final SchedulerThreadFactory threadFactory =
+        new SchedulerThreadFactory(WATCHDOG_THREAD_NAME_PREFIX, true);
+
+    /**
+     * The watched runs, as a binary heap ordered by deadline. Guarded by this watchdog monitor.
+     */
+    private Watch[] heap = new Watch[INITIAL_CAPACITY];
+
+    /**
+     * The number of watched runs in the heap. Guarded by this watchdog monitor.
+     */
+    private int size;
+
+    /**
+     * The watchdog thread, or <code>null</code> if it is not running. Guarded by this watchdog
+     * monitor.
+     */
+    private Thread watchdogThread;
+
+    /**
+     * Default constructor.
+     */
+    SchedulerWatchdog() {
+
+        super();
+    }
+
+    /**
+     * Starts watching a run of a task. Runs without limits are not watched.
+     *
+     * @param task the task
+     * @param maxRunTime the maximum run time in milliseconds, or zero if it is unlimited
+     * @param iterationTimeout the maximum duration of each call of the task logic in
+     *                         milliseconds, or zero if it is unlimited
+     * @param gracePeriod the time between the steps of the escalation, in milliseconds
+     *
+     * @return the watch of the run, or <code>null</code> if the run is not watched
+     */
+    Watch watch(SchedulerTask task, long maxRunTime, long iterationTimeout, long gracePeriod) {
+
+        if (maxRunTime <= 0 && iterationTimeout <= 0) {
+            return null;
+        }
+
+        Watch watch = new Watch(task, System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(maxRunTime),
+            TimeUnit.MILLISECONDS.toNanos(iterationTimeout), TimeUnit.MILLISECONDS.toNanos(gracePeriod));
+
+        synchronized (this) {
+            offer(watch, watch.nextDeadline(watch.runStart));
+            if (watchdogThread == null) {
+                watchdogThread = threadFactory.newThread(this);
+                watchdogThread.start();
+            } else if (watch.index == 0) {
+                notifyAll();
+            }
+        }
+        return watch;
+    }
+
+    /**
+     * Stops watching a run of a task, once its logic has ended.
+     *
+     * @param watch the watch of the run
+     */
+    synchronized void unwatch(Watch watch) {
+
+        if (watch.index >= 0) {
+            removeAt(watch.index);
+        }
+    }
+
+    /**
+     * Returns the number of watched runs.
+     *
+     * @return the number of watched runs
+     */
+    synchronized int size() {
+
+        return size;
+    }
+
+    /**
+     * Waits for the earliest deadline and checks the run, until no run is watched.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    public void run() {
+
+        while (true) {
+            Watch watch;
+            long now;
+
+            synchronized (this) {
+                while (true) {
+                    if (size == 0) {
+                        watchdogThread = null;
+                        return;
+                    }
+
+                    now = System.nanoTime();
+                    long delay = heap[0].deadline - now;
+                    if (delay <= 0) {
+                        break;
+                    }
+
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, delay);
+                    } catch (InterruptedException ie) {
+                        // the watchdog thread ends only when no run is watched
+                        continue;
+                    }
+                }
+
+                watch = heap[0];
+                removeAt(0);
+            }
+
+            try {
+                check(watch, now);
+
+            // CHECKSTYLE:OFF
+            } catch (Throwable t) {
+            // CHECKSTYLE:ON
+
+                SchedulerLog.log(SchedulerLogLevel.ERROR, "SCHED_LOG_ERR_WATCHDOG {}", //$NON-NLS-1$
+                    watch.task.getTaskName(), t);
+            }
+        }
+    }
+
+    /**
+     * Checks a run whose deadline has expired, escalating it one step if it is still running
+     * past its limits.
+     *
+     * @param watch the watch of the run
+     * @param now the current instant, in nanoseconds
+     */
+    private void check(Watch watch, long now) {
+
+        if (watch.ended) {
+            return;
+        }
+
+        switch (watch.stage) {
+            case WATCHING:
+                String timeout = watch.timeout(now);
+                if (timeout == null) {
+                    requeue(watch, watch.nextDeadline(now));
+                } else if (watch.task.taskTimedOut(watch, now - watch.runStart, timeout)) {
+                    watch.stage = Stage.STOPPED;
+                    requeue(watch, now + watch.gracePeriod);
+                }
+                break;
+
+            case STOPPED:
+                watch.task.interruptLogic(watch);
+                watch.stage = Stage.INTERRUPTED;
+                requeue(watch, now + watch.gracePeriod);
+                break;
+
+            default:
+                watch.task.abandonRun(watch);
+                break;
+        }
+    }
+
+    /**
+     * Queues a run again with a new deadline, unless its logic has ended meanwhile.
+     *
+     * @param watch the watch of the run
+     * @param deadline the new deadline, in nanoseconds
+     */
+    private synchronized void requeue(Watch watch, long deadline) {
+
+        if (!watch.ended) {
+            offer(watch, deadline);
+        }
+    }
+
+    /**
+     * Adds a run to the heap.
+     *
+     * @param watch the watch of the run
+     * @param deadline the deadline of the run, in nanoseconds
+     */
+    private void offer(Watch watch, long deadline) {
+
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        watch.deadline = deadline;
+        siftUp(size++, watch);
+    }
+
+    /**
+     * Removes the run at the given heap position.
+     *
+     * @param i the heap position
+     */
+    private void removeAt(int i) {
+
+        Watch removed = heap[i];
+        removed.index = -1;
+
+        int last = --size;
+        Watch moved = heap[last];
+        heap[last] = null;
+        if (i != last) {
+            siftDown(i, moved);
+            if (heap[i] == moved) {
+                siftUp(i, moved);
+            }
+        }
+    }
+
+    /**
+     * Moves a run up the heap from the given position until its parent has an earlier deadline.
+     *
+     * @param i the heap position
+     * @param watch the watch of the run
+     */
+    private void siftUp(int i, Watch watch) {
+
+        int k = i;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            Watch p = heap[parent];
+            if (watch.deadline - p.deadline >= 0) {
+                break;
+            }
+            heap[k] = p;
+            p.index = k;
+            k = parent;
+        }
+        heap[k] = watch;
+        watch.index = k;
+    }
+
+    /**
+     * Moves a run down the heap from the given position until its children have later deadlines.
+     *
+     * @param i the heap position
+     * @param watch the watch of the run
+     */
+    private void siftDown(int i, Watch watch) {
+
+        int k = i;
+        int half = size >>> 1;
+        while (k < half) {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if (right < size && heap[right].deadline - heap[child].deadline < 0) {
+                child = right;
+            }
+            Watch c = heap[child];
+            if (watch.deadline - c.deadline <= 0) {
+                break;
+            }
+            heap[k] = c;
+            c.index = k;
+            k = child;
+        }
+        heap[k] = watch;
+        watch.index = k;
+    }
+
+    /**
+     * The escalation steps of a watched run.
+     */
+    private enum Stage {
+
+        /**
+         * The run is within its limits.
+         */
+        WATCHING,
+
+        /**
+         * The run was marked as failed and the task was asked to stop.
+         */
+        STOPPED,
+
+        /**
+         * The thread running the task logic was interrupted.
+         */
+        INTERRUPTED
+    }
+
+    /**
+     * A watched run of a task.
+     */
+    static final class Watch {
+
+        /**
+         * The task.
+         */
+        private final SchedulerTask task;
+
+        /**
+         * The start of the run, in nanoseconds.
+         */
+        private final long runStart;
+
+        /**
+         * The maximum run time in nanoseconds, or zero if it is unlimited.
+         */
+        private final long maxRunTime;
+
+        /**
+         * The maximum duration of each call of the task logic in nanoseconds, or zero if it is
+         * unlimited.
+         */
+        private final long iterationTimeout;
+
+        /**
+         * The time between the steps of the escalation, in nanoseconds.
+         */
+        private final long gracePeriod;
+
+        /**
+         * The start of the current call of the task logic in nanoseconds, or
+         * <code>NOT_ITERATING</code>. It is written by the thread running the task logic.
+         */
+        @SuppressWarnings("PMD.AvoidUsingVolatile")
+        volatile long iterationStart = NOT_ITERATING;
+
+        /**
+         * This flag indicates whether the task logic has ended. It is written by the thread
+         * running the task logic while it holds the task kill lock.
+         */
+        @SuppressWarnings("PMD.AvoidUsingVolatile")
+        volatile boolean ended;
+
+        /**
+         * This flag indicates whether the watchdog abandoned the thread running the task logic.
+         * Guarded by the task kill lock.
+         */
+        boolean abandoned;
+
+        /**
+         * The escalation step. Only used by the watchdog thread.
+         */
+        private Stage stage = Stage.WATCHING;
+
+        /**
+         * The deadline of the run, in nanoseconds. Guarded by the watchdog monitor.
+         */
+        private long deadline;
+
+        /**
+         * The position of the run in the heap, or -1 if it is not in the heap. Guarded by the
+         * watchdog monitor.
+         */
+        private int index = -1;
+
+        /**
+         * Constructor that sets the run limits.
+         *
+         * @param task the task
+         * @param runStart the start of the run, in nanoseconds
+         * @param maxRunTime the maximum run time in nanoseconds, or zero if it is unlimited
+         * @param iterationTimeout the maximum duration of each call of the task logic in
+         *                         nanoseconds, or zero if it is unlimited
+         * @param gracePeriod the time between the steps of the escalation, in nanoseconds
+         */
+        private Watch(SchedulerTask task, long runStart, long maxRunTime, long iterationTimeout,
+                      long gracePeriod) {
+
+            super();
+            this.task = task;
+            this.runStart = runStart;
+            this.maxRunTime = maxRunTime;
+            this.iterationTimeout = iterationTimeout;
+            this.gracePeriod = gracePeriod;
+        }
+
+        /**
+         * Checks whether the run is past its limits.
+         *
+         * @param now the current instant, in nanoseconds
+         *
+         * @return the log message of the exceeded limit, or <code>null</code> if the run is
+         *         within its limits
+         */
+        private String timeout(long now) {
+
+            if (maxRunTime > 0 && now - runStart >= maxRunTime) {
+                return "SCHED_LOG_TASK_RUN_TIMEOUT"; //$NON-NLS-1$
+            }
+
+            long start = iterationStart;
+            if (iterationTimeout > 0 && start != NOT_ITERATING && now - start >= iterationTimeout) {
+                return "SCHED_LOG_TASK_ITERATION_TIMEOUT"; //$NON-NLS-1$
+            }
+            return null;
+        }
+
+        /**
+         * Returns the next instant when the run must be checked. Between calls of the task
+         * logic, the run is checked again after a whole iteration timeout.
+         *
+         * @param now the current instant, in nanoseconds
+         *
+         * @return the next deadline, in nanoseconds
+         */
+        private long nextDeadline(long now) {
+
+            long next;
+            if (iterationTimeout > 0) {
+                long start = iterationStart;
+                next = (start == NOT_ITERATING ? now : start) + iterationTimeout;
+                if (maxRunTime > 0 && runStart + maxRunTime - next < 0) {
+                    next = runStart + maxRunTime;
+                }
+            } else {
+                next = runStart + maxRunTime;
+            }
+            return next;
+        }
+    }
+}
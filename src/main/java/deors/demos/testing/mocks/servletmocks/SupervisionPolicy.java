@@ -0,0 +1,243 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable supervision policy of a daemon task, used to restart the daemon when it fails.
+ *
+ * A daemon fails when its logic throws an exception or its start preparation fails. A failed
+ * daemon is restarted after a backoff that doubles with each consecutive failure, from the
+ * initial backoff up to the maximum backoff, and is shortened by a random jitter so daemons that
+ * fail together are not restarted together. A daemon that runs for longer than the maximum
+ * backoff before failing is considered healthy, and its consecutive failures are reset.
+ *
+ * When the consecutive failures exceed the maximum restarts, the daemon is in a crash loop and
+ * its circuit opens: the daemon is not restarted until the circuit open time has passed, and is
+ * then restarted once, opening the circuit again if it fails before it is healthy. If the
+ * circuit open time is <code>NEVER</code>, the daemon is not restarted anymore.
+ *
+ * Daemons stopped or killed by the scheduler, and daemons whose logic ends without failing, are
+ * never restarted.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see SchedulerTask#setSupervisionPolicy(SupervisionPolicy)
+ */
+public final class SupervisionPolicy {
+
+    /**
+     * Value of the circuit open time when a daemon in a crash loop is not restarted anymore.
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Default value of the initial backoff, in milliseconds.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 1000;
+
+    /**
+     * Default value of the maximum backoff, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 60000;
+
+    /**
+     * Default value of the jitter, as a fraction of the backoff.
+     */
+    public static final double DEFAULT_JITTER = 0.2;
+
+    /**
+     * The maximum number of consecutive failures that are restarted.
+     *
+     * @see SupervisionPolicy#getMaxRestarts()
+     */
+    private final int maxRestarts;
+
+    /**
+     * The backoff after the first failure, in milliseconds.
+     *
+     * @see SupervisionPolicy#getInitialBackoff()
+     */
+    private final long initialBackoff;
+
+    /**
+     * The maximum backoff, in milliseconds.
+     *
+     * @see SupervisionPolicy#getMaxBackoff()
+     */
+    private final long maxBackoff;
+
+    /**
+     * The maximum fraction of the backoff randomly taken off each restart.
+     *
+     * @see SupervisionPolicy#getJitter()
+     */
+    private final double jitter;
+
+    /**
+     * The time, in milliseconds, a daemon in a crash loop is not restarted.
+     *
+     * @see SupervisionPolicy#getCircuitOpenTime()
+     */
+    private final long circuitOpenTime;
+
+    /**
+     * Constructor of a policy with the default jitter, which gives up restarting a daemon in a
+     * crash loop.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the maximum restarts
+     * or any backoff is negative, or if the initial backoff is greater than the maximum backoff.
+     *
+     * @param maxRestarts the maximum number of consecutive failures that are restarted
+     * @param initialBackoff the backoff after the first failure, in milliseconds
+     * @param maxBackoff the maximum backoff, in milliseconds
+     */
+    public SupervisionPolicy(int maxRestarts, long initialBackoff, long maxBackoff) {
+
+        this(maxRestarts, initialBackoff, maxBackoff, DEFAULT_JITTER, NEVER);
+    }
+
+    /**
+     * Constructor that sets and validates all the fields.
+     *
+     * @param maxRestarts the maximum number of consecutive failures that are restarted
+     * @param initialBackoff the backoff after the first failure, in milliseconds
+     * @param maxBackoff the maximum backoff, in milliseconds
+     * @param jitter the maximum fraction of the backoff randomly taken off each restart
+     * @param circuitOpenTime the time a daemon in a crash loop is not restarted, in milliseconds
+     */
+    private SupervisionPolicy(int maxRestarts, long initialBackoff, long maxBackoff,
+                              double jitter, long circuitOpenTime) {
+
+        super();
+
+        if (maxRestarts < 0 || initialBackoff < 0 || initialBackoff > maxBackoff) {
+            throw new IllegalArgumentException("SCHED_ERR_SUPERVISION_POLICY_INVALID"); //$NON-NLS-1$
+        }
+
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("SCHED_ERR_SUPERVISION_JITTER_INVALID"); //$NON-NLS-1$
+        }
+
+        if (circuitOpenTime < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_SUPERVISION_CIRCUIT_INVALID"); //$NON-NLS-1$
+        }
+
+        this.maxRestarts = maxRestarts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.jitter = jitter;
+        this.circuitOpenTime = circuitOpenTime;
+    }
+
+    /**
+     * Returns a copy of this policy with the given jitter.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the jitter is not
+     * between zero and one.
+     *
+     * @param fraction the maximum fraction of the backoff randomly taken off each restart
+     *
+     * @return the new policy
+     */
+    public SupervisionPolicy withJitter(double fraction) {
+
+        return new SupervisionPolicy(maxRestarts, initialBackoff, maxBackoff, fraction, circuitOpenTime);
+    }
+
+    /**
+     * Returns a copy of this policy with the given circuit open time.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the time is negative.
+     *
+     * @param millis the time a daemon in a crash loop is not restarted, in milliseconds, or
+     *               <code>NEVER</code>
+     *
+     * @return the new policy
+     */
+    public SupervisionPolicy withCircuitOpenTime(long millis) {
+
+        return new SupervisionPolicy(maxRestarts, initialBackoff, maxBackoff, jitter, millis);
+    }
+
+    /**
+     * Returns the backoff before restarting a daemon, including the random jitter.
+     *
+     * @param failures the number of consecutive failures, from one
+     *
+     * @return the backoff in milliseconds
+     */
+    long backoff(int failures) {
+
+        // the backoff doubles until it reaches the maximum, without overflowing
+        long backoff = initialBackoff;
+        for (int i = 1; i < failures && backoff < maxBackoff; i++) {
+            backoff = backoff > maxBackoff / 2 ? maxBackoff : backoff * 2;
+        }
+
+        if (jitter == 0 || backoff == 0) {
+            return backoff;
+        }
+        return backoff - (long) (ThreadLocalRandom.current().nextDouble() * jitter * backoff);
+    }
+
+    /**
+     * Returns the <code>maxRestarts</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SupervisionPolicy#maxRestarts
+     */
+    public int getMaxRestarts() {
+
+        return maxRestarts;
+    }
+
+    /**
+     * Returns the <code>initialBackoff</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SupervisionPolicy#initialBackoff
+     */
+    public long getInitialBackoff() {
+
+        return initialBackoff;
+    }
+
+    /**
+     * Returns the <code>maxBackoff</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SupervisionPolicy#maxBackoff
+     */
+    public long getMaxBackoff() {
+
+        return maxBackoff;
+    }
+
+    /**
+     * Returns the <code>jitter</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SupervisionPolicy#jitter
+     */
+    public double getJitter() {
+
+        return jitter;
+    }
+
+    /**
+     * Returns the <code>circuitOpenTime</code> property value.
+     *
+     * @return the property value
+     *
+     * @see SupervisionPolicy#circuitOpenTime
+     */
+    public long getCircuitOpenTime() {
+
+        return circuitOpenTime;
+    }
+}
@@ -0,0 +1,736 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable definition of a scheduler task, used to schedule many tasks at once.
+ *
+ * A definition has the task name, the task class (or its name, loaded with the scheduler class
+ * loader), the task description and either the start and stop times of a daily task or daemon, or
+ * the cron expression and window of a cron task, or the upstream tasks and window of a dependent
+ * task. Optionally, it has the task group and priority
+ * used by the scheduler concurrency limits, the task misfire policy and tolerance, the task
+ * execution mode and period, and the supervision policy of a daemon. Definitions are validated
+ * when created, so incomplete definitions are rejected before any task is scheduled.
+ *
+ * @author deors
+ * @version 1.0
+ *
+ * @see Scheduler#scheduleTasks(java.util.Collection)
+ */
+public final class TaskDefinition {
+
+    /**
+     * The upstream tasks of definitions that are not dependent tasks.
+     */
+    private static final List<String> NO_UPSTREAM_TASKS = Collections.emptyList();
+
+    /**
+     * The task name.
+     *
+     * @see TaskDefinition#getTaskName()
+     */
+    private final String taskName;
+
+    /**
+     * The task class, or <code>null</code> if the definition has the class name.
+     *
+     * @see TaskDefinition#getTaskClass()
+     */
+    private final Class<?> taskClass;
+
+    /**
+     * The task class name.
+     *
+     * @see TaskDefinition#getTaskClassName()
+     */
+    private final String taskClassName;
+
+    /**
+     * The task description.
+     *
+     * @see TaskDefinition#getTaskDescription()
+     */
+    private final String taskDescription;
+
+    /**
+     * The task start time, or <code>null</code> for daemons and cron tasks.
+     *
+     * @see TaskDefinition#getTaskStartTime()
+     */
+    private final Calendar taskStartTime;
+
+    /**
+     * The task stop time, or <code>null</code> for daemons and cron tasks.
+     *
+     * @see TaskDefinition#getTaskStopTime()
+     */
+    private final Calendar taskStopTime;
+
+    /**
+     * The task cron expression, or <code>null</code> for daily tasks and daemons.
+     *
+     * @see TaskDefinition#getTaskCronExpression()
+     */
+    private final CronExpression taskCronExpression;
+
+    /**
+     * The maximum run time of each execution of a cron task, in milliseconds.
+     *
+     * @see TaskDefinition#getTaskWindowMillis()
+     */
+    private final long taskWindowMillis;
+
+    /**
+     * The names of the tasks that must finish before the task is started, empty if the task is
+     * not a dependent task.
+     *
+     * @see TaskDefinition#getUpstreamTasks()
+     */
+    private final List<String> upstreamTasks;
+
+    /**
+     * The task group, or <code>null</code> if the task does not belong to any group.
+     *
+     * @see TaskDefinition#getTaskGroup()
+     */
+    private final String taskGroup;
+
+    /**
+     * The task priority.
+     *
+     * @see TaskDefinition#getTaskPriority()
+     */
+    private final int taskPriority;
+
+    /**
+     * The policy applied when a start of the task is missed.
+     *
+     * @see TaskDefinition#getMisfirePolicy()
+     */
+    private final MisfirePolicy misfirePolicy;
+
+    /**
+     * The maximum delay, in milliseconds, of a start that is not considered missed.
+     *
+     * @see TaskDefinition#getMisfireTolerance()
+     */
+    private final long misfireTolerance;
+
+    /**
+     * The mode of calling the task logic while the task is running.
+     *
+     * @see TaskDefinition#getExecutionMode()
+     */
+    private final ExecutionMode executionMode;
+
+    /**
+     * The period, in milliseconds, between the calls of the task logic in the paced modes.
+     *
+     * @see TaskDefinition#getExecutionPeriod()
+     */
+    private final long executionPeriod;
+
+    /**
+     * The supervision policy of a daemon, or <code>null</code> if the daemon is not restarted.
+     *
+     * @see TaskDefinition#getSupervisionPolicy()
+     */
+    private final SupervisionPolicy supervisionPolicy;
+
+    /**
+     * The maximum time, in milliseconds, of each run, or zero if it is unlimited.
+     *
+     * @see TaskDefinition#getMaxRunTime()
+     */
+    private final long maxRunTime;
+
+    /**
+     * The maximum time, in milliseconds, of each call of the task logic, or zero if it is
+     * unlimited.
+     *
+     * @see TaskDefinition#getIterationTimeout()
+     */
+    private final long iterationTimeout;
+
+    /**
+     * Constructor of a daily task or daemon definition with the task class.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the definition is
+     * not complete.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time, or <code>null</code> for daemons
+     * @param taskStopTime the task stop time
+     */
+    public TaskDefinition(String taskName, Class<?> taskClass, String taskDescription,
+                          Calendar taskStartTime, Calendar taskStopTime) {
+
+        this(taskName, taskClass, taskClass == null ? null : taskClass.getName(), taskDescription,
+            taskStartTime, taskStopTime, null, SchedulerTask.UNLIMITED_WINDOW, NO_UPSTREAM_TASKS, null, 0,
+            MisfirePolicy.COALESCE, SchedulerTask.DEFAULT_MISFIRE_TOLERANCE,
+            ExecutionMode.CONTINUOUS, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructor of a daily task or daemon definition with the task class name.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the definition is
+     * not complete.
+     *
+     * @param taskName the task name
+     * @param taskClassName the task class name
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time, or <code>null</code> for daemons
+     * @param taskStopTime the task stop time
+     */
+    public TaskDefinition(String taskName, String taskClassName, String taskDescription,
+                          Calendar taskStartTime, Calendar taskStopTime) {
+
+        this(taskName, null, taskClassName, taskDescription,
+            taskStartTime, taskStopTime, null, SchedulerTask.UNLIMITED_WINDOW, NO_UPSTREAM_TASKS, null, 0,
+            MisfirePolicy.COALESCE, SchedulerTask.DEFAULT_MISFIRE_TOLERANCE,
+            ExecutionMode.CONTINUOUS, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructor of a cron task definition with the task class.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the definition is
+     * not complete.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    public TaskDefinition(String taskName, Class<?> taskClass, String taskDescription,
+                          CronExpression taskCronExpression, long taskWindowMillis) {
+
+        this(taskName, taskClass, taskClass == null ? null : taskClass.getName(), taskDescription,
+            null, null, checkCronExpression(taskCronExpression), taskWindowMillis, NO_UPSTREAM_TASKS, null, 0,
+            MisfirePolicy.COALESCE, SchedulerTask.DEFAULT_MISFIRE_TOLERANCE,
+            ExecutionMode.CONTINUOUS, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructor of a cron task definition with the task class name.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the definition is
+     * not complete.
+     *
+     * @param taskName the task name
+     * @param taskClassName the task class name
+     * @param taskDescription the task description
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    public TaskDefinition(String taskName, String taskClassName, String taskDescription,
+                          CronExpression taskCronExpression, long taskWindowMillis) {
+
+        this(taskName, null, taskClassName, taskDescription,
+            null, null, checkCronExpression(taskCronExpression), taskWindowMillis, NO_UPSTREAM_TASKS, null, 0,
+            MisfirePolicy.COALESCE, SchedulerTask.DEFAULT_MISFIRE_TOLERANCE,
+            ExecutionMode.CONTINUOUS, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructor of a dependent task definition with the task class.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the definition is
+     * not complete or there are no upstream tasks.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskDescription the task description
+     * @param upstreamTasks the names of the tasks that must finish before the task is started
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    public TaskDefinition(String taskName, Class<?> taskClass, String taskDescription,
+                          Collection<String> upstreamTasks, long taskWindowMillis) {
+
+        this(taskName, taskClass, taskClass == null ? null : taskClass.getName(), taskDescription,
+            null, null, null, taskWindowMillis, checkUpstreamTasks(upstreamTasks), null, 0,
+            MisfirePolicy.COALESCE, SchedulerTask.DEFAULT_MISFIRE_TOLERANCE,
+            ExecutionMode.CONTINUOUS, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructor of a dependent task definition with the task class name.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the definition is
+     * not complete or there are no upstream tasks.
+     *
+     * @param taskName the task name
+     * @param taskClassName the task class name
+     * @param taskDescription the task description
+     * @param upstreamTasks the names of the tasks that must finish before the task is started
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds, or
+     *                         <code>SchedulerTask.UNLIMITED_WINDOW</code>
+     */
+    public TaskDefinition(String taskName, String taskClassName, String taskDescription,
+                          Collection<String> upstreamTasks, long taskWindowMillis) {
+
+        this(taskName, null, taskClassName, taskDescription,
+            null, null, null, taskWindowMillis, checkUpstreamTasks(upstreamTasks), null, 0,
+            MisfirePolicy.COALESCE, SchedulerTask.DEFAULT_MISFIRE_TOLERANCE,
+            ExecutionMode.CONTINUOUS, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructor that sets and validates all the fields.
+     *
+     * @param taskName the task name
+     * @param taskClass the task class
+     * @param taskClassName the task class name
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
+     * @param taskCronExpression the cron expression that starts the task
+     * @param taskWindowMillis the maximum run time of each execution, in milliseconds
+     * @param upstreamTasks the names of the tasks that must finish before the task is started
+     * @param taskGroup the task group
+     * @param taskPriority the task priority
+     * @param misfirePolicy the task misfire policy
+     * @param misfireTolerance the task misfire tolerance, in milliseconds
+     * @param executionMode the task execution mode
+     * @param executionPeriod the task execution period, in milliseconds
+     * @param supervisionPolicy the daemon supervision policy
+     * @param maxRunTime the maximum time of each run, in milliseconds
+     * @param iterationTimeout the maximum time of each call of the task logic, in milliseconds
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList")
+    private TaskDefinition(String taskName, Class<?> taskClass, String taskClassName, String taskDescription,
+                           Calendar taskStartTime, Calendar taskStopTime,
+                           CronExpression taskCronExpression, long taskWindowMillis,
+                           List<String> upstreamTasks, String taskGroup, int taskPriority,
+                           MisfirePolicy misfirePolicy, long misfireTolerance,
+                           ExecutionMode executionMode, long executionPeriod,
+                           SupervisionPolicy supervisionPolicy,
+                           long maxRunTime, long iterationTimeout) {
+
+        super();
+
+        if (taskName == null || taskName.length() == 0
+            || taskClassName == null || taskClassName.length() == 0
+            || taskDescription == null || taskDescription.length() == 0) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
+        }
+
+        if (misfirePolicy == null) {
+            throw new IllegalArgumentException("SCHED_ERR_MISFIRE_POLICY_INVALID"); //$NON-NLS-1$
+        }
+
+        if (misfireTolerance < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_MISFIRE_TOLERANCE_INVALID"); //$NON-NLS-1$
+        }
+
+        if (executionMode == null) {
+            throw new IllegalArgumentException("SCHED_ERR_EXECUTION_MODE_INVALID"); //$NON-NLS-1$
+        }
+
+        if (executionPeriod < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_EXECUTION_PERIOD_INVALID"); //$NON-NLS-1$
+        }
+
+        if (maxRunTime < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_MAX_RUN_TIME_INVALID"); //$NON-NLS-1$
+        }
+
+        if (iterationTimeout < 0) {
+            throw new IllegalArgumentException("SCHED_ERR_ITERATION_TIMEOUT_INVALID"); //$NON-NLS-1$
+        }
+
+        this.taskName = taskName;
+        this.taskClass = taskClass;
+        this.taskClassName = taskClassName;
+        this.taskDescription = taskDescription;
+        this.taskStartTime = taskStartTime;
+        this.taskStopTime = taskStopTime;
+        this.taskCronExpression = taskCronExpression;
+        this.taskWindowMillis = taskWindowMillis;
+        this.upstreamTasks = upstreamTasks;
+        this.taskGroup = taskGroup == null || taskGroup.length() == 0 ? null : taskGroup;
+        this.taskPriority = taskPriority;
+        this.misfirePolicy = misfirePolicy;
+        this.misfireTolerance = misfireTolerance;
+        this.executionMode = executionMode;
+        this.executionPeriod = executionPeriod;
+        this.supervisionPolicy = supervisionPolicy;
+        this.maxRunTime = maxRunTime;
+        this.iterationTimeout = iterationTimeout;
+    }
+
+    /**
+     * Returns a copy of this definition with the given group and priority.
+     *
+     * @param group the task group, or <code>null</code> if the task does not belong to any group
+     * @param priority the task priority
+     *
+     * @return the new definition
+     *
+     * @see Scheduler#setGroupConcurrencyLimit(String, int)
+     */
+    public TaskDefinition withTaskGroup(String group, int priority) {
+
+        return new TaskDefinition(taskName, taskClass, taskClassName, taskDescription,
+            taskStartTime, taskStopTime, taskCronExpression, taskWindowMillis, upstreamTasks, group, priority,
+            misfirePolicy, misfireTolerance, executionMode, executionPeriod, supervisionPolicy,
+            maxRunTime, iterationTimeout);
+    }
+
+    /**
+     * Returns a copy of this definition with the given misfire policy and tolerance.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the policy is
+     * <code>null</code> or the tolerance is negative.
+     *
+     * @param policy the task misfire policy
+     * @param tolerance the task misfire tolerance, in milliseconds
+     *
+     * @return the new definition
+     *
+     * @see SchedulerTask#setMisfirePolicy(MisfirePolicy)
+     */
+    public TaskDefinition withMisfirePolicy(MisfirePolicy policy, long tolerance) {
+
+        return new TaskDefinition(taskName, taskClass, taskClassName, taskDescription,
+            taskStartTime, taskStopTime, taskCronExpression, taskWindowMillis, upstreamTasks,
+            taskGroup, taskPriority,
+            policy, tolerance, executionMode, executionPeriod, supervisionPolicy,
+            maxRunTime, iterationTimeout);
+    }
+
+    /**
+     * Returns a copy of this definition with the given execution mode and period.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the mode is
+     * <code>null</code> or the period is negative.
+     *
+     * @param mode the task execution mode
+     * @param period the task execution period, in milliseconds
+     *
+     * @return the new definition
+     *
+     * @see SchedulerTask#setExecutionMode(ExecutionMode)
+     */
+    public TaskDefinition withExecutionMode(ExecutionMode mode, long period) {
+
+        return new TaskDefinition(taskName, taskClass, taskClassName, taskDescription,
+            taskStartTime, taskStopTime, taskCronExpression, taskWindowMillis, upstreamTasks,
+            taskGroup, taskPriority,
+            misfirePolicy, misfireTolerance, mode, period, supervisionPolicy,
+            maxRunTime, iterationTimeout);
+    }
+
+    /**
+     * Returns a copy of this definition with the given supervision policy, used if the task is
+     * a daemon.
+     *
+     * @param policy the daemon supervision policy, or <code>null</code> if the daemon is not
+     *               restarted when it fails
+     *
+     * @return the new definition
+     *
+     * @see SchedulerTask#setSupervisionPolicy(SupervisionPolicy)
+     */
+    public TaskDefinition withSupervisionPolicy(SupervisionPolicy policy) {
+
+        return new TaskDefinition(taskName, taskClass, taskClassName, taskDescription,
+            taskStartTime, taskStopTime, taskCronExpression, taskWindowMillis, upstreamTasks,
+            taskGroup, taskPriority,
+            misfirePolicy, misfireTolerance, executionMode, executionPeriod, policy,
+            maxRunTime, iterationTimeout);
+    }
+
+    /**
+     * Returns a copy of this definition with the given run limits, enforced by the scheduler
+     * watchdog.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if any limit is negative.
+     *
+     * @param runTime the maximum time of each run in milliseconds, or zero if it is unlimited
+     * @param timeout the maximum time of each call of the task logic in milliseconds, or zero if
+     *                it is unlimited
+     *
+     * @return the new definition
+     *
+     * @see SchedulerTask#setMaxRunTime(long)
+     * @see SchedulerTask#setIterationTimeout(long)
+     */
+    public TaskDefinition withRunLimits(long runTime, long timeout) {
+
+        return new TaskDefinition(taskName, taskClass, taskClassName, taskDescription,
+            taskStartTime, taskStopTime, taskCronExpression, taskWindowMillis, upstreamTasks,
+            taskGroup, taskPriority,
+            misfirePolicy, misfireTolerance, executionMode, executionPeriod, supervisionPolicy,
+            runTime, timeout);
+    }
+
+    /**
+     * Checks that the upstream tasks of a dependent task are not empty and have no empty names.
+     *
+     * @param upstreamTasks the names of the upstream tasks
+     *
+     * @return an unmodifiable copy of the names, without duplicates
+     */
+    static List<String> checkUpstreamTasks(Collection<String> upstreamTasks) {
+
+        if (upstreamTasks == null || upstreamTasks.isEmpty()) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
+        }
+
+        List<String> names = new ArrayList<String>(upstreamTasks.size());
+        for (String name : upstreamTasks) {
+            if (name == null || name.length() == 0) {
+                throw new IllegalArgumentException("SCHED_ERR_TASK_DEPENDENCY_INVALID"); //$NON-NLS-1$
+            }
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Checks that a cron expression is not <code>null</code>.
+     *
+     * @param taskCronExpression the cron expression
+     *
+     * @return the cron expression
+     */
+    private static CronExpression checkCronExpression(CronExpression taskCronExpression) {
+
+        if (taskCronExpression == null) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_INCOMPLETE"); //$NON-NLS-1$
+        }
+        return taskCronExpression;
+    }
+
+    /**
+     * Returns the <code>taskName</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskName
+     */
+    public String getTaskName() {
+
+        return taskName;
+    }
+
+    /**
+     * Returns the <code>taskClass</code> property value.
+     *
+     * @return the property value, or <code>null</code> if the definition has the class name
+     *
+     * @see TaskDefinition#taskClass
+     */
+    public Class<?> getTaskClass() {
+
+        return taskClass;
+    }
+
+    /**
+     * Returns the <code>taskClassName</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskClassName
+     */
+    public String getTaskClassName() {
+
+        return taskClassName;
+    }
+
+    /**
+     * Returns the <code>taskDescription</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskDescription
+     */
+    public String getTaskDescription() {
+
+        return taskDescription;
+    }
+
+    /**
+     * Returns the <code>taskStartTime</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskStartTime
+     */
+    public Calendar getTaskStartTime() {
+
+        return taskStartTime;
+    }
+
+    /**
+     * Returns the <code>taskStopTime</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskStopTime
+     */
+    public Calendar getTaskStopTime() {
+
+        return taskStopTime;
+    }
+
+    /**
+     * Returns the <code>taskCronExpression</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskCronExpression
+     */
+    public CronExpression getTaskCronExpression() {
+
+        return taskCronExpression;
+    }
+
+    /**
+     * Returns the <code>taskWindowMillis</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskWindowMillis
+     */
+    public long getTaskWindowMillis() {
+
+        return taskWindowMillis;
+    }
+
+    /**
+     * Returns the <code>upstreamTasks</code> property value.
+     *
+     * @return the property value, an unmodifiable list that is empty if the task is not a
+     *         dependent task
+     *
+     * @see TaskDefinition#upstreamTasks
+     */
+    public List<String> getUpstreamTasks() {
+
+        return upstreamTasks;
+    }
+
+    /**
+     * Returns the <code>taskGroup</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskGroup
+     */
+    public String getTaskGroup() {
+
+        return taskGroup;
+    }
+
+    /**
+     * Returns the <code>taskPriority</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#taskPriority
+     */
+    public int getTaskPriority() {
+
+        return taskPriority;
+    }
+
+    /**
+     * Returns the <code>misfirePolicy</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#misfirePolicy
+     */
+    public MisfirePolicy getMisfirePolicy() {
+
+        return misfirePolicy;
+    }
+
+    /**
+     * Returns the <code>misfireTolerance</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#misfireTolerance
+     */
+    public long getMisfireTolerance() {
+
+        return misfireTolerance;
+    }
+
+    /**
+     * Returns the <code>executionMode</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#executionMode
+     */
+    public ExecutionMode getExecutionMode() {
+
+        return executionMode;
+    }
+
+    /**
+     * Returns the <code>executionPeriod</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#executionPeriod
+     */
+    public long getExecutionPeriod() {
+
+        return executionPeriod;
+    }
+
+    /**
+     * Returns the <code>supervisionPolicy</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#supervisionPolicy
+     */
+    public SupervisionPolicy getSupervisionPolicy() {
+
+        return supervisionPolicy;
+    }
+
+    /**
+     * Returns the <code>maxRunTime</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#maxRunTime
+     */
+    public long getMaxRunTime() {
+
+        return maxRunTime;
+    }
+
+    /**
+     * Returns the <code>iterationTimeout</code> property value.
+     *
+     * @return the property value
+     *
+     * @see TaskDefinition#iterationTimeout
+     */
+    public long getIterationTimeout() {
+
+        return iterationTimeout;
+    }
+}
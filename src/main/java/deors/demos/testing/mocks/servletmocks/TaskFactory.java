@@ -0,0 +1,138 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Calendar;
+
+/**
+ * Factory of the instances of a task class.
+ *
+ * The task constructor is looked up once per class and kept as a method handle adapted to a
+ * fixed type, so creating a task costs about the same as a direct constructor call instead of a
+ * reflective lookup and invocation each time. Factories are cached in a <code>ClassValue</code>,
+ * which does not keep the task classes, nor their class loaders, from being unloaded.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class TaskFactory {
+
+    /**
+     * The type of the task constructor.
+     */
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(
+        void.class, String.class, String.class, Calendar.class, Calendar.class);
+
+    /**
+     * The type of the adapted constructor handle.
+     */
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(
+        SchedulerTask.class, String.class, String.class, Calendar.class, Calendar.class);
+
+    /**
+     * The factories of each task class.
+     */
+    private static final ClassValue<TaskFactory> FACTORIES = new ClassValue<TaskFactory>() {
+
+        /**
+         * Looks up the task class constructor.
+         *
+         * @param type the task class
+         *
+         * @return the factory of the task class
+         */
+        protected TaskFactory computeValue(Class<?> type) {
+
+            return new TaskFactory(type);
+        }
+    };
+
+    /**
+     * The adapted constructor handle, or <code>null</code> if the class is not a valid task class.
+     */
+    private final MethodHandle constructor;
+
+    /**
+     * The reason why the class is not a valid task class, or <code>null</code> if it is valid.
+     */
+    private final Exception failure;
+
+    /**
+     * Constructor that looks up the task class constructor.
+     *
+     * @param taskClass the task class
+     */
+    private TaskFactory(Class<?> taskClass) {
+
+        super();
+
+        MethodHandle handle = null;
+        Exception reason = null;
+        try {
+            if (!SchedulerTask.class.isAssignableFrom(taskClass)) {
+                throw new ClassCastException(taskClass.getName());
+            }
+            handle = MethodHandles.publicLookup()
+                .findConstructor(taskClass, CONSTRUCTOR_TYPE)
+                .asType(FACTORY_TYPE);
+        } catch (ClassCastException cce) {
+            reason = cce;
+        } catch (NoSuchMethodException nsme) {
+            reason = nsme;
+        } catch (IllegalAccessException iae) {
+            reason = iae;
+        }
+
+        this.constructor = handle;
+        this.failure = reason;
+    }
+
+    /**
+     * Returns the factory of a task class.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the class does not
+     * extend <code>SchedulerTask</code> or has not a public constructor with the task name,
+     * description, start time and stop time.
+     *
+     * @param taskClass the task class
+     *
+     * @return the factory of the task class
+     */
+    static TaskFactory forClass(Class<?> taskClass) {
+
+        TaskFactory factory = FACTORIES.get(taskClass);
+        if (factory.failure != null) {
+            throw new IllegalArgumentException("SCHED_ERR_TASK_CLASS_INVALID", factory.failure); //$NON-NLS-1$
+        }
+        return factory;
+    }
+
+    /**
+     * Creates a new task instance.
+     *
+     * An <code>IllegalArgumentException</code> exception is thrown if the task constructor
+     * fails.
+     *
+     * @param taskName the task name
+     * @param taskDescription the task description
+     * @param taskStartTime the task start time
+     * @param taskStopTime the task stop time
+     *
+     * @return the new task
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    SchedulerTask newTask(String taskName, String taskDescription,
+                          Calendar taskStartTime, Calendar taskStopTime) {
+
+        try {
+            return (SchedulerTask) constructor.invokeExact(
+                taskName, taskDescription, taskStartTime, taskStopTime);
+        // CHECKSTYLE:OFF
+        } catch (Throwable t) {
+        // CHECKSTYLE:ON
+
+            throw new IllegalArgumentException("SCHED_ERR_TASK_CLASS_INVALID", t); //$NON-NLS-1$
+        }
+    }
+}
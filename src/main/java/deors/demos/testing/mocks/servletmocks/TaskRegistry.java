@@ -0,0 +1,188 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry with the tasks of a scheduler.
+ *
+ * Tasks are indexed by name, so lookups are done in constant time without locking, and are kept
+ * in insertion order for iteration. Iterators are weakly consistent: they never throw
+ * <code>ConcurrentModificationException</code> and reflect the registry state at some point
+ * since their creation.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class TaskRegistry {
+
+    /**
+     * The registrations indexed by task name.
+     */
+    private final ConcurrentMap<String, Registration> byName =
+        new ConcurrentHashMap<String, Registration>();
+
+    /**
+     * The tasks indexed by insertion sequence.
+     */
+    private final ConcurrentNavigableMap<Long, SchedulerTask> bySequence =
+        new ConcurrentSkipListMap<Long, SchedulerTask>();
+
+    /**
+     * The insertion sequence generator.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Default constructor.
+     */
+    TaskRegistry() {
+
+        super();
+    }
+
+    /**
+     * Returns the task with the given name.
+     *
+     * @param taskName the task name
+     *
+     * @return the task or <code>null</code> if there is no task with the given name
+     */
+    SchedulerTask get(String taskName) {
+
+        Registration registration = byName.get(taskName);
+        return registration == null ? null : registration.task;
+    }
+
+    /**
+     * Checks the existence of a task with the given name.
+     *
+     * @param taskName the task name
+     *
+     * @return whether a task with the given name exists
+     */
+    boolean contains(String taskName) {
+
+        return byName.containsKey(taskName);
+    }
+
+    /**
+     * Adds a task to the registry unless a task with the same name is already registered.
+     *
+     * @param task the task
+     *
+     * @return <code>null</code> if the task was added, or the task already registered with
+     *         the same name
+     */
+    SchedulerTask putIfAbsent(SchedulerTask task) {
+
+        Registration registration = new Registration(sequence.incrementAndGet(), task);
+        Registration previous = byName.putIfAbsent(task.getTaskName(), registration);
+        if (previous != null) {
+            return previous.task;
+        }
+
+        bySequence.put(registration.sequence, task);
+
+        // the task may have been removed before being added to the ordered index
+        if (byName.get(task.getTaskName()) != registration) {
+            bySequence.remove(registration.sequence);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the task with the given name.
+     *
+     * @param taskName the task name
+     *
+     * @return the removed task or <code>null</code> if there is no task with the given name
+     */
+    SchedulerTask remove(String taskName) {
+
+        Registration registration = byName.remove(taskName);
+        if (registration == null) {
+            return null;
+        }
+
+        bySequence.remove(registration.sequence);
+        return registration.task;
+    }
+
+    /**
+     * Removes all the tasks.
+     */
+    void clear() {
+
+        for (String taskName : byName.keySet()) {
+            remove(taskName);
+        }
+    }
+
+    /**
+     * Returns the registered tasks in insertion order. The returned collection is a live,
+     * read-only view whose iterators are weakly consistent.
+     *
+     * @return the registered tasks
+     */
+    Collection<SchedulerTask> values() {
+
+        return Collections.unmodifiableCollection(bySequence.values());
+    }
+
+    /**
+     * Returns a read-only copy of the registered tasks in insertion order.
+     *
+     * @return the registered tasks
+     */
+    List<SchedulerTask> snapshot() {
+
+        return Collections.unmodifiableList(new ArrayList<SchedulerTask>(bySequence.values()));
+    }
+
+    /**
+     * Returns the number of registered tasks.
+     *
+     * @return the number of registered tasks
+     */
+    int size() {
+
+        return byName.size();
+    }
+
+    /**
+     * A task registration.
+     */
+    private static final class Registration {
+
+        /**
+         * The insertion sequence.
+         */
+        private final long sequence;
+
+        /**
+         * The registered task.
+         */
+        private final SchedulerTask task;
+
+        /**
+         * Constructor that sets the insertion sequence and the task.
+         *
+         * @param sequence the insertion sequence
+         * @param task the registered task
+         */
+        private Registration(long sequence, SchedulerTask task) {
+
+            super();
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+}
@@ -66,4 +66,12 @@ public class DirectoryManagerTestCase {
         DirectoryManager dm = new DirectoryManager();
         dm.closeConnection();
     }
+
+    @Test
+    public void testCloseNotConnectedDoesNothing() throws DirectoryException {
+
+        DirectoryManager dm = new DirectoryManager();
+        dm.close();
+        assertFalse(dm.isConnected());
+    }
 }
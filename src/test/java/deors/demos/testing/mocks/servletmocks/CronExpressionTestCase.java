@@ -0,0 +1,86 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CronExpressionTestCase {
+
+    public CronExpressionTestCase() {
+
+        super();
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute, int second) {
+
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(year, month, day, hour, minute, second);
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    public void testIsCronExpression() {
+
+        assertTrue(CronExpression.isCronExpression("0 * * * *"));
+        assertFalse(CronExpression.isCronExpression("10:00:00"));
+        assertFalse(CronExpression.isCronExpression("*"));
+        assertFalse(CronExpression.isCronExpression(null));
+    }
+
+    @Test
+    public void testNextFireTimeEveryFifteenMinutes() {
+
+        CronExpression cron = new CronExpression("*/15 * * * *");
+
+        assertEquals(time(2024, Calendar.MARCH, 5, 10, 15, 0),
+            cron.nextFireTime(time(2024, Calendar.MARCH, 5, 10, 7, 30)));
+        assertEquals(time(2024, Calendar.MARCH, 5, 10, 30, 0),
+            cron.nextFireTime(time(2024, Calendar.MARCH, 5, 10, 15, 0)));
+    }
+
+    @Test
+    public void testNextFireTimeWeekdays() {
+
+        CronExpression cron = new CronExpression("30 9 * * MON-FRI");
+
+        // 2024-03-08 is a Friday
+        assertEquals(time(2024, Calendar.MARCH, 11, 9, 30, 0),
+            cron.nextFireTime(time(2024, Calendar.MARCH, 8, 10, 0, 0)));
+    }
+
+    @Test
+    public void testNextFireTimeWithSeconds() {
+
+        CronExpression cron = new CronExpression("5,35 0 12 1 JAN *");
+
+        assertEquals(time(2025, Calendar.JANUARY, 1, 12, 0, 5),
+            cron.nextFireTime(time(2024, Calendar.JANUARY, 1, 12, 0, 35)));
+    }
+
+    @Test
+    public void testNextFireTimeNever() {
+
+        CronExpression cron = new CronExpression("0 0 30 2 *");
+
+        assertEquals(CronExpression.NEVER, cron.nextFireTime(time(2024, Calendar.JANUARY, 1, 0, 0, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+
+        new CronExpression("61 * * * *");
+    }
+
+    @Test
+    public void testParseWindow() {
+
+        assertEquals(TimeUnit.MINUTES.toMillis(90), Scheduler.parseWindow("01:30:00"));
+        assertEquals(SchedulerTask.UNLIMITED_WINDOW, Scheduler.parseWindow("*"));
+    }
+}
@@ -0,0 +1,56 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTestCase {
+
+    public LatencyHistogramTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testBucketsContainTheirValues() {
+
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < value);
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        histogram.record(-5);
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(5050000.0 / 101, histogram.getMean(), 0.001);
+
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 50000 && p50 <= 50000 * 1.125);
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testMinimum() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getMin());
+
+        histogram.record(300);
+        histogram.record(20);
+        histogram.record(4000);
+
+        assertEquals(20, histogram.getMin());
+    }
+}
@@ -0,0 +1,186 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class ParallelSchedulerTaskTestCase {
+
+    public ParallelSchedulerTaskTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testSubtasksRunInParallel() {
+
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final AtomicIntegerArray calls = new AtomicIntegerArray(64);
+
+        CountingTask task = new CountingTask(64, ParallelSchedulerTask.DEFAULT_SPLIT_THRESHOLD) {
+
+            @Override
+            protected void taskSubtaskLogic(int subtask) {
+
+                threads.add(Thread.currentThread().getName());
+                calls.incrementAndGet(subtask);
+                sleep(5);
+            }
+        };
+
+        task.taskLogic();
+
+        for (int i = 0; i < calls.length(); i++) {
+            assertEquals(1, calls.get(i));
+        }
+        if (ForkJoinPool.commonPool().getParallelism() > 1) {
+            assertTrue(threads.size() > 1);
+        }
+        assertEquals(64, task.getMetrics().getSubtaskCount());
+        assertEquals(64, task.getMetrics().getCompletedSubtaskCount());
+    }
+
+    @Test
+    public void testStopSkipsPendingSubtasks() {
+
+        CountingTask task = new CountingTask(100, 100) {
+
+            @Override
+            protected void taskSubtaskLogic(int subtask) {
+
+                if (subtask == 10) {
+                    taskStop();
+                }
+            }
+        };
+        task.taskThread = Thread.currentThread();
+
+        task.taskLogic();
+
+        assertTrue(task.isStopRequested());
+        assertEquals(100, task.getMetrics().getSubtaskCount());
+        assertEquals(11, task.getMetrics().getCompletedSubtaskCount());
+    }
+
+    @Test
+    public void testFailedSubtaskAbortsCall() {
+
+        CountingTask task = new CountingTask(100, 100) {
+
+            @Override
+            protected void taskSubtaskLogic(int subtask) {
+
+                if (subtask == 5) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+
+        try {
+            task.taskLogic();
+            assertTrue(false);
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("failed"));
+        }
+
+        assertEquals(5, task.getMetrics().getCompletedSubtaskCount());
+    }
+
+    @Test
+    public void testInterruptedTaskThreadStopsWaiting()
+        throws InterruptedException {
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+
+        final CountingTask task = new CountingTask(1, 1) {
+
+            @Override
+            protected void taskSubtaskLogic(int subtask) {
+
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+
+                task.taskLogic();
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        };
+        thread.start();
+
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join(1000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(interrupted.get());
+
+        release.countDown();
+    }
+
+    private static void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    abstract static class CountingTask
+        extends ParallelSchedulerTask {
+
+        private final int count;
+
+        private final int threshold;
+
+        CountingTask(int count, int threshold) {
+
+            super("parallel", "parallel task", (Calendar) null, (Calendar) null);
+            this.count = count;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected int taskSubtaskCount() {
+
+            return count;
+        }
+
+        @Override
+        protected int taskSplitThreshold() {
+
+            return threshold;
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+        }
+    }
+}
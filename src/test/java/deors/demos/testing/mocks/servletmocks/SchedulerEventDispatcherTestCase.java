@@ -0,0 +1,150 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SchedulerEventDispatcherTestCase {
+
+    public SchedulerEventDispatcherTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testEventsAreDeliveredInOrder()
+        throws InterruptedException {
+
+        SchedulerEventDispatcher dispatcher = new SchedulerEventDispatcher(128);
+        RecordingListener listener = new RecordingListener(100);
+        dispatcher.addListener(listener);
+
+        Exception error = new Exception();
+        try {
+            for (int i = 0; i < 99; i++) {
+                dispatcher.publish(SchedulerEventType.STARTED, "task" + i, i, null);
+            }
+            dispatcher.publish(SchedulerEventType.FAILED, "failed", 7, error);
+
+            assertTrue(listener.received.await(1, TimeUnit.SECONDS));
+            assertEquals(0, dispatcher.getDroppedCount());
+            for (int i = 0; i < 99; i++) {
+                assertEquals("task" + i, listener.events.get(i).getTaskName());
+                assertEquals(i, listener.events.get(i).getScheduledMillis());
+                assertNull(listener.events.get(i).getError());
+            }
+
+            SchedulerEvent last = listener.events.get(99);
+            assertEquals(SchedulerEventType.FAILED, last.getType());
+            assertSame(error, last.getError());
+            assertTrue(last.getTimeMillis() > 0);
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void testSlowListenerDropsEventsWithoutBlocking()
+        throws InterruptedException {
+
+        SchedulerEventDispatcher dispatcher = new SchedulerEventDispatcher(4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<SchedulerEvent> events = new CopyOnWriteArrayList<SchedulerEvent>();
+        dispatcher.addListener(new SchedulerListener() {
+            public void schedulerEvent(SchedulerEvent event) {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                events.add(event);
+            }
+        });
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                dispatcher.publish(SchedulerEventType.STOPPED, "task", i, null);
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(elapsed < 500);
+            assertTrue(dispatcher.getDroppedCount() >= 20 - 4 - 1);
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 1000;
+            while (events.size() + dispatcher.getDroppedCount() < 20
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(20, events.size() + dispatcher.getDroppedCount());
+            assertEquals(0, events.get(0).getScheduledMillis());
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void testDispatcherRestartsAfterClose()
+        throws InterruptedException {
+
+        SchedulerEventDispatcher dispatcher = new SchedulerEventDispatcher(8);
+        RecordingListener listener = new RecordingListener(2);
+        dispatcher.addListener(listener);
+
+        dispatcher.publish(SchedulerEventType.SCHEDULED, "first", 0, null);
+        dispatcher.close();
+        Thread.sleep(50);
+        dispatcher.publish(SchedulerEventType.SCHEDULED, "second", 0, null);
+
+        try {
+            assertTrue(listener.received.await(1, TimeUnit.SECONDS));
+            assertEquals("second", listener.events.get(1).getTaskName());
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void testNothingIsPublishedWithoutListeners() {
+
+        SchedulerEventDispatcher dispatcher = new SchedulerEventDispatcher(1);
+        for (int i = 0; i < 10; i++) {
+            dispatcher.publish(SchedulerEventType.STARTED, "task", 0, null);
+        }
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityMustBePowerOfTwo() {
+
+        new SchedulerEventDispatcher(12);
+    }
+
+    static class RecordingListener
+        implements SchedulerListener {
+
+        final List<SchedulerEvent> events = new CopyOnWriteArrayList<SchedulerEvent>();
+
+        final CountDownLatch received;
+
+        RecordingListener(int count) {
+
+            received = new CountDownLatch(count);
+        }
+
+        public void schedulerEvent(SchedulerEvent event) {
+
+            events.add(event);
+            received.countDown();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SchedulerJournalTestCase {
+
+    public SchedulerJournalTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testJournalIsReplayed()
+        throws IOException {
+
+        File journalFile = File.createTempFile("scheduler", ".journal");
+        journalFile.deleteOnExit();
+
+        Scheduler sch = new Scheduler();
+        sch.openJournal(journalFile);
+        sch.scheduleTask("daemon", SchedulerTestCase.LatchTask.class, "test daemon", null, null);
+        sch.scheduleTask("daily", SchedulerTestCase.LatchTask.class, "test daily",
+            Scheduler.parseTime("10:15:30"), Scheduler.parseTime("11:00:00"));
+        sch.scheduleTask("cron", SchedulerTestCase.LatchTask.class, "test cron",
+            new CronExpression("0 12 * * MON-FRI"), 60000);
+        sch.scheduleTask("removed", SchedulerTestCase.LatchTask.class, "test removed", null, null);
+        sch.stopAndRemoveTask("removed");
+        sch.scheduleTask("daily", (Class<?>) null, null,
+            Scheduler.parseTime("10:20:00"), Scheduler.parseTime("11:00:00"));
+        sch.stopAllTasks();
+
+        Scheduler replayed = new Scheduler();
+        replayed.openJournal(journalFile);
+
+        try {
+            List<SchedulerTask> tasks = replayed.getTasks();
+
+            assertEquals(3, tasks.size());
+            assertFalse(replayed.existsTask("removed"));
+
+            SchedulerTask daemon = tasks.get(0);
+            assertEquals("daemon", daemon.getTaskName());
+            assertTrue(daemon.isDaemonTask());
+
+            SchedulerTask cron = tasks.get(1);
+            assertEquals("cron", cron.getTaskName());
+            assertEquals("0 12 * * MON-FRI", cron.getTaskCronExpression().toString());
+            assertEquals(60000, cron.getTaskWindowMillis());
+
+            SchedulerTask daily = tasks.get(2);
+            assertEquals("daily", daily.getTaskName());
+            assertEquals("test daily", daily.getTaskDescription());
+            assertEquals(10, daily.getTaskStartTime().get(Calendar.HOUR_OF_DAY));
+            assertEquals(20, daily.getTaskStartTime().get(Calendar.MINUTE));
+        } finally {
+            replayed.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testDependentTaskIsReplayed()
+        throws IOException {
+
+        File journalFile = File.createTempFile("scheduler", ".journal");
+        journalFile.deleteOnExit();
+
+        Scheduler sch = new Scheduler();
+        sch.openJournal(journalFile);
+        sch.scheduleTask("first", SchedulerTestCase.LatchTask.class, "test first", null, null);
+        sch.scheduleTask("second", SchedulerTestCase.LatchTask.class, "test second", null, null);
+        sch.scheduleTask("next", SchedulerTestCase.LatchTask.class, "test next",
+            Arrays.asList("first", "second"), 60000);
+        sch.stopAllTasks();
+
+        Scheduler replayed = new Scheduler();
+        replayed.openJournal(journalFile);
+
+        try {
+            SchedulerTask next = replayed.getTasks().get(2);
+            assertEquals("next", next.getTaskName());
+            assertTrue(next.isDependentTask());
+            assertEquals(Arrays.asList("first", "second"), next.getUpstreamTasks());
+            assertEquals(60000, next.getTaskWindowMillis());
+        } finally {
+            replayed.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnored()
+        throws IOException {
+
+        File journalFile = File.createTempFile("scheduler", ".journal");
+        journalFile.deleteOnExit();
+
+        Scheduler sch = new Scheduler();
+        sch.openJournal(journalFile);
+        sch.scheduleTask("daemon", SchedulerTestCase.LatchTask.class, "test daemon", null, null);
+        sch.stopAllTasks();
+
+        FileOutputStream out = new FileOutputStream(journalFile, true);
+        try {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2});
+        } finally {
+            out.close();
+        }
+
+        Scheduler replayed = new Scheduler();
+        replayed.openJournal(journalFile);
+
+        try {
+            assertEquals(1, replayed.getTasks().size());
+            assertTrue(replayed.existsTask("daemon"));
+        } finally {
+            replayed.stopAllTasks();
+        }
+    }
+}
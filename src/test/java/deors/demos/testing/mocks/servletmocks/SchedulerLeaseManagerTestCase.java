@@ -0,0 +1,102 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SchedulerLeaseManagerTestCase {
+
+    public SchedulerLeaseManagerTestCase() {
+
+        super();
+    }
+
+    private static File newLeaseDirectory()
+        throws IOException {
+
+        File leaseDirectory = Files.createTempDirectory("scheduler-leases").toFile();
+        leaseDirectory.deleteOnExit();
+        return leaseDirectory;
+    }
+
+    @Test
+    public void testLeaseIsHeldByOneNode()
+        throws IOException {
+
+        File leaseDirectory = newLeaseDirectory();
+        SchedulerLeaseManager nodeA = new SchedulerLeaseManager(leaseDirectory, "a", 10000);
+        SchedulerLeaseManager nodeB = new SchedulerLeaseManager(leaseDirectory, "b", 10000);
+
+        SchedulerTask task = new SchedulerTestCase.LatchTask("task", "test task", null, null);
+
+        try {
+            assertTrue(nodeA.tryAcquire(task, SchedulerTask.NOT_SCHEDULED));
+            assertTrue(nodeA.isHeld("task"));
+            assertFalse(nodeB.tryAcquire(task, SchedulerTask.NOT_SCHEDULED));
+
+            nodeA.close();
+
+            assertTrue(nodeB.tryAcquire(task, SchedulerTask.NOT_SCHEDULED));
+        } finally {
+            nodeA.close();
+            nodeB.close();
+        }
+    }
+
+    @Test
+    public void testWindowIsStartedOnce()
+        throws IOException {
+
+        File leaseDirectory = newLeaseDirectory();
+        SchedulerLeaseManager nodeA = new SchedulerLeaseManager(leaseDirectory, "a", 10000);
+        SchedulerLeaseManager nodeB = new SchedulerLeaseManager(leaseDirectory, "b", 10000);
+
+        SchedulerTask task = new SchedulerTestCase.LatchTask("task", "test task", null, null);
+
+        try {
+            assertTrue(nodeA.tryAcquire(task, 1000));
+
+            nodeA.close();
+
+            assertFalse(nodeB.tryAcquire(task, 1000));
+            assertTrue(nodeB.tryAcquire(task, 2000));
+        } finally {
+            nodeA.close();
+            nodeB.close();
+        }
+    }
+
+    @Test
+    public void testCoordinatedSchedulersRunDaemonOnce()
+        throws IOException, InterruptedException {
+
+        File leaseDirectory = newLeaseDirectory();
+
+        Scheduler schA = new Scheduler();
+        schA.setCoordination(leaseDirectory, "a", 5000);
+        Scheduler schB = new Scheduler();
+        schB.setCoordination(leaseDirectory, "b", 5000);
+
+        SchedulerTestCase.LatchTask.reset(2);
+        schA.startScheduler();
+        schB.startScheduler();
+
+        try {
+            schA.scheduleTask("daemon", SchedulerTestCase.LatchTask.class, "test daemon", null, null);
+            schB.scheduleTask("daemon", SchedulerTestCase.LatchTask.class, "test daemon", null, null);
+
+            assertFalse(SchedulerTestCase.LatchTask.started.await(1, TimeUnit.SECONDS));
+            assertEquals(1, SchedulerTestCase.LatchTask.starts.get());
+        } finally {
+            schA.stopAllTasks();
+            schB.stopAllTasks();
+        }
+    }
+}
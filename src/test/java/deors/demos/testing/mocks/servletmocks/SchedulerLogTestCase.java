@@ -0,0 +1,111 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchedulerLogTestCase {
+
+    private PrintStream originalOut;
+
+    private SchedulerLogLevel originalLevel;
+
+    private ByteArrayOutputStream captured;
+
+    public SchedulerLogTestCase() {
+
+        super();
+    }
+
+    @Before
+    public void captureOutput()
+        throws InterruptedException {
+
+        SchedulerLog.flush(1000);
+        originalOut = System.out;
+        originalLevel = Scheduler.getLogLevel();
+        captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+    }
+
+    @After
+    public void restoreOutput()
+        throws InterruptedException {
+
+        SchedulerLog.flush(1000);
+        System.setOut(originalOut);
+        Scheduler.setLogLevel(originalLevel);
+    }
+
+    @Test
+    public void testLevelGating() {
+
+        Scheduler.setLogLevel(SchedulerLogLevel.WARN);
+
+        assertTrue(SchedulerLog.isEnabled(SchedulerLogLevel.ERROR));
+        assertTrue(SchedulerLog.isEnabled(SchedulerLogLevel.WARN));
+        assertFalse(SchedulerLog.isEnabled(SchedulerLogLevel.INFO));
+        assertFalse(SchedulerLog.isEnabled(SchedulerLogLevel.DEBUG));
+
+        Scheduler.setLogLevel(SchedulerLogLevel.OFF);
+
+        assertFalse(SchedulerLog.isEnabled(SchedulerLogLevel.ERROR));
+        assertFalse(SchedulerLog.isEnabled(SchedulerLogLevel.OFF));
+    }
+
+    @Test
+    public void testMessagesAreFormattedAndWritten()
+        throws InterruptedException {
+
+        Scheduler.setLogLevel(SchedulerLogLevel.INFO);
+
+        SchedulerLog.log(SchedulerLogLevel.INFO, "SCHED_LOG_TEST {} of {}", "first", Integer.valueOf(2));
+        SchedulerLog.log(SchedulerLogLevel.DEBUG, "SCHED_LOG_TEST_HIDDEN {}", "second");
+        SchedulerLog.log(SchedulerLogLevel.ERROR, "SCHED_LOG_TEST_ERROR {}", "third", new Exception("cause"));
+        SchedulerLog.log(SchedulerLogLevel.WARN, "SCHED_LOG_TEST_PLAIN");
+
+        assertTrue(SchedulerLog.flush(1000));
+
+        String[] lines = captured.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertEquals("INFO SCHED_LOG_TEST first of 2", lines[0]);
+        assertEquals("ERROR SCHED_LOG_TEST_ERROR third java.lang.Exception: cause", lines[1]);
+        assertEquals("WARN SCHED_LOG_TEST_PLAIN", lines[2]);
+    }
+
+    @Test
+    public void testMessagesKeepOrderAcrossBatches()
+        throws InterruptedException {
+
+        Scheduler.setLogLevel(SchedulerLogLevel.DEBUG);
+        long dropped = SchedulerLog.getDroppedCount();
+
+        for (int i = 0; i < 1000; i++) {
+            SchedulerLog.log(SchedulerLogLevel.DEBUG, "SCHED_LOG_TEST {}", Integer.valueOf(i));
+        }
+
+        assertTrue(SchedulerLog.flush(2000));
+
+        String[] lines = captured.toString().split(System.lineSeparator());
+        assertEquals(1000, lines.length + SchedulerLog.getDroppedCount() - dropped);
+        int previous = -1;
+        for (String line : lines) {
+            int value = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+            assertTrue(value > previous);
+            previous = value;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelMustNotBeNull() {
+
+        Scheduler.setLogLevel(null);
+    }
+}
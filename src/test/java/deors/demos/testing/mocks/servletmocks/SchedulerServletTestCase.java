@@ -1380,6 +1380,7 @@ public class SchedulerServletTestCase {
             String s = new String(output);
 
             assertTrue(s.contains("Task <b>task1</b>SCHED_SERVLET_STATE_IDLE"));
+            assertTrue(s.contains("stats: SCHED_SERVLET_STATS_NOT_AVAILABLE"));
             assertTrue(s.contains("onclick=\"taskStart('task1')\"/>&nbsp;&nbsp;"));
             assertTrue(s.contains("Task <b>task2</b>SCHED_SERVLET_STATE_IDLE"));
             assertTrue(s.contains("onclick=\"taskStart('task2')\"/>&nbsp;&nbsp;"));
@@ -0,0 +1,1873 @@
+package deors.demos.testing.mocks.servletmocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class SchedulerTestCase {
+
+    public SchedulerTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testDaemonStartsWithoutPolling()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+
+            assertTrue(LatchTask.started.await(1, TimeUnit.SECONDS));
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testTaskStartsAndStopsOnDeadline()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+
+            Calendar start = Calendar.getInstance();
+            start.add(Calendar.SECOND, 1);
+            Calendar stop = (Calendar) start.clone();
+            stop.add(Calendar.SECOND, 1);
+
+            sch.scheduleTask("task", LatchTask.class, "test task", start, stop);
+
+            assertFalse(LatchTask.started.await(500, TimeUnit.MILLISECONDS));
+            assertTrue(LatchTask.started.await(2, TimeUnit.SECONDS));
+            assertTrue(LatchTask.stopped.await(2, TimeUnit.SECONDS));
+            assertEquals(1, sch.getTasks().size());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testRegistryKeepsInsertionOrder() {
+
+        Scheduler sch = new Scheduler();
+
+        sch.scheduleTask("c", LatchTask.class, "task c", null, null);
+        sch.scheduleTask("a", LatchTask.class, "task a", null, null);
+        sch.scheduleTask("b", LatchTask.class, "task b", null, null);
+        sch.stopAndRemoveTask("a");
+        sch.scheduleTask("a", LatchTask.class, "task a", null, null);
+
+        assertTrue(sch.existsTask("a"));
+        assertFalse(sch.existsTask("d"));
+        assertEquals(3, sch.getTasks().size());
+        assertEquals("c", sch.getTasks().get(0).getTaskName());
+        assertEquals("b", sch.getTasks().get(1).getTaskName());
+        assertEquals("a", sch.getTasks().get(2).getTaskName());
+
+        sch.stopAllTasks();
+
+        assertTrue(sch.getTasks().isEmpty());
+    }
+
+    @Test
+    public void testRescheduleRemovesStaleQueueEntry() {
+
+        Scheduler sch = new Scheduler();
+
+        Calendar start = Calendar.getInstance();
+        start.add(Calendar.DAY_OF_MONTH, 1);
+        Calendar stop = (Calendar) start.clone();
+        stop.add(Calendar.HOUR_OF_DAY, 1);
+
+        for (int i = 0; i < 100; i++) {
+            sch.scheduleTask("daily", LatchTask.class, "daily task", start, stop);
+        }
+
+        SchedulerTask task = sch.getTasks().get(0);
+        assertEquals(1, sch.shardFor(task).size());
+
+        sch.stopAllTasks();
+    }
+
+    @Test
+    public void testTasksRunInConfiguredExecutor()
+        throws InterruptedException {
+
+        ExecutorService executor = Scheduler.newBoundedTaskExecutor(1);
+
+        Scheduler sch = new Scheduler();
+        sch.setTaskExecutor(executor);
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+            assertTrue(LatchTask.threadName.startsWith("scheduler-task-"));
+        } finally {
+            sch.stopAllTasks();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentStartsRunTaskOnce()
+        throws InterruptedException {
+
+        ExecutorService executor = Scheduler.newBoundedTaskExecutor(8);
+
+        try {
+            LatchTask.reset();
+            final LatchTask task = new LatchTask("task", "test task", null, null);
+            final Executor taskExecutor = executor;
+            final CountDownLatch go = new CountDownLatch(1);
+
+            Thread[] starters = new Thread[8];
+            for (int i = 0; i < starters.length; i++) {
+                starters[i] = new Thread() {
+                    public void run() {
+                        try {
+                            go.await();
+                        } catch (InterruptedException ie) {
+                        }
+                        task.taskStart(taskExecutor);
+                    }
+                };
+                starters[i].start();
+            }
+            go.countDown();
+            for (Thread starter : starters) {
+                starter.join();
+            }
+
+            assertEquals(1, LatchTask.starts.get());
+            assertEquals(SchedulerTaskState.RUNNING, task.getTaskState());
+
+            task.taskStop();
+
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNextDailyOccurrenceDoesNotModifyTime() {
+
+        Calendar time = Calendar.getInstance();
+        time.add(Calendar.DAY_OF_MONTH, -3);
+        time.add(Calendar.MINUTE, 1);
+        long configured = time.getTimeInMillis();
+
+        long now = System.currentTimeMillis();
+        long next = Scheduler.nextDailyOccurrence(time, now);
+
+        assertEquals(configured, time.getTimeInMillis());
+        assertTrue(next >= now);
+        assertTrue(next - now <= 2 * 60 * 1000);
+
+        Calendar future = Calendar.getInstance();
+        future.add(Calendar.HOUR_OF_DAY, 30);
+
+        assertEquals(future.getTimeInMillis(), Scheduler.nextDailyOccurrence(future, now));
+    }
+
+    @Test
+    public void testShardedSchedulerStartsTasksInEveryShard()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.scheduleTask("daemon0", LatchTask.class, "test daemon", null, null);
+        sch.setShardCount(4);
+
+        assertEquals(4, sch.getShardCount());
+
+        LatchTask.reset(16);
+        sch.startScheduler();
+
+        try {
+            boolean[] used = new boolean[4];
+            for (int i = 1; i < 16; i++) {
+                sch.scheduleTask("daemon" + i, LatchTask.class, "test daemon", null, null);
+            }
+            for (SchedulerTask task : sch.getTasks()) {
+                used[sch.shardFor(task).getIndex()] = true;
+            }
+
+            assertTrue(LatchTask.started.await(1, TimeUnit.SECONDS));
+            assertTrue(used[0] && used[1] && used[2] && used[3]);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardCountCannotChangeWhileRunning() {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            sch.setShardCount(2);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testMetricsAreRegisteredAsMBeans()
+        throws Exception {
+
+        Scheduler sch = new Scheduler();
+        sch.registerMBeans("metrics");
+        sch.startScheduler();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName schedulerName = new ObjectName(
+            "deors.demos.testing.mocks.servletmocks:type=Scheduler,name=\"metrics\"");
+        ObjectName taskName = new ObjectName(
+            "deors.demos.testing.mocks.servletmocks:type=SchedulerTask,scheduler=\"metrics\",name=\"daemon\"");
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+            sch.stopTask("daemon");
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+            assertTrue(server.isRegistered(taskName));
+            assertEquals(1L, server.getAttribute(schedulerName, "StartCount"));
+            assertEquals(1L, server.getAttribute(taskName, "StartCount"));
+            assertEquals(1, sch.getTasks().get(0).getMetrics().getRunCount());
+            assertTrue(sch.getMetrics().getTickCount() > 0);
+
+            sch.stopAndRemoveTask("daemon");
+
+            assertFalse(server.isRegistered(taskName));
+        } finally {
+            sch.stopAllTasks();
+        }
+
+        assertFalse(server.isRegistered(schedulerName));
+    }
+
+    @Test
+    public void testScheduleTasksInBulk() {
+
+        Scheduler sch = new Scheduler();
+
+        List<TaskDefinition> definitions = new ArrayList<TaskDefinition>();
+        definitions.add(new TaskDefinition("daemon", LatchTask.class, "test daemon", null, null));
+        definitions.add(new TaskDefinition("cron", LatchTask.class.getName(), "test cron",
+            new CronExpression("0 0 * * *"), SchedulerTask.UNLIMITED_WINDOW));
+        definitions.add(new TaskDefinition("daemon", LatchTask.class, "same daemon", null, null));
+
+        sch.scheduleTasks(definitions);
+
+        assertEquals(2, sch.getTasks().size());
+        assertEquals("daemon", sch.getTasks().get(0).getTaskName());
+        assertTrue(sch.getTasks().get(0).isDaemonTask());
+        assertEquals("cron", sch.getTasks().get(1).getTaskName());
+        assertTrue(sch.getTasks().get(1).getTaskCronExpression() != null);
+
+        sch.stopAllTasks();
+    }
+
+    @Test
+    public void testScheduleTasksRejectsInvalidClassBeforeScheduling() {
+
+        Scheduler sch = new Scheduler();
+
+        List<TaskDefinition> definitions = new ArrayList<TaskDefinition>();
+        definitions.add(new TaskDefinition("daemon", LatchTask.class, "test daemon", null, null));
+        definitions.add(new TaskDefinition("invalid", String.class, "not a task", null, null));
+
+        try {
+            sch.scheduleTasks(definitions);
+            assertTrue(false);
+        } catch (IllegalArgumentException iae) {
+            assertEquals("SCHED_ERR_TASK_CLASS_INVALID", iae.getMessage());
+        }
+
+        assertTrue(sch.getTasks().isEmpty());
+
+        sch.stopAllTasks();
+    }
+
+    @Test
+    public void testScheduleTasksDoesNotChangeRunningTask()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("daemon", LatchTask.class, "test daemon", null, null)));
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("daemon", LatchTask.class, "test daemon", null, null)
+                    .withTaskGroup("group", 5)
+                    .withExecutionMode(ExecutionMode.FIXED_RATE, 100)
+                    .withRunLimits(1000, 100)));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertTrue(task.isExecuting());
+            assertNull(task.getTaskGroup());
+            assertEquals(ExecutionMode.CONTINUOUS, task.getExecutionMode());
+            assertEquals(0, task.getExecutionPeriod());
+            assertEquals(0, task.getMaxRunTime());
+            assertEquals(0, task.getIterationTimeout());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testSlowPrepareDoesNotDelayOtherTasks()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            SlowPrepareTask.reset();
+            sch.scheduleTask("slow", SlowPrepareTask.class, "slow daemon", null, null);
+
+            assertTrue(SlowPrepareTask.preparing.await(1, TimeUnit.SECONDS));
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+
+            assertTrue(LatchTask.started.await(1, TimeUnit.SECONDS));
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+            assertTrue(sch.getTasks().get(0).isStarting());
+        } finally {
+            SlowPrepareTask.release.countDown();
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testPrepareTimeoutAbandonsStart()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setPrepareTimeout(100);
+        sch.startScheduler();
+
+        try {
+            SlowPrepareTask.reset();
+            sch.scheduleTask("slow", SlowPrepareTask.class, "slow daemon", null, null);
+
+            assertTrue(SlowPrepareTask.interrupted.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertEquals(SchedulerTaskState.IDLE, task.getTaskState());
+            assertTrue(task.isDaemonExecuted());
+            assertEquals(1, task.getMetrics().getErrorCount());
+            assertTrue(task.getMetrics().getLastError().startsWith("java.util.concurrent.TimeoutException"));
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testTimedOutPrepareDoesNotTakeOverNextStart()
+        throws InterruptedException {
+
+        ExecutorService executor = Scheduler.newBoundedTaskExecutor(4);
+
+        try {
+            StubbornPrepareTask.reset();
+            StubbornPrepareTask task = new StubbornPrepareTask("stubborn", "test task", null, null);
+
+            assertTrue(task.taskStart(executor, executor, Long.MAX_VALUE));
+            assertTrue(StubbornPrepareTask.preparing[0].await(1, TimeUnit.SECONDS));
+            assertTrue(task.taskPrepareTimeout());
+            assertEquals(SchedulerTaskState.IDLE, task.getTaskState());
+
+            assertTrue(task.taskStart(executor, executor, Long.MAX_VALUE));
+            assertTrue(StubbornPrepareTask.preparing[1].await(1, TimeUnit.SECONDS));
+
+            // the abandoned preparation ends while the next start is still being prepared
+            StubbornPrepareTask.release[0].countDown();
+            Thread.sleep(100);
+            assertEquals(SchedulerTaskState.STARTING, task.getTaskState());
+            assertEquals(0, StubbornPrepareTask.runs.get());
+
+            StubbornPrepareTask.release[1].countDown();
+            long deadline = System.currentTimeMillis() + 1000;
+            while (StubbornPrepareTask.runs.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, StubbornPrepareTask.runs.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrepareTimeoutMustBePositive() {
+
+        new Scheduler().setPrepareTimeout(0);
+    }
+
+    @Test
+    public void testKillInterruptsTaskIgnoringStopRequest()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setKillGracePeriod(100);
+        sch.startScheduler();
+
+        try {
+            BlockingTask.reset(false);
+            sch.scheduleTask("blocking", BlockingTask.class, "blocking daemon", null, null);
+            assertTrue(BlockingTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            long start = System.nanoTime();
+            sch.killTask("blocking");
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(BlockingTask.interrupted.await(1, TimeUnit.SECONDS));
+            assertTrue(BlockingTask.stopped.await(1, TimeUnit.SECONDS));
+            assertEquals(SchedulerTaskState.KILLED, task.getTaskState());
+            assertTrue(elapsed >= 100 && elapsed < 1000);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testKillIsBoundedForUninterruptibleTask()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setKillGracePeriod(50);
+        sch.startScheduler();
+
+        try {
+            BlockingTask.reset(true);
+            sch.scheduleTask("stubborn", BlockingTask.class, "stubborn daemon", null, null);
+            assertTrue(BlockingTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            long start = System.nanoTime();
+            sch.killTask("stubborn");
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(SchedulerTaskState.KILLED, task.getTaskState());
+            assertEquals(0, BlockingTask.stopped.getCount());
+            assertTrue(elapsed >= 100 && elapsed < 1000);
+        } finally {
+            BlockingTask.release.countDown();
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testStopRequestIsVisibleToTaskLogic()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertFalse(task.isStopRequested());
+
+            sch.stopTask("daemon");
+
+            assertTrue(task.isStopRequested());
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimitQueuesStartsByPriority()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setConcurrencyLimit(1);
+        sch.startScheduler();
+
+        try {
+            GateTask.reset();
+            sch.scheduleTasks(Collections.singletonList(gateDaemon("first", null, 0)));
+            assertTrue(GateTask.awaitStarts(1));
+
+            sch.scheduleTasks(Arrays.asList(gateDaemon("low", null, 0), gateDaemon("high", null, 5)));
+            assertTrue(awaitQueueLength(sch, 2));
+
+            sch.stopAndRemoveTask("first");
+            assertTrue(GateTask.awaitStarts(2));
+            assertEquals(Arrays.asList("first", "high"), GateTask.snapshot());
+            assertEquals(1, sch.getAdmission().getQueueLength());
+
+            sch.stopAndRemoveTask("high");
+            assertTrue(GateTask.awaitStarts(3));
+            assertEquals(Arrays.asList("first", "high", "low"), GateTask.snapshot());
+
+            SchedulerTask low = sch.getTaskRegistry().get("low");
+            assertTrue(low.metrics.getAdmissionWaitMaxMillis() > 0);
+            assertTrue(sch.getMetrics().getAdmissionWaitMaxMillis() > 0);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testGroupLimitDoesNotBlockOtherGroups()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setGroupConcurrencyLimit("io", 1);
+        sch.startScheduler();
+
+        try {
+            GateTask.reset();
+            sch.scheduleTasks(Arrays.asList(
+                gateDaemon("io1", "io", 0), gateDaemon("io2", "io", 0), gateDaemon("cpu", null, 0)));
+
+            assertTrue(GateTask.awaitStarts(2));
+            assertTrue(awaitQueueLength(sch, 1));
+            assertTrue(GateTask.snapshot().contains("cpu"));
+            assertEquals(2, GateTask.snapshot().size());
+            assertEquals(1, sch.getGroupConcurrencyLimit("io"));
+            assertEquals(Scheduler.UNLIMITED_CONCURRENCY, sch.getConcurrencyLimit());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyLimitMustBePositive() {
+
+        new Scheduler().setConcurrencyLimit(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGroupConcurrencyLimitNeedsGroup() {
+
+        new Scheduler().setGroupConcurrencyLimit("", 1);
+    }
+
+    @Test
+    public void testMisfireSkipToNextDoesNotStartMissedExecution()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            SchedulerTask task = scheduleYearlyTask(sch, MisfirePolicy.SKIP_TO_NEXT);
+
+            long now = System.currentTimeMillis();
+            simulateMissedStart(sch, task, now - 5000, now + 60000);
+
+            assertTrue(awaitMisfires(task, 1));
+            assertFalse(LatchTask.started.await(200, TimeUnit.MILLISECONDS));
+            assertTrue(task.getTaskNextStartMillis() > now);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testMisfireCoalesceStartsOnceWithFullWindow()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            SchedulerTask task = scheduleYearlyTask(sch, MisfirePolicy.COALESCE);
+
+            long now = System.currentTimeMillis();
+            simulateMissedStart(sch, task, now - 120000, now - 119800);
+
+            // the execution runs for its whole window even if the window had already ended
+            assertTrue(LatchTask.started.await(1, TimeUnit.SECONDS));
+            assertFalse(LatchTask.stopped.await(100, TimeUnit.MILLISECONDS));
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+            assertEquals(1, task.metrics.getMisfireCount());
+            assertTrue(task.metrics.getMisfireLagMaxMillis() >= 120000);
+            assertTrue(sch.getMetrics().getMisfireCount() >= 1);
+
+            // the next start is the next yearly fire time, not a catch-up execution
+            Thread.sleep(100);
+            assertEquals(1, LatchTask.starts.get());
+            assertTrue(task.getTaskNextStartMillis() > now);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testMisfireFireNowStartsEveryMissedExecution()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset(3);
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("minutely", LatchTask.class, "minutely task",
+                    new CronExpression("* * * * *"), 100)
+                    .withMisfirePolicy(MisfirePolicy.FIRE_NOW, 1000)));
+            SchedulerTask task = sch.getTaskRegistry().get("minutely");
+
+            // three missed executions, one minute apart
+            long missed = task.getTaskCronExpression().nextFireTime(System.currentTimeMillis() - 190000);
+            simulateMissedStart(sch, task, missed, missed + 100);
+
+            assertTrue(LatchTask.started.await(2, TimeUnit.SECONDS));
+            assertTrue(task.metrics.getMisfireCount() >= 3);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMisfireToleranceMustNotBeNegative() {
+
+        new TaskDefinition("task", LatchTask.class, "task", (Calendar) null, (Calendar) null)
+            .withMisfirePolicy(MisfirePolicy.COALESCE, -1);
+    }
+
+    @Test
+    public void testMisfirePolicyParse() {
+
+        assertEquals(MisfirePolicy.SKIP_TO_NEXT, MisfirePolicy.parse("skip-to-next"));
+        assertEquals(MisfirePolicy.FIRE_NOW, MisfirePolicy.parse("FIRE_NOW"));
+        assertEquals(MisfirePolicy.COALESCE, MisfirePolicy.parse("Coalesce"));
+    }
+
+    private static SchedulerTask scheduleYearlyTask(Scheduler sch, MisfirePolicy policy) {
+
+        sch.scheduleTasks(Collections.singletonList(
+            new TaskDefinition("yearly", LatchTask.class, "yearly task",
+                new CronExpression("0 0 1 1 *"), 200)
+                .withMisfirePolicy(policy, 1000)));
+        return sch.getTaskRegistry().get("yearly");
+    }
+
+    private static void simulateMissedStart(Scheduler sch, SchedulerTask task, long start, long stop)
+        throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (task.getTaskNextStartMillis() == SchedulerTask.NOT_SCHEDULED
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        task.setTaskNextStopMillis(stop);
+        task.setTaskNextStartMillis(start);
+        sch.wakeUp(task);
+    }
+
+    private static boolean awaitMisfires(SchedulerTask task, long count)
+        throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (task.metrics.getMisfireCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    public void testListenerReceivesLifecycleEvents()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        SchedulerEventDispatcherTestCase.RecordingListener listener =
+            new SchedulerEventDispatcherTestCase.RecordingListener(3);
+        sch.addSchedulerListener(listener);
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+            sch.stopTask("daemon");
+
+            assertTrue(listener.received.await(1, TimeUnit.SECONDS));
+            assertEquals(SchedulerEventType.SCHEDULED, listener.events.get(0).getType());
+            assertEquals(SchedulerEventType.STARTED, listener.events.get(1).getType());
+            assertEquals(SchedulerEventType.STOPPED, listener.events.get(2).getType());
+            assertEquals("daemon", listener.events.get(2).getTaskName());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testListenerReceivesKillEvent()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setKillGracePeriod(50);
+        final CountDownLatch killed = new CountDownLatch(1);
+        sch.addSchedulerListener(new SchedulerListener() {
+            public void schedulerEvent(SchedulerEvent event) {
+                if (event.getType() == SchedulerEventType.KILLED) {
+                    killed.countDown();
+                }
+            }
+        });
+        sch.startScheduler();
+
+        try {
+            BlockingTask.reset(false);
+            sch.scheduleTask("blocking", BlockingTask.class, "blocking daemon", null, null);
+            assertTrue(BlockingTask.running.await(1, TimeUnit.SECONDS));
+
+            sch.killTask("blocking");
+
+            assertTrue(killed.await(1, TimeUnit.SECONDS));
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testFixedRateModePacesTaskLogic()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            PacedTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("paced", PacedTask.class, "paced daemon", (Calendar) null, (Calendar) null)
+                    .withExecutionMode(ExecutionMode.FIXED_RATE, 50)));
+            assertTrue(PacedTask.firstCall.await(1, TimeUnit.SECONDS));
+
+            Thread.sleep(500);
+
+            int calls = PacedTask.calls.get();
+            assertTrue("calls: " + calls, calls >= 6 && calls <= 14);
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testIterationStatisticsAreRecorded()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            PacedTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("paced", PacedTask.class, "paced daemon", (Calendar) null, (Calendar) null)
+                    .withExecutionMode(ExecutionMode.FIXED_RATE, 20)));
+            assertTrue(PacedTask.firstCall.await(1, TimeUnit.SECONDS));
+
+            Thread.sleep(300);
+
+            SchedulerTaskMXBean metrics = sch.getTaskMetrics("paced");
+            assertTrue(metrics.getIterationCount() >= 5);
+            assertTrue(metrics.getIterationThroughput() > 20 && metrics.getIterationThroughput() < 80);
+            assertTrue(metrics.getIterationMinNanos() <= metrics.getIterationMeanNanos());
+            assertTrue(metrics.getIterationMeanNanos() <= metrics.getIterationMaxNanos());
+            assertTrue(metrics.getIterationP99Nanos() <= metrics.getIterationMaxNanos());
+            assertEquals(null, metrics.getLastError());
+            assertEquals(null, sch.getTaskMetrics("missing"));
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testStopWakesUpParkedTask()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            PacedTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("paced", PacedTask.class, "paced daemon", (Calendar) null, (Calendar) null)
+                    .withExecutionMode(ExecutionMode.FIXED_DELAY, 60000)));
+            assertTrue(PacedTask.firstCall.await(1, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            sch.stopTask("paced");
+
+            assertTrue(PacedTask.stopped.await(1, TimeUnit.SECONDS));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            assertEquals(1, PacedTask.calls.get());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testPacedModeNeedsPeriodInConfiguration()
+        throws IOException {
+
+        File iniFile = File.createTempFile("scheduler", ".ini");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(iniFile), "UTF-8");
+            try {
+                writer.write("[paced]\nclass=" + PacedTask.class.getName()
+                    + "\ndescription=paced daemon\nstart=*\nstop=*\nmode=fixed-rate\n");
+            } finally {
+                writer.close();
+            }
+
+            new Scheduler(iniFile);
+            assertTrue(false);
+        } catch (IllegalArgumentException iae) {
+            assertEquals("SCHED_ERR_EXECUTION_PERIOD_INVALID", iae.getMessage());
+        } finally {
+            iniFile.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExecutionPeriodMustNotBeNegative() {
+
+        new TaskDefinition("task", PacedTask.class, "task", (Calendar) null, (Calendar) null)
+            .withExecutionMode(ExecutionMode.FIXED_DELAY, -1);
+    }
+
+    @Test
+    public void testExecutionModeParse() {
+
+        assertEquals(ExecutionMode.FIXED_RATE, ExecutionMode.parse("fixed-rate"));
+        assertEquals(ExecutionMode.FIXED_DELAY, ExecutionMode.parse("FIXED_DELAY"));
+        assertEquals(ExecutionMode.CONTINUOUS, ExecutionMode.parse("Continuous"));
+    }
+
+    @Test
+    public void testFailedDaemonIsRestartedWithBackoff()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            FailingTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("failing", FailingTask.class, "failing daemon", (Calendar) null, (Calendar) null)
+                    .withSupervisionPolicy(new SupervisionPolicy(3, 40, 100).withJitter(0))));
+
+            assertTrue(FailingTask.awaitStarts(4, 2000));
+            Thread.sleep(300);
+
+            List<Long> starts = FailingTask.snapshot();
+            assertEquals(4, starts.size());
+            // restarts are scheduled in wall-clock milliseconds, so a backoff can look 1 ms shorter
+            assertTrue(starts.get(1) - starts.get(0) >= TimeUnit.MILLISECONDS.toNanos(40 - 1));
+            assertTrue(starts.get(2) - starts.get(1) >= TimeUnit.MILLISECONDS.toNanos(80 - 1));
+            assertTrue(starts.get(3) - starts.get(2) >= TimeUnit.MILLISECONDS.toNanos(100 - 1));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertTrue(task.isDaemonExecuted());
+            assertEquals(3, task.getMetrics().getRestartCount());
+            assertEquals(1, task.getMetrics().getCircuitOpenCount());
+            assertEquals(3, sch.getMetrics().getRestartCount());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testCrashLoopCircuitRetriesAfterOpenTime()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            FailingTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("failing", FailingTask.class, "failing daemon", (Calendar) null, (Calendar) null)
+                    .withSupervisionPolicy(new SupervisionPolicy(1, 10, 10).withJitter(0).withCircuitOpenTime(400))));
+
+            assertTrue(FailingTask.awaitStarts(2, 1000));
+            Thread.sleep(200);
+            assertEquals(2, FailingTask.snapshot().size());
+
+            assertTrue(FailingTask.awaitStarts(3, 1000));
+
+            // the circuit opens again once the retried run has failed
+            SchedulerTask task = sch.getTasks().get(0);
+            long deadline = System.currentTimeMillis() + 1000;
+            while (task.getMetrics().getCircuitOpenCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, task.getMetrics().getCircuitOpenCount());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testSupervisionBackoffDoublesUpToMaximum() {
+
+        SupervisionPolicy policy = new SupervisionPolicy(10, 100, 1000).withJitter(0);
+        assertEquals(100, policy.backoff(1));
+        assertEquals(200, policy.backoff(2));
+        assertEquals(800, policy.backoff(4));
+        assertEquals(1000, policy.backoff(5));
+        assertEquals(1000, policy.backoff(Integer.MAX_VALUE));
+
+        SupervisionPolicy jittered = policy.withJitter(0.5);
+        for (int i = 0; i < 100; i++) {
+            long backoff = jittered.backoff(1);
+            assertTrue(backoff > 50 && backoff <= 100);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSupervisionInitialBackoffMustNotExceedMaximum() {
+
+        new SupervisionPolicy(1, 2000, 1000);
+    }
+
+    @Test
+    public void testDependentTasksStartWhenUpstreamTasksFinish()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            StepTask.reset(null);
+            sch.scheduleTasks(Arrays.asList(
+                new TaskDefinition("join", StepTask.class, "join", Arrays.asList("left", "right"),
+                    SchedulerTask.UNLIMITED_WINDOW),
+                new TaskDefinition("left", StepTask.class, "left", Collections.singletonList("root"),
+                    SchedulerTask.UNLIMITED_WINDOW),
+                new TaskDefinition("right", StepTask.class, "right", Collections.singletonList("root"),
+                    SchedulerTask.UNLIMITED_WINDOW),
+                new TaskDefinition("root", StepTask.class, "root", (Calendar) null, (Calendar) null)));
+
+            assertTrue(StepTask.awaitSteps(8));
+
+            List<String> steps = StepTask.snapshot();
+            assertEquals("start root", steps.get(0));
+            assertEquals("end root", steps.get(1));
+            // both branches start before either one ends
+            assertTrue(steps.subList(2, 4).containsAll(Arrays.asList("start left", "start right")));
+            assertTrue(steps.subList(4, 6).containsAll(Arrays.asList("end left", "end right")));
+            assertEquals("start join", steps.get(6));
+            assertEquals("end join", steps.get(7));
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testFailedUpstreamTaskDoesNotStartDependentTasks()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            StepTask.reset("root");
+            sch.scheduleTasks(Arrays.asList(
+                new TaskDefinition("root", StepTask.class, "root", (Calendar) null, (Calendar) null),
+                new TaskDefinition("next", StepTask.class, "next", Collections.singletonList("root"),
+                    SchedulerTask.UNLIMITED_WINDOW)));
+
+            assertTrue(StepTask.awaitSteps(2));
+            Thread.sleep(200);
+            assertEquals(Arrays.asList("start root", "end root"), StepTask.snapshot());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testDependencyCycleIsRejected() {
+
+        Scheduler sch = new Scheduler();
+
+        try {
+            sch.scheduleTasks(Arrays.asList(
+                new TaskDefinition("root", StepTask.class, "root", (Calendar) null, (Calendar) null),
+                new TaskDefinition("first", StepTask.class, "first", Arrays.asList("root", "second"),
+                    SchedulerTask.UNLIMITED_WINDOW),
+                new TaskDefinition("second", StepTask.class, "second", Collections.singletonList("first"),
+                    SchedulerTask.UNLIMITED_WINDOW)));
+            assertTrue(false);
+        } catch (IllegalArgumentException iae) {
+            assertEquals("SCHED_ERR_TASK_DEPENDENCY_CYCLE", iae.getMessage());
+        }
+
+        assertTrue(sch.getTasks().isEmpty());
+    }
+
+    @Test
+    public void testUpstreamTaskMustExist() {
+
+        Scheduler sch = new Scheduler();
+
+        try {
+            sch.scheduleTask("next", StepTask.class, "next", Collections.singletonList("missing"),
+                SchedulerTask.UNLIMITED_WINDOW);
+            assertTrue(false);
+        } catch (IllegalArgumentException iae) {
+            assertEquals("SCHED_ERR_TASK_DEPENDENCY_NOT_FOUND", iae.getMessage());
+        }
+
+        assertFalse(sch.existsTask("next"));
+    }
+
+    @Test
+    public void testDependentTaskInConfiguration()
+        throws IOException {
+
+        File iniFile = File.createTempFile("scheduler", ".ini");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(iniFile), "UTF-8");
+            try {
+                writer.write("[root]\nclass=" + StepTask.class.getName()
+                    + "\ndescription=root\nstart=*\nstop=*\n"
+                    + "[next]\nclass=" + StepTask.class.getName()
+                    + "\ndescription=next\nafter=root, root\nstop=00:01:00\n");
+            } finally {
+                writer.close();
+            }
+
+            Scheduler sch = new Scheduler(iniFile);
+            SchedulerTask next = sch.getTasks().get(1);
+            assertTrue(next.isDependentTask());
+            assertFalse(next.isDaemonTask());
+            assertEquals(Collections.singletonList("root"), next.getUpstreamTasks());
+            assertEquals(60000, next.getTaskWindowMillis());
+        } finally {
+            iniFile.delete();
+        }
+    }
+
+    private static TaskDefinition gateDaemon(String name, String group, int priority) {
+
+        return new TaskDefinition(name, GateTask.class, "gate daemon", (Calendar) null, (Calendar) null)
+            .withTaskGroup(group, priority);
+    }
+
+    private static boolean awaitQueueLength(Scheduler sch, int length)
+        throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (sch.getAdmission().getQueueLength() != length) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    public void testCloseStopsTasksAndIsIdempotent()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        LatchTask.reset();
+        sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+        assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+        sch.close();
+
+        assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+        assertEquals(0, sch.getTasks().size());
+
+        sch.close();
+    }
+
+    @Test
+    public void testClosedTaskIsStoppedAndRemoved()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            task.close();
+
+            assertTrue(task.isStopRequested());
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+            assertEquals(0, sch.getTasks().size());
+
+            task.close();
+        } finally {
+            sch.close();
+        }
+    }
+
+    @Test
+    public void testAbandonedSchedulerIsCleaned()
+        throws IOException, InterruptedException {
+
+        File journalFile = File.createTempFile("scheduler", ".journal");
+        try {
+            Set<Thread> before = journalThreads();
+            Scheduler sch = new Scheduler();
+            sch.openJournal(journalFile);
+            Set<Thread> opened = journalThreads();
+            opened.removeAll(before);
+            assertEquals(1, opened.size());
+
+            WeakReference<Scheduler> ref = new WeakReference<Scheduler>(sch);
+            sch = null;
+
+            assertTrue(awaitCollected(ref, 2000));
+            assertTrue(awaitEnded(opened));
+        } finally {
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    public void testAbandonedRunningSchedulerIsNotCleaned()
+        throws IOException, InterruptedException {
+
+        File journalFile = File.createTempFile("scheduler", ".journal");
+        try {
+            Set<Thread> before = journalThreads();
+            Scheduler sch = new Scheduler();
+            sch.openJournal(journalFile);
+            Set<Thread> opened = journalThreads();
+            opened.removeAll(before);
+            sch.startScheduler();
+
+            LatchTask.reset();
+            sch.scheduleTask("daemon", LatchTask.class, "test daemon", null, null);
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+            WeakReference<Scheduler> ref = new WeakReference<Scheduler>(sch);
+            sch = null;
+
+            // the scheduler thread keeps the scheduler reachable, so its tasks keep running
+            assertFalse(awaitCollected(ref, 500));
+            assertEquals(1, LatchTask.stopped.getCount());
+            assertFalse(awaitEnded(opened));
+
+            // once stopped, the scheduler can be collected
+            ref.get().stopAllTasks();
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+            assertTrue(awaitEnded(opened));
+            assertTrue(awaitCollected(ref, 2000));
+        } finally {
+            journalFile.delete();
+        }
+    }
+
+    private static Set<Thread> journalThreads() {
+
+        Set<Thread> threads = new HashSet<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("scheduler-journal-")) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    private static boolean awaitCollected(WeakReference<?> ref, long timeout)
+        throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (ref.get() != null) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            System.gc();
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    private static boolean awaitEnded(Set<Thread> threads)
+        throws InterruptedException {
+
+        for (Thread thread : threads) {
+            thread.join(1000);
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testWatchdogEscalatesStuckIterationToKill()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setKillGracePeriod(200);
+        sch.startScheduler();
+
+        try {
+            BlockingTask.reset(true);
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("stuck", BlockingTask.class, "stuck daemon", null, null)
+                    .withRunLimits(0, 200)));
+            assertTrue(BlockingTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertFalse(BlockingTask.interrupted.await(250, TimeUnit.MILLISECONDS));
+            assertTrue(task.isStopRequested());
+            assertTrue(BlockingTask.interrupted.await(1, TimeUnit.SECONDS));
+            assertTrue(awaitKills(task, 1));
+
+            // the task is not idle while the abandoned thread is still in its logic
+            assertEquals(SchedulerTaskState.RUNNING, task.getTaskState());
+            assertEquals(1, sch.getTasks().size());
+
+            BlockingTask.release.countDown();
+            assertTrue(BlockingTask.stopped.await(1, TimeUnit.SECONDS));
+            assertTrue(awaitState(task, SchedulerTaskState.IDLE));
+
+            assertTrue(task.isDaemonExecuted());
+            assertEquals(1, task.getMetrics().getTimeoutCount());
+            assertEquals(1, task.getMetrics().getKillCount());
+            assertEquals(1, sch.getMetrics().getTimeoutCount());
+        } finally {
+            BlockingTask.release.countDown();
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test
+    public void testTaskRunsAgainOnlyAfterKilledRunEnds()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.setKillGracePeriod(100);
+        sch.startScheduler();
+
+        try {
+            BlockingTask.reset(true);
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("stuck", BlockingTask.class, "stuck daemon", null, null)
+                    .withRunLimits(0, 100)
+                    .withSupervisionPolicy(new SupervisionPolicy(1, 10, 10).withJitter(0))));
+            assertTrue(BlockingTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertTrue(awaitKills(task, 1));
+
+            // no second run is started while the abandoned thread is stuck
+            Thread.sleep(200);
+            assertEquals(1, BlockingTask.runs.get());
+            assertEquals(SchedulerTaskState.RUNNING, task.getTaskState());
+
+            BlockingTask.release.countDown();
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (BlockingTask.runs.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(BlockingTask.runs.get() >= 2);
+            assertEquals(1, sch.getTasks().size());
+        } finally {
+            BlockingTask.release.countDown();
+            sch.stopAllTasks();
+        }
+    }
+
+    private static boolean awaitKills(SchedulerTask task, long kills)
+        throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (task.getMetrics().getKillCount() < kills) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static boolean awaitState(SchedulerTask task, SchedulerTaskState state)
+        throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (task.getTaskState() != state) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Test
+    public void testMaxRunTimeStopsRunningTask()
+        throws InterruptedException {
+
+        Scheduler sch = new Scheduler();
+        sch.startScheduler();
+
+        try {
+            LatchTask.reset();
+            sch.scheduleTasks(Collections.singletonList(
+                new TaskDefinition("daemon", LatchTask.class, "test daemon", null, null)
+                    .withRunLimits(300, 0)));
+            assertTrue(LatchTask.running.await(1, TimeUnit.SECONDS));
+
+            SchedulerTask task = sch.getTasks().get(0);
+            assertFalse(LatchTask.stopped.await(200, TimeUnit.MILLISECONDS));
+            assertTrue(LatchTask.stopped.await(1, TimeUnit.SECONDS));
+
+            assertEquals(1, sch.getTasks().size());
+            assertEquals(1, task.getMetrics().getTimeoutCount());
+            assertEquals(0, task.getMetrics().getKillCount());
+        } finally {
+            sch.stopAllTasks();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRunLimitsMustNotBeNegative() {
+
+        new TaskDefinition("task", LatchTask.class, "task", (Calendar) null, (Calendar) null)
+            .withRunLimits(0, -1);
+    }
+
+    @Test
+    public void testRunLimitsInConfiguration()
+        throws IOException {
+
+        File iniFile = File.createTempFile("scheduler", ".ini");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(iniFile), "UTF-8");
+            try {
+                writer.write("[limited]\nclass=" + LatchTask.class.getName()
+                    + "\ndescription=limited daemon\nstart=*\nstop=*\nmaxruntime=01:00:00\ntimeout=500\n");
+            } finally {
+                writer.close();
+            }
+
+            Scheduler sch = new Scheduler(iniFile);
+            SchedulerTask task = sch.getTasks().get(0);
+            assertEquals(3600000, task.getMaxRunTime());
+            assertEquals(500, task.getIterationTimeout());
+            sch.stopAllTasks();
+        } finally {
+            iniFile.delete();
+        }
+    }
+
+    public static class GateTask
+        extends SchedulerTask {
+
+        static List<String> started;
+
+        public GateTask(String taskName, String taskDescription, Calendar taskStartTime,
+                        Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset() {
+
+            started = new ArrayList<String>();
+        }
+
+        static List<String> snapshot() {
+
+            synchronized (started) {
+                return new ArrayList<String>(started);
+            }
+        }
+
+        static boolean awaitStarts(int count)
+            throws InterruptedException {
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (snapshot().size() < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(5);
+            }
+            return true;
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            synchronized (started) {
+                started.add(getTaskName());
+            }
+
+            while (!isStopRequested()) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+        }
+    }
+
+    public static class StepTask
+        extends SchedulerTask {
+
+        static List<String> steps;
+
+        static volatile String failing;
+
+        public StepTask(String taskName, String taskDescription, Calendar taskStartTime,
+                        Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset(String failingTask) {
+
+            steps = new ArrayList<String>();
+            failing = failingTask;
+        }
+
+        static List<String> snapshot() {
+
+            synchronized (steps) {
+                return new ArrayList<String>(steps);
+            }
+        }
+
+        static boolean awaitSteps(int count)
+            throws InterruptedException {
+
+            long deadline = System.currentTimeMillis() + 2000;
+            while (snapshot().size() < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(5);
+            }
+            return true;
+        }
+
+        private static void step(String step) {
+
+            synchronized (steps) {
+                steps.add(step);
+            }
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            step("start " + getTaskName());
+
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                return;
+            }
+
+            step("end " + getTaskName());
+
+            if (getTaskName().equals(failing)) {
+                throw new IllegalStateException("failed");
+            }
+            taskAutoStop();
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+        }
+    }
+
+    public static class FailingTask
+        extends SchedulerTask {
+
+        static List<Long> starts;
+
+        public FailingTask(String taskName, String taskDescription, Calendar taskStartTime,
+                           Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset() {
+
+            starts = new ArrayList<Long>();
+        }
+
+        static List<Long> snapshot() {
+
+            synchronized (starts) {
+                return new ArrayList<Long>(starts);
+            }
+        }
+
+        static boolean awaitStarts(int count, long timeout)
+            throws InterruptedException {
+
+            long deadline = System.currentTimeMillis() + timeout;
+            while (snapshot().size() < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(5);
+            }
+            return true;
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            throw new IllegalStateException("failed");
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+
+            synchronized (starts) {
+                starts.add(System.nanoTime());
+            }
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+        }
+    }
+
+    public static class PacedTask
+        extends SchedulerTask {
+
+        static AtomicInteger calls;
+
+        static CountDownLatch firstCall;
+
+        static CountDownLatch stopped;
+
+        public PacedTask(String taskName, String taskDescription, Calendar taskStartTime,
+                         Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset() {
+
+            calls = new AtomicInteger();
+            firstCall = new CountDownLatch(1);
+            stopped = new CountDownLatch(1);
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            calls.incrementAndGet();
+            firstCall.countDown();
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+
+            stopped.countDown();
+        }
+    }
+
+    public static class BlockingTask
+        extends SchedulerTask {
+
+        static CountDownLatch running;
+
+        static CountDownLatch interrupted;
+
+        static CountDownLatch stopped;
+
+        static CountDownLatch release;
+
+        static volatile boolean ignoreInterrupts;
+
+        static AtomicInteger runs;
+
+        public BlockingTask(String taskName, String taskDescription, Calendar taskStartTime,
+                            Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset(boolean ignore) {
+
+            running = new CountDownLatch(1);
+            interrupted = new CountDownLatch(1);
+            stopped = new CountDownLatch(1);
+            release = new CountDownLatch(1);
+            ignoreInterrupts = ignore;
+            runs = new AtomicInteger();
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            runs.incrementAndGet();
+            running.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    return;
+                } catch (InterruptedException ie) {
+                    interrupted.countDown();
+                    if (!ignoreInterrupts) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+
+            stopped.countDown();
+        }
+    }
+
+    public static class StubbornPrepareTask
+        extends SchedulerTask {
+
+        static CountDownLatch[] preparing;
+
+        static CountDownLatch[] release;
+
+        static AtomicInteger prepares;
+
+        static AtomicInteger runs;
+
+        public StubbornPrepareTask(String taskName, String taskDescription, Calendar taskStartTime,
+                                   Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset() {
+
+            preparing = new CountDownLatch[] {new CountDownLatch(1), new CountDownLatch(1)};
+            release = new CountDownLatch[] {new CountDownLatch(1), new CountDownLatch(1)};
+            prepares = new AtomicInteger();
+            runs = new AtomicInteger();
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            runs.incrementAndGet();
+            taskAutoStop();
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+
+            int i = prepares.getAndIncrement();
+            preparing[i].countDown();
+
+            // the interruption is ignored
+            boolean released = false;
+            while (!released) {
+                try {
+                    released = release[i].await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    continue;
+                }
+            }
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+        }
+    }
+
+    public static class SlowPrepareTask
+        extends SchedulerTask {
+
+        static CountDownLatch preparing;
+
+        static CountDownLatch release;
+
+        static CountDownLatch interrupted;
+
+        public SlowPrepareTask(String taskName, String taskDescription, Calendar taskStartTime,
+                               Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset() {
+
+            preparing = new CountDownLatch(1);
+            release = new CountDownLatch(1);
+            interrupted = new CountDownLatch(1);
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ie) {
+            }
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+
+            preparing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+                throw ie;
+            }
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+        }
+    }
+
+    public static class LatchTask
+        extends SchedulerTask {
+
+        static CountDownLatch started;
+
+        static CountDownLatch stopped;
+
+        static CountDownLatch running;
+
+        static volatile String threadName;
+
+        static AtomicInteger starts;
+
+        public LatchTask(String taskName, String taskDescription, Calendar taskStartTime,
+                         Calendar taskStopTime) {
+
+            super(taskName, taskDescription, taskStartTime, taskStopTime);
+        }
+
+        static void reset() {
+
+            reset(1);
+        }
+
+        static void reset(int startCount) {
+
+            started = new CountDownLatch(startCount);
+            stopped = new CountDownLatch(1);
+            running = new CountDownLatch(1);
+            threadName = null;
+            starts = new AtomicInteger();
+        }
+
+        @Override
+        protected void taskLogic() {
+
+            threadName = Thread.currentThread().getName();
+            running.countDown();
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ie) {
+            }
+        }
+
+        @Override
+        protected void taskPrepareStart() throws Throwable {
+
+            starts.incrementAndGet();
+            started.countDown();
+        }
+
+        @Override
+        protected void taskPrepareStop() throws Throwable {
+
+            stopped.countDown();
+        }
+    }
+}